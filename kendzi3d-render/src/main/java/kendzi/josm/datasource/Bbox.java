@@ -105,5 +105,23 @@ public class Bbox {
         this.latMax = lat_max;
     }
 
+    /**
+     * @param other other bbox
+     * @return if bboxes have common part, touching edges are common
+     */
+    public boolean intersects(Bbox other) {
+        return this.lonMin <= other.lonMax && this.lonMax >= other.lonMin
+                && this.latMin <= other.latMax && this.latMax >= other.latMin;
+    }
+
+    /**
+     * @param lon lon
+     * @param lat lat
+     * @return if point is inside of bbox or on its edge
+     */
+    public boolean contains(double lon, double lat) {
+        return lon >= this.lonMin && lon <= this.lonMax && lat >= this.latMin && lat <= this.latMax;
+    }
+
 
 }
@@ -0,0 +1,186 @@
+package kendzi.josm.datasource;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+
+/**
+ * Decodes text representation of hstore column, like
+ * <code>"building"=>"yes", "roof:shape"=>"flat"</code>, into tags of
+ * primitive. Text is read from result set without creating hstore object,
+ * characters are collected in reused buffer and strings are taken from pool of
+ * interned strings. Decoder is not thread safe, each reader has its own.
+ */
+public class HStoreDecoder {
+
+    private final TagStringPool pool;
+
+    /**
+     * Map of tags reused for each row, primitive copies tags.
+     */
+    private final Map<String, String> tags = new HashMap<String, String>();
+
+    private char[] buf = new char[64];
+
+    private int length;
+
+    private String text;
+
+    private int pos;
+
+    /**
+     * @param pool pool of interned strings
+     */
+    public HStoreDecoder(TagStringPool pool) {
+        super();
+        this.pool = pool;
+    }
+
+    /**
+     * Sets tags of primitive from hstore column "tags".
+     *
+     * @param rs result set
+     * @param p primitive
+     * @throws SQLException
+     */
+    public void injectTags(ResultSet rs, OsmPrimitive p) throws SQLException {
+        p.setKeys(decode(rs.getString("tags")));
+    }
+
+    /**
+     * Decodes text representation of hstore. Entries with NULL values are
+     * skipped.
+     *
+     * @param text text representation of hstore, can be null
+     * @return decoded tags, map is reused by next call
+     * @throws SQLException when text is malformed
+     */
+    public Map<String, String> decode(String text) throws SQLException {
+        this.tags.clear();
+        if (text == null) {
+            return this.tags;
+        }
+        this.text = text;
+        this.pos = 0;
+
+        while (true) {
+            skipWhitespace();
+            if (this.pos >= text.length()) {
+                break;
+            }
+
+            String key = readToken(true);
+            if (key == null) {
+                throw error("NULL key");
+            }
+
+            skipWhitespace();
+            expect('=');
+            expect('>');
+            skipWhitespace();
+
+            String value = readToken(false);
+            if (value != null) {
+                this.tags.put(key, value);
+            }
+
+            skipWhitespace();
+            if (this.pos < text.length()) {
+                expect(',');
+            }
+        }
+
+        this.text = null;
+        return this.tags;
+    }
+
+    /**
+     * Reads quoted or unquoted token.
+     *
+     * @param key if token is key
+     * @return token or null for unquoted NULL
+     */
+    private String readToken(boolean key) throws SQLException {
+        this.length = 0;
+
+        if (this.pos >= this.text.length()) {
+            throw error("missing token");
+        }
+        if (this.text.charAt(this.pos) == '"') {
+            this.pos++;
+            while (true) {
+                if (this.pos >= this.text.length()) {
+                    throw error("unterminated quoted string");
+                }
+                char c = this.text.charAt(this.pos++);
+                if (c == '"') {
+                    break;
+                }
+                if (c == '\\') {
+                    if (this.pos >= this.text.length()) {
+                        throw error("unterminated escape");
+                    }
+                    c = this.text.charAt(this.pos++);
+                }
+                append(c);
+            }
+            return this.pool.intern(this.buf, 0, this.length, key);
+        }
+
+        while (this.pos < this.text.length()) {
+            char c = this.text.charAt(this.pos);
+            if (Character.isWhitespace(c) || c == ',' || c == '=' && key) {
+                break;
+            }
+            this.pos++;
+            if (c == '\\') {
+                if (this.pos >= this.text.length()) {
+                    throw error("unterminated escape");
+                }
+                c = this.text.charAt(this.pos++);
+            }
+            append(c);
+        }
+        if (this.length == 0) {
+            throw error("empty token");
+        }
+        if (this.length == 4 && isNull()) {
+            return null;
+        }
+        return this.pool.intern(this.buf, 0, this.length, key);
+    }
+
+    private boolean isNull() {
+        return Character.toUpperCase(this.buf[0]) == 'N' && Character.toUpperCase(this.buf[1]) == 'U'
+                && Character.toUpperCase(this.buf[2]) == 'L' && Character.toUpperCase(this.buf[3]) == 'L';
+    }
+
+    private void append(char c) {
+        if (this.length == this.buf.length) {
+            char[] newBuf = new char[2 * this.buf.length];
+            System.arraycopy(this.buf, 0, newBuf, 0, this.length);
+            this.buf = newBuf;
+        }
+        this.buf[this.length++] = c;
+    }
+
+    private void skipWhitespace() {
+        while (this.pos < this.text.length() && Character.isWhitespace(this.text.charAt(this.pos))) {
+            this.pos++;
+        }
+    }
+
+    private void expect(char c) throws SQLException {
+        if (this.pos >= this.text.length() || this.text.charAt(this.pos) != c) {
+            throw error("expected '" + c + "'");
+        }
+        this.pos++;
+    }
+
+    private SQLException error(String message) {
+        return new SQLException("malformed hstore, " + message + " at position " + this.pos + ": " + this.text);
+    }
+}
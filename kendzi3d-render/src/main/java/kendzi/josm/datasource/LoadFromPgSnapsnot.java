@@ -5,12 +5,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import org.openstreetmap.josm.Main;
@@ -18,7 +16,6 @@ import org.openstreetmap.josm.data.Preferences;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
-import org.openstreetmap.osmosis.hstore.PGHStore;
 import org.postgis.PGbox3d;
 import org.postgis.PGgeometry;
 import org.postgis.Point;
@@ -27,6 +24,8 @@ public class LoadFromPgSnapsnot {
 
     private Connection connection;
 
+    private final HStoreDecoder tagDecoder = new HStoreDecoder(TagStringPool.SHARED);
+
     private static void initJOSMMinimal() {
         Main.pref = new Preferences();
         //        org.openstreetmap.josm.gui.preferences.map.ProjectionPreference.setProjection();
@@ -186,8 +185,77 @@ public class LoadFromPgSnapsnot {
                     + " WHERE "
                     + " bbox && ? ";//'BOX3D(? ?, ? ?)'::box3d ";
 
+    /**
+     * Selects whole data set for bbox in one query. Data set contains nodes
+     * and ways in bbox, nodes of these ways, relations which have these nodes
+     * or ways as members and all their child relations. Each row has column
+     * kind: N - node, W - way, R - relation, M - relation member. Columns not
+     * used by kind of row are null.
+     */
+    static String DATA_SET_SQL = ""
+            + " WITH RECURSIVE "
+            + " bbox_ways AS ( "
+            + "     SELECT id, nodes FROM ways WHERE bbox && ? "
+            + " ), "
+            + " all_nodes AS ( "
+            + "     SELECT id FROM nodes WHERE geom && ? "
+            + "     UNION "
+            + "     SELECT unnest(nodes) FROM bbox_ways "
+            + " ), "
+            + " all_relations(id) AS ( "
+            + "     SELECT relation_id FROM relation_members "
+            + "     WHERE (member_type = 'N' AND member_id IN (SELECT id FROM all_nodes)) "
+            + "     OR (member_type = 'W' AND member_id IN (SELECT id FROM bbox_ways)) "
+            + "     UNION "
+            // child relations, union ends recursion for cycles
+            + "     SELECT rm.member_id FROM relation_members rm, all_relations r "
+            + "     WHERE rm.relation_id = r.id AND rm.member_type = 'R' "
+            + " ) "
+            + " SELECT 'N' AS kind, n.id, n.version, n.user_id, n.tstamp, n.changeset_id, n.tags, n.geom, "
+            + "     NULL::bigint[] AS nodes, NULL::bigint AS relation_id, NULL::bigint AS member_id, "
+            + "     NULL::character(1) AS member_type, NULL::text AS member_role, NULL::integer AS sequence_id "
+            + " FROM nodes n WHERE n.id IN (SELECT id FROM all_nodes) "
+            + " UNION ALL "
+            + " SELECT 'W', w.id, w.version, w.user_id, w.tstamp, w.changeset_id, w.tags, NULL, "
+            + "     w.nodes, NULL, NULL, NULL, NULL, NULL "
+            + " FROM ways w WHERE w.id IN (SELECT id FROM bbox_ways) "
+            + " UNION ALL "
+            + " SELECT 'R', r.id, r.version, r.user_id, r.tstamp, r.changeset_id, r.tags, NULL, "
+            + "     NULL, NULL, NULL, NULL, NULL, NULL "
+            + " FROM relations r WHERE r.id IN (SELECT id FROM all_relations) "
+            + " UNION ALL "
+            + " SELECT 'M', NULL, NULL, NULL, NULL, NULL, NULL, NULL, "
+            + "     NULL, rm.relation_id, rm.member_id, rm.member_type, rm.member_role, rm.sequence_id "
+            + " FROM relation_members rm WHERE rm.relation_id IN (SELECT id FROM all_relations) ";
+
     //lon_min lat_min, lon_max lat_max
 
+    /**
+     * Selects whole data set for bbox, see {@link #DATA_SET_SQL}. Rows are
+     * fetched from database in parts when connection is not in auto commit
+     * mode, so big data set is not kept in memory twice.
+     *
+     * @param connection connection
+     * @param bbox bbox
+     * @param fetchSize number of rows fetched at once, zero fetches all rows
+     * @return result set with rows of data set
+     * @throws SQLException
+     */
+    public static ResultSet selectDataSet(Connection connection, Bbox bbox, int fetchSize) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(DATA_SET_SQL, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(fetchSize);
+
+        PGbox3d box = new PGbox3d(
+                new Point(bbox.getLon_min(), bbox.getLat_min()),
+                new Point(bbox.getLon_max(), bbox.getLat_max())
+                );
+        ps.setObject(1, box);
+        ps.setObject(2, box);
+
+        return ps.executeQuery();
+    }
+
     public static ResultSet selectWays(Connection connection, Bbox bbox) throws SQLException {
         PreparedStatement ps = connection.prepareStatement(WAY_SQL);
 
@@ -293,27 +361,12 @@ public class LoadFromPgSnapsnot {
 
         ret.setCoor(new LatLon(point.x, point.y));
 
-        injectTags(rs, ret);
+        this.tagDecoder.injectTags(rs, ret);
 
         //System.out.println("point: " + point.x + " , " +point.y);
         return ret;
     }
 
-    public static void injectTags(ResultSet rs, OsmPrimitive p) throws SQLException {
-
-        Map<String, String> tags = new HashMap<String, String>();
-
-        PGHStore dbTags = (PGHStore) rs.getObject("tags");
-        if (dbTags != null) {
-
-            for (Entry<String, String> tagEntry : dbTags.entrySet()) {
-                tags.put(tagEntry.getKey(), tagEntry.getValue());
-                //System.out.println("tag: " + tagEntry.getKey() +  " => " + tagEntry.getValue());
-            }
-        }
-
-        p.setKeys(tags);
-    }
     private void injectOsmPrimitive(ResultSet rs, OsmPrimitive p) throws SQLException {
 
         PGgeometry geom = (PGgeometry) rs.getObject("geom");
@@ -386,14 +439,36 @@ public class LoadFromPgSnapsnot {
         ResultSet rs = ps.executeQuery();
         List<Long> relationsIds = new ArrayList<Long>();
 
-        while (rs.next()) {
-            Long relationId = rs.getLong("relation_id");
-            relationsIds.add(relationId);
+        try {
+            while (rs.next()) {
+                Long relationId = rs.getLong("relation_id");
+                relationsIds.add(relationId);
+            }
+        } finally {
+            close(rs);
         }
 
         return relationsIds;
     }
 
+    /**
+     * Closes result set and its statement. Pooled connection returns prepared
+     * statement to cache when it is closed.
+     *
+     * @param rs result set returned by select methods
+     */
+    public static void close(ResultSet rs) {
+        try {
+            Statement statement = rs.getStatement();
+            rs.close();
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            // ignored, broken connection is reported by next query
+        }
+    }
+
     public static ResultSet selectRelations(
             Connection connection,
             List<Long> relationIds) throws SQLException {
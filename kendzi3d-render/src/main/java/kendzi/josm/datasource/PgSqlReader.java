@@ -41,12 +41,41 @@ public class PgSqlReader extends AbstractReader {
     /** Log. */
     private static final Logger log = Logger.getLogger(PgSqlReader.class);
 
+    /**
+     * Default number of rows fetched from database at once.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
     HashSet<Long> nodesIds = new HashSet<Long>();
 
+    private final int fetchSize;
+
+    /**
+     * Decoder of tags, decodes text of hstore column without creating hstore
+     * objects.
+     */
+    private final HStoreDecoder tagDecoder = new HStoreDecoder(TagStringPool.SHARED);
+
+    public PgSqlReader() {
+        this(DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * @param fetchSize number of rows fetched from database at once
+     */
+    public PgSqlReader(int fetchSize) {
+        super();
+        this.fetchSize = fetchSize;
+    }
+
     public static DataSet parseDataSet(Connection connection, Bbox bbox, ProgressMonitor progressMonitor) throws IllegalDataException {
         return new PgSqlReader().doParseDataSet(connection, bbox, progressMonitor);
     }
 
+    public static DataSet parseDataSet(Connection connection, Bbox bbox, int fetchSize, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return new PgSqlReader(fetchSize).doParseDataSet(connection, bbox, progressMonitor);
+    }
+
     protected DataSet doParseDataSet(Connection connection, Bbox bbox, ProgressMonitor progressMonitor) throws IllegalDataException {
         if (progressMonitor == null) {
             progressMonitor = NullProgressMonitor.INSTANCE;
@@ -97,75 +126,85 @@ public class PgSqlReader extends AbstractReader {
         }
     }
 
-    private void parse(Connection conn, Bbox bbox) {
-        try {
-
-            ResultSet selectNodes = LoadFromPgSnapsnot.selectNodes(conn, bbox);
-
-            int nCount = 0;
-            while (selectNodes.next()) {
-
-                parseNode(selectNodes);
-
-                nCount++;
-            }
-
-            if (log.isTraceEnabled()) {
-                log.trace("loaded nodes: " + nCount);
-            }
-
-            ResultSet selectWays = LoadFromPgSnapsnot.selectWays(conn, bbox);
-
-            int wCount = 0;
-            while (selectWays.next()) {
-
-                Way loadNode = parseWay(selectWays);
-
-                wCount++;
-            }
-
-            if (log.isTraceEnabled()) {
-                log.trace("loaded ways: " + wCount);
-            }
+    /**
+     * Loads whole data set in one query. Rows are parsed when they are
+     * fetched, relation members are joined when all rows are read.
+     *
+     * @param conn connection
+     * @param bbox bbox
+     * @throws SQLException
+     * @throws XMLStreamException
+     */
+    private void parse(Connection conn, Bbox bbox) throws SQLException, XMLStreamException {
 
-            // load missing nodes
+        // postgresql driver fetches rows in parts only inside of transaction
+        boolean autoCommit = conn.getAutoCommit();
+        if (autoCommit) {
+            conn.setAutoCommit(false);
+        }
 
-            List<Long> nodesToLoad = new ArrayList<Long>();
-            for (Collection<Long> nodes : this.ways.values()) {
-                for (Long nodeId : nodes) {
-                    if (!this.nodesIds.contains(nodeId)) {
-                        nodesToLoad.add(nodeId);
+        int nCount = 0;
+        int wCount = 0;
+        int rCount = 0;
+        List<RelationMember> rmList = new ArrayList<RelationMember>();
+        try {
+            ResultSet rs = LoadFromPgSnapsnot.selectDataSet(conn, bbox, this.fetchSize);
+            try {
+                while (rs.next()) {
+                    String kind = rs.getString("kind");
+
+                    if ("N".equals(kind)) {
+                        parseNode(rs);
+                        nCount++;
+                    } else if ("W".equals(kind)) {
+                        parseWay(rs);
+                        wCount++;
+                    } else if ("R".equals(kind)) {
+                        parseRelation(rs);
+                        rCount++;
+                    } else if ("M".equals(kind)) {
+                        rmList.add(parseRelationMember(rs));
+                    } else {
+                        throw new RuntimeException("unknown kind of row: " + kind);
                     }
-
                 }
+            } finally {
+                LoadFromPgSnapsnot.close(rs);
             }
-
-
-            ResultSet selectNodesById = LoadFromPgSnapsnot.selectNodesById(conn, nodesToLoad);;
-
-            int nwCount = 0;
-            while (selectNodesById.next()) {
-
-                parseNode(selectNodesById);
-
-                nwCount++;
-            }
-
-            if (log.isTraceEnabled()) {
-                log.trace("loaded nodes from ways: " + nwCount);
+        } finally {
+            if (autoCommit) {
+                // only read, ends transaction
+                endTransaction(conn);
             }
+        }
 
+        // child relations are already loaded by query
+        parseRelationMembers(rmList);
 
-            parseRelationsForMembers(conn, nodesIds, ways.keySet(), null);
-
-            //parseNode(null);
+        if (log.isTraceEnabled()) {
+            log.trace("loaded nodes: " + nCount + " ways: " + wCount + " relations: " + rCount
+                    + " relation members: " + rmList.size());
+        }
+    }
 
-        } catch (XMLStreamException e) {
-            log.error("error parsing data from db", e);
+    /**
+     * Ends read only transaction and restores auto commit. Error is only
+     * logged, so it doesn't replace error of reading data.
+     *
+     * @param conn connection
+     */
+    private static void endTransaction(Connection conn) {
+        try {
+            conn.rollback();
         } catch (SQLException e) {
-            log.error("error parsing data from db", e);
+            log.warn("error ending read transaction", e);
+        }
+        try {
+            // setting auto commit commits, there is nothing to commit
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            log.warn("error restoring auto commit", e);
         }
-
     }
 
     protected Relation parseRelation(ResultSet rs) throws SQLException {
@@ -176,7 +215,7 @@ public class PgSqlReader extends AbstractReader {
         r.load(rd);
         this.externalIdMap.put(rd.getPrimitiveId(), r);
 
-        LoadFromPgSnapsnot.injectTags(rs, r);
+        this.tagDecoder.injectTags(rs, r);
 
         //        Collection<RelationMemberData> members = new ArrayList<RelationMemberData>();
         //        while (true) {
@@ -201,40 +240,6 @@ public class PgSqlReader extends AbstractReader {
         return r;
     }
 
-    private void parseRelationsForMembers(
-            Connection conn,
-            Set<Long> nodesIds,
-            Set<Long> waysIds,
-            Set<Long> relationIds) throws SQLException {
-
-        List<Long> relationsIds = LoadFromPgSnapsnot.selectRelationsIdsForMembers(conn, nodesIds, waysIds, relationIds);
-
-        int i=0;
-        while (relationsIds.size() > 0){
-            i++;
-            if (i>20) {
-                throw new RuntimeException("to deep relations child: " + i);
-            }
-
-            ResultSet relationsRS = LoadFromPgSnapsnot.selectRelations(conn, relationsIds);
-            while (relationsRS.next()) {
-                parseRelation(relationsRS);
-            }
-            List<RelationMember> rmList = new ArrayList<RelationMember>();
-            ResultSet relationsMembersRS = LoadFromPgSnapsnot.selectRelationMembers(conn, relationsIds);
-            while (relationsMembersRS.next()) {
-                rmList.add(parseRelationMember(relationsMembersRS));
-            }
-
-            List<Long> childRelations = parseRelationMembers(rmList);
-
-            relationsIds = childRelations;
-        }
-
-
-        // load children relations!
-    }
-
     private int getMaxSequence(List<RelationMember> relationMemberList) {
         int max = -1;
         for (RelationMember rm : relationMemberList) {
@@ -446,7 +451,7 @@ public class PgSqlReader extends AbstractReader {
         w.load(wd);
         this.externalIdMap.put(wd.getPrimitiveId(), w);
 
-        LoadFromPgSnapsnot.injectTags(rs, w);
+        this.tagDecoder.injectTags(rs, w);
 
         Collection<Long> nodeIds = loadWayNodes(rs);
 
@@ -509,7 +514,7 @@ public class PgSqlReader extends AbstractReader {
         this.externalIdMap.put(nd.getPrimitiveId(), n);
 
 
-        LoadFromPgSnapsnot.injectTags(rs, n);
+        this.tagDecoder.injectTags(rs, n);
 
 
         //        while (true) {
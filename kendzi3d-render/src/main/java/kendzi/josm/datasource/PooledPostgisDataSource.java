@@ -0,0 +1,94 @@
+package kendzi.josm.datasource;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.DataSourceConnectionFactory;
+import org.apache.commons.dbcp.PoolableConnectionFactory;
+import org.apache.commons.dbcp.PoolingDataSource;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool.impl.GenericKeyedObjectPoolFactory;
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.apache.log4j.Logger;
+
+/**
+ * Pool of connections to postgis database. Connections are created by
+ * {@link Kendzi3dPostgisDataSource}, so they have registered geometry and
+ * hstore types. Connection is validated before it is borrowed from pool, and
+ * idle connections are validated periodically, so connection dropped by
+ * database is replaced by new one. Prepared statements are cached for each
+ * connection, they are returned to cache when they are closed.
+ */
+public class PooledPostgisDataSource extends PoolingDataSource {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(PooledPostgisDataSource.class);
+
+    /**
+     * Interval in milliseconds between validations of idle connections.
+     */
+    private static final long EVICTION_INTERVAL = 60000;
+
+    private final GenericObjectPool connectionPool;
+
+    /**
+     * @param dataSource data source creating new connections
+     * @param maxActive maximal number of connections
+     * @param maxWait maximal time in milliseconds to wait for free connection
+     * @param maxStatements maximal number of cached prepared statements for
+     *            each connection, zero disables cache
+     * @param validationQuery query used to validate connections
+     */
+    public PooledPostgisDataSource(DataSource dataSource, int maxActive, long maxWait, int maxStatements,
+            String validationQuery) {
+        super();
+
+        this.connectionPool = new GenericObjectPool(null);
+        this.connectionPool.setMaxActive(maxActive);
+        this.connectionPool.setMaxIdle(maxActive);
+        this.connectionPool.setMaxWait(maxWait);
+        this.connectionPool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+        this.connectionPool.setTestOnBorrow(true);
+        this.connectionPool.setTestWhileIdle(true);
+        this.connectionPool.setTimeBetweenEvictionRunsMillis(EVICTION_INTERVAL);
+
+        GenericKeyedObjectPoolFactory statementPoolFactory = null;
+        if (maxStatements > 0) {
+            statementPoolFactory = new GenericKeyedObjectPoolFactory(null, -1,
+                    GenericKeyedObjectPool.WHEN_EXHAUSTED_FAIL, 0, maxStatements, maxStatements);
+        }
+
+        // registers itself as factory of connection pool
+        new PoolableConnectionFactory(new DataSourceConnectionFactory(dataSource), this.connectionPool,
+                statementPoolFactory, validationQuery, false, true);
+
+        setPool(this.connectionPool);
+
+        log.info("created connection pool, max connections: " + maxActive + " cached statements: " + maxStatements);
+    }
+
+    /**
+     * @return number of connections borrowed from pool
+     */
+    public int getNumActive() {
+        return this.connectionPool.getNumActive();
+    }
+
+    /**
+     * @return number of idle connections in pool
+     */
+    public int getNumIdle() {
+        return this.connectionPool.getNumIdle();
+    }
+
+    /**
+     * Closes all idle connections, borrowed connections are closed when they
+     * are returned.
+     */
+    public void close() {
+        try {
+            this.connectionPool.close();
+        } catch (Exception e) {
+            log.error("error closing connection pool", e);
+        }
+    }
+}
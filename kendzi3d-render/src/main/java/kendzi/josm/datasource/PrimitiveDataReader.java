@@ -0,0 +1,83 @@
+package kendzi.josm.datasource;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.io.AbstractReader;
+import org.openstreetmap.josm.io.IllegalDataException;
+
+/**
+ * Creates data set from primitive data, in the same way as {@link PgSqlReader}
+ * creates it from rows of database. Primitive data is not changed, so it can
+ * be shared by many readers. Members which are not in given data are added as
+ * incomplete primitives.
+ */
+public class PrimitiveDataReader extends AbstractReader {
+
+    public static DataSet parseDataSet(Collection<NodeData> nodes, Collection<WayData> ways,
+            Collection<RelationData> relations) throws IllegalDataException {
+
+        PrimitiveDataReader reader = new PrimitiveDataReader();
+        for (NodeData nd : nodes) {
+            reader.addNode(nd);
+        }
+        for (WayData wd : ways) {
+            reader.addWay(wd);
+        }
+        for (RelationData rd : relations) {
+            reader.addRelation(rd);
+        }
+        reader.prepareDataSet();
+        return reader.getDataSet();
+    }
+
+    private void addNode(NodeData nd) {
+        if (this.externalIdMap.containsKey(nd.getPrimitiveId())) {
+            return;
+        }
+        Node n = new Node(nd.getId(), nd.getVersion());
+        n.setVisible(nd.isVisible());
+        n.load(nd);
+        this.externalIdMap.put(nd.getPrimitiveId(), n);
+    }
+
+    private void addWay(WayData wd) {
+        if (this.externalIdMap.containsKey(wd.getPrimitiveId())) {
+            return;
+        }
+        // nodes are joined when data set is prepared
+        WayData header = new WayData(wd);
+        header.setNodes(Collections.<Long> emptyList());
+
+        Way w = new Way(wd.getId(), wd.getVersion());
+        w.setVisible(wd.isVisible());
+        w.load(header);
+        this.externalIdMap.put(wd.getPrimitiveId(), w);
+
+        this.ways.put(wd.getUniqueId(), wd.getNodes());
+    }
+
+    private void addRelation(RelationData rd) {
+        if (this.externalIdMap.containsKey(rd.getPrimitiveId())) {
+            return;
+        }
+        // members are joined when data set is prepared
+        RelationData header = new RelationData(rd);
+        header.setMembers(Collections.<RelationMemberData> emptyList());
+
+        Relation r = new Relation(rd.getId(), rd.getVersion());
+        r.setVisible(rd.isVisible());
+        r.load(header);
+        this.externalIdMap.put(rd.getPrimitiveId(), r);
+
+        this.relations.put(rd.getUniqueId(), rd.getMembers());
+    }
+}
@@ -0,0 +1,96 @@
+package kendzi.josm.datasource;
+
+/**
+ * Bounded table of interned tag strings. Keys and short values like "yes",
+ * "building" or "roof:shape" are repeated in almost every row, so the same
+ * String instance is returned for them and no new String is allocated.
+ *
+ * Table has fixed size and is never cleared. String which doesn't fit into
+ * table is returned as new instance. Table is shared by threads without
+ * locking, race between threads can only cause that the same string is stored
+ * twice, String is immutable so it is safely published.
+ */
+public class TagStringPool {
+
+    /**
+     * Pool shared by all readers.
+     */
+    public static final TagStringPool SHARED = new TagStringPool(1 << 16);
+
+    /**
+     * Longer keys are not interned.
+     */
+    private static final int MAX_KEY_LENGTH = 64;
+
+    /**
+     * Longer values are not interned, long values like names are rarely
+     * repeated.
+     */
+    private static final int MAX_VALUE_LENGTH = 32;
+
+    /**
+     * Number of checked slots before string is returned without interning.
+     */
+    private static final int MAX_PROBES = 8;
+
+    private final String[] table;
+
+    private final int mask;
+
+    /**
+     * @param size size of table, need to be power of two
+     */
+    public TagStringPool(int size) {
+        if (size <= 0 || (size & size - 1) != 0) {
+            throw new RuntimeException("size of string pool need to be power of two: " + size);
+        }
+        this.table = new String[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @param chars characters of string
+     * @param offset offset of first character
+     * @param length length of string
+     * @param key if string is key, keys are interned up to bigger length
+     * @return interned string or new string when it can't be interned
+     */
+    public String intern(char[] chars, int offset, int length, boolean key) {
+        if (length > (key ? MAX_KEY_LENGTH : MAX_VALUE_LENGTH)) {
+            return new String(chars, offset, length);
+        }
+
+        // the same as String.hashCode()
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[offset + i];
+        }
+        hash ^= hash >>> 16;
+
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int index = hash + probe & this.mask;
+            String s = this.table[index];
+            if (s == null) {
+                s = new String(chars, offset, length);
+                this.table[index] = s;
+                return s;
+            }
+            if (equals(s, chars, offset, length)) {
+                return s;
+            }
+        }
+        return new String(chars, offset, length);
+    }
+
+    private static boolean equals(String s, char[] chars, int offset, int length) {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
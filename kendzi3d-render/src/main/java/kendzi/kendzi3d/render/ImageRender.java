@@ -1,13 +1,11 @@
 package kendzi.kendzi3d.render;
 
-import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.List;
 
-import javax.imageio.ImageIO;
 import javax.media.opengl.GLCapabilities;
 import javax.media.opengl.GLContext;
 import javax.media.opengl.GLDrawableFactory;
@@ -16,9 +14,12 @@ import javax.media.opengl.GLProfile;
 import javax.vecmath.Point2d;
 
 import jogamp.opengl.Debug;
+import kendzi.josm.kendzi3d.jogl.layer.Layer;
 import kendzi.josm.kendzi3d.jogl.model.Perspective3D;
 import kendzi.kendzi3d.render.conf.RenderEngineConf;
 import kendzi.kendzi3d.render.dataset.DataSetProvider;
+import kendzi.kendzi3d.render.encoder.TileEncoder;
+import kendzi.kendzi3d.render.encoder.TileFormat;
 import kendzi.kendzi3d.render.listener.Kendzi3dTitleGLEventListener;
 import kendzi.kendzi3d.render.tile.Tile;
 import kendzi.kendzi3d.render.tile.TitleToLatLon;
@@ -29,10 +30,12 @@ import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.Preferences;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
 
 import com.google.inject.Inject;
-import com.jogamp.opengl.util.awt.Screenshot;
 
 public class ImageRender {
 
@@ -52,6 +55,11 @@ public class ImageRender {
 
     GLPbuffer buf = null;
 
+    /**
+     * Encoder with buffers reused for every tile.
+     */
+    TileEncoder encoder = null;
+
 
     private static void initJOSMMinimal() {
         Main.pref = new Preferences();
@@ -109,30 +117,127 @@ public class ImageRender {
         this.context.makeCurrent();
 
         this.ff.init(this.buf);
+
+        TileFormat format = this.conf.getFormat() != null ? this.conf.getFormat() : TileFormat.PNG;
+        this.encoder = new TileEncoder(format, this.conf.getPngCompression(), this.conf.getJpegQuality());
+    }
+
+    /**
+     * Area of block of tiles, data for block are loaded for this area.
+     *
+     * @param t left top tile of block
+     * @param size size of block in tiles
+     * @return left top and right bottom corner of block
+     */
+    public static LatLon[] blockBounds(Tile t, int size) {
+        BoundingBox leftTopBox = TitleToLatLon.tile2boundingBox(t.getX(), t.getY(), t.getZ());
+        BoundingBox rightBottomBox = TitleToLatLon.tile2boundingBox(
+                t.getX() + size - 1, t.getY() + size - 1, t.getZ());
+
+        return new LatLon[] {
+                new LatLon(leftTopBox.north, leftTopBox.west),
+                new LatLon(rightBottomBox.south, rightBottomBox.east) };
     }
 
     public RenderResult render(Tile t) {
         try {
-            BoundingBox camraBoundingBox = TitleToLatLon.tile2boundingBox(t.getX(),  t.getY(), t.getZ());
+            LatLon[] bounds = blockBounds(t, 1);
 
-            LatLon leftTop = new LatLon(camraBoundingBox.north, camraBoundingBox.west);
-            LatLon rightBottom = new LatLon(camraBoundingBox.south, camraBoundingBox.east);
+            LatLon leftTop = bounds[0];
+            LatLon rightBottom = bounds[1];
 
+            long s1 = System.nanoTime();
             DataSet dataSet = this.dataSetProvider.findData(leftTop, rightBottom);
+            long fetchTime = System.nanoTime() - s1;
 
-            return render(dataSet, leftTop, rightBottom);
+            RenderResult result = render(dataSet, leftTop, rightBottom);
+            result.addStageTime(RenderStage.DATA_FETCH, fetchTime);
+            return result;
 
         } catch (Exception e) {
             throw new RuntimeException("error rendering Tile: " + t, e);
         }
     }
 
+    /**
+     * Renders block of size x size tiles. Data are loaded and models are build
+     * only once for whole block, then each tile is rendered in separate
+     * viewport of the same scene.
+     *
+     * @param t left top tile of block
+     * @param size size of block in tiles
+     * @return rendered tiles
+     */
+    public MetaTileRenderResult render(Tile t, int size) {
+        try {
+            LatLon[] bounds = blockBounds(t, size);
+
+            LatLon leftTop = bounds[0];
+            LatLon rightBottom = bounds[1];
+
+            MetaTileRenderResult result = new MetaTileRenderResult(t.getX(), t.getY(), size);
+
+            long s1 = System.nanoTime();
+            DataSet dataSet = this.dataSetProvider.findData(leftTop, rightBottom);
+            long s2 = System.nanoTime();
+            result.addStageTime(RenderStage.DATA_FETCH, s2 - s1);
+
+            if (!hasModels(dataSet)) {
+                byte[] empty = this.encoder.getEmptyImage(this.conf.getWidth(), this.conf.getHeight());
+                for (int y = t.getY(); y < t.getY() + size; y++) {
+                    for (int x = t.getX(); x < t.getX() + size; x++) {
+                        result.setTile(x, y, new RenderResult(empty));
+                    }
+                }
+                return result;
+            }
+
+            this.ff.getRenderJosm().processDatasetEvent(new DataChangedEvent(dataSet));
+            result.addStageTime(RenderStage.DATASET_EVENT, System.nanoTime() - s2);
+
+            // models are build in first draw after data set change
+            RenderStage drawStage = RenderStage.MODEL_BUILD;
+
+            for (int y = t.getY(); y < t.getY() + size; y++) {
+                for (int x = t.getX(); x < t.getX() + size; x++) {
+
+                    BoundingBox box = TitleToLatLon.tile2boundingBox(x, y, t.getZ());
+
+                    byte [] tile = generateTile(
+                            new LatLon(box.north, box.west),
+                            new LatLon(box.south, box.east),
+                            this.buf,
+                            this.ff,
+                            this.conf.getWidth(),
+                            this.conf.getHeight(),
+                            this.conf.getCameraAngleX(),
+                            this.conf.getCameraAngleY(),
+                            this.encoder,
+                            result,
+                            drawStage);
+                    drawStage = RenderStage.DRAW;
+
+                    result.setTile(x, y, new RenderResult(tile));
+                }
+            }
+
+            return result;
+
+        } catch (Exception e) {
+            throw new RuntimeException("error rendering metatile: " + t + " size: " + size, e);
+        }
+    }
+
     public RenderResult render(LatLon leftTop, LatLon rightBottom) {
         try {
 
+            long s1 = System.nanoTime();
             DataSet dataSet = this.dataSetProvider.findData(leftTop, rightBottom);
+            long fetchTime = System.nanoTime() - s1;
 
-            return render(dataSet, leftTop, rightBottom);
+            RenderResult result = render(dataSet, leftTop, rightBottom);
+            result.addStageTime(RenderStage.DATA_FETCH, fetchTime);
+            return result;
 
         } catch (Exception e) {
             throw new RuntimeException("error rendering bbox: " + leftTop + ", " + rightBottom, e);
@@ -143,7 +248,15 @@ public class ImageRender {
 
         try {
 
+            if (!hasModels(dataSet)) {
+                return new RenderResult(this.encoder.getEmptyImage(this.conf.getWidth(), this.conf.getHeight()));
+            }
+
+            RenderResult result = new RenderResult(null);
+
+            long s1 = System.nanoTime();
             this.ff.getRenderJosm().processDatasetEvent(new DataChangedEvent(dataSet));
+            result.addStageTime(RenderStage.DATASET_EVENT, System.nanoTime() - s1);
 
             byte [] tile = generateTile(
                     leftTop,
@@ -153,12 +266,15 @@ public class ImageRender {
                     this.conf.getWidth(),
                     this.conf.getHeight(),
                     this.conf.getCameraAngleX(),
-                    this.conf.getCameraAngleY()
+                    this.conf.getCameraAngleY(),
+                    this.encoder,
+                    result,
+                    RenderStage.MODEL_BUILD
                     //                    fileName
                     );
 
-
-            return new RenderResult(tile);
+            result.setImage(tile);
+            return result;
 
         } catch (Exception e) {
             throw new RuntimeException("error rendering", e);
@@ -167,6 +283,53 @@ public class ImageRender {
 
 
 
+    /**
+     * Checks if any primitive of data set would be turned into model by one of
+     * renderer layers. Scene without models is empty, so it doesn't need to be
+     * drawn.
+     *
+     * @param dataSet data set
+     * @return if data set contains primitives matched by layers
+     */
+    private boolean hasModels(DataSet dataSet) {
+        if (dataSet == null) {
+            return false;
+        }
+        List<Layer> layers = this.ff.getRenderJosm().getLayerList();
+
+        for (Node node : dataSet.getNodes()) {
+            if (node.isDeleted()) {
+                continue;
+            }
+            for (Layer layer : layers) {
+                if (layer.getNodeMatcher() != null && layer.getNodeMatcher().match(node)) {
+                    return true;
+                }
+            }
+        }
+        for (Way way : dataSet.getWays()) {
+            if (way.isDeleted()) {
+                continue;
+            }
+            for (Layer layer : layers) {
+                if (layer.getWayMatcher() != null && layer.getWayMatcher().match(way)) {
+                    return true;
+                }
+            }
+        }
+        for (Relation relation : dataSet.getRelations()) {
+            if (relation.isDeleted()) {
+                continue;
+            }
+            for (Layer layer : layers) {
+                if (layer.getRelationMatcher() != null && layer.getRelationMatcher().match(relation)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * @param fileName
      * @param tile
@@ -205,6 +368,24 @@ public class ImageRender {
     public static byte[] generateTile(LatLon leftTop, LatLon rightBottom, GLPbuffer buf,
             Kendzi3dTitleGLEventListener ff, int width, int height,
             double cameraAngleX, double cameraAngleY/*, String fileName*/ ) {
+        return generateTile(leftTop, rightBottom, buf, ff, width, height, cameraAngleX, cameraAngleY,
+                new TileEncoder(TileFormat.PNG, 6, 0), new RenderResult(null), RenderStage.DRAW);
+    }
+
+    /**
+     * Renders tile and records time of draw, readback and encode stages.
+     *
+     * @param encoder encoder which reads pixels from buffer and encodes them
+     * @param timing result in which time of stages is recorded
+     * @param drawStage stage to which time of drawing scene is added
+     * @return png image
+     */
+    public static byte[] generateTile(LatLon leftTop, LatLon rightBottom, GLPbuffer buf,
+            Kendzi3dTitleGLEventListener ff, int width, int height,
+            double cameraAngleX, double cameraAngleY, TileEncoder encoder, RenderResult timing,
+            RenderStage drawStage) {
+
+        long s1 = System.nanoTime();
 
         Perspective3D perspective = ff.getRenderJosm().getPerspective();
 
@@ -232,17 +413,16 @@ public class ImageRender {
                 cameraAngleX,
                 cameraAngleY);
         ff.dispose(buf);
+        long s2 = System.nanoTime();
+        timing.addStageTime(drawStage, s2 - s1);
 
-        BufferedImage bufferedImage = Screenshot.readToBufferedImage(width, height, true);
+        int[] pixels = encoder.readPixels(buf.getGL(), width, height);
+        long s3 = System.nanoTime();
+        timing.addStageTime(RenderStage.READBACK, s3 - s2);
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try {
-            ImageIO.write(bufferedImage, "png", baos);
-            return baos.toByteArray();
-        } catch (IOException e) {
-            log.error("Error writing image to byte array", e);
-        }
-        return null;
+        byte[] image = encoder.encode(pixels, width, height);
+        timing.addStageTime(RenderStage.ENCODE, System.nanoTime() - s3);
+        return image;
     }
 
     public void release() {
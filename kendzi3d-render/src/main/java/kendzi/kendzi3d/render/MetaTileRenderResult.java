@@ -0,0 +1,85 @@
+package kendzi.kendzi3d.render;
+
+/**
+ * Result of rendering block of size x size tiles. Images of tiles are kept in
+ * row order, starting from left top tile of block.
+ */
+public class MetaTileRenderResult extends RenderResult {
+
+    private int x;
+
+    private int y;
+
+    private int size;
+
+    private RenderResult [] tiles;
+
+    public MetaTileRenderResult(int x, int y, int size) {
+        super(null);
+        this.x = x;
+        this.y = y;
+        this.size = size;
+        this.tiles = new RenderResult[size * size];
+    }
+
+    /**
+     * @param x x of tile
+     * @param y y of tile
+     * @return true if tile is part of this metatile
+     */
+    public boolean contains(int x, int y) {
+        return x >= this.x && x < this.x + this.size
+                && y >= this.y && y < this.y + this.size;
+    }
+
+    /**
+     * @param x x of tile
+     * @param y y of tile
+     * @return result of tile or null if tile was not rendered
+     */
+    public RenderResult getTile(int x, int y) {
+        if (!contains(x, y)) {
+            throw new IllegalArgumentException("tile: " + x + ", " + y + " is outside of metatile: " + this.x + ", "
+                    + this.y + " size: " + this.size);
+        }
+        return this.tiles[index(x, y)];
+    }
+
+    /**
+     * @param x x of tile
+     * @param y y of tile
+     * @param result result of tile
+     */
+    public void setTile(int x, int y, RenderResult result) {
+        if (!contains(x, y)) {
+            throw new IllegalArgumentException("tile: " + x + ", " + y + " is outside of metatile: " + this.x + ", "
+                    + this.y + " size: " + this.size);
+        }
+        this.tiles[index(x, y)] = result;
+    }
+
+    private int index(int x, int y) {
+        return (x - this.x) + (y - this.y) * this.size;
+    }
+
+    /**
+     * @return the x of left top tile
+     */
+    public int getX() {
+        return this.x;
+    }
+
+    /**
+     * @return the y of left top tile
+     */
+    public int getY() {
+        return this.y;
+    }
+
+    /**
+     * @return the size of metatile in tiles
+     */
+    public int getSize() {
+        return this.size;
+    }
+}
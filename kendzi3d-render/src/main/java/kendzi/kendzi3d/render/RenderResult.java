@@ -3,6 +3,11 @@ package kendzi.kendzi3d.render;
 public class RenderResult {
     byte [] image;
 
+    /**
+     * Time of render stages in nanoseconds, indexed by stage ordinal.
+     */
+    private final long [] stageTimes = new long[RenderStage.values().length];
+
 
     public RenderResult(byte[] image) {
         super();
@@ -23,4 +28,21 @@ public class RenderResult {
         this.image = image;
     }
 
+    /**
+     * Adds time to render stage.
+     *
+     * @param stage render stage
+     * @param nanos time in nanoseconds
+     */
+    public void addStageTime(RenderStage stage, long nanos) {
+        this.stageTimes[stage.ordinal()] += nanos;
+    }
+
+    /**
+     * @param stage render stage
+     * @return time of stage in nanoseconds
+     */
+    public long getStageTime(RenderStage stage) {
+        return this.stageTimes[stage.ordinal()];
+    }
 }
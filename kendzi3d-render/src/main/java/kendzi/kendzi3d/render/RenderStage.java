@@ -0,0 +1,39 @@
+package kendzi.kendzi3d.render;
+
+/**
+ * Stages of rendering tile. Time of each stage is recorded in render result.
+ */
+public enum RenderStage {
+
+    /**
+     * Loading data of tile area from data source.
+     */
+    DATA_FETCH,
+
+    /**
+     * Passing new data set to renderer.
+     */
+    DATASET_EVENT,
+
+    /**
+     * Building models of data set. Models are build lazily in first draw of
+     * scene, so this stage includes draw of first tile.
+     */
+    MODEL_BUILD,
+
+    /**
+     * Drawing scene into buffer, for metatile it is time of every tile except
+     * first.
+     */
+    DRAW,
+
+    /**
+     * Reading pixels from buffer.
+     */
+    READBACK,
+
+    /**
+     * Encoding image to output format.
+     */
+    ENCODE
+}
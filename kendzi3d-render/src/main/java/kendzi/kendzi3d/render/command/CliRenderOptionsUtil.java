@@ -11,7 +11,7 @@ public class CliRenderOptionsUtil {
     public static List<String> validate(CliRenderOptions o) {
 
         List<String> ret = new ArrayList<String>();
-        if (InputSource.FILE.equals(o.getInputSource())) {
+        if (InputSource.FILE.equals(o.getInputSource()) || InputSource.PBF.equals(o.getInputSource())) {
             if (StringUtil.isBlankOrNull(o.getFileUrl())) {
                 ret.add("for file input source, setup file location by parameter --file.url");
             }
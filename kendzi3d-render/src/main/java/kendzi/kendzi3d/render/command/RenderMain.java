@@ -44,7 +44,7 @@ public class RenderMain {
             RenderEngineConf reConf = convertRenderEngineConf(result);
             RenderDataSourceConf dsConf = convertRenderDataSourceConf(result);
 
-            DataSetProvider dataSet = DataSetProviderFactory.loadConf(dsConf);
+            DataSetProvider dataSet = DataSetProviderFactory.loadConf(dsConf, reConf);
 
             Injector injector = Guice.createInjector(new RenderModule(reConf, dataSet));
 
@@ -67,6 +67,7 @@ public class RenderMain {
             }
 
             ir.release();
+            dataSet.release();
 
             save(render.getImage(), result.getOutput());
 
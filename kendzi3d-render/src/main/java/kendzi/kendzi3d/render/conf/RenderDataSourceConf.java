@@ -13,13 +13,73 @@ public class RenderDataSourceConf {
     private String jdbcUrl;
 
     private String fileUrl;
+
+    /**
+     * Maximal number of connections in pool.
+     */
+    private int jdbcPoolSize;
+
+    /**
+     * Maximal time in milliseconds to wait for free connection from pool.
+     */
+    private long jdbcPoolMaxWait;
+
+    /**
+     * Maximal number of cached prepared statements for each connection.
+     */
+    private int jdbcStatementCache;
+
+    /**
+     * Query used to validate connections from pool.
+     */
+    private String jdbcValidationQuery;
+
+    /**
+     * Number of rows fetched from database at once.
+     */
+    private int jdbcFetchSize;
+
+    /**
+     * Size in megabytes of cache of data loaded from database, zero disables
+     * cache.
+     */
+    private int dataCacheSize;
+
+    /**
+     * Size in degrees of cell of data cache.
+     */
+    private double dataCacheCellSize;
     //    String username = this.environment.getProperty("jdbc.username");
     //    String password = this.environment.getProperty("jdbc.password");
     //    String url = this.environment.getProperty("jdbc.url");
 
+    /**
+     * Directory of binary store imported from pbf file.
+     */
+    private String pbfStoreDir;
+
+    /**
+     * Size in degrees of cell of grid index of pbf store.
+     */
+    private double pbfCellSize;
+
+    /**
+     * Size in degrees of cell of grid with heights of objects, used to
+     * calculate margin of loaded data, zero disables grid and fixed margin is
+     * used.
+     */
+    private double heightCellSize;
+
+    /**
+     * Height in meters assumed for area which heights of objects are not
+     * known yet.
+     */
+    private double heightDefault;
+
     public enum InputSource {
         FILE(),
-        PGSQL()
+        PGSQL(),
+        PBF()
     }
 
     /**
@@ -78,6 +138,160 @@ public class RenderDataSourceConf {
         this.fileUrl = fileUrl;
     }
 
+    /**
+     * @return the jdbcPoolSize
+     */
+    public int getJdbcPoolSize() {
+        return this.jdbcPoolSize;
+    }
+
+    /**
+     * @param jdbcPoolSize the jdbcPoolSize to set
+     */
+    public void setJdbcPoolSize(int jdbcPoolSize) {
+        this.jdbcPoolSize = jdbcPoolSize;
+    }
+
+    /**
+     * @return the jdbcPoolMaxWait
+     */
+    public long getJdbcPoolMaxWait() {
+        return this.jdbcPoolMaxWait;
+    }
+
+    /**
+     * @param jdbcPoolMaxWait the jdbcPoolMaxWait to set
+     */
+    public void setJdbcPoolMaxWait(long jdbcPoolMaxWait) {
+        this.jdbcPoolMaxWait = jdbcPoolMaxWait;
+    }
+
+    /**
+     * @return the jdbcStatementCache
+     */
+    public int getJdbcStatementCache() {
+        return this.jdbcStatementCache;
+    }
+
+    /**
+     * @param jdbcStatementCache the jdbcStatementCache to set
+     */
+    public void setJdbcStatementCache(int jdbcStatementCache) {
+        this.jdbcStatementCache = jdbcStatementCache;
+    }
+
+    /**
+     * @return the jdbcValidationQuery
+     */
+    public String getJdbcValidationQuery() {
+        return this.jdbcValidationQuery;
+    }
+
+    /**
+     * @param jdbcValidationQuery the jdbcValidationQuery to set
+     */
+    public void setJdbcValidationQuery(String jdbcValidationQuery) {
+        this.jdbcValidationQuery = jdbcValidationQuery;
+    }
+
+    /**
+     * @return the jdbcFetchSize
+     */
+    public int getJdbcFetchSize() {
+        return this.jdbcFetchSize;
+    }
+
+    /**
+     * @param jdbcFetchSize the jdbcFetchSize to set
+     */
+    public void setJdbcFetchSize(int jdbcFetchSize) {
+        this.jdbcFetchSize = jdbcFetchSize;
+    }
+
+    /**
+     * @return the dataCacheSize
+     */
+    public int getDataCacheSize() {
+        return this.dataCacheSize;
+    }
+
+    /**
+     * @param dataCacheSize the dataCacheSize to set
+     */
+    public void setDataCacheSize(int dataCacheSize) {
+        this.dataCacheSize = dataCacheSize;
+    }
+
+    /**
+     * @return the dataCacheCellSize
+     */
+    public double getDataCacheCellSize() {
+        return this.dataCacheCellSize;
+    }
+
+    /**
+     * @param dataCacheCellSize the dataCacheCellSize to set
+     */
+    public void setDataCacheCellSize(double dataCacheCellSize) {
+        this.dataCacheCellSize = dataCacheCellSize;
+    }
+
+    /**
+     * @return the pbfStoreDir
+     */
+    public String getPbfStoreDir() {
+        return this.pbfStoreDir;
+    }
+
+    /**
+     * @param pbfStoreDir the pbfStoreDir to set
+     */
+    public void setPbfStoreDir(String pbfStoreDir) {
+        this.pbfStoreDir = pbfStoreDir;
+    }
+
+    /**
+     * @return the pbfCellSize
+     */
+    public double getPbfCellSize() {
+        return this.pbfCellSize;
+    }
+
+    /**
+     * @param pbfCellSize the pbfCellSize to set
+     */
+    public void setPbfCellSize(double pbfCellSize) {
+        this.pbfCellSize = pbfCellSize;
+    }
+
+    /**
+     * @return the heightCellSize
+     */
+    public double getHeightCellSize() {
+        return this.heightCellSize;
+    }
+
+    /**
+     * @param heightCellSize the heightCellSize to set
+     */
+    public void setHeightCellSize(double heightCellSize) {
+        this.heightCellSize = heightCellSize;
+    }
+
+    /**
+     * @return the heightDefault
+     */
+    public double getHeightDefault() {
+        return this.heightDefault;
+    }
+
+    /**
+     * @param heightDefault the heightDefault to set
+     */
+    public void setHeightDefault(double heightDefault) {
+        this.heightDefault = heightDefault;
+    }
+
     /**
      * @return the inputSource
      */
@@ -11,6 +11,17 @@ public class RenderDataSourceConfLoader {
     private static final String DB_URL = null;
     private static final String DB_USERNAME = null;
     private static final String DB_PASSWORD = null;
+    private static final int DB_POOL_SIZE = 8;
+    private static final long DB_POOL_MAX_WAIT = 10000;
+    private static final int DB_STATEMENT_CACHE = 20;
+    private static final String DB_VALIDATION_QUERY = "SELECT 1";
+    private static final int DB_FETCH_SIZE = 1000;
+    private static final int DB_CACHE_SIZE = 64;
+    private static final double DB_CACHE_CELL_SIZE = 0.005;
+    private static final String PBF_STORE_DIR = null;
+    private static final double PBF_CELL_SIZE = 0.01;
+    private static final double HEIGHT_CELL_SIZE = 0.002;
+    private static final double HEIGHT_DEFAULT = 350;
 
 
     private final static String PREFIX = "k3dr.";
@@ -31,10 +42,27 @@ public class RenderDataSourceConfLoader {
 
         c.setFileUrl(prop.getProperty(prefix + "file.url", FILE_URL));
 
+        c.setPbfStoreDir(prop.getProperty(prefix + "pbf.store.dir", PBF_STORE_DIR));
+        if (StringUtil.isBlankOrNull(c.getPbfStoreDir()) && c.getFileUrl() != null) {
+            c.setPbfStoreDir(c.getFileUrl() + ".store");
+        }
+        c.setPbfCellSize(getDouble(prop, prefix + "pbf.cell.size", PBF_CELL_SIZE));
+
         c.setJdbcUrl(prop.getProperty(prefix + "db.url", DB_URL));
         c.setJdbcUsername(prop.getProperty(prefix + "db.username", DB_USERNAME));
         c.setJdbcPassword(prop.getProperty(prefix + "db.password", DB_PASSWORD));
 
+        c.setJdbcPoolSize(getInt(prop, prefix + "db.pool.size", DB_POOL_SIZE));
+        c.setJdbcPoolMaxWait(getLong(prop, prefix + "db.pool.max.wait", DB_POOL_MAX_WAIT));
+        c.setJdbcStatementCache(getInt(prop, prefix + "db.statement.cache", DB_STATEMENT_CACHE));
+        c.setJdbcValidationQuery(prop.getProperty(prefix + "db.validation.query", DB_VALIDATION_QUERY));
+        c.setJdbcFetchSize(getInt(prop, prefix + "db.fetch.size", DB_FETCH_SIZE));
+        c.setDataCacheSize(getInt(prop, prefix + "db.cache.size", DB_CACHE_SIZE));
+        c.setDataCacheCellSize(getDouble(prop, prefix + "db.cache.cell.size", DB_CACHE_CELL_SIZE));
+
+        c.setHeightCellSize(getDouble(prop, prefix + "height.cell.size", HEIGHT_CELL_SIZE));
+        c.setHeightDefault(getDouble(prop, prefix + "height.default", HEIGHT_DEFAULT));
+
         validate(c);
 
         return c;
@@ -43,11 +71,28 @@ public class RenderDataSourceConfLoader {
 
     private static void validate(RenderDataSourceConf c) {
 
+        if (c.getHeightCellSize() < 0) {
+            throw new RuntimeException("size of height grid cell can't be negative: " + c.getHeightCellSize());
+        }
+
+        if (c.getHeightDefault() < 0) {
+            throw new RuntimeException("default height can't be negative: " + c.getHeightDefault());
+        }
+
         if (RenderDataSourceConf.InputSource.FILE.equals(c.getInputSource())) {
             if (StringUtil.isBlankOrNull(c.getFileUrl())) {
                 throw new RuntimeException("for file input source parameter file.url is required");
             }
 
+        } else if (RenderDataSourceConf.InputSource.PBF.equals(c.getInputSource())) {
+            if (StringUtil.isBlankOrNull(c.getFileUrl())) {
+                throw new RuntimeException("for pbf input source parameter file.url is required");
+            }
+
+            if (c.getPbfCellSize() <= 0) {
+                throw new RuntimeException("size of pbf store cell need to be positive: " + c.getPbfCellSize());
+            }
+
         } else if (RenderDataSourceConf.InputSource.PGSQL.equals(c.getInputSource())) {
 
             if (StringUtil.isBlankOrNull(c.getJdbcUrl())) {
@@ -61,9 +106,64 @@ public class RenderDataSourceConfLoader {
             if (StringUtil.isBlankOrNull(c.getJdbcPassword())) {
                 throw new RuntimeException("for pgsql input source parameter db.password is required");
             }
+
+            if (c.getJdbcPoolSize() < 1) {
+                throw new RuntimeException("size of connection pool need to be positive: " + c.getJdbcPoolSize());
+            }
+
+            if (c.getJdbcStatementCache() < 0) {
+                throw new RuntimeException("size of statement cache can't be negative: " + c.getJdbcStatementCache());
+            }
+
+            if (c.getJdbcFetchSize() < 0) {
+                throw new RuntimeException("fetch size can't be negative: " + c.getJdbcFetchSize());
+            }
+
+            if (c.getDataCacheSize() > 0 && c.getDataCacheCellSize() <= 0) {
+                throw new RuntimeException("size of data cache cell need to be positive: " + c.getDataCacheCellSize());
+            }
         } else {
             throw new RuntimeException("not allowed input source: " + c.getInputSource());
         }
     }
+
+    private static Integer getInt(Properties prop, String key, Integer d) {
+        String p = prop.getProperty(key, null);
+        if (p == null) {
+            return d;
+        }
+        try {
+            return Integer.parseInt(p.trim());
+        } catch (Exception e) {
+            //
+        }
+        return d;
+    }
+
+    private static Double getDouble(Properties prop, String key, Double d) {
+        String p = prop.getProperty(key, null);
+        if (p == null) {
+            return d;
+        }
+        try {
+            return Double.parseDouble(p.trim());
+        } catch (Exception e) {
+            //
+        }
+        return d;
+    }
+
+    private static Long getLong(Properties prop, String key, Long d) {
+        String p = prop.getProperty(key, null);
+        if (p == null) {
+            return d;
+        }
+        try {
+            return Long.parseLong(p.trim());
+        } catch (Exception e) {
+            //
+        }
+        return d;
+    }
 }
 
@@ -1,5 +1,7 @@
 package kendzi.kendzi3d.render.conf;
 
+import kendzi.kendzi3d.render.encoder.TileFormat;
+
 public class RenderEngineConf {
 
     private double cameraAngleX;
@@ -20,6 +22,21 @@ public class RenderEngineConf {
     //
     private String resDir;
 
+    /**
+     * Format of output images.
+     */
+    private TileFormat format;
+
+    /**
+     * Deflate level of png images, 0 - 9.
+     */
+    private int pngCompression;
+
+    /**
+     * Quality of jpeg images, 0 - 100.
+     */
+    private int jpegQuality;
+
     /**
      * @return the cameraAngleX
      */
@@ -146,7 +163,45 @@ public class RenderEngineConf {
         this.resDir = resDir;
     }
 
+    /**
+     * @return the format
+     */
+    public TileFormat getFormat() {
+        return this.format;
+    }
+
+    /**
+     * @param format the format to set
+     */
+    public void setFormat(TileFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * @return the pngCompression
+     */
+    public int getPngCompression() {
+        return this.pngCompression;
+    }
+
+    /**
+     * @param pngCompression the pngCompression to set
+     */
+    public void setPngCompression(int pngCompression) {
+        this.pngCompression = pngCompression;
+    }
 
+    /**
+     * @return the jpegQuality
+     */
+    public int getJpegQuality() {
+        return this.jpegQuality;
+    }
 
+    /**
+     * @param jpegQuality the jpegQuality to set
+     */
+    public void setJpegQuality(int jpegQuality) {
+        this.jpegQuality = jpegQuality;
+    }
 }
-
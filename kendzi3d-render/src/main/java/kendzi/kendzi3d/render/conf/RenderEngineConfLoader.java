@@ -2,6 +2,8 @@ package kendzi.kendzi3d.render.conf;
 
 import java.util.Properties;
 
+import kendzi.kendzi3d.render.encoder.TileFormat;
+
 public class RenderEngineConfLoader {
 
     private final static double CAMERA_ANGLE_X = 0;
@@ -14,6 +16,12 @@ public class RenderEngineConfLoader {
 
     private final static String RESOURCE_DIR = "./";
 
+    private final static String FORMAT = "png";
+
+    private final static int PNG_COMPRESSION = 6;
+
+    private final static int JPEG_QUALITY = 85;
+
     private final static String PREFIX = "k3dr.";
 
     public static RenderEngineConf load(Properties prop) {
@@ -29,6 +37,17 @@ public class RenderEngineConfLoader {
         c.setHeight(getInt(prop, prefix + "height", HEIGHT));
         c.setResDir(prop.getProperty(prefix + "resource.dir", RESOURCE_DIR));
 
+        c.setFormat(TileFormat.parse(prop.getProperty(prefix + "format", FORMAT)));
+        c.setPngCompression(getInt(prop, prefix + "png.compression", PNG_COMPRESSION));
+        c.setJpegQuality(getInt(prop, prefix + "jpeg.quality", JPEG_QUALITY));
+
+        if (c.getPngCompression() < 0 || c.getPngCompression() > 9) {
+            throw new RuntimeException("png compression need to be in range 0 - 9: " + c.getPngCompression());
+        }
+        if (c.getJpegQuality() < 0 || c.getJpegQuality() > 100) {
+            throw new RuntimeException("jpeg quality need to be in range 0 - 100: " + c.getJpegQuality());
+        }
+
         return c;
 
     }
@@ -0,0 +1,137 @@
+package kendzi.kendzi3d.render.dataset;
+
+import javax.vecmath.Vector2d;
+
+import kendzi.josm.datasource.Bbox;
+import kendzi.kendzi3d.render.listener.Kendzi3dTitleGLEventListener;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+
+/**
+ * Margin added to tile bbox when data for tile are loaded. Oblique camera
+ * shows objects standing outside of tile, how far depends on angles of camera
+ * and heights of objects. Margin is added only at sides from which objects lean
+ * into tile and it is calculated for maximal height of objects around tile,
+ * taken from {@link HeightGrid}. Data loaded for tile are used to update
+ * heights. Without height grid fixed margin is used.
+ */
+public class DataMargin {
+
+    /**
+     * Fixed margin in meters added to north and south of tile bbox. It covers
+     * objects up to default height seen by default camera.
+     */
+    public static final double FIXED_MARGIN_Y = 200d;
+
+    /**
+     * Fixed margin in meters added to west and east of tile bbox.
+     */
+    public static final double FIXED_MARGIN_X = 50d;
+
+    /**
+     * Margin in meters added to all sides of tile bbox, for objects which are
+     * near to tile and are drawn bigger than their shape, like trees.
+     */
+    public static final double BASE_MARGIN = 25d;
+
+    /**
+     * Move in tile of point 1 meter above ground, x to east and y to north.
+     */
+    private final Vector2d heightShift;
+
+    private final HeightGrid heightGrid;
+
+    /**
+     * Creates fixed margin.
+     */
+    public DataMargin() {
+        this(null, null);
+    }
+
+    /**
+     * @param cameraAngleX camera angle x
+     * @param cameraAngleY camera angle y
+     * @param heightGrid heights of objects, shared by providers
+     */
+    public DataMargin(double cameraAngleX, double cameraAngleY, HeightGrid heightGrid) {
+        this(Kendzi3dTitleGLEventListener.heightShift(cameraAngleX, cameraAngleY), heightGrid);
+    }
+
+    private DataMargin(Vector2d heightShift, HeightGrid heightGrid) {
+        super();
+        this.heightShift = heightShift;
+        this.heightGrid = heightGrid;
+    }
+
+    /**
+     * @param leftTop left top corner of tile
+     * @param rightBottom right bottom corner of tile
+     * @return bbox of data for tile
+     */
+    public Bbox bbox(LatLon leftTop, LatLon rightBottom) {
+        if (this.heightGrid == null) {
+            return DataSetUtil.bboxWithMargin(leftTop, rightBottom, FIXED_MARGIN_X, FIXED_MARGIN_Y);
+        }
+
+        Bbox tile = DataSetUtil.bboxWithMargin(leftTop, rightBottom, BASE_MARGIN, BASE_MARGIN);
+
+        // objects of found height can stand further, look there again
+        double height = this.heightGrid.getDefaultHeight();
+        double maxHeight = this.heightGrid.getMaxHeight(extend(tile, height));
+        for (int i = 0; i < 3 && maxHeight > height; i++) {
+            height = maxHeight;
+            maxHeight = this.heightGrid.getMaxHeight(extend(tile, height));
+        }
+        return extend(tile, maxHeight);
+    }
+
+    /**
+     * @param bbox bbox
+     * @param height height of objects
+     * @return bbox extended at sides from which objects lean into it
+     */
+    private Bbox extend(Bbox bbox, double height) {
+        double x = this.heightShift.x * height;
+        double y = this.heightShift.y * height;
+        return DataSetUtil.extend(bbox, Math.max(x, 0), Math.max(-x, 0), Math.max(y, 0), Math.max(-y, 0));
+    }
+
+    /**
+     * The largest margin which can be added to tile bbox now, for any tile.
+     * Margin is added only at one side of tile, returned margin is used for
+     * both sides.
+     *
+     * @return margin in meters, x added to west and east, y added to north and
+     *         south
+     */
+    public Vector2d getMaxMargin() {
+        if (this.heightGrid == null) {
+            return new Vector2d(FIXED_MARGIN_X, FIXED_MARGIN_Y);
+        }
+
+        double height = this.heightGrid.getMaxHeight();
+        return new Vector2d(
+                BASE_MARGIN + Math.abs(this.heightShift.x) * height,
+                BASE_MARGIN + Math.abs(this.heightShift.y) * height);
+    }
+
+    /**
+     * Takes heights of objects from loaded data.
+     *
+     * @param bbox bbox of loaded data
+     * @param dataSet loaded data
+     */
+    public void update(Bbox bbox, DataSet dataSet) {
+        if (this.heightGrid != null) {
+            this.heightGrid.update(bbox, dataSet);
+        }
+    }
+
+    /**
+     * @return heights of objects, null for fixed margin
+     */
+    public HeightGrid getHeightGrid() {
+        return this.heightGrid;
+    }
+}
@@ -0,0 +1,399 @@
+package kendzi.kendzi3d.render.dataset;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import kendzi.josm.datasource.Bbox;
+import kendzi.josm.datasource.PrimitiveDataReader;
+
+import org.apache.log4j.Logger;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.WayData;
+
+/**
+ * Keeps data of recently used areas in memory. Area is divided into fixed grid
+ * of cells, data of each cell is loaded once and kept as primitive data, so
+ * cells can be shared by providers of all render workers. Data set for bbox is
+ * created from cached cells, only missing cells are loaded. When the same cell
+ * is requested by many workers at once, it is loaded only by the first one.
+ *
+ * Cell contains everything what is loaded for its bbox, so data set is filtered
+ * to primitives which would be loaded for requested bbox. Size of cache is
+ * limited by estimated memory used by primitives, least recently used cells
+ * are removed.
+ */
+public class DataSetCache {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(DataSetCache.class);
+
+    /**
+     * Estimated memory used by primitive apart from tags and references.
+     */
+    private static final int PRIMITIVE_OVERHEAD = 96;
+
+    /**
+     * Estimated memory used by tag apart from characters.
+     */
+    private static final int TAG_OVERHEAD = 64;
+
+    /**
+     * Estimated memory used by way node or relation member.
+     */
+    private static final int REFERENCE_SIZE = 32;
+
+    /**
+     * Loads data for bbox of cell.
+     */
+    public interface CellLoader {
+        /**
+         * @param bbox bbox of cell
+         * @return data loaded for bbox
+         * @throws Exception
+         */
+        DataSet load(Bbox bbox) throws Exception;
+    }
+
+    private final long maxSize;
+
+    private final double cellSize;
+
+    /**
+     * Cells in access order. Guarded by this.
+     */
+    private final LinkedHashMap<Long, Cell> cells = new LinkedHashMap<Long, Cell>(256, 0.75f, true);
+
+    /**
+     * Cells which are loaded now. Guarded by this.
+     */
+    private final Map<Long, FutureTask<Cell>> loading = new HashMap<Long, FutureTask<Cell>>();
+
+    /**
+     * Changed when cache is cleared, so cells loaded before are not cached.
+     */
+    private int generation;
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * @param maxSize maximal size of cache in bytes
+     * @param cellSize size of cell in degrees
+     */
+    public DataSetCache(long maxSize, double cellSize) {
+        super();
+        if (cellSize <= 0) {
+            throw new RuntimeException("size of cell need to be positive: " + cellSize);
+        }
+        this.maxSize = maxSize;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Finds data for bbox.
+     *
+     * @param bbox bbox
+     * @param loader loader of missing cells
+     * @return data set for bbox
+     * @throws Exception when loading of cell fails
+     */
+    public DataSet findData(Bbox bbox, CellLoader loader) throws Exception {
+        int x0 = cellIndex(bbox.getLon_min());
+        int x1 = cellIndex(bbox.getLon_max());
+        int y0 = cellIndex(bbox.getLat_min());
+        int y1 = cellIndex(bbox.getLat_max());
+
+        List<Cell> bboxCells = new ArrayList<Cell>();
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                bboxCells.add(getCell(x, y, loader));
+            }
+        }
+
+        return createDataSet(bboxCells, bbox);
+    }
+
+    private int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / this.cellSize);
+    }
+
+    private static long key(int x, int y) {
+        return (long) x << 32 | y & 0xffffffffL;
+    }
+
+    private Cell getCell(final int x, final int y, final CellLoader loader) throws Exception {
+        Long key = key(x, y);
+
+        FutureTask<Cell> task;
+        boolean owner = false;
+        int loadGeneration;
+
+        synchronized (this) {
+            Cell cell = this.cells.get(key);
+            if (cell != null) {
+                this.hits++;
+                return cell;
+            }
+
+            task = this.loading.get(key);
+            if (task == null) {
+                this.misses++;
+                task = new FutureTask<Cell>(new Callable<Cell>() {
+
+                    @Override
+                    public Cell call() throws Exception {
+                        Bbox bbox = new Bbox(x * DataSetCache.this.cellSize, y * DataSetCache.this.cellSize);
+                        bbox.addPoint((x + 1) * DataSetCache.this.cellSize, (y + 1) * DataSetCache.this.cellSize);
+
+                        return new Cell(loader.load(bbox));
+                    }
+                });
+                this.loading.put(key, task);
+                owner = true;
+            }
+            loadGeneration = this.generation;
+        }
+
+        if (owner) {
+            // loaded by current thread, other threads wait for result
+            task.run();
+
+            synchronized (this) {
+                this.loading.remove(key);
+                if (loadGeneration == this.generation && !task.isCancelled()) {
+                    try {
+                        put(key, task.get());
+                    } catch (ExecutionException e) {
+                        // reported below
+                    }
+                }
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new RuntimeException("error loading cell: " + x + ", " + y, cause);
+        }
+    }
+
+    private void put(Long key, Cell cell) {
+        if (cell.getSize() > this.maxSize) {
+            return;
+        }
+
+        Cell old = this.cells.put(key, cell);
+        if (old != null) {
+            this.size -= old.getSize();
+        }
+        this.size += cell.getSize();
+
+        Iterator<Map.Entry<Long, Cell>> it = this.cells.entrySet().iterator();
+        while (this.size > this.maxSize && it.hasNext()) {
+            Map.Entry<Long, Cell> eldest = it.next();
+            it.remove();
+            this.size -= eldest.getValue().getSize();
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Removes all cells, used when data in database was changed.
+     */
+    public synchronized void clear() {
+        this.cells.clear();
+        this.size = 0;
+        this.generation++;
+
+        log.info("data set cache cleared");
+    }
+
+    /**
+     * Creates data set with primitives which are loaded for bbox by
+     * {@link kendzi.josm.datasource.PgSqlReader}: nodes and ways in bbox,
+     * nodes of these ways, relations of these nodes and ways and their child
+     * relations.
+     */
+    private static DataSet createDataSet(List<Cell> bboxCells, Bbox bbox) throws Exception {
+
+        Map<Long, NodeData> nodes = new HashMap<Long, NodeData>();
+        Map<Long, WayData> ways = new HashMap<Long, WayData>();
+        Map<Long, RelationData> relations = new HashMap<Long, RelationData>();
+
+        for (Cell cell : bboxCells) {
+            for (NodeData nd : cell.getNodes()) {
+                nodes.put(nd.getUniqueId(), nd);
+            }
+            for (WayData wd : cell.getWays()) {
+                ways.put(wd.getUniqueId(), wd);
+            }
+            for (RelationData rd : cell.getRelations()) {
+                relations.put(rd.getUniqueId(), rd);
+            }
+        }
+
+        Map<Long, WayData> bboxWays = new HashMap<Long, WayData>();
+        Map<Long, NodeData> bboxNodes = new HashMap<Long, NodeData>();
+
+        for (WayData wd : ways.values()) {
+            Bbox wayBbox = DataSetUtil.wayBbox(wd, nodes);
+            if (wayBbox != null && wayBbox.intersects(bbox)) {
+                bboxWays.put(wd.getUniqueId(), wd);
+                for (Long nodeId : wd.getNodes()) {
+                    NodeData nd = nodes.get(nodeId);
+                    if (nd != null) {
+                        bboxNodes.put(nodeId, nd);
+                    }
+                }
+            }
+        }
+
+        for (NodeData nd : nodes.values()) {
+            if (nd.getCoor() != null && bbox.contains(nd.getCoor().lon(), nd.getCoor().lat())) {
+                bboxNodes.put(nd.getUniqueId(), nd);
+            }
+        }
+
+        Map<Long, RelationData> bboxRelations = new HashMap<Long, RelationData>();
+
+        for (RelationData rd : relations.values()) {
+            for (RelationMemberData member : rd.getMembers()) {
+                if (OsmPrimitiveType.NODE.equals(member.getMemberType())
+                        && bboxNodes.containsKey(member.getMemberId())
+                        || OsmPrimitiveType.WAY.equals(member.getMemberType())
+                        && bboxWays.containsKey(member.getMemberId())) {
+
+                    bboxRelations.put(rd.getUniqueId(), rd);
+                    break;
+                }
+            }
+        }
+
+        DataSetUtil.addChildRelations(bboxRelations, relations);
+
+        return PrimitiveDataReader.parseDataSet(bboxNodes.values(), bboxWays.values(), bboxRelations.values());
+    }
+
+    /**
+     * @return estimated size of cache in bytes
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return number of cells in cache
+     */
+    public synchronized int getCells() {
+        return this.cells.size();
+    }
+
+    /**
+     * @return number of cells found in cache
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return number of loaded cells
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return number of cells removed because cache was full
+     */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Data of cell. Primitive data is not changed after cell is created.
+     */
+    private static class Cell {
+
+        private final List<NodeData> nodes = new ArrayList<NodeData>();
+
+        private final List<WayData> ways = new ArrayList<WayData>();
+
+        private final List<RelationData> relations = new ArrayList<RelationData>();
+
+        private long size;
+
+        Cell(DataSet dataSet) {
+            // incomplete primitives are created again from references
+            for (Node n : dataSet.getNodes()) {
+                if (!n.isIncomplete()) {
+                    NodeData nd = n.save();
+                    this.nodes.add(nd);
+                    this.size += primitiveSize(nd);
+                }
+            }
+            for (Way w : dataSet.getWays()) {
+                if (!w.isIncomplete()) {
+                    WayData wd = w.save();
+                    this.ways.add(wd);
+                    this.size += primitiveSize(wd) + REFERENCE_SIZE * wd.getNodes().size();
+                }
+            }
+            for (Relation r : dataSet.getRelations()) {
+                if (!r.isIncomplete()) {
+                    RelationData rd = r.save();
+                    this.relations.add(rd);
+                    this.size += primitiveSize(rd) + REFERENCE_SIZE * rd.getMembers().size();
+                }
+            }
+        }
+
+        private static long primitiveSize(PrimitiveData data) {
+            long ret = PRIMITIVE_OVERHEAD;
+            for (Map.Entry<String, String> tag : data.getKeys().entrySet()) {
+                ret += TAG_OVERHEAD + 2 * (tag.getKey().length() + tag.getValue().length());
+            }
+            return ret;
+        }
+
+        Collection<NodeData> getNodes() {
+            return this.nodes;
+        }
+
+        Collection<WayData> getWays() {
+            return this.ways;
+        }
+
+        Collection<RelationData> getRelations() {
+            return this.relations;
+        }
+
+        long getSize() {
+            return this.size;
+        }
+    }
+}
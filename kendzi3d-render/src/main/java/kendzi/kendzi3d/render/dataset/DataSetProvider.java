@@ -6,4 +6,9 @@ import org.openstreetmap.josm.data.osm.DataSet;
 public interface DataSetProvider {
     DataSet findData(LatLon leftTop, LatLon rightBottom) throws Exception;
 
+    /**
+     * Releases resources held by provider, like connection to database.
+     */
+    void release();
+
 }
@@ -1,25 +1,99 @@
 package kendzi.kendzi3d.render.dataset;
 
+import java.io.File;
+
+import javax.sql.DataSource;
+
 import kendzi.josm.datasource.Kendzi3dPostgisDataSource;
+import kendzi.josm.datasource.PooledPostgisDataSource;
 import kendzi.kendzi3d.render.conf.RenderDataSourceConf;
 import kendzi.kendzi3d.render.conf.RenderDataSourceConf.InputSource;
+import kendzi.kendzi3d.render.conf.RenderEngineConf;
 
 public class DataSetProviderFactory {
 
-    public static DataSetProvider loadConf(RenderDataSourceConf conf) {
+    public static DataSetProvider loadConf(RenderDataSourceConf conf, RenderEngineConf engineConf) {
+
+        DataMargin dataMargin = createDataMargin(conf, engineConf);
+
+        if (InputSource.PGSQL.equals(conf.getInputSource())) {
+            return loadConf(conf, createDataSource(conf, conf.getJdbcPoolSize()), createDataSetCache(conf),
+                    dataMargin);
+        }
+        return loadConf(conf, null, null, dataMargin);
+    }
+
+    /**
+     * Creates data set provider. Many providers can share one pool of
+     * connections to database.
+     *
+     * @param conf configuration of data source
+     * @param dataSource pool of connections, used for pgsql input source
+     * @param dataSetCache cache of data shared by providers, used for pgsql
+     *            input source, null disables cache
+     * @param dataMargin margin of data loaded for tile, shared by providers
+     * @return data set provider
+     */
+    public static DataSetProvider loadConf(RenderDataSourceConf conf, DataSource dataSource,
+            DataSetCache dataSetCache, DataMargin dataMargin) {
 
         if (InputSource.FILE.equals(conf.getInputSource())) {
-            return new FileDataProvider(conf.getFileUrl());
+            return new FileDataProvider(conf.getFileUrl(), dataMargin);
+        } else if (InputSource.PBF.equals(conf.getInputSource())) {
+            return new PbfDataProvider(new File(conf.getFileUrl()), new File(conf.getPbfStoreDir()),
+                    conf.getPbfCellSize(), dataMargin);
         } else if (InputSource.PGSQL.equals(conf.getInputSource())) {
 
-            Kendzi3dPostgisDataSource ds = new Kendzi3dPostgisDataSource();
+            return new PGSQLDataProvider(dataSource, conf.getJdbcFetchSize(), dataSetCache, dataMargin);
+        }
+        throw new RuntimeException("bad Data Source Provider type: " + conf.getInputSource());
+    }
+
+    /**
+     * Creates pool of connections to database.
+     *
+     * @param conf configuration of data source
+     * @param poolSize maximal number of connections
+     * @return pool of connections
+     */
+    public static PooledPostgisDataSource createDataSource(RenderDataSourceConf conf, int poolSize) {
+
+        Kendzi3dPostgisDataSource ds = new Kendzi3dPostgisDataSource();
 
-            ds.setUrl(conf.getJdbcUrl());
-            ds.setUsername(conf.getJdbcUsername());
-            ds.setPassword(conf.getJdbcPassword());
+        ds.setUrl(conf.getJdbcUrl());
+        ds.setUsername(conf.getJdbcUsername());
+        ds.setPassword(conf.getJdbcPassword());
+
+        return new PooledPostgisDataSource(ds, poolSize, conf.getJdbcPoolMaxWait(), conf.getJdbcStatementCache(),
+                conf.getJdbcValidationQuery());
+    }
 
-            return new PGSQLDataProvider(ds);
+    /**
+     * Creates cache of data loaded from database.
+     *
+     * @param conf configuration of data source
+     * @return cache of data or null when it is disabled
+     */
+    public static DataSetCache createDataSetCache(RenderDataSourceConf conf) {
+        if (conf.getDataCacheSize() <= 0) {
+            return null;
         }
-        throw new RuntimeException("bad Data Source Provider type: " + conf.getInputSource());
+        return new DataSetCache(conf.getDataCacheSize() * 1024L * 1024L, conf.getDataCacheCellSize());
+    }
+
+    /**
+     * Creates margin of data loaded for tile, calculated for camera from
+     * heights of objects.
+     *
+     * @param conf configuration of data source
+     * @param engineConf configuration of render engine
+     * @return margin of data, fixed when height grid is disabled
+     */
+    public static DataMargin createDataMargin(RenderDataSourceConf conf, RenderEngineConf engineConf) {
+        if (conf.getHeightCellSize() <= 0) {
+            return new DataMargin();
+        }
+        return new DataMargin(engineConf.getCameraAngleX(), engineConf.getCameraAngleY(),
+                new HeightGrid(conf.getHeightCellSize(), conf.getHeightDefault()));
     }
 }
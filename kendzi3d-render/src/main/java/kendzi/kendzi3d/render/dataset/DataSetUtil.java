@@ -0,0 +1,106 @@
+package kendzi.kendzi3d.render.dataset;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+import kendzi.josm.datasource.Bbox;
+import kendzi.kendzi3d.render.tile.LatLonUtil;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.WayData;
+
+/**
+ * Selecting of data for area, shared by data set providers.
+ */
+public class DataSetUtil {
+
+    /**
+     * Creates bbox of tile area with margin. Longitude margin is taken at north
+     * of area.
+     *
+     * @param leftTop left top corner of area
+     * @param rightBottom right bottom corner of area
+     * @param marginX margin in meters added to west and east
+     * @param marginY margin in meters added to north and south
+     * @return bbox with margin
+     */
+    public static Bbox bboxWithMargin(LatLon leftTop, LatLon rightBottom, double marginX, double marginY) {
+        Bbox bbox = new Bbox(leftTop.lon(), leftTop.lat());
+        bbox.addPoint(rightBottom.lon(), rightBottom.lat());
+
+        return extend(bbox, marginX, marginX, marginY, marginY);
+    }
+
+    /**
+     * Creates bbox extended by margins, each side can have different margin.
+     * Longitude margins are taken at north of bbox.
+     *
+     * @param bbox bbox
+     * @param west margin in meters added to west
+     * @param east margin in meters added to east
+     * @param south margin in meters added to south
+     * @param north margin in meters added to north
+     * @return new bbox with margin
+     */
+    public static Bbox extend(Bbox bbox, double west, double east, double south, double north) {
+        Bbox ret = new Bbox(bbox.getLon_min(), bbox.getLat_min());
+        ret.addPoint(bbox.getLon_max(), bbox.getLat_max());
+
+        ret.setLat_max(bbox.getLat_max() + Math.toDegrees(LatLonUtil.deltaLat(north)));
+        ret.setLat_min(bbox.getLat_min() - Math.toDegrees(LatLonUtil.deltaLat(south)));
+        ret.setLon_max(bbox.getLon_max() + Math.toDegrees(LatLonUtil.deltaLon(bbox.getLat_max(), east)));
+        ret.setLon_min(bbox.getLon_min() - Math.toDegrees(LatLonUtil.deltaLon(bbox.getLat_max(), west)));
+        return ret;
+    }
+
+    /**
+     * @param wd way
+     * @param nodes nodes by id
+     * @return bbox of way nodes or null when no node has coordinates
+     */
+    public static Bbox wayBbox(WayData wd, Map<Long, NodeData> nodes) {
+        Bbox bbox = null;
+        for (Long nodeId : wd.getNodes()) {
+            NodeData nd = nodes.get(nodeId);
+            if (nd == null || nd.getCoor() == null) {
+                continue;
+            }
+            if (bbox == null) {
+                bbox = new Bbox(nd.getCoor().lon(), nd.getCoor().lat());
+            } else {
+                bbox.addPoint(nd.getCoor().lon(), nd.getCoor().lat());
+            }
+        }
+        return bbox;
+    }
+
+    /**
+     * Adds child relations of selected relations, in all levels.
+     *
+     * @param selected selected relations by id, children are added to it
+     * @param relations all relations by id
+     */
+    public static void addChildRelations(Map<Long, RelationData> selected, Map<Long, RelationData> relations) {
+        Deque<RelationData> parents = new ArrayDeque<RelationData>(selected.values());
+
+        while (!parents.isEmpty()) {
+            RelationData rd = parents.poll();
+            for (RelationMemberData member : rd.getMembers()) {
+                if (!OsmPrimitiveType.RELATION.equals(member.getMemberType())
+                        || selected.containsKey(member.getMemberId())) {
+                    continue;
+                }
+                RelationData child = relations.get(member.getMemberId());
+                if (child != null) {
+                    selected.put(child.getUniqueId(), child);
+                    parents.add(child);
+                }
+            }
+        }
+    }
+}
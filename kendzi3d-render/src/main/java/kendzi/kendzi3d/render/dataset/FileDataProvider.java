@@ -1,41 +1,256 @@
 package kendzi.kendzi3d.render.dataset;
 
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import kendzi.josm.datasource.Bbox;
+import kendzi.josm.datasource.PrimitiveDataReader;
+
+import org.apache.log4j.Logger;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.WayData;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.io.IllegalDataException;
 import org.openstreetmap.josm.io.OsmReader;
 
+/**
+ * Loads data from osm xml file. File is parsed once, ways and nodes which
+ * are not part of ways are indexed by R-tree. Index is immutable and shared by
+ * providers of all render workers. For each tile only data in tile bbox with
+ * margin is returned, the same which would be loaded from database: nodes and
+ * ways in bbox, nodes of these ways, relations of these nodes and ways and
+ * their child relations.
+ */
 public class FileDataProvider implements DataSetProvider {
 
+    /** Log. */
+    private static final Logger log = Logger.getLogger(FileDataProvider.class);
+
+    /**
+     * Loaded indexes by absolute path of file.
+     */
+    private static final Map<String, FileIndex> indexes = new HashMap<String, FileIndex>();
+
     String fileUrl;
 
-    DataSet dataSet;
+    private FileIndex index;
 
-    public FileDataProvider(String fileUrl) {
+    /**
+     * Margin of data loaded for tile.
+     */
+    private final DataMargin dataMargin;
+
+    /**
+     * @param fileUrl osm file
+     * @param dataMargin margin of data loaded for tile
+     */
+    public FileDataProvider(String fileUrl, DataMargin dataMargin) {
         super();
         this.fileUrl = fileUrl;
-        this.dataSet = null;
+        this.dataMargin = dataMargin;
     }
 
 
-    private DataSet loadDataSet(String file) throws IllegalDataException, FileNotFoundException {
-
-        FileInputStream in = new FileInputStream(file);
-
-        return OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+    /**
+     * Gets shared index of file, file is parsed when index is not loaded yet.
+     *
+     * @param file osm file
+     * @return index
+     * @throws IllegalDataException
+     * @throws IOException
+     */
+    private static synchronized FileIndex index(String file) throws IllegalDataException, IOException {
+        String key = new File(file).getAbsolutePath();
+        FileIndex index = indexes.get(key);
+        if (index == null) {
+            index = new FileIndex(file);
+            indexes.put(key, index);
+        }
+        return index;
     }
 
     @Override
     public DataSet findData(LatLon leftTop, LatLon rightBottom)
             throws Exception {
-        if (this.dataSet == null) {
-            this.dataSet = loadDataSet(this.fileUrl);
+        if (this.index == null) {
+            this.index = index(this.fileUrl);
+        }
+        FileIndex index = this.index;
+
+        Bbox bbox = this.dataMargin.bbox(leftTop, rightBottom);
+
+        List<PrimitiveData> found = new ArrayList<PrimitiveData>();
+        index.index.query(bbox, found);
+
+        Map<Long, NodeData> bboxNodes = new HashMap<Long, NodeData>();
+        Map<Long, WayData> bboxWays = new HashMap<Long, WayData>();
+
+        for (PrimitiveData data : found) {
+            if (data instanceof WayData) {
+                WayData wd = (WayData) data;
+                bboxWays.put(wd.getUniqueId(), wd);
+                for (Long nodeId : wd.getNodes()) {
+                    NodeData nd = index.nodes.get(nodeId);
+                    if (nd != null) {
+                        bboxNodes.put(nodeId, nd);
+                    }
+                }
+            } else {
+                bboxNodes.put(data.getUniqueId(), (NodeData) data);
+            }
+        }
+
+        Map<Long, RelationData> bboxRelations = new HashMap<Long, RelationData>();
+        addParents(bboxRelations, index.nodeRelations, bboxNodes.keySet());
+        addParents(bboxRelations, index.wayRelations, bboxWays.keySet());
+
+        DataSetUtil.addChildRelations(bboxRelations, index.relations);
+
+        DataSet dataSet = PrimitiveDataReader.parseDataSet(bboxNodes.values(), bboxWays.values(),
+                bboxRelations.values());
+
+        this.dataMargin.update(bbox, dataSet);
+        return dataSet;
+    }
+
+    private static void addParents(Map<Long, RelationData> result, Map<Long, List<RelationData>> parents,
+            Set<Long> memberIds) {
+        for (Long memberId : memberIds) {
+            List<RelationData> list = parents.get(memberId);
+            if (list != null) {
+                for (RelationData rd : list) {
+                    result.put(rd.getUniqueId(), rd);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        //
+    }
+
+    /**
+     * Data of file, not changed after it is loaded.
+     */
+    private static class FileIndex {
+
+        /**
+         * Ways and nodes which are not part of ways.
+         */
+        final StrTree<PrimitiveData> index;
+
+        final Map<Long, NodeData> nodes;
+
+        final Map<Long, RelationData> relations;
+
+        /**
+         * Relations which have node as member, by node id.
+         */
+        final Map<Long, List<RelationData>> nodeRelations;
+
+        /**
+         * Relations which have way as member, by way id.
+         */
+        final Map<Long, List<RelationData>> wayRelations;
+
+        private static DataSet loadDataSet(String file) throws IllegalDataException, IOException {
+
+            InputStream in = new FileInputStream(file);
+            try {
+                return OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+            } finally {
+                in.close();
+            }
+        }
+
+        private FileIndex(String file) throws IllegalDataException, IOException {
+            long s1 = System.currentTimeMillis();
+
+            DataSet dataSet = loadDataSet(file);
+
+            this.nodes = new HashMap<Long, NodeData>();
+            this.relations = new HashMap<Long, RelationData>();
+            this.nodeRelations = new HashMap<Long, List<RelationData>>();
+            this.wayRelations = new HashMap<Long, List<RelationData>>();
+            this.index = new StrTree<PrimitiveData>();
+
+            // incomplete primitives are created again from references
+            for (Node n : dataSet.getNodes()) {
+                if (!n.isIncomplete()) {
+                    NodeData nd = n.save();
+                    this.nodes.put(nd.getUniqueId(), nd);
+                }
+            }
+
+            Set<Long> wayNodes = new HashSet<Long>();
+            int wCount = 0;
+            for (Way w : dataSet.getWays()) {
+                if (!w.isIncomplete()) {
+                    WayData wd = w.save();
+                    Bbox bbox = DataSetUtil.wayBbox(wd, this.nodes);
+                    if (bbox != null) {
+                        this.index.add(bbox, wd);
+                        wayNodes.addAll(wd.getNodes());
+                        wCount++;
+                    }
+                }
+            }
+
+            // nodes of ways are taken with ways
+            for (NodeData nd : this.nodes.values()) {
+                if (nd.getCoor() != null && !wayNodes.contains(nd.getUniqueId())) {
+                    this.index.add(new Bbox(nd.getCoor().lon(), nd.getCoor().lat()), nd);
+                }
+            }
+
+            for (Relation r : dataSet.getRelations()) {
+                if (!r.isIncomplete()) {
+                    RelationData rd = r.save();
+                    this.relations.put(rd.getUniqueId(), rd);
+
+                    for (RelationMemberData member : rd.getMembers()) {
+                        if (OsmPrimitiveType.NODE.equals(member.getMemberType())) {
+                            addParent(this.nodeRelations, member.getMemberId(), rd);
+                        } else if (OsmPrimitiveType.WAY.equals(member.getMemberType())) {
+                            addParent(this.wayRelations, member.getMemberId(), rd);
+                        }
+                    }
+                }
+            }
+
+            this.index.build();
+
+            log.info("indexed file: " + file + " nodes: " + this.nodes.size() + " ways: " + wCount + " relations: "
+                    + this.relations.size() + " time: " + (System.currentTimeMillis() - s1) + " ms");
         }
 
-        return this.dataSet;
+        private static void addParent(Map<Long, List<RelationData>> parents, long memberId, RelationData rd) {
+            List<RelationData> list = parents.get(memberId);
+            if (list == null) {
+                list = new ArrayList<RelationData>(1);
+                parents.put(memberId, list);
+            }
+            if (!list.contains(rd)) {
+                list.add(rd);
+            }
+        }
     }
 }
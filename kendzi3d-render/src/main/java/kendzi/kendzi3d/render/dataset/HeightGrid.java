@@ -0,0 +1,224 @@
+package kendzi.kendzi3d.render.dataset;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import kendzi.josm.datasource.Bbox;
+import kendzi.josm.kendzi3d.util.ModelUtil;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Estimate of maximal height of objects, kept in grid of cells. Heights are
+ * taken from height and building:levels tags of data loaded for tiles. Cell is
+ * known only when it is whole inside of loaded data, so all objects touching
+ * it were seen. For cells which are not known default height is used. Number
+ * of known cells is limited, the least recently used cells are removed. Grid is
+ * shared by providers of all render workers.
+ */
+public class HeightGrid {
+
+    /**
+     * Height of one level of building, the same as used by building model.
+     */
+    private static final double LEVEL_HEIGHT = 2.5d;
+
+    /**
+     * Maximal number of known cells.
+     */
+    private static final int MAX_CELLS = 200000;
+
+    private final double cellSize;
+
+    private final double defaultHeight;
+
+    private final LinkedHashMap<Long, Double> cells = new LinkedHashMap<Long, Double>(256, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Double> eldest) {
+            return size() > MAX_CELLS;
+        }
+    };
+
+    /**
+     * @param cellSize size of cell in degrees
+     * @param defaultHeight height in meters used for cells which are not
+     *            known
+     */
+    public HeightGrid(double cellSize, double defaultHeight) {
+        super();
+        this.cellSize = cellSize;
+        this.defaultHeight = defaultHeight;
+    }
+
+    /**
+     * @param bbox area
+     * @return maximal height of objects in cells touching area, default height
+     *         is taken for cells which are not known
+     */
+    public synchronized double getMaxHeight(Bbox bbox) {
+        int x0 = cellIndex(bbox.getLon_min());
+        int x1 = cellIndex(bbox.getLon_max());
+        int y0 = cellIndex(bbox.getLat_min());
+        int y1 = cellIndex(bbox.getLat_max());
+
+        double ret = 0;
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                Double height = this.cells.get(cellKey(x, y));
+                ret = Math.max(ret, height != null ? height : this.defaultHeight);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return maximal height of objects in all known cells, at least default
+     *         height which is taken for cells which are not known
+     */
+    public synchronized double getMaxHeight() {
+        double ret = this.defaultHeight;
+        for (Double height : this.cells.values()) {
+            ret = Math.max(ret, height);
+        }
+        return ret;
+    }
+
+    /**
+     * Takes heights of objects from data loaded for bbox. Only cells whole
+     * inside of bbox become known.
+     *
+     * @param bbox bbox of loaded data
+     * @param dataSet loaded data
+     */
+    public void update(Bbox bbox, DataSet dataSet) {
+        int x0 = (int) Math.ceil(bbox.getLon_min() / this.cellSize);
+        int x1 = cellIndex(bbox.getLon_max()) - 1;
+        int y0 = (int) Math.ceil(bbox.getLat_min() / this.cellSize);
+        int y1 = cellIndex(bbox.getLat_max()) - 1;
+        if (x0 > x1 || y0 > y1) {
+            return;
+        }
+
+        Map<Long, Double> heights = new HashMap<Long, Double>();
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                heights.put(cellKey(x, y), 0d);
+            }
+        }
+
+        for (Node n : dataSet.getNodes()) {
+            if (!n.isIncomplete()) {
+                addHeight(heights, n, height(n));
+            }
+        }
+        for (Way w : dataSet.getWays()) {
+            if (!w.isIncomplete()) {
+                addHeight(heights, w, height(w));
+            }
+        }
+        // building parts and multipolygons can have height at relation
+        for (Relation r : dataSet.getRelations()) {
+            if (r.isIncomplete()) {
+                continue;
+            }
+            double height = height(r);
+            if (height > 0) {
+                for (RelationMember m : r.getMembers()) {
+                    if (m.isWay()) {
+                        addHeight(heights, m.getWay(), height);
+                    }
+                }
+            }
+        }
+
+        synchronized (this) {
+            this.cells.putAll(heights);
+        }
+    }
+
+    private void addHeight(Map<Long, Double> heights, OsmPrimitive p, double height) {
+        if (height <= 0) {
+            return;
+        }
+        if (p instanceof Node) {
+            addNodeHeight(heights, (Node) p, height);
+        } else if (p instanceof Way) {
+            for (Node n : ((Way) p).getNodes()) {
+                addNodeHeight(heights, n, height);
+            }
+        }
+    }
+
+    private void addNodeHeight(Map<Long, Double> heights, Node n, double height) {
+        LatLon coor = n.getCoor();
+        if (coor == null) {
+            return;
+        }
+        Long key = cellKey(cellIndex(coor.lon()), cellIndex(coor.lat()));
+        Double old = heights.get(key);
+        // cells which are not whole inside of bbox are not in map
+        if (old != null && old < height) {
+            heights.put(key, height);
+        }
+    }
+
+    /**
+     * @param p primitive
+     * @return height of primitive in meters taken from its tags, zero when it
+     *         is not known
+     */
+    static double height(OsmPrimitive p) {
+        if (!p.hasKeys()) {
+            return 0;
+        }
+        Double height = ModelUtil.getHeight(p, null);
+        if (height != null) {
+            return height;
+        }
+        Double levels = ModelUtil.getNumberAttribute(p, "building:levels", null);
+        if (levels != null) {
+            Double roofLevels = ModelUtil.getNumberAttribute(p, "roof:levels", 0d);
+            return (levels + roofLevels) * LEVEL_HEIGHT;
+        }
+        return 0;
+    }
+
+    private int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / this.cellSize);
+    }
+
+    private static long cellKey(int x, int y) {
+        return (long) x << 32 | y & 0xffffffffL;
+    }
+
+    /**
+     * @return default height in meters
+     */
+    public double getDefaultHeight() {
+        return this.defaultHeight;
+    }
+
+    /**
+     * @return number of known cells
+     */
+    public synchronized int getCells() {
+        return this.cells.size();
+    }
+
+    /**
+     * Removes all known cells.
+     */
+    public synchronized void clear() {
+        this.cells.clear();
+    }
+}
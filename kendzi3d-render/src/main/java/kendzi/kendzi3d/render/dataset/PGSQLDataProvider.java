@@ -7,78 +7,132 @@ import javax.sql.DataSource;
 
 import kendzi.josm.datasource.Bbox;
 import kendzi.josm.datasource.PgSqlReader;
-import kendzi.kendzi3d.render.tile.LatLonUtil;
 
+import org.apache.log4j.Logger;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.io.IllegalDataException;
 
-public class PGSQLDataProvider implements DataSetProvider {
+/**
+ * Loads data from database. Provider is used by one render worker, it keeps
+ * connection borrowed from pool between tiles, so prepared statements cached
+ * for connection are reused. When loading fails because of database error,
+ * connection is returned to pool and loading is repeated once with another
+ * connection, which is validated by pool. Data for tile is loaded by one
+ * query, rows are fetched in parts. When cache is set, data is taken from
+ * cells of cache shared by all providers, only missing cells are loaded.
+ */
+public class PGSQLDataProvider implements DataSetProvider, DataSetCache.CellLoader {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(PGSQLDataProvider.class);
 
     Connection connection = null;
 
     DataSource dataSource;
 
+    /**
+     * Number of rows fetched from database at once.
+     */
+    private final int fetchSize;
+
+    /**
+     * Cache of data shared by providers, null when disabled.
+     */
+    private final DataSetCache dataSetCache;
+
+    /**
+     * Margin of data loaded for tile.
+     */
+    private final DataMargin dataMargin;
 
     public PGSQLDataProvider(DataSource dataSource) {
+        this(dataSource, PgSqlReader.DEFAULT_FETCH_SIZE, null, new DataMargin());
+    }
+
+    /**
+     * @param dataSource pool of connections
+     * @param fetchSize number of rows fetched from database at once
+     * @param dataSetCache cache of data shared by providers, null disables
+     *            cache
+     * @param dataMargin margin of data loaded for tile
+     */
+    public PGSQLDataProvider(DataSource dataSource, int fetchSize, DataSetCache dataSetCache,
+            DataMargin dataMargin) {
         super();
         this.dataSource = dataSource;
+        this.fetchSize = fetchSize;
+        this.dataSetCache = dataSetCache;
+        this.dataMargin = dataMargin;
     }
 
     @Override
-    public DataSet findData(LatLon leftTop, LatLon rightBottom) throws SQLException {
-
-        double boxY = 200d;
-        double boxX = 50d;
-
-        Bbox bbox = new Bbox(leftTop.lon(), leftTop.lat());
-        bbox.addPoint(rightBottom.lon(), rightBottom.lat());
-
-        //        Bbox bbox = new Bbox(leftTop.lon(), rightBottom.lon(), leftTop.lat(), rightBottom.lat());
-        //        ""
-        double deltaLat = Math.toDegrees(LatLonUtil.deltaLat(boxY));
-        double deltaLot = Math.toDegrees(LatLonUtil.deltaLon(bbox.getLat_max(), boxX));
-        //        LatLon max = new LatLon(bbox.getLat_max(), bbox.getLon_max());
-        //        LatLon min = new LatLon(bbox.getLat_min(), bbox.getLon_min());
-        //        LatLon maxD = new LatLon(bbox.getLat_max() + deltaLat, bbox.getLon_max() + deltaLot);
-        //        LatLon minD = new LatLon(bbox.getLat_min() - deltaLat, bbox.getLon_min() - deltaLot);
-        //        System.out.println(max.greatCircleDistance(maxD));
-        //        System.out.println(min.greatCircleDistance(minD));
-        //
-        //        System.out.println(min.greatCircleDistance(max));
-        //        System.out.println(maxD.greatCircleDistance(minD));
-
-
-        bbox.setLat_max(bbox.getLat_max() + deltaLat);
-        bbox.setLat_min(bbox.getLat_min() - deltaLat);
-        bbox.setLon_max(bbox.getLon_max() + deltaLot);
-        bbox.setLon_min(bbox.getLon_min() - deltaLot);
+    public DataSet findData(LatLon leftTop, LatLon rightBottom) throws Exception {
+
+        Bbox bbox = this.dataMargin.bbox(leftTop, rightBottom);
+
+        DataSet dataSet;
+        if (this.dataSetCache != null) {
+            dataSet = this.dataSetCache.findData(bbox, this);
+        } else {
+            dataSet = load(bbox);
+        }
+
+        this.dataMargin.update(bbox, dataSet);
+        return dataSet;
+    }
 
+    /**
+     * Loads data for bbox from database.
+     *
+     * @param bbox bbox
+     * @return data set
+     * @throws SQLException
+     */
+    @Override
+    public DataSet load(Bbox bbox) throws SQLException {
         try {
 
-            return PgSqlReader.parseDataSet(getConnection(), bbox, NullProgressMonitor.INSTANCE);
+            return PgSqlReader.parseDataSet(getConnection(), bbox, this.fetchSize, NullProgressMonitor.INSTANCE);
 
         } catch (IllegalDataException e) {
-            throw new RuntimeException("error loading data.", e);
+            if (!(e.getCause() instanceof SQLException)) {
+                throw new RuntimeException("error loading data.", e);
+            }
+            log.warn("error loading data, retrying with new connection", e);
+            // connection could be dropped
+            release();
         }
 
+        try {
+
+            return PgSqlReader.parseDataSet(getConnection(), bbox, this.fetchSize, NullProgressMonitor.INSTANCE);
+
+        } catch (IllegalDataException e) {
+            release();
+            throw new RuntimeException("error loading data.", e);
+        }
     }
 
     private Connection getConnection() throws SQLException {
-        if (this.connection == null) { // || !this.connection.isValid(100)) {
-            if (this.connection != null ) {
-                try {
-                    this.connection.close();
-                } catch (Exception e) {
-                    //
-                }
-            }
-
+        if (this.connection == null) {
             this.connection = this.dataSource.getConnection();
-
         }
         return this.connection;
     }
 
+    @Override
+    public void release() {
+        if (this.connection != null) {
+            try {
+                // returns connection to pool
+                this.connection.close();
+            } catch (SQLException e) {
+                log.error("error closing connection", e);
+            }
+            this.connection = null;
+        }
+    }
+
 }
@@ -0,0 +1,64 @@
+package kendzi.kendzi3d.render.dataset;
+
+import java.io.File;
+
+import kendzi.josm.datasource.Bbox;
+import kendzi.kendzi3d.render.dataset.pbf.OsmStore;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+
+/**
+ * Loads data from pbf file. File is imported once into binary store mapped
+ * into memory, on next start store is opened without import. Store is shared
+ * by providers of all render workers, only data for tile bbox with margin is
+ * read from it.
+ */
+public class PbfDataProvider implements DataSetProvider {
+
+    private final File pbfFile;
+
+    private final File storeDir;
+
+    private final double cellSize;
+
+    private OsmStore store;
+
+    /**
+     * Margin of data loaded for tile.
+     */
+    private final DataMargin dataMargin;
+
+    /**
+     * @param pbfFile pbf file
+     * @param storeDir directory of binary store
+     * @param cellSize size of cell of grid index in degrees
+     * @param dataMargin margin of data loaded for tile
+     */
+    public PbfDataProvider(File pbfFile, File storeDir, double cellSize, DataMargin dataMargin) {
+        super();
+        this.pbfFile = pbfFile;
+        this.storeDir = storeDir;
+        this.cellSize = cellSize;
+        this.dataMargin = dataMargin;
+    }
+
+    @Override
+    public DataSet findData(LatLon leftTop, LatLon rightBottom) throws Exception {
+        if (this.store == null) {
+            this.store = OsmStore.open(this.pbfFile, this.storeDir, this.cellSize);
+        }
+
+        Bbox bbox = this.dataMargin.bbox(leftTop, rightBottom);
+
+        DataSet dataSet = this.store.findData(bbox);
+
+        this.dataMargin.update(bbox, dataSet);
+        return dataSet;
+    }
+
+    @Override
+    public void release() {
+        //
+    }
+}
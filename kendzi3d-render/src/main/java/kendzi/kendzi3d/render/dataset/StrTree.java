@@ -0,0 +1,166 @@
+package kendzi.kendzi3d.render.dataset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import kendzi.josm.datasource.Bbox;
+
+/**
+ * Static R-tree packed with Sort-Tile-Recursive algorithm. Items are added
+ * with their bboxes, tree is built once and after that it is only queried, so
+ * it can be shared between threads.
+ *
+ * @param <T> type of items
+ */
+public class StrTree<T> {
+
+    /**
+     * Maximal number of children of tree node.
+     */
+    private static final int NODE_CAPACITY = 16;
+
+    private List<TreeNode> items = new ArrayList<TreeNode>();
+
+    private TreeNode root;
+
+    /**
+     * Adds item, only allowed before tree is built.
+     *
+     * @param bbox bbox of item
+     * @param item item
+     */
+    public void add(Bbox bbox, T item) {
+        if (this.items == null) {
+            throw new RuntimeException("tree is already built");
+        }
+        TreeNode node = new TreeNode(bbox.getLon_min(), bbox.getLat_min(), bbox.getLon_max(), bbox.getLat_max());
+        node.item = item;
+        this.items.add(node);
+    }
+
+    /**
+     * Builds tree from added items.
+     */
+    public void build() {
+        if (this.items == null) {
+            return;
+        }
+        List<TreeNode> level = this.items;
+        this.items = null;
+
+        if (level.isEmpty()) {
+            return;
+        }
+        while (level.size() > 1) {
+            level = pack(level);
+        }
+        this.root = level.get(0);
+    }
+
+    /**
+     * Groups nodes of level into parent nodes. Nodes are sorted by x and cut
+     * into vertical slices, each slice is sorted by y and cut into parents.
+     */
+    private List<TreeNode> pack(List<TreeNode> level) {
+        int parentCount = (level.size() + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceCount = (int) Math.ceil(Math.sqrt(parentCount));
+        int sliceSize = sliceCount * NODE_CAPACITY;
+
+        Collections.sort(level, X_ORDER);
+
+        List<TreeNode> parents = new ArrayList<TreeNode>(parentCount);
+        for (int s = 0; s < level.size(); s += sliceSize) {
+            List<TreeNode> slice = new ArrayList<TreeNode>(level.subList(s, Math.min(s + sliceSize, level.size())));
+            Collections.sort(slice, Y_ORDER);
+
+            for (int p = 0; p < slice.size(); p += NODE_CAPACITY) {
+                List<TreeNode> children = slice.subList(p, Math.min(p + NODE_CAPACITY, slice.size()));
+                parents.add(new TreeNode(children));
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * Finds items which bboxes intersect with bbox.
+     *
+     * @param bbox bbox
+     * @param result list to which found items are added
+     */
+    public void query(Bbox bbox, List<T> result) {
+        if (this.root == null) {
+            return;
+        }
+        query(this.root, bbox.getLon_min(), bbox.getLat_min(), bbox.getLon_max(), bbox.getLat_max(), result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void query(TreeNode node, double minX, double minY, double maxX, double maxY, List<T> result) {
+        if (!node.intersects(minX, minY, maxX, maxY)) {
+            return;
+        }
+        if (node.children == null) {
+            result.add((T) node.item);
+            return;
+        }
+        for (TreeNode child : node.children) {
+            query(child, minX, minY, maxX, maxY, result);
+        }
+    }
+
+    private static final Comparator<TreeNode> X_ORDER = new Comparator<TreeNode>() {
+        @Override
+        public int compare(TreeNode n1, TreeNode n2) {
+            return Double.compare(n1.minX + n1.maxX, n2.minX + n2.maxX);
+        }
+    };
+
+    private static final Comparator<TreeNode> Y_ORDER = new Comparator<TreeNode>() {
+        @Override
+        public int compare(TreeNode n1, TreeNode n2) {
+            return Double.compare(n1.minY + n1.maxY, n2.minY + n2.maxY);
+        }
+    };
+
+    /**
+     * Node of tree, leaf node has item and no children.
+     */
+    private static class TreeNode {
+        double minX;
+        double minY;
+        double maxX;
+        double maxY;
+
+        TreeNode[] children;
+
+        Object item;
+
+        TreeNode(double minX, double minY, double maxX, double maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        TreeNode(List<TreeNode> children) {
+            this.children = children.toArray(new TreeNode[children.size()]);
+
+            this.minX = Double.POSITIVE_INFINITY;
+            this.minY = Double.POSITIVE_INFINITY;
+            this.maxX = Double.NEGATIVE_INFINITY;
+            this.maxY = Double.NEGATIVE_INFINITY;
+            for (TreeNode child : this.children) {
+                this.minX = Math.min(this.minX, child.minX);
+                this.minY = Math.min(this.minY, child.minY);
+                this.maxX = Math.max(this.maxX, child.maxX);
+                this.maxY = Math.max(this.maxY, child.maxY);
+            }
+        }
+
+        boolean intersects(double minX, double minY, double maxX, double maxY) {
+            return this.minX <= maxX && this.maxX >= minX && this.minY <= maxY && this.maxY >= minY;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read only file mapped into memory. Big file is mapped in chunks, because one
+ * buffer is limited to 2 GB. Only absolute reads are used, so file can be read
+ * by many threads at once.
+ *
+ * Files of records contain pairs of longs (key, value) sorted by key.
+ */
+class MappedFile {
+
+    /**
+     * Size of record of key and value.
+     */
+    static final int RECORD_SIZE = 16;
+
+    private static final int CHUNK_BITS = 30;
+
+    private final int chunkBits;
+
+    private final long chunkMask;
+
+    private final MappedByteBuffer[] chunks;
+
+    private final long length;
+
+    MappedFile(File file) throws IOException {
+        this(file, CHUNK_BITS);
+    }
+
+    /**
+     * @param file file
+     * @param chunkBits size of chunk as power of two
+     * @throws IOException
+     */
+    MappedFile(File file, int chunkBits) throws IOException {
+        this.chunkBits = chunkBits;
+        long chunkSize = 1L << chunkBits;
+        this.chunkMask = chunkSize - 1;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            this.length = raf.length();
+            int count = (int) ((this.length + chunkSize - 1) / chunkSize);
+            this.chunks = new MappedByteBuffer[count];
+
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < count; i++) {
+                long start = i * chunkSize;
+                this.chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(chunkSize, this.length - start));
+            }
+        } finally {
+            // mapping stays valid after file is closed
+            raf.close();
+        }
+    }
+
+    long length() {
+        return this.length;
+    }
+
+    byte get(long pos) {
+        return this.chunks[(int) (pos >>> this.chunkBits)].get((int) (pos & this.chunkMask));
+    }
+
+    int getInt(long pos) {
+        MappedByteBuffer chunk = this.chunks[(int) (pos >>> this.chunkBits)];
+        int offset = (int) (pos & this.chunkMask);
+        if (offset + 4 <= chunk.limit()) {
+            return chunk.getInt(offset);
+        }
+        // crosses chunks
+        int ret = 0;
+        for (int i = 0; i < 4; i++) {
+            ret = ret << 8 | get(pos + i) & 0xff;
+        }
+        return ret;
+    }
+
+    long getLong(long pos) {
+        MappedByteBuffer chunk = this.chunks[(int) (pos >>> this.chunkBits)];
+        int offset = (int) (pos & this.chunkMask);
+        if (offset + 8 <= chunk.limit()) {
+            return chunk.getLong(offset);
+        }
+        // crosses chunks
+        long ret = 0;
+        for (int i = 0; i < 8; i++) {
+            ret = ret << 8 | get(pos + i) & 0xff;
+        }
+        return ret;
+    }
+
+    void get(long pos, byte[] dst) {
+        for (int i = 0; i < dst.length; i++) {
+            dst[i] = get(pos + i);
+        }
+    }
+
+    /**
+     * @return number of records
+     */
+    long records() {
+        return this.length / RECORD_SIZE;
+    }
+
+    long key(long record) {
+        return getLong(record * RECORD_SIZE);
+    }
+
+    long value(long record) {
+        return getLong(record * RECORD_SIZE + 8);
+    }
+
+    /**
+     * @param key key
+     * @return index of first record with key not lower then given key, equal
+     *         to number of records when there is no such record
+     */
+    long lowerBound(long key) {
+        long low = 0;
+        long high = records();
+        while (low < high) {
+            long mid = low + high >>> 1;
+            if (key(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param key key
+     * @return index of record with key or -1 when key is not found
+     */
+    long find(long key) {
+        long record = lowerBound(key);
+        if (record < records() && key(record) == key) {
+            return record;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,435 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import kendzi.josm.datasource.Bbox;
+import kendzi.josm.datasource.PrimitiveDataReader;
+
+import org.apache.log4j.Logger;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.io.IllegalDataException;
+
+/**
+ * Binary store of OpenStreetMap data imported from pbf file. Files of store
+ * are mapped into memory, so only data of requested area is read and heap is
+ * used only for data set of area. Store is imported once, it is used again
+ * while pbf file is not changed.
+ *
+ * Files of records of two longs sorted by key:
+ * <ul>
+ * <li>nodes - node id, coordinates in 1e-7 degrees (lat in high int)</li>
+ * <li>node-tags - node id, offset of tags in data</li>
+ * <li>ways - way id, offset of way in data</li>
+ * <li>relations - relation id, offset of relation in data</li>
+ * <li>grid - cell key, typed id of way, tagged node or member node of
+ * relation in cell</li>
+ * <li>members - typed id of member, relation id</li>
+ * <li>string-index - offset of string (not sorted, index is string id)</li>
+ * </ul>
+ * Data file contains ways: count, node ids, tags and relations: count, typed
+ * member id and role string id for each member, tags. Tags are count and pairs
+ * of string ids. Strings file contains length and UTF-8 bytes of strings.
+ * Typed id is id * 4 + type, where type is 0 for node, 1 for way and 2 for
+ * relation.
+ */
+public class OsmStore {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(OsmStore.class);
+
+    static final String NODES_FILE = "nodes.bin";
+    static final String NODE_TAGS_FILE = "node-tags.bin";
+    static final String WAYS_FILE = "ways.bin";
+    static final String RELATIONS_FILE = "relations.bin";
+    static final String DATA_FILE = "data.bin";
+    static final String GRID_FILE = "grid.bin";
+    static final String MEMBERS_FILE = "members.bin";
+    static final String STRINGS_FILE = "strings.bin";
+    static final String STRING_INDEX_FILE = "string-index.bin";
+    static final String DESCRIPTION_FILE = "store.properties";
+
+    static final String FORMAT = "2";
+    static final String FORMAT_KEY = "format";
+    static final String SOURCE_SIZE_KEY = "source.size";
+    static final String SOURCE_MODIFIED_KEY = "source.modified";
+    static final String CELL_SIZE_KEY = "cell.size";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final double COORDINATE_SCALE = 10000000d;
+
+    /**
+     * Opened stores by directory.
+     */
+    private static final Map<File, OsmStore> stores = new HashMap<File, OsmStore>();
+
+    private final double cellSize;
+
+    private final MappedFile nodes;
+    private final MappedFile nodeTags;
+    private final MappedFile ways;
+    private final MappedFile relations;
+    private final MappedFile data;
+    private final MappedFile grid;
+    private final MappedFile members;
+    private final MappedFile strings;
+    private final MappedFile stringIndex;
+
+    private OsmStore(File dir, double cellSize) throws IOException {
+        this.cellSize = cellSize;
+
+        this.nodes = new MappedFile(new File(dir, NODES_FILE));
+        this.nodeTags = new MappedFile(new File(dir, NODE_TAGS_FILE));
+        this.ways = new MappedFile(new File(dir, WAYS_FILE));
+        this.relations = new MappedFile(new File(dir, RELATIONS_FILE));
+        this.data = new MappedFile(new File(dir, DATA_FILE));
+        this.grid = new MappedFile(new File(dir, GRID_FILE));
+        this.members = new MappedFile(new File(dir, MEMBERS_FILE));
+        this.strings = new MappedFile(new File(dir, STRINGS_FILE));
+        this.stringIndex = new MappedFile(new File(dir, STRING_INDEX_FILE));
+    }
+
+    /**
+     * Opens store of pbf file. When store doesn't exist or it was imported
+     * from other version of file, pbf file is imported again. Store is opened
+     * once and shared.
+     *
+     * @param pbf pbf file
+     * @param dir store directory
+     * @param cellSize size of cell of grid index in degrees
+     * @return store
+     * @throws IOException
+     */
+    public static synchronized OsmStore open(File pbf, File dir, double cellSize) throws IOException {
+        File key = dir.getAbsoluteFile();
+        OsmStore store = stores.get(key);
+        if (store != null) {
+            return store;
+        }
+
+        if (!isCurrent(pbf, dir, cellSize)) {
+            OsmStoreWriter.importPbf(pbf, dir, cellSize);
+        }
+
+        store = new OsmStore(dir, cellSize);
+        stores.put(key, store);
+
+        log.info("opened osm store: " + dir);
+        return store;
+    }
+
+    private static boolean isCurrent(File pbf, File dir, double cellSize) throws IOException {
+        File descriptionFile = new File(dir, DESCRIPTION_FILE);
+        if (!descriptionFile.isFile()) {
+            return false;
+        }
+
+        Properties description = new Properties();
+        InputStream in = new FileInputStream(descriptionFile);
+        try {
+            description.load(in);
+        } finally {
+            in.close();
+        }
+
+        return FORMAT.equals(description.getProperty(FORMAT_KEY))
+                && Long.toString(pbf.length()).equals(description.getProperty(SOURCE_SIZE_KEY))
+                && Long.toString(pbf.lastModified()).equals(description.getProperty(SOURCE_MODIFIED_KEY))
+                && Double.toString(cellSize).equals(description.getProperty(CELL_SIZE_KEY));
+    }
+
+    static long coordinates(double lat, double lon) {
+        long latE7 = Math.round(lat * COORDINATE_SCALE);
+        long lonE7 = Math.round(lon * COORDINATE_SCALE);
+        return latE7 << 32 | lonE7 & 0xffffffffL;
+    }
+
+    static double lat(long coordinates) {
+        return (int) (coordinates >> 32) / COORDINATE_SCALE;
+    }
+
+    static double lon(long coordinates) {
+        return (int) coordinates / COORDINATE_SCALE;
+    }
+
+    static long cellKey(int x, int y) {
+        return (long) x << 32 | y & 0xffffffffL;
+    }
+
+    static long typedId(long id, OsmPrimitiveType type) {
+        return id << 2 | typeIndex(type);
+    }
+
+    private static int typeIndex(OsmPrimitiveType type) {
+        if (OsmPrimitiveType.NODE.equals(type)) {
+            return 0;
+        } else if (OsmPrimitiveType.WAY.equals(type)) {
+            return 1;
+        }
+        return 2;
+    }
+
+    private static OsmPrimitiveType type(long typedId) {
+        switch ((int) (typedId & 3)) {
+        case 0:
+            return OsmPrimitiveType.NODE;
+        case 1:
+            return OsmPrimitiveType.WAY;
+        default:
+            return OsmPrimitiveType.RELATION;
+        }
+    }
+
+    private int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / this.cellSize);
+    }
+
+    /**
+     * Creates data set with the same primitives which are loaded for bbox from
+     * database: nodes and ways in bbox, nodes of these ways, relations of
+     * these nodes and ways and their child relations. Nodes without tags which
+     * are not part of way or relation are not taken, nothing is built from
+     * them.
+     *
+     * @param bbox bbox
+     * @return data set
+     * @throws IllegalDataException
+     */
+    public DataSet findData(Bbox bbox) throws IllegalDataException {
+        Reader reader = new Reader();
+
+        Map<Long, NodeData> bboxNodes = new LinkedHashMap<Long, NodeData>();
+        Map<Long, WayData> bboxWays = new LinkedHashMap<Long, WayData>();
+
+        int x0 = cellIndex(bbox.getLon_min());
+        int x1 = cellIndex(bbox.getLon_max());
+        int y0 = cellIndex(bbox.getLat_min());
+        int y1 = cellIndex(bbox.getLat_max());
+
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                long cellKey = cellKey(x, y);
+                for (long r = this.grid.lowerBound(cellKey); r < this.grid.records()
+                        && this.grid.key(r) == cellKey; r++) {
+
+                    long typedId = this.grid.value(r);
+                    long id = typedId >> 2;
+
+                    if (OsmPrimitiveType.WAY.equals(type(typedId))) {
+                        if (!bboxWays.containsKey(id)) {
+                            addWay(reader, id, bbox, bboxWays, bboxNodes);
+                        }
+                    } else if (!bboxNodes.containsKey(id)) {
+                        NodeData nd = reader.node(id);
+                        if (nd != null && nd.getCoor() != null
+                                && bbox.contains(nd.getCoor().lon(), nd.getCoor().lat())) {
+                            bboxNodes.put(id, nd);
+                        }
+                    }
+                }
+            }
+        }
+
+        Map<Long, RelationData> bboxRelations = new LinkedHashMap<Long, RelationData>();
+        Deque<Long> relationIds = new ArrayDeque<Long>();
+
+        for (Long nodeId : bboxNodes.keySet()) {
+            addParents(typedId(nodeId, OsmPrimitiveType.NODE), relationIds);
+        }
+        for (Long wayId : bboxWays.keySet()) {
+            addParents(typedId(wayId, OsmPrimitiveType.WAY), relationIds);
+        }
+
+        // relations of members and their child relations
+        while (!relationIds.isEmpty()) {
+            Long relationId = relationIds.poll();
+            if (bboxRelations.containsKey(relationId)) {
+                continue;
+            }
+            RelationData rd = reader.relation(relationId);
+            if (rd == null) {
+                continue;
+            }
+            bboxRelations.put(relationId, rd);
+
+            for (RelationMemberData member : rd.getMembers()) {
+                if (OsmPrimitiveType.RELATION.equals(member.getMemberType())) {
+                    relationIds.add(member.getMemberId());
+                }
+            }
+        }
+
+        return PrimitiveDataReader.parseDataSet(bboxNodes.values(), bboxWays.values(), bboxRelations.values());
+    }
+
+    private void addWay(Reader reader, long id, Bbox bbox, Map<Long, WayData> bboxWays,
+            Map<Long, NodeData> bboxNodes) {
+        WayData wd = reader.way(id);
+        if (wd == null) {
+            return;
+        }
+
+        List<NodeData> wayNodes = new ArrayList<NodeData>(wd.getNodes().size());
+        Bbox wayBbox = null;
+        for (Long nodeId : wd.getNodes()) {
+            NodeData nd = bboxNodes.get(nodeId);
+            if (nd == null) {
+                nd = reader.node(nodeId);
+            }
+            if (nd == null || nd.getCoor() == null) {
+                continue;
+            }
+            wayNodes.add(nd);
+            if (wayBbox == null) {
+                wayBbox = new Bbox(nd.getCoor().lon(), nd.getCoor().lat());
+            } else {
+                wayBbox.addPoint(nd.getCoor().lon(), nd.getCoor().lat());
+            }
+        }
+
+        if (wayBbox == null || !wayBbox.intersects(bbox)) {
+            return;
+        }
+        bboxWays.put(id, wd);
+        for (NodeData nd : wayNodes) {
+            bboxNodes.put(nd.getUniqueId(), nd);
+        }
+    }
+
+    private void addParents(long typedMemberId, Deque<Long> relationIds) {
+        for (long r = this.members.lowerBound(typedMemberId); r < this.members.records()
+                && this.members.key(r) == typedMemberId; r++) {
+            relationIds.add(this.members.value(r));
+        }
+    }
+
+    /**
+     * Reads primitives for one data set. Decoded strings are remembered only
+     * for one data set.
+     */
+    private class Reader {
+
+        private final Map<Integer, String> stringCache = new HashMap<Integer, String>();
+
+        NodeData node(long id) {
+            long record = OsmStore.this.nodes.find(id);
+            if (record < 0) {
+                return null;
+            }
+            long coordinates = OsmStore.this.nodes.value(record);
+
+            NodeData nd = new NodeData();
+            init(nd, id);
+            nd.setCoor(new LatLon(lat(coordinates), lon(coordinates)));
+
+            long tags = OsmStore.this.nodeTags.find(id);
+            if (tags >= 0) {
+                readTags(nd, OsmStore.this.nodeTags.value(tags));
+            }
+            return nd;
+        }
+
+        WayData way(long id) {
+            long record = OsmStore.this.ways.find(id);
+            if (record < 0) {
+                return null;
+            }
+            long pos = OsmStore.this.ways.value(record);
+
+            WayData wd = new WayData();
+            init(wd, id);
+
+            int count = OsmStore.this.data.getInt(pos);
+            pos += 4;
+            List<Long> nodeIds = new ArrayList<Long>(count);
+            for (int i = 0; i < count; i++) {
+                nodeIds.add(OsmStore.this.data.getLong(pos));
+                pos += 8;
+            }
+            wd.setNodes(nodeIds);
+
+            readTags(wd, pos);
+            return wd;
+        }
+
+        RelationData relation(long id) {
+            long record = OsmStore.this.relations.find(id);
+            if (record < 0) {
+                return null;
+            }
+            long pos = OsmStore.this.relations.value(record);
+
+            RelationData rd = new RelationData();
+            init(rd, id);
+
+            int count = OsmStore.this.data.getInt(pos);
+            pos += 4;
+            List<RelationMemberData> memberList = new ArrayList<RelationMemberData>(count);
+            for (int i = 0; i < count; i++) {
+                long typedId = OsmStore.this.data.getLong(pos);
+                String role = string(OsmStore.this.data.getInt(pos + 8));
+                pos += 12;
+
+                memberList.add(new RelationMemberData(role, type(typedId), typedId >> 2));
+            }
+            rd.setMembers(memberList);
+
+            readTags(rd, pos);
+            return rd;
+        }
+
+        private void init(PrimitiveData pd, long id) {
+            pd.setId(id);
+            // versions are not imported
+            pd.setVersion(1);
+            pd.setVisible(true);
+        }
+
+        private void readTags(PrimitiveData pd, long pos) {
+            int count = OsmStore.this.data.getInt(pos);
+            if (count == 0) {
+                return;
+            }
+            pos += 4;
+            Map<String, String> tags = new HashMap<String, String>(2 * count);
+            for (int i = 0; i < count; i++) {
+                String key = string(OsmStore.this.data.getInt(pos));
+                String value = string(OsmStore.this.data.getInt(pos + 4));
+                tags.put(key, value);
+                pos += 8;
+            }
+            pd.setKeys(tags);
+        }
+
+        private String string(int id) {
+            String ret = this.stringCache.get(id);
+            if (ret == null) {
+                long pos = OsmStore.this.stringIndex.getLong(8L * id);
+                byte[] bytes = new byte[OsmStore.this.strings.getInt(pos)];
+                OsmStore.this.strings.get(pos + 4, bytes);
+                ret = new String(bytes, UTF8);
+                this.stringCache.put(id, ret);
+            }
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+
+/**
+ * Imports pbf file into binary store, see {@link OsmStore} for format. File
+ * need to be sorted by type and id, like files from planet dumps and
+ * extracts. Nodes are written first, after that they are used to find
+ * location of ways.
+ */
+class OsmStoreWriter implements PbfHandler {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(OsmStoreWriter.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximal number of strings remembered to write them once. Strings which
+     * are rarely used can be written many times.
+     */
+    private static final int MAX_STRING_IDS = 1000000;
+
+    /**
+     * Ways which cover more cells are indexed only in cells along their
+     * segments.
+     */
+    private static final int MAX_BBOX_CELLS = 1024;
+
+    private static final int PHASE_NODES = 0;
+    private static final int PHASE_WAYS = 1;
+    private static final int PHASE_RELATIONS = 2;
+
+    private final File dir;
+
+    private final double cellSize;
+
+    private final DataOutputStream nodes;
+    private final DataOutputStream nodeTags;
+    private final DataOutputStream ways;
+    private final DataOutputStream relations;
+    private final DataOutputStream data;
+    private final DataOutputStream strings;
+    private final DataOutputStream stringIndex;
+
+    private long dataPos;
+
+    private long stringsPos;
+
+    private int stringCount;
+
+    /**
+     * Recently used strings. Least recently used string is forgotten when map
+     * is full.
+     */
+    private final Map<String, Integer> stringIds = new LinkedHashMap<String, Integer>(1024, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_STRING_IDS;
+        }
+    };
+
+    private final RecordSorter grid;
+
+    private final RecordSorter members;
+
+    /**
+     * Written nodes, available when ways are written.
+     */
+    private MappedFile nodesIndex;
+
+    private int phase = PHASE_NODES;
+
+    private long lastId = Long.MIN_VALUE;
+
+    private long nodeCount;
+    private long wayCount;
+    private long relationCount;
+
+    private OsmStoreWriter(File dir, double cellSize) throws IOException {
+        this.dir = dir;
+        this.cellSize = cellSize;
+
+        this.nodes = open(OsmStore.NODES_FILE);
+        this.nodeTags = open(OsmStore.NODE_TAGS_FILE);
+        this.ways = open(OsmStore.WAYS_FILE);
+        this.relations = open(OsmStore.RELATIONS_FILE);
+        this.data = open(OsmStore.DATA_FILE);
+        this.strings = open(OsmStore.STRINGS_FILE);
+        this.stringIndex = open(OsmStore.STRING_INDEX_FILE);
+
+        this.grid = new RecordSorter(dir, OsmStore.GRID_FILE);
+        this.members = new RecordSorter(dir, OsmStore.MEMBERS_FILE);
+    }
+
+    /**
+     * Imports pbf file into store directory. Description of store is written
+     * at the end, so broken import is detected.
+     *
+     * @param pbf pbf file
+     * @param dir store directory
+     * @param cellSize size of cell of grid index in degrees
+     * @throws IOException
+     */
+    static void importPbf(File pbf, File dir, double cellSize) throws IOException {
+        long s1 = System.currentTimeMillis();
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can't create store directory: " + dir);
+        }
+        File descriptionFile = new File(dir, OsmStore.DESCRIPTION_FILE);
+        if (descriptionFile.exists() && !descriptionFile.delete()) {
+            throw new IOException("can't delete old store description: " + descriptionFile);
+        }
+
+        log.info("importing pbf file: " + pbf + " into store: " + dir);
+
+        OsmStoreWriter writer = new OsmStoreWriter(dir, cellSize);
+        InputStream in = new FileInputStream(pbf);
+        try {
+            new PbfReader(writer).read(in);
+        } finally {
+            in.close();
+            writer.close();
+        }
+        writer.finish();
+
+        Properties description = new Properties();
+        description.setProperty(OsmStore.FORMAT_KEY, OsmStore.FORMAT);
+        description.setProperty(OsmStore.SOURCE_SIZE_KEY, Long.toString(pbf.length()));
+        description.setProperty(OsmStore.SOURCE_MODIFIED_KEY, Long.toString(pbf.lastModified()));
+        description.setProperty(OsmStore.CELL_SIZE_KEY, Double.toString(cellSize));
+        description.setProperty("nodes", Long.toString(writer.nodeCount));
+        description.setProperty("ways", Long.toString(writer.wayCount));
+        description.setProperty("relations", Long.toString(writer.relationCount));
+
+        OutputStream out = new FileOutputStream(descriptionFile);
+        try {
+            description.store(out, "kendzi3d osm store of: " + pbf);
+        } finally {
+            out.close();
+        }
+
+        log.info("imported pbf file: " + pbf + " nodes: " + writer.nodeCount + " ways: " + writer.wayCount
+                + " relations: " + writer.relationCount + " time: " + (System.currentTimeMillis() - s1) + " ms");
+    }
+
+    private DataOutputStream open(String name) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(this.dir, name)),
+                BUFFER_SIZE));
+    }
+
+    @Override
+    public void node(long id, double lat, double lon, String[] tags) throws IOException {
+        startPhase(PHASE_NODES, id);
+
+        this.nodes.writeLong(id);
+        this.nodes.writeLong(OsmStore.coordinates(lat, lon));
+
+        if (tags.length > 0) {
+            this.nodeTags.writeLong(id);
+            this.nodeTags.writeLong(this.dataPos);
+            writeTags(tags);
+
+            // nodes without tags are taken with ways and relations
+            this.grid.add(OsmStore.cellKey(cellIndex(lon), cellIndex(lat)),
+                    OsmStore.typedId(id, OsmPrimitiveType.NODE));
+        }
+        this.nodeCount++;
+    }
+
+    @Override
+    public void way(long id, long[] nodeIds, String[] tags) throws IOException {
+        startPhase(PHASE_WAYS, id);
+
+        this.ways.writeLong(id);
+        this.ways.writeLong(this.dataPos);
+
+        this.data.writeInt(nodeIds.length);
+        for (long nodeId : nodeIds) {
+            this.data.writeLong(nodeId);
+        }
+        this.dataPos += 4 + 8L * nodeIds.length;
+        writeTags(tags);
+
+        indexWay(id, nodeIds);
+        this.wayCount++;
+    }
+
+    private void indexWay(long id, long[] nodeIds) throws IOException {
+        double[] lats = new double[nodeIds.length];
+        double[] lons = new double[nodeIds.length];
+        int count = 0;
+        for (long nodeId : nodeIds) {
+            long record = this.nodesIndex.find(nodeId);
+            if (record < 0) {
+                // not in extract
+                continue;
+            }
+            long coordinates = this.nodesIndex.value(record);
+            lats[count] = OsmStore.lat(coordinates);
+            lons[count] = OsmStore.lon(coordinates);
+            count++;
+        }
+        if (count == 0) {
+            return;
+        }
+
+        int x0 = Integer.MAX_VALUE;
+        int y0 = Integer.MAX_VALUE;
+        int x1 = Integer.MIN_VALUE;
+        int y1 = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            x0 = Math.min(x0, cellIndex(lons[i]));
+            x1 = Math.max(x1, cellIndex(lons[i]));
+            y0 = Math.min(y0, cellIndex(lats[i]));
+            y1 = Math.max(y1, cellIndex(lats[i]));
+        }
+
+        long typedId = OsmStore.typedId(id, OsmPrimitiveType.WAY);
+
+        if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) <= MAX_BBOX_CELLS) {
+            for (int y = y0; y <= y1; y++) {
+                for (int x = x0; x <= x1; x++) {
+                    this.grid.add(OsmStore.cellKey(x, y), typedId);
+                }
+            }
+            return;
+        }
+
+        // points along segments, in steps shorter than cell
+        double step = this.cellSize / 4;
+        this.grid.add(OsmStore.cellKey(cellIndex(lons[0]), cellIndex(lats[0])), typedId);
+        for (int i = 1; i < count; i++) {
+            double dLon = lons[i] - lons[i - 1];
+            double dLat = lats[i] - lats[i - 1];
+            int steps = (int) Math.ceil(Math.max(Math.abs(dLon), Math.abs(dLat)) / step);
+            for (int s = 1; s <= steps; s++) {
+                double lon = lons[i - 1] + dLon * s / steps;
+                double lat = lats[i - 1] + dLat * s / steps;
+                this.grid.add(OsmStore.cellKey(cellIndex(lon), cellIndex(lat)), typedId);
+            }
+        }
+    }
+
+    private void indexNode(long id) throws IOException {
+        long record = this.nodesIndex.find(id);
+        if (record < 0) {
+            // not in extract
+            return;
+        }
+        long coordinates = this.nodesIndex.value(record);
+        this.grid.add(OsmStore.cellKey(cellIndex(OsmStore.lon(coordinates)), cellIndex(OsmStore.lat(coordinates))),
+                OsmStore.typedId(id, OsmPrimitiveType.NODE));
+    }
+
+    @Override
+    public void relation(long id, long[] memberIds, OsmPrimitiveType[] memberTypes, String[] memberRoles,
+            String[] tags) throws IOException {
+        startPhase(PHASE_RELATIONS, id);
+
+        this.relations.writeLong(id);
+        this.relations.writeLong(this.dataPos);
+
+        this.data.writeInt(memberIds.length);
+        for (int i = 0; i < memberIds.length; i++) {
+            long typedId = OsmStore.typedId(memberIds[i], memberTypes[i]);
+            this.data.writeLong(typedId);
+            this.data.writeInt(stringId(memberRoles[i]));
+
+            this.members.add(typedId, id);
+
+            if (OsmPrimitiveType.NODE.equals(memberTypes[i])) {
+                // node without tags is taken with relation, like from database
+                indexNode(memberIds[i]);
+            }
+        }
+        this.dataPos += 4 + 12L * memberIds.length;
+        writeTags(tags);
+
+        this.relationCount++;
+    }
+
+    private void startPhase(int newPhase, long id) throws IOException {
+        if (newPhase < this.phase) {
+            throw new IOException("pbf file need to be sorted by type and id");
+        }
+        if (newPhase > this.phase) {
+            if (this.phase == PHASE_NODES) {
+                finishNodes();
+            }
+            this.phase = newPhase;
+            this.lastId = Long.MIN_VALUE;
+        }
+        if (id <= this.lastId) {
+            throw new IOException("pbf file need to be sorted by type and id, id: " + id + " after: "
+                    + this.lastId);
+        }
+        this.lastId = id;
+    }
+
+    private void finishNodes() throws IOException {
+        this.nodes.close();
+        this.nodesIndex = new MappedFile(new File(this.dir, OsmStore.NODES_FILE));
+    }
+
+    private void writeTags(String[] tags) throws IOException {
+        this.data.writeInt(tags.length / 2);
+        for (String s : tags) {
+            this.data.writeInt(stringId(s));
+        }
+        this.dataPos += 4 + 4L * tags.length;
+    }
+
+    private int stringId(String s) throws IOException {
+        Integer id = this.stringIds.get(s);
+        if (id != null) {
+            return id;
+        }
+        id = this.stringCount++;
+        this.stringIds.put(s, id);
+
+        byte[] bytes = s.getBytes(UTF8);
+        this.stringIndex.writeLong(this.stringsPos);
+        this.strings.writeInt(bytes.length);
+        this.strings.write(bytes);
+        this.stringsPos += 4 + bytes.length;
+        return id;
+    }
+
+    private int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / this.cellSize);
+    }
+
+    private void finish() throws IOException {
+        this.grid.writeSorted(new File(this.dir, OsmStore.GRID_FILE));
+        this.members.writeSorted(new File(this.dir, OsmStore.MEMBERS_FILE));
+    }
+
+    private void close() throws IOException {
+        this.nodes.close();
+        this.nodeTags.close();
+        this.ways.close();
+        this.relations.close();
+        this.data.close();
+        this.strings.close();
+        this.stringIndex.close();
+    }
+}
@@ -0,0 +1,19 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.io.IOException;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+
+/**
+ * Receives primitives read from pbf file, in order of file. Tags are given as
+ * array of keys and values: key1, value1, key2, value2...
+ */
+public interface PbfHandler {
+
+    void node(long id, double lat, double lon, String[] tags) throws IOException;
+
+    void way(long id, long[] nodes, String[] tags) throws IOException;
+
+    void relation(long id, long[] memberIds, OsmPrimitiveType[] memberTypes, String[] memberRoles, String[] tags)
+            throws IOException;
+}
@@ -0,0 +1,516 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+
+/**
+ * Streams primitives from OpenStreetMap pbf file. File is read block by
+ * block, so only one block is kept in memory. Metadata of primitives (version,
+ * user, timestamp) is not read.
+ *
+ * @see "http://wiki.openstreetmap.org/wiki/PBF_Format"
+ */
+public class PbfReader {
+
+    /**
+     * Maximal size of blob header allowed by format.
+     */
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    /**
+     * Maximal size of blob allowed by format.
+     */
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private static final Set<String> SUPPORTED_FEATURES = new HashSet<String>(Arrays.asList(
+            "OsmSchema-V0.6", "DenseNodes"));
+
+    private static final String[] NO_TAGS = new String[0];
+
+    private static final OsmPrimitiveType[] MEMBER_TYPES = {
+        OsmPrimitiveType.NODE, OsmPrimitiveType.WAY, OsmPrimitiveType.RELATION };
+
+    private final PbfHandler handler;
+
+    private final LongList keys = new LongList();
+    private final LongList vals = new LongList();
+    private final LongList values = new LongList();
+    private final LongList ids = new LongList();
+    private final LongList lats = new LongList();
+    private final LongList lons = new LongList();
+    private final LongList types = new LongList();
+
+    /**
+     * @param handler receiver of primitives
+     */
+    public PbfReader(PbfHandler handler) {
+        super();
+        this.handler = handler;
+    }
+
+    /**
+     * Reads all primitives from stream.
+     *
+     * @param in stream of pbf file
+     * @throws IOException
+     */
+    public void read(InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+
+        while (true) {
+            int headerSize;
+            try {
+                headerSize = din.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+                throw new IOException("wrong size of blob header: " + headerSize);
+            }
+            byte[] header = new byte[headerSize];
+            din.readFully(header);
+
+            String type = null;
+            int dataSize = 0;
+            ProtobufInput h = new ProtobufInput(header);
+            while (h.hasMore()) {
+                int tag = h.readTag();
+                switch (tag >>> 3) {
+                case 1:
+                    type = h.readString();
+                    break;
+                case 3:
+                    dataSize = (int) h.readVarint();
+                    break;
+                default:
+                    h.skip(tag & 7);
+                }
+            }
+            if (dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+                throw new IOException("wrong size of blob: " + dataSize);
+            }
+            byte[] blob = new byte[dataSize];
+            din.readFully(blob);
+
+            if ("OSMHeader".equals(type)) {
+                readHeader(readBlob(blob));
+            } else if ("OSMData".equals(type)) {
+                readBlock(readBlob(blob));
+            }
+            // unknown blobs are skipped
+        }
+    }
+
+    private static byte[] readBlob(byte[] blob) throws IOException {
+        byte[] raw = null;
+        byte[] zlib = null;
+        int rawSize = 0;
+
+        ProtobufInput in = new ProtobufInput(blob);
+        while (in.hasMore()) {
+            int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1:
+                raw = in.readBytes();
+                break;
+            case 2:
+                rawSize = (int) in.readVarint();
+                break;
+            case 3:
+                zlib = in.readBytes();
+                break;
+            case 4:
+                throw new IOException("lzma compressed blobs are not supported");
+            default:
+                in.skip(tag & 7);
+            }
+        }
+
+        if (raw != null) {
+            return raw;
+        }
+        if (zlib == null) {
+            throw new IOException("blob without data");
+        }
+        if (rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+            throw new IOException("wrong raw size of blob: " + rawSize);
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+            byte[] ret = new byte[rawSize];
+            int length = inflater.inflate(ret);
+            if (length != rawSize || !inflater.finished()) {
+                throw new IOException("wrong size of inflated blob: " + length + " expected: " + rawSize);
+            }
+            return ret;
+        } catch (DataFormatException e) {
+            throw new IOException("can't inflate blob: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void readHeader(byte[] data) throws IOException {
+        ProtobufInput in = new ProtobufInput(data);
+        while (in.hasMore()) {
+            int tag = in.readTag();
+            if (tag >>> 3 == 4) {
+                String feature = in.readString();
+                if (!SUPPORTED_FEATURES.contains(feature)) {
+                    throw new IOException("not supported feature of pbf file: " + feature);
+                }
+            } else {
+                in.skip(tag & 7);
+            }
+        }
+    }
+
+    private void readBlock(byte[] data) throws IOException {
+        Block block = new Block();
+        List<ProtobufInput> groups = new ArrayList<ProtobufInput>();
+
+        ProtobufInput in = new ProtobufInput(data);
+        while (in.hasMore()) {
+            int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1:
+                block.strings = readStringTable(in.readMessage());
+                break;
+            case 2:
+                // granularity can be after groups
+                groups.add(in.readMessage());
+                break;
+            case 17:
+                block.granularity = in.readVarint();
+                break;
+            case 19:
+                block.latOffset = in.readVarint();
+                break;
+            case 20:
+                block.lonOffset = in.readVarint();
+                break;
+            default:
+                in.skip(tag & 7);
+            }
+        }
+        if (block.strings == null) {
+            block.strings = new String[] { "" };
+        }
+
+        for (ProtobufInput group : groups) {
+            while (group.hasMore()) {
+                int tag = group.readTag();
+                switch (tag >>> 3) {
+                case 1:
+                    readNode(group.readMessage(), block);
+                    break;
+                case 2:
+                    readDenseNodes(group.readMessage(), block);
+                    break;
+                case 3:
+                    readWay(group.readMessage(), block);
+                    break;
+                case 4:
+                    readRelation(group.readMessage(), block);
+                    break;
+                default:
+                    group.skip(tag & 7);
+                }
+            }
+        }
+    }
+
+    private static String[] readStringTable(ProtobufInput in) {
+        List<String> ret = new ArrayList<String>();
+        while (in.hasMore()) {
+            int tag = in.readTag();
+            if (tag >>> 3 == 1) {
+                ret.add(in.readString());
+            } else {
+                in.skip(tag & 7);
+            }
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+
+    private void readNode(ProtobufInput in, Block block) throws IOException {
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        this.keys.clear();
+        this.vals.clear();
+
+        while (in.hasMore()) {
+            int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1:
+                id = in.readSignedVarint();
+                break;
+            case 2:
+                readVarints(in, tag & 7, this.keys, false);
+                break;
+            case 3:
+                readVarints(in, tag & 7, this.vals, false);
+                break;
+            case 8:
+                lat = in.readSignedVarint();
+                break;
+            case 9:
+                lon = in.readSignedVarint();
+                break;
+            default:
+                in.skip(tag & 7);
+            }
+        }
+
+        this.handler.node(id, block.lat(lat), block.lon(lon), tags(this.keys, this.vals, block));
+    }
+
+    private void readDenseNodes(ProtobufInput in, Block block) throws IOException {
+        this.ids.clear();
+        this.lats.clear();
+        this.lons.clear();
+        this.values.clear();
+
+        while (in.hasMore()) {
+            int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1:
+                readVarints(in, tag & 7, this.ids, true);
+                break;
+            case 8:
+                readVarints(in, tag & 7, this.lats, true);
+                break;
+            case 9:
+                readVarints(in, tag & 7, this.lons, true);
+                break;
+            case 10:
+                readVarints(in, tag & 7, this.values, false);
+                break;
+            default:
+                in.skip(tag & 7);
+            }
+        }
+        if (this.lats.size() != this.ids.size() || this.lons.size() != this.ids.size()) {
+            throw new IOException("wrong number of coordinates of dense nodes");
+        }
+
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        // keys and values of all nodes, each node ends with 0
+        int kv = 0;
+        for (int i = 0; i < this.ids.size(); i++) {
+            id += this.ids.get(i);
+            lat += this.lats.get(i);
+            lon += this.lons.get(i);
+
+            String[] tags = NO_TAGS;
+            if (kv < this.values.size()) {
+                int start = kv;
+                while (kv < this.values.size() && this.values.get(kv) != 0) {
+                    kv += 2;
+                }
+                if (kv > start) {
+                    tags = new String[kv - start];
+                    for (int j = 0; j < tags.length; j++) {
+                        tags[j] = block.string(this.values.get(start + j));
+                    }
+                }
+                // skips delimiter
+                kv++;
+            }
+
+            this.handler.node(id, block.lat(lat), block.lon(lon), tags);
+        }
+    }
+
+    private void readWay(ProtobufInput in, Block block) throws IOException {
+        long id = 0;
+        this.keys.clear();
+        this.vals.clear();
+        this.ids.clear();
+
+        while (in.hasMore()) {
+            int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1:
+                id = in.readVarint();
+                break;
+            case 2:
+                readVarints(in, tag & 7, this.keys, false);
+                break;
+            case 3:
+                readVarints(in, tag & 7, this.vals, false);
+                break;
+            case 8:
+                readVarints(in, tag & 7, this.ids, true);
+                break;
+            default:
+                in.skip(tag & 7);
+            }
+        }
+
+        long[] nodes = new long[this.ids.size()];
+        long ref = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            ref += this.ids.get(i);
+            nodes[i] = ref;
+        }
+
+        this.handler.way(id, nodes, tags(this.keys, this.vals, block));
+    }
+
+    private void readRelation(ProtobufInput in, Block block) throws IOException {
+        long id = 0;
+        this.keys.clear();
+        this.vals.clear();
+        this.values.clear();
+        this.ids.clear();
+        this.types.clear();
+
+        while (in.hasMore()) {
+            int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1:
+                id = in.readVarint();
+                break;
+            case 2:
+                readVarints(in, tag & 7, this.keys, false);
+                break;
+            case 3:
+                readVarints(in, tag & 7, this.vals, false);
+                break;
+            case 8:
+                readVarints(in, tag & 7, this.values, false);
+                break;
+            case 9:
+                readVarints(in, tag & 7, this.ids, true);
+                break;
+            case 10:
+                readVarints(in, tag & 7, this.types, false);
+                break;
+            default:
+                in.skip(tag & 7);
+            }
+        }
+
+        int count = this.ids.size();
+        if (this.values.size() != count || this.types.size() != count) {
+            throw new IOException("wrong number of members of relation: " + id);
+        }
+
+        long[] memberIds = new long[count];
+        OsmPrimitiveType[] memberTypes = new OsmPrimitiveType[count];
+        String[] memberRoles = new String[count];
+        long memberId = 0;
+        for (int i = 0; i < count; i++) {
+            memberId += this.ids.get(i);
+            memberIds[i] = memberId;
+
+            int type = (int) this.types.get(i);
+            if (type < 0 || type >= MEMBER_TYPES.length) {
+                throw new IOException("unknown type of member: " + type + " of relation: " + id);
+            }
+            memberTypes[i] = MEMBER_TYPES[type];
+            memberRoles[i] = block.string(this.values.get(i));
+        }
+
+        this.handler.relation(id, memberIds, memberTypes, memberRoles, tags(this.keys, this.vals, block));
+    }
+
+    private static String[] tags(LongList keys, LongList vals, Block block) throws IOException {
+        if (keys.size() != vals.size()) {
+            throw new IOException("wrong number of tag values");
+        }
+        if (keys.size() == 0) {
+            return NO_TAGS;
+        }
+        String[] ret = new String[2 * keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            ret[2 * i] = block.string(keys.get(i));
+            ret[2 * i + 1] = block.string(vals.get(i));
+        }
+        return ret;
+    }
+
+    /**
+     * Reads repeated varint field, packed or not.
+     */
+    private static void readVarints(ProtobufInput in, int wireType, LongList out, boolean signed) {
+        if (wireType == ProtobufInput.WIRE_LENGTH_DELIMITED) {
+            ProtobufInput packed = in.readMessage();
+            while (packed.hasMore()) {
+                out.add(signed ? packed.readSignedVarint() : packed.readVarint());
+            }
+        } else {
+            out.add(signed ? in.readSignedVarint() : in.readVarint());
+        }
+    }
+
+    /**
+     * Parameters of primitive block.
+     */
+    private static class Block {
+        String[] strings;
+        long granularity = 100;
+        long latOffset;
+        long lonOffset;
+
+        double lat(long lat) {
+            return 0.000000001d * (this.latOffset + this.granularity * lat);
+        }
+
+        double lon(long lon) {
+            return 0.000000001d * (this.lonOffset + this.granularity * lon);
+        }
+
+        String string(long index) throws IOException {
+            if (index < 0 || index >= this.strings.length) {
+                throw new IOException("wrong index of string: " + index);
+            }
+            return this.strings[(int) index];
+        }
+    }
+
+    /**
+     * Growable array of longs, reused between primitives.
+     */
+    private static class LongList {
+        private long[] values = new long[256];
+        private int size;
+
+        void add(long v) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, 2 * this.size);
+            }
+            this.values[this.size++] = v;
+        }
+
+        long get(int i) {
+            return this.values[i];
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        void clear() {
+            this.size = 0;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.nio.charset.Charset;
+
+/**
+ * Reads protocol buffers wire format from byte array. Only what is needed to
+ * read pbf files: varints, fixed size fields and length delimited fields.
+ */
+class ProtobufInput {
+
+    static final int WIRE_VARINT = 0;
+    static final int WIRE_FIXED64 = 1;
+    static final int WIRE_LENGTH_DELIMITED = 2;
+    static final int WIRE_FIXED32 = 5;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final byte[] buf;
+
+    private int pos;
+
+    private final int limit;
+
+    ProtobufInput(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    ProtobufInput(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    boolean hasMore() {
+        return this.pos < this.limit;
+    }
+
+    /**
+     * @return tag of next field, field number is tag >>> 3 and wire type is
+     *         tag & 7
+     */
+    int readTag() {
+        return (int) readVarint();
+    }
+
+    long readVarint() {
+        long ret = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (this.pos >= this.limit) {
+                throw new RuntimeException("truncated protobuf message");
+            }
+            byte b = this.buf[this.pos++];
+            ret |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return ret;
+            }
+        }
+        throw new RuntimeException("malformed varint");
+    }
+
+    /**
+     * @return zigzag encoded signed varint
+     */
+    long readSignedVarint() {
+        long v = readVarint();
+        return v >>> 1 ^ -(v & 1);
+    }
+
+    private int readLength() {
+        int length = (int) readVarint();
+        if (length < 0 || this.pos + length > this.limit) {
+            throw new RuntimeException("wrong length of protobuf field: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * @return embedded message or packed repeated field
+     */
+    ProtobufInput readMessage() {
+        int length = readLength();
+        ProtobufInput ret = new ProtobufInput(this.buf, this.pos, length);
+        this.pos += length;
+        return ret;
+    }
+
+    String readString() {
+        int length = readLength();
+        String ret = new String(this.buf, this.pos, length, UTF8);
+        this.pos += length;
+        return ret;
+    }
+
+    byte[] readBytes() {
+        int length = readLength();
+        byte[] ret = new byte[length];
+        System.arraycopy(this.buf, this.pos, ret, 0, length);
+        this.pos += length;
+        return ret;
+    }
+
+    void skip(int wireType) {
+        switch (wireType) {
+        case WIRE_VARINT:
+            readVarint();
+            break;
+        case WIRE_FIXED64:
+            this.pos += 8;
+            break;
+        case WIRE_LENGTH_DELIMITED:
+            this.pos += readLength();
+            break;
+        case WIRE_FIXED32:
+            this.pos += 4;
+            break;
+        default:
+            throw new RuntimeException("unsupported wire type: " + wireType);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts records of key and value by key and value. Records are collected in
+ * memory in runs of limited size, each full run is sorted and saved in
+ * temporary file. At the end runs are merged into output file.
+ */
+class RecordSorter {
+
+    /**
+     * Number of records in one run, 32 MB of memory.
+     */
+    private static final int RUN_SIZE = 2 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File tempDir;
+
+    private final String name;
+
+    private final int runSize;
+
+    private long[] run;
+
+    private int size;
+
+    private final List<File> runFiles = new ArrayList<File>();
+
+    /**
+     * @param tempDir directory for temporary files
+     * @param name prefix of temporary files
+     */
+    RecordSorter(File tempDir, String name) {
+        this(tempDir, name, RUN_SIZE);
+    }
+
+    /**
+     * @param tempDir directory for temporary files
+     * @param name prefix of temporary files
+     * @param runSize number of records in one run
+     */
+    RecordSorter(File tempDir, String name, int runSize) {
+        this.tempDir = tempDir;
+        this.name = name;
+        this.runSize = runSize;
+        this.run = new long[2 * runSize];
+    }
+
+    void add(long key, long value) throws IOException {
+        if (this.size == this.runSize) {
+            this.runFiles.add(saveRun());
+        }
+        this.run[2 * this.size] = key;
+        this.run[2 * this.size + 1] = value;
+        this.size++;
+    }
+
+    private File saveRun() throws IOException {
+        sort(this.run, 0, this.size - 1);
+
+        File file = new File(this.tempDir, this.name + "." + this.runFiles.size() + ".tmp");
+        writeRun(file);
+        this.size = 0;
+        return file;
+    }
+
+    private void writeRun(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                BUFFER_SIZE));
+        try {
+            long lastKey = 0;
+            long lastValue = 0;
+            for (int i = 0; i < this.size; i++) {
+                long key = this.run[2 * i];
+                long value = this.run[2 * i + 1];
+                if (i > 0 && key == lastKey && value == lastValue) {
+                    // duplicate
+                    continue;
+                }
+                out.writeLong(key);
+                out.writeLong(value);
+                lastKey = key;
+                lastValue = value;
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes all sorted records to file, duplicated records are written once.
+     *
+     * @param file output file
+     * @throws IOException
+     */
+    void writeSorted(File file) throws IOException {
+        if (this.runFiles.isEmpty()) {
+            sort(this.run, 0, this.size - 1);
+            writeRun(file);
+            this.run = null;
+            return;
+        }
+        if (this.size > 0) {
+            this.runFiles.add(saveRun());
+        }
+        this.run = null;
+
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(this.runFiles.size(), RUN_ORDER);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                BUFFER_SIZE));
+        try {
+            for (File runFile : this.runFiles) {
+                RunReader reader = new RunReader(runFile);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            boolean first = true;
+            long lastKey = 0;
+            long lastValue = 0;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                if (first || reader.key != lastKey || reader.value != lastValue) {
+                    out.writeLong(reader.key);
+                    out.writeLong(reader.value);
+                    lastKey = reader.key;
+                    lastValue = reader.value;
+                    first = false;
+                }
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            out.close();
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+            for (File runFile : this.runFiles) {
+                runFile.delete();
+            }
+        }
+    }
+
+    private static int compare(long key1, long value1, long key2, long value2) {
+        if (key1 != key2) {
+            return key1 < key2 ? -1 : 1;
+        }
+        if (value1 != value2) {
+            return value1 < value2 ? -1 : 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Quicksort of records stored in pairs of array elements.
+     */
+    private static void sort(long[] a, int low, int high) {
+        while (low < high) {
+            int mid = low + high >>> 1;
+            long pivotKey = a[2 * mid];
+            long pivotValue = a[2 * mid + 1];
+
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(a[2 * i], a[2 * i + 1], pivotKey, pivotValue) < 0) {
+                    i++;
+                }
+                while (compare(a[2 * j], a[2 * j + 1], pivotKey, pivotValue) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(a, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // recursion for smaller part, loop for bigger part
+            if (j - low < high - i) {
+                sort(a, low, j);
+                low = i;
+            } else {
+                sort(a, i, high);
+                high = j;
+            }
+        }
+    }
+
+    private static void swap(long[] a, int i, int j) {
+        long key = a[2 * i];
+        long value = a[2 * i + 1];
+        a[2 * i] = a[2 * j];
+        a[2 * i + 1] = a[2 * j + 1];
+        a[2 * j] = key;
+        a[2 * j + 1] = value;
+    }
+
+    private static final Comparator<RunReader> RUN_ORDER = new Comparator<RunReader>() {
+        @Override
+        public int compare(RunReader r1, RunReader r2) {
+            return RecordSorter.compare(r1.key, r1.value, r2.key, r2.value);
+        }
+    };
+
+    /**
+     * Reads records of one sorted run.
+     */
+    private static class RunReader {
+        private final DataInputStream in;
+        long key;
+        long value;
+
+        RunReader(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        }
+
+        boolean next() throws IOException {
+            try {
+                this.key = this.in.readLong();
+                this.value = this.in.readLong();
+                return true;
+            } catch (EOFException e) {
+                close();
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                this.in.close();
+            } catch (IOException e) {
+                // ignored
+            }
+        }
+    }
+}
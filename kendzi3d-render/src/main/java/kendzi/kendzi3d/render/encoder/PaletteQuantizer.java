@@ -0,0 +1,221 @@
+package kendzi.kendzi3d.render.encoder;
+
+import java.util.Arrays;
+
+/**
+ * Creates palette of up to 256 colors for image. When image has no more than
+ * 256 colors palette is exact. Otherwise colors are grouped in buckets of 4
+ * bits per channel and the most popular buckets become palette, each pixel
+ * gets color of the nearest palette entry.
+ *
+ * Buffers are reused, so one quantizer can't be used by many threads at once.
+ */
+public class PaletteQuantizer {
+
+    /**
+     * Maximal number of palette colors.
+     */
+    public static final int MAX_COLORS = 256;
+
+    private static final int BUCKETS = 1 << 16;
+
+    /**
+     * Open addressing hash of exact colors, size is power of two.
+     */
+    private final int[] hashColors = new int[4 * MAX_COLORS];
+
+    private final int[] hashIndexes = new int[4 * MAX_COLORS];
+
+    private final boolean[] hashUsed = new boolean[4 * MAX_COLORS];
+
+    private final int[] bucketCount = new int[BUCKETS];
+
+    private final int[] bucketA = new int[BUCKETS];
+
+    private final int[] bucketR = new int[BUCKETS];
+
+    private final int[] bucketG = new int[BUCKETS];
+
+    private final int[] bucketB = new int[BUCKETS];
+
+    private final int[] bucketIndex = new int[BUCKETS];
+
+    /**
+     * Calculates palette and palette indexes of pixels.
+     *
+     * @param argb pixels
+     * @param length number of pixels
+     * @param indices output, palette index of each pixel
+     * @param palette output, palette colors, at least 256 elements
+     * @return number of colors in palette
+     */
+    public int quantize(int[] argb, int length, byte[] indices, int[] palette) {
+        int colors = exact(argb, length, indices, palette);
+        if (colors >= 0) {
+            return colors;
+        }
+        return popular(argb, length, indices, palette);
+    }
+
+    /**
+     * @return number of colors or -1 when image has more than 256 colors
+     */
+    private int exact(int[] argb, int length, byte[] indices, int[] palette) {
+        Arrays.fill(this.hashUsed, false);
+        int mask = this.hashColors.length - 1;
+        int colors = 0;
+
+        for (int i = 0; i < length; i++) {
+            int c = normalize(argb[i]);
+
+            int h = hash(c) & mask;
+            while (this.hashUsed[h] && this.hashColors[h] != c) {
+                h = (h + 1) & mask;
+            }
+            if (!this.hashUsed[h]) {
+                if (colors == MAX_COLORS) {
+                    return -1;
+                }
+                this.hashUsed[h] = true;
+                this.hashColors[h] = c;
+                this.hashIndexes[h] = colors;
+                palette[colors] = c;
+                colors++;
+            }
+            indices[i] = (byte) this.hashIndexes[h];
+        }
+        return colors;
+    }
+
+    private int popular(int[] argb, int length, byte[] indices, int[] palette) {
+        Arrays.fill(this.bucketCount, 0);
+        Arrays.fill(this.bucketA, 0);
+        Arrays.fill(this.bucketR, 0);
+        Arrays.fill(this.bucketG, 0);
+        Arrays.fill(this.bucketB, 0);
+
+        for (int i = 0; i < length; i++) {
+            int c = normalize(argb[i]);
+            int b = bucket(c);
+            this.bucketCount[b]++;
+            this.bucketA[b] += c >>> 24;
+            this.bucketR[b] += (c >> 16) & 0xff;
+            this.bucketG[b] += (c >> 8) & 0xff;
+            this.bucketB[b] += c & 0xff;
+        }
+
+        // min heap of the most popular buckets
+        int[] heap = new int[MAX_COLORS];
+        int heapSize = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            int count = this.bucketCount[b];
+            if (count == 0) {
+                continue;
+            }
+            if (heapSize < MAX_COLORS) {
+                heap[heapSize] = b;
+                siftUp(heap, heapSize);
+                heapSize++;
+            } else if (count > this.bucketCount[heap[0]]) {
+                heap[0] = b;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        for (int i = 0; i < heapSize; i++) {
+            int b = heap[i];
+            int n = this.bucketCount[b];
+            palette[i] = ((this.bucketA[b] + n / 2) / n) << 24
+                    | ((this.bucketR[b] + n / 2) / n) << 16
+                    | ((this.bucketG[b] + n / 2) / n) << 8
+                    | ((this.bucketB[b] + n / 2) / n);
+        }
+
+        for (int b = 0; b < BUCKETS; b++) {
+            if (this.bucketCount[b] > 0) {
+                int n = this.bucketCount[b];
+                int c = ((this.bucketA[b] + n / 2) / n) << 24
+                        | ((this.bucketR[b] + n / 2) / n) << 16
+                        | ((this.bucketG[b] + n / 2) / n) << 8
+                        | ((this.bucketB[b] + n / 2) / n);
+                this.bucketIndex[b] = nearest(c, palette, heapSize);
+            }
+        }
+
+        for (int i = 0; i < length; i++) {
+            indices[i] = (byte) this.bucketIndex[bucket(normalize(argb[i]))];
+        }
+        return heapSize;
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (this.bucketCount[heap[parent]] <= this.bucketCount[heap[i]]) {
+                return;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int min = i;
+            int l = 2 * i + 1;
+            int r = l + 1;
+            if (l < size && this.bucketCount[heap[l]] < this.bucketCount[heap[min]]) {
+                min = l;
+            }
+            if (r < size && this.bucketCount[heap[r]] < this.bucketCount[heap[min]]) {
+                min = r;
+            }
+            if (min == i) {
+                return;
+            }
+            swap(heap, i, min);
+            i = min;
+        }
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    private static int nearest(int c, int[] palette, int colors) {
+        int best = 0;
+        int bestDist = Integer.MAX_VALUE;
+        for (int i = 0; i < colors; i++) {
+            int p = palette[i];
+            int da = (c >>> 24) - (p >>> 24);
+            int dr = ((c >> 16) & 0xff) - ((p >> 16) & 0xff);
+            int dg = ((c >> 8) & 0xff) - ((p >> 8) & 0xff);
+            int db = (c & 0xff) - (p & 0xff);
+            int dist = da * da + dr * dr + dg * dg + db * db;
+            if (dist < bestDist) {
+                bestDist = dist;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * All fully transparent pixels have the same color.
+     */
+    private static int normalize(int c) {
+        return (c >>> 24) == 0 ? 0 : c;
+    }
+
+    private static int bucket(int c) {
+        return ((c >>> 28) << 12) | (((c >> 20) & 0xf) << 8) | (((c >> 12) & 0xf) << 4) | ((c >> 4) & 0xf);
+    }
+
+    private static int hash(int c) {
+        c *= 0x9E3779B9;
+        return c ^ (c >>> 16);
+    }
+}
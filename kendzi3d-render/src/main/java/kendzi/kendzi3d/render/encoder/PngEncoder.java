@@ -0,0 +1,246 @@
+package kendzi.kendzi3d.render.encoder;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Simple png encoder with configurable compression level. Buffers are reused
+ * between images, so one encoder can't be used by many threads at once.
+ *
+ * Rows of RGBA images are encoded with "up" filter, palette images without
+ * filter.
+ */
+public class PngEncoder {
+
+    private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+    private static final int COLOR_TYPE_PALETTE = 3;
+
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    private static final int FILTER_NONE = 0;
+
+    private static final int FILTER_UP = 2;
+
+    private final Deflater deflater;
+
+    private final CRC32 crc = new CRC32();
+
+    private byte[] out = new byte[64 * 1024];
+
+    private int size;
+
+    private byte[] row = new byte[0];
+
+    private byte[] prevRow = new byte[0];
+
+    private byte[] filteredRow = new byte[0];
+
+    /**
+     * @param compressionLevel deflate level, 0 - 9
+     */
+    public PngEncoder(int compressionLevel) {
+        if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new RuntimeException("wrong png compression level: " + compressionLevel);
+        }
+        this.deflater = new Deflater(compressionLevel);
+    }
+
+    /**
+     * Encodes RGBA image.
+     *
+     * @param argb pixels in ARGB order, rows from top
+     * @param width width
+     * @param height height
+     * @return png image
+     */
+    public byte[] encode(int[] argb, int width, int height) {
+        start(width, height, COLOR_TYPE_RGBA);
+
+        int rowLength = width * 4;
+        ensureRows(rowLength);
+        Arrays.fill(this.prevRow, 0, rowLength, (byte) 0);
+
+        int idat = startIdat();
+        for (int y = 0; y < height; y++) {
+            int p = y * width;
+            for (int x = 0, i = 0; x < width; x++, i += 4) {
+                int c = argb[p + x];
+                this.row[i] = (byte) (c >> 16);
+                this.row[i + 1] = (byte) (c >> 8);
+                this.row[i + 2] = (byte) c;
+                this.row[i + 3] = (byte) (c >>> 24);
+            }
+
+            this.filteredRow[0] = FILTER_UP;
+            for (int i = 0; i < rowLength; i++) {
+                this.filteredRow[i + 1] = (byte) (this.row[i] - this.prevRow[i]);
+            }
+            deflate(this.filteredRow, rowLength + 1);
+
+            byte[] tmp = this.prevRow;
+            this.prevRow = this.row;
+            this.row = tmp;
+        }
+        endIdat(idat);
+
+        return finish();
+    }
+
+    /**
+     * Encodes palette image.
+     *
+     * @param indices indexes of palette colors, rows from top
+     * @param palette palette colors in ARGB order
+     * @param colors number of colors in palette, up to 256
+     * @param width width
+     * @param height height
+     * @return png image
+     */
+    public byte[] encode(byte[] indices, int[] palette, int colors, int width, int height) {
+        start(width, height, COLOR_TYPE_PALETTE);
+
+        int chunk = startChunk("PLTE");
+        for (int i = 0; i < colors; i++) {
+            ensure(3);
+            this.out[this.size++] = (byte) (palette[i] >> 16);
+            this.out[this.size++] = (byte) (palette[i] >> 8);
+            this.out[this.size++] = (byte) palette[i];
+        }
+        endChunk(chunk);
+
+        int lastTransparent = -1;
+        for (int i = 0; i < colors; i++) {
+            if (palette[i] >>> 24 != 0xff) {
+                lastTransparent = i;
+            }
+        }
+        if (lastTransparent >= 0) {
+            chunk = startChunk("tRNS");
+            ensure(lastTransparent + 1);
+            for (int i = 0; i <= lastTransparent; i++) {
+                this.out[this.size++] = (byte) (palette[i] >>> 24);
+            }
+            endChunk(chunk);
+        }
+
+        ensureRows(width);
+
+        int idat = startIdat();
+        for (int y = 0; y < height; y++) {
+            this.filteredRow[0] = FILTER_NONE;
+            System.arraycopy(indices, y * width, this.filteredRow, 1, width);
+            deflate(this.filteredRow, width + 1);
+        }
+        endIdat(idat);
+
+        return finish();
+    }
+
+    private void start(int width, int height, int colorType) {
+        this.size = 0;
+        ensure(SIGNATURE.length);
+        System.arraycopy(SIGNATURE, 0, this.out, 0, SIGNATURE.length);
+        this.size = SIGNATURE.length;
+
+        int chunk = startChunk("IHDR");
+        writeInt(width);
+        writeInt(height);
+        ensure(5);
+        // bit depth
+        this.out[this.size++] = 8;
+        this.out[this.size++] = (byte) colorType;
+        // compression, filter, interlace
+        this.out[this.size++] = 0;
+        this.out[this.size++] = 0;
+        this.out[this.size++] = 0;
+        endChunk(chunk);
+    }
+
+    private byte[] finish() {
+        endChunk(startChunk("IEND"));
+        return Arrays.copyOf(this.out, this.size);
+    }
+
+    private int startIdat() {
+        this.deflater.reset();
+        return startChunk("IDAT");
+    }
+
+    private void endIdat(int chunk) {
+        this.deflater.finish();
+        while (!this.deflater.finished()) {
+            deflateToOut();
+        }
+        endChunk(chunk);
+    }
+
+    private void deflate(byte[] data, int length) {
+        this.deflater.setInput(data, 0, length);
+        while (!this.deflater.needsInput()) {
+            deflateToOut();
+        }
+    }
+
+    private void deflateToOut() {
+        ensure(8 * 1024);
+        this.size += this.deflater.deflate(this.out, this.size, this.out.length - this.size);
+    }
+
+    /**
+     * Writes length placeholder and type of chunk.
+     *
+     * @return position of chunk start
+     */
+    private int startChunk(String type) {
+        int start = this.size;
+        writeInt(0);
+        ensure(4);
+        for (int i = 0; i < 4; i++) {
+            this.out[this.size++] = (byte) type.charAt(i);
+        }
+        return start;
+    }
+
+    /**
+     * Writes length of chunk data and crc.
+     */
+    private void endChunk(int start) {
+        int length = this.size - start - 8;
+        putInt(start, length);
+
+        this.crc.reset();
+        this.crc.update(this.out, start + 4, length + 4);
+        writeInt((int) this.crc.getValue());
+    }
+
+    private void writeInt(int v) {
+        ensure(4);
+        putInt(this.size, v);
+        this.size += 4;
+    }
+
+    private void putInt(int pos, int v) {
+        this.out[pos] = (byte) (v >>> 24);
+        this.out[pos + 1] = (byte) (v >>> 16);
+        this.out[pos + 2] = (byte) (v >>> 8);
+        this.out[pos + 3] = (byte) v;
+    }
+
+    private void ensure(int bytes) {
+        if (this.size + bytes > this.out.length) {
+            this.out = Arrays.copyOf(this.out, Math.max(this.out.length * 2, this.size + bytes));
+        }
+    }
+
+    private void ensureRows(int rowLength) {
+        if (this.row.length < rowLength) {
+            this.row = new byte[rowLength];
+            this.prevRow = new byte[rowLength];
+        }
+        if (this.filteredRow.length < rowLength + 1) {
+            this.filteredRow = new byte[rowLength + 1];
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package kendzi.kendzi3d.render.encoder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.media.opengl.GL;
+
+/**
+ * Reads pixels of rendered tile from GL buffer and encodes them. Buffers are
+ * allocated once and reused for each tile, so every render worker needs its
+ * own encoder.
+ */
+public class TileEncoder {
+
+    private final TileFormat format;
+
+    private final int pngCompression;
+
+    private final float jpegQuality;
+
+    private ByteBuffer readBuffer;
+
+    private int[] pixels;
+
+    private byte[] indices;
+
+    private final int[] palette = new int[PaletteQuantizer.MAX_COLORS];
+
+    private PngEncoder pngEncoder;
+
+    private PaletteQuantizer paletteQuantizer;
+
+    private BufferedImage rgbImage;
+
+    private final ByteArrayOutputStream jpegOut = new ByteArrayOutputStream(32 * 1024);
+
+    /**
+     * Encoded fully transparent image, the same array is returned for every
+     * empty tile.
+     */
+    private byte[] emptyImage;
+
+    private int emptyWidth;
+
+    private int emptyHeight;
+
+    /**
+     * @param format output format
+     * @param pngCompression deflate level of png, 0 - 9
+     * @param jpegQuality quality of jpeg, 0 - 100
+     */
+    public TileEncoder(TileFormat format, int pngCompression, int jpegQuality) {
+        this.format = format;
+        this.pngCompression = pngCompression;
+        this.jpegQuality = jpegQuality / 100f;
+    }
+
+    /**
+     * Reads pixels from current read buffer of GL context.
+     *
+     * @param gl gl
+     * @param width width
+     * @param height height
+     * @return pixels in ARGB order, rows from top. Array is reused by next
+     *         call
+     */
+    public int[] readPixels(GL gl, int width, int height) {
+        int length = width * height;
+        if (this.readBuffer == null || this.readBuffer.capacity() < length * 4) {
+            this.readBuffer = ByteBuffer.allocateDirect(length * 4).order(ByteOrder.nativeOrder());
+            this.pixels = new int[length];
+        }
+
+        this.readBuffer.clear();
+        gl.glPixelStorei(GL.GL_PACK_ALIGNMENT, 1);
+        gl.glReadPixels(0, 0, width, height, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, this.readBuffer);
+
+        // rows in GL buffer start from bottom
+        for (int y = 0; y < height; y++) {
+            int src = (height - 1 - y) * width * 4;
+            int dst = y * width;
+            for (int x = 0; x < width; x++, src += 4) {
+                int r = this.readBuffer.get(src) & 0xff;
+                int g = this.readBuffer.get(src + 1) & 0xff;
+                int b = this.readBuffer.get(src + 2) & 0xff;
+                int a = this.readBuffer.get(src + 3) & 0xff;
+                this.pixels[dst + x] = a << 24 | r << 16 | g << 8 | b;
+            }
+        }
+        return this.pixels;
+    }
+
+    /**
+     * Encodes image in configured format.
+     *
+     * @param argb pixels in ARGB order, rows from top
+     * @param width width
+     * @param height height
+     * @return encoded image
+     */
+    public byte[] encode(int[] argb, int width, int height) {
+        if (isEmpty(argb, width * height)) {
+            return getEmptyImage(width, height);
+        }
+
+        switch (this.format) {
+        case PNG:
+            return getPngEncoder().encode(argb, width, height);
+        case PNG8:
+            return encodePalette(argb, width, height);
+        case JPEG:
+            return encodeJpeg(argb, width, height);
+        default:
+            throw new RuntimeException("unsupported tile format: " + this.format);
+        }
+    }
+
+    /**
+     * @param width width
+     * @param height height
+     * @return encoded fully transparent image, the same array for every call
+     *         with the same size
+     */
+    public byte[] getEmptyImage(int width, int height) {
+        if (this.emptyImage == null || this.emptyWidth != width || this.emptyHeight != height) {
+            int[] empty = new int[width * height];
+            // palette png with one transparent color is the smallest
+            this.emptyImage = this.format == TileFormat.JPEG
+                    ? encodeJpeg(empty, width, height)
+                    : encodePalette(empty, width, height);
+            this.emptyWidth = width;
+            this.emptyHeight = height;
+        }
+        return this.emptyImage;
+    }
+
+    private static boolean isEmpty(int[] argb, int length) {
+        for (int i = 0; i < length; i++) {
+            if (argb[i] >>> 24 != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] encodePalette(int[] argb, int width, int height) {
+        int length = width * height;
+        if (this.indices == null || this.indices.length < length) {
+            this.indices = new byte[length];
+        }
+        if (this.paletteQuantizer == null) {
+            this.paletteQuantizer = new PaletteQuantizer();
+        }
+        int colors = this.paletteQuantizer.quantize(argb, length, this.indices, this.palette);
+
+        return getPngEncoder().encode(this.indices, this.palette, colors, width, height);
+    }
+
+    private byte[] encodeJpeg(int[] argb, int width, int height) {
+        if (this.rgbImage == null || this.rgbImage.getWidth() != width || this.rgbImage.getHeight() != height) {
+            this.rgbImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+
+        // jpeg has no alpha, pixels are blended with white background
+        int[] rgb = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int c = argb[y * width + x];
+                int a = c >>> 24;
+                int r = (((c >> 16) & 0xff) * a + 255 * (255 - a)) / 255;
+                int g = (((c >> 8) & 0xff) * a + 255 * (255 - a)) / 255;
+                int b = ((c & 0xff) * a + 255 * (255 - a)) / 255;
+                rgb[x] = r << 16 | g << 8 | b;
+            }
+            this.rgbImage.setRGB(0, y, width, 1, rgb, 0, width);
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(this.jpegQuality);
+
+            this.jpegOut.reset();
+            ImageOutputStream ios = ImageIO.createImageOutputStream(this.jpegOut);
+            try {
+                writer.setOutput(ios);
+                writer.write(null, new IIOImage(this.rgbImage, null, null), param);
+            } finally {
+                ios.close();
+            }
+            return this.jpegOut.toByteArray();
+
+        } catch (IOException e) {
+            throw new RuntimeException("error encoding jpeg", e);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private PngEncoder getPngEncoder() {
+        if (this.pngEncoder == null) {
+            this.pngEncoder = new PngEncoder(this.pngCompression);
+        }
+        return this.pngEncoder;
+    }
+
+    /**
+     * @return the format
+     */
+    public TileFormat getFormat() {
+        return this.format;
+    }
+}
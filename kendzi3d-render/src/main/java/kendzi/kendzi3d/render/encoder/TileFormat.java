@@ -0,0 +1,63 @@
+package kendzi.kendzi3d.render.encoder;
+
+/**
+ * Output format of rendered tiles.
+ */
+public enum TileFormat {
+
+    /**
+     * Png with RGBA colors.
+     */
+    PNG("image/png"),
+
+    /**
+     * Png with palette of up to 256 colors. When image has more colors they
+     * are quantized.
+     */
+    PNG8("image/png"),
+
+    /**
+     * Jpeg, transparent background is replaced by white.
+     */
+    JPEG("image/jpeg");
+
+    private final String contentType;
+
+    private TileFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return the content type
+     */
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    /**
+     * Recognizes format of encoded image by its first bytes. Png and png8 are
+     * not distinguished, png is returned for both.
+     *
+     * @param image encoded image
+     * @return format of image
+     */
+    public static TileFormat of(byte[] image) {
+        if (image.length >= 2 && (image[0] & 0xff) == 0xff && (image[1] & 0xff) == 0xd8) {
+            return JPEG;
+        }
+        return PNG;
+    }
+
+    /**
+     * @param name name of format, case insensitive
+     * @return format
+     */
+    public static TileFormat parse(String name) {
+        for (TileFormat f : values()) {
+            if (f.name().equalsIgnoreCase(name.trim())) {
+                return f;
+            }
+        }
+        throw new RuntimeException("unknown tile format: " + name);
+    }
+}
@@ -17,6 +17,7 @@ import javax.media.opengl.fixedfunc.GLLightingFunc;
 import javax.media.opengl.fixedfunc.GLMatrixFunc;
 import javax.media.opengl.glu.GLU;
 import javax.vecmath.Point2d;
+import javax.vecmath.Vector2d;
 import javax.vecmath.Vector3d;
 
 import kendzi.jogl.DrawUtil;
@@ -323,14 +324,8 @@ public class Kendzi3dTitleGLEventListener {
         //        Point3d pos = this.simpleMoveAnimator.getPoint();
         //        Vector3d rotate = this.simpleMoveAnimator.getAngle();
 
-        Vector3d posLookAt = new Vector3d(0, 400, 0);
-        Vector3d camVector= new Vector3d(0, 0, -1);
-
-        posLookAt = PointUtil.rotateZ3d(posLookAt, -cameraAngleX);
-        posLookAt = PointUtil.rotateX3d(posLookAt, -cameraAngleY);
-
-        camVector = PointUtil.rotateZ3d(camVector, -cameraAngleX);
-        camVector = PointUtil.rotateX3d(camVector, -cameraAngleY);
+        Vector3d posLookAt = cameraPosition(cameraAngleX, cameraAngleY);
+        Vector3d camVector = cameraUp(cameraAngleX, cameraAngleY);
         //        posLookAt = PointUtil.rotateX3d(posLookAt, rotate.x);
 
         posLookAt.x += camraCenter.x;
@@ -353,6 +348,54 @@ public class Kendzi3dTitleGLEventListener {
     }
 
 
+    /**
+     * @param cameraAngleX camera angle x
+     * @param cameraAngleY camera angle y
+     * @return position of camera relative to point it looks at
+     */
+    private static Vector3d cameraPosition(double cameraAngleX, double cameraAngleY) {
+        Vector3d pos = new Vector3d(0, 400, 0);
+        pos = PointUtil.rotateZ3d(pos, -cameraAngleX);
+        return PointUtil.rotateX3d(pos, -cameraAngleY);
+    }
+
+    /**
+     * @param cameraAngleX camera angle x
+     * @param cameraAngleY camera angle y
+     * @return up vector of camera
+     */
+    private static Vector3d cameraUp(double cameraAngleX, double cameraAngleY) {
+        Vector3d up = new Vector3d(0, 0, -1);
+        up = PointUtil.rotateZ3d(up, -cameraAngleX);
+        return PointUtil.rotateX3d(up, -cameraAngleY);
+    }
+
+    /**
+     * Calculates how far in tile point is moved by its height. Camera is set
+     * the same way as for drawing, point moved by vector in screen is
+     * converted to ground coordinates of tile, which are scaled in the same way
+     * as in {@link #setupProjection}.
+     *
+     * @param cameraAngleX camera angle x
+     * @param cameraAngleY camera angle y
+     * @return move of point 1 meter above ground, x to east and y to north
+     */
+    public static Vector2d heightShift(double cameraAngleX, double cameraAngleY) {
+        Vector3d forward = cameraPosition(cameraAngleX, cameraAngleY);
+        forward.negate();
+        forward.normalize();
+
+        // screen axes as they are set by gluLookAt
+        Vector3d side = new Vector3d();
+        side.cross(forward, cameraUp(cameraAngleX, cameraAngleY));
+        side.normalize();
+        Vector3d up = new Vector3d();
+        up.cross(side, forward);
+
+        // y axis of model is height
+        return new Vector2d(side.y / Math.cos(cameraAngleX), up.y / Math.cos(cameraAngleY));
+    }
+
     /**
      * @return the renderJosm
      */
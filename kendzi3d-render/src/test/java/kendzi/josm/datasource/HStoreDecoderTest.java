@@ -0,0 +1,107 @@
+package kendzi.josm.datasource;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HStoreDecoderTest {
+
+    private final HStoreDecoder decoder = new HStoreDecoder(new TagStringPool(1024));
+
+    @Test
+    public void quotedAndUnquoted() throws SQLException {
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("building", "yes");
+        expected.put("roof:shape", "flat");
+        expected.put("height", "12");
+
+        Assert.assertEquals(expected, this.decoder.decode("\"building\"=>\"yes\", \"roof:shape\"=>\"flat\","
+                + "height => 12"));
+    }
+
+    @Test
+    public void escapedQuoteAndBackslash() throws SQLException {
+        // "a\"b"=>"c\\d", "e\\"=>"\"f\""
+        Map<String, String> tags = this.decoder.decode("\"a\\\"b\"=>\"c\\\\d\", \"e\\\\\"=>\"\\\"f\\\"\"");
+
+        Assert.assertEquals(2, tags.size());
+        Assert.assertEquals("c\\d", tags.get("a\"b"));
+        Assert.assertEquals("\"f\"", tags.get("e\\"));
+    }
+
+    @Test
+    public void nullValues() throws SQLException {
+        Map<String, String> tags = this.decoder.decode("\"a\"=>NULL, \"b\"=>\"NULL\", \"c\"=>null, \"d\"=>\"x\"");
+
+        // only unquoted NULL is null value, entry is skipped
+        Assert.assertEquals(2, tags.size());
+        Assert.assertEquals("NULL", tags.get("b"));
+        Assert.assertEquals("x", tags.get("d"));
+        Assert.assertFalse(tags.containsKey("a"));
+        Assert.assertFalse(tags.containsKey("c"));
+    }
+
+    @Test
+    public void emptyAndNull() throws SQLException {
+        Assert.assertTrue(this.decoder.decode("").isEmpty());
+        Assert.assertTrue(this.decoder.decode("  ").isEmpty());
+        Assert.assertTrue(this.decoder.decode(null).isEmpty());
+
+        Map<String, String> tags = this.decoder.decode("\"a\"=>\"\"");
+        Assert.assertEquals("", tags.get("a"));
+    }
+
+    @Test
+    public void mapAndStringsReused() throws SQLException {
+        Map<String, String> first = this.decoder.decode("\"building\"=>\"yes\"");
+        String key = first.keySet().iterator().next();
+        String value = first.get(key);
+
+        Map<String, String> second = this.decoder.decode("\"building\"=>\"yes\", \"a\"=>\"b\"");
+        Assert.assertSame(first, second);
+        Assert.assertEquals(2, second.size());
+
+        for (Map.Entry<String, String> e : second.entrySet()) {
+            if ("building".equals(e.getKey())) {
+                Assert.assertSame(key, e.getKey());
+                Assert.assertSame(value, e.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void longValue() throws SQLException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        Map<String, String> tags = this.decoder.decode("\"name\"=>\"" + sb + "\"");
+        Assert.assertEquals(sb.toString(), tags.get("name"));
+    }
+
+    @Test
+    public void malformed() {
+        String[] malformed = {
+                "\"a\"=>",
+                "\"a\"=>\"b",
+                "\"a\" \"b\"",
+                "\"a\"=\"b\"",
+                "\"a\"=>\"b\" \"c\"=>\"d\"",
+                "NULL=>\"b\"",
+                "\"a\"=>\"b\\",
+                "=>\"b\"",
+                "\"a\"=>,\"b\"=>\"c\"" };
+
+        for (String text : malformed) {
+            try {
+                this.decoder.decode(text);
+                Assert.fail("no error for: " + text);
+            } catch (SQLException e) {
+                // expected
+            }
+        }
+    }
+}
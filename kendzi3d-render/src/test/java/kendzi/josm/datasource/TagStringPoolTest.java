@@ -0,0 +1,83 @@
+package kendzi.josm.datasource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TagStringPoolTest {
+
+    @Test
+    public void sameInstance() {
+        TagStringPool pool = new TagStringPool(16);
+
+        String s1 = intern(pool, "building", false);
+        String s2 = intern(pool, "building", false);
+        Assert.assertEquals("building", s1);
+        Assert.assertSame(s1, s2);
+
+        // part of array
+        char[] chars = "xxbuildingxx".toCharArray();
+        Assert.assertSame(s1, pool.intern(chars, 2, 8, true));
+    }
+
+    @Test
+    public void lengthLimit() {
+        TagStringPool pool = new TagStringPool(16);
+
+        String key = repeat('k', 64);
+        Assert.assertSame(intern(pool, key, true), intern(pool, key, true));
+
+        String longKey = repeat('k', 65);
+        assertNotInterned(pool, longKey, true);
+
+        String value = repeat('v', 32);
+        Assert.assertSame(intern(pool, value, false), intern(pool, value, false));
+
+        // value of key length is not interned
+        String longValue = repeat('v', 33);
+        assertNotInterned(pool, longValue, false);
+        Assert.assertSame(intern(pool, longValue, true), intern(pool, longValue, true));
+    }
+
+    @Test
+    public void probeLimit() {
+        // table of 8 slots is full after 8 strings
+        TagStringPool pool = new TagStringPool(8);
+
+        String[] strings = new String[8];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = intern(pool, "s" + i, false);
+        }
+
+        assertNotInterned(pool, "other", false);
+
+        for (int i = 0; i < strings.length; i++) {
+            Assert.assertSame(strings[i], intern(pool, "s" + i, false));
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void sizeNotPowerOfTwo() {
+        new TagStringPool(12);
+    }
+
+    private static void assertNotInterned(TagStringPool pool, String s, boolean key) {
+        String s1 = intern(pool, s, key);
+        String s2 = intern(pool, s, key);
+        Assert.assertEquals(s, s1);
+        Assert.assertEquals(s, s2);
+        Assert.assertNotSame(s1, s2);
+    }
+
+    private static String intern(TagStringPool pool, String s, boolean key) {
+        // new array, pool can't keep reference to it
+        return pool.intern(s.toCharArray(), 0, s.length(), key);
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,310 @@
+package kendzi.kendzi3d.render.dataset;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kendzi.josm.datasource.Bbox;
+import kendzi.josm.datasource.PrimitiveDataReader;
+import kendzi.kendzi3d.render.dataset.DataSetCache.CellLoader;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.io.IllegalDataException;
+
+public class DataSetCacheTest {
+
+    private static final double CELL_SIZE = 0.01;
+
+    /**
+     * Size of cell with one node without tags.
+     */
+    private static final long NODE_CELL_SIZE = 96;
+
+    private final Map<Long, NodeData> nodes = new HashMap<Long, NodeData>();
+    private final Map<Long, WayData> ways = new HashMap<Long, WayData>();
+    private final Map<Long, RelationData> relations = new HashMap<Long, RelationData>();
+
+    @Test
+    public void concurrentRequestsLoadCellOnce() throws Exception {
+        addNode(1, 50.005, 20.005);
+
+        final DataSetCache cache = new DataSetCache(1000000, CELL_SIZE);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingLoader loader = new CountingLoader() {
+            @Override
+            public DataSet load(Bbox bbox) throws Exception {
+                started.countDown();
+                release.await();
+                return super.load(bbox);
+            }
+        };
+
+        final List<DataSet> results = new ArrayList<DataSet>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        DataSet dataSet = cache.findData(cellBbox(50.005, 20.005), loader);
+                        synchronized (results) {
+                            results.add(dataSet);
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+            if (i == 0) {
+                started.await();
+            }
+        }
+
+        // other threads wait for cell loaded by first one
+        for (Thread t : threads.subList(1, threads.size())) {
+            waitForState(t, Thread.State.WAITING);
+        }
+        release.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        Assert.assertEquals(4, results.size());
+        for (DataSet dataSet : results) {
+            Assert.assertEquals(ids(1), ids(dataSet.getNodes()));
+        }
+        Assert.assertEquals(1, loader.loads.get());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.getCells());
+    }
+
+    @Test
+    public void cellLoadedDuringClearNotCached() throws Exception {
+        addNode(1, 50.005, 20.005);
+
+        final DataSetCache cache = new DataSetCache(1000000, CELL_SIZE);
+        CountingLoader loader = new CountingLoader() {
+            @Override
+            public DataSet load(Bbox bbox) throws Exception {
+                DataSet dataSet = super.load(bbox);
+                if (this.loads.get() == 1) {
+                    // data changed while cell was read
+                    cache.clear();
+                }
+                return dataSet;
+            }
+        };
+
+        Assert.assertEquals(ids(1), ids(cache.findData(cellBbox(50.005, 20.005), loader).getNodes()));
+        Assert.assertEquals(0, cache.getCells());
+        Assert.assertEquals(0, cache.getSize());
+
+        cache.findData(cellBbox(50.005, 20.005), loader);
+        Assert.assertEquals(2, loader.loads.get());
+        Assert.assertEquals(1, cache.getCells());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedCell() throws Exception {
+        addNode(1, 50.005, 20.005);
+        addNode(2, 50.015, 20.005);
+        addNode(3, 50.025, 20.005);
+
+        // room for two cells
+        DataSetCache cache = new DataSetCache(2 * NODE_CELL_SIZE, CELL_SIZE);
+        CountingLoader loader = new CountingLoader();
+
+        cache.findData(cellBbox(50.005, 20.005), loader);
+        cache.findData(cellBbox(50.015, 20.005), loader);
+        Assert.assertEquals(2 * NODE_CELL_SIZE, cache.getSize());
+
+        // first cell becomes most recently used
+        cache.findData(cellBbox(50.005, 20.005), loader);
+        cache.findData(cellBbox(50.025, 20.005), loader);
+
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(2, cache.getCells());
+        Assert.assertEquals(3, loader.loads.get());
+
+        cache.findData(cellBbox(50.005, 20.005), loader);
+        Assert.assertEquals(3, loader.loads.get());
+
+        // evicted cell is loaded again
+        Assert.assertEquals(ids(2), ids(cache.findData(cellBbox(50.015, 20.005), loader).getNodes()));
+        Assert.assertEquals(4, loader.loads.get());
+        Assert.assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    public void dataSetAsDirectQuery() throws Exception {
+        Random random = new Random(1);
+        createData(random);
+
+        DataSetCache cache = new DataSetCache(1000000, CELL_SIZE);
+        CountingLoader loader = new CountingLoader();
+
+        for (int q = 0; q < 50; q++) {
+            Bbox bbox = new Bbox(20 + 0.05 * random.nextDouble(), 50 + 0.05 * random.nextDouble());
+            bbox.addPoint(bbox.getLon_min() + 0.02 * random.nextDouble(), bbox.getLat_min() + 0.02
+                    * random.nextDouble());
+
+            DataSet cached = cache.findData(bbox, loader);
+            DataSet direct = select(bbox);
+
+            Assert.assertEquals("query: " + q, ids(direct.getNodes()), ids(cached.getNodes()));
+            Assert.assertEquals("query: " + q, ids(direct.getWays()), ids(cached.getWays()));
+            Assert.assertEquals("query: " + q, ids(direct.getRelations()), ids(cached.getRelations()));
+        }
+        Assert.assertTrue(cache.getHits() > 0);
+    }
+
+    private void createData(Random random) {
+        for (long id = 1; id <= 600; id++) {
+            addNode(id, 50 + 0.07 * random.nextDouble(), 20 + 0.07 * random.nextDouble());
+        }
+
+        for (long id = 1; id <= 150; id++) {
+            List<Long> wayNodes = new ArrayList<Long>();
+            long first = 1 + random.nextInt(600);
+            for (int i = 2 + random.nextInt(4); i > 0; i--) {
+                wayNodes.add(Math.min(600, first + random.nextInt(20)));
+            }
+            WayData wd = new WayData();
+            wd.setId(id);
+            wd.setNodes(wayNodes);
+            this.ways.put(id, wd);
+        }
+
+        for (long id = 1; id <= 60; id++) {
+            List<RelationMemberData> members = new ArrayList<RelationMemberData>();
+            for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                OsmPrimitiveType type = OsmPrimitiveType.values()[random.nextInt(3)];
+                int max = OsmPrimitiveType.NODE.equals(type) ? 600 : OsmPrimitiveType.WAY.equals(type) ? 150 : 65;
+                members.add(new RelationMemberData("", type, 1 + random.nextInt(max)));
+            }
+            RelationData rd = new RelationData();
+            rd.setId(id);
+            rd.setMembers(members);
+            this.relations.put(id, rd);
+        }
+    }
+
+    private void addNode(long id, double lat, double lon) {
+        NodeData nd = new NodeData();
+        nd.setId(id);
+        nd.setCoor(new LatLon(lat, lon));
+        this.nodes.put(id, nd);
+    }
+
+    /**
+     * Selection of database query: nodes and ways in bbox, nodes of these
+     * ways, relations of these nodes and ways and their child relations.
+     */
+    private DataSet select(Bbox bbox) throws IllegalDataException {
+        Map<Long, NodeData> bboxNodes = new HashMap<Long, NodeData>();
+        Map<Long, WayData> bboxWays = new HashMap<Long, WayData>();
+        Map<Long, RelationData> bboxRelations = new HashMap<Long, RelationData>();
+
+        for (NodeData nd : this.nodes.values()) {
+            if (bbox.contains(nd.getCoor().lon(), nd.getCoor().lat())) {
+                bboxNodes.put(nd.getUniqueId(), nd);
+            }
+        }
+
+        for (WayData wd : this.ways.values()) {
+            Bbox wayBbox = DataSetUtil.wayBbox(wd, this.nodes);
+            if (wayBbox != null && wayBbox.intersects(bbox)) {
+                bboxWays.put(wd.getUniqueId(), wd);
+                for (Long nodeId : wd.getNodes()) {
+                    bboxNodes.put(nodeId, this.nodes.get(nodeId));
+                }
+            }
+        }
+
+        for (RelationData rd : this.relations.values()) {
+            for (RelationMemberData member : rd.getMembers()) {
+                if (OsmPrimitiveType.NODE.equals(member.getMemberType())
+                        && bboxNodes.containsKey(member.getMemberId())
+                        || OsmPrimitiveType.WAY.equals(member.getMemberType())
+                        && bboxWays.containsKey(member.getMemberId())) {
+                    bboxRelations.put(rd.getUniqueId(), rd);
+                }
+            }
+        }
+        DataSetUtil.addChildRelations(bboxRelations, this.relations);
+
+        return PrimitiveDataReader.parseDataSet(bboxNodes.values(), bboxWays.values(), bboxRelations.values());
+    }
+
+    private static Bbox cellBbox(double lat, double lon) {
+        // inside of cell containing point
+        double lat0 = Math.floor(lat / CELL_SIZE) * CELL_SIZE;
+        double lon0 = Math.floor(lon / CELL_SIZE) * CELL_SIZE;
+        Bbox bbox = new Bbox(lon0 + CELL_SIZE / 10, lat0 + CELL_SIZE / 10);
+        bbox.addPoint(lon0 + CELL_SIZE * 9 / 10, lat0 + CELL_SIZE * 9 / 10);
+        return bbox;
+    }
+
+    private static Set<Long> ids(long... ids) {
+        Set<Long> ret = new TreeSet<Long>();
+        for (long id : ids) {
+            ret.add(id);
+        }
+        return ret;
+    }
+
+    private static Set<Long> ids(Collection<? extends OsmPrimitive> primitives) {
+        Set<Long> ret = new TreeSet<Long>();
+        for (OsmPrimitive p : primitives) {
+            // members which are not selected are incomplete
+            if (!p.isIncomplete()) {
+                ret.add(p.getUniqueId());
+            }
+        }
+        return ret;
+    }
+
+    private static void waitForState(Thread t, Thread.State state) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (t.getState() != state) {
+            if (System.currentTimeMillis() > end) {
+                Assert.fail("thread state: " + t.getState());
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Loads cells with database selection of test data.
+     */
+    private class CountingLoader implements CellLoader {
+
+        final AtomicInteger loads = new AtomicInteger();
+
+        @Override
+        public DataSet load(Bbox bbox) throws Exception {
+            this.loads.incrementAndGet();
+            return select(bbox);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package kendzi.kendzi3d.render.dataset;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import kendzi.josm.datasource.Bbox;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+public class HeightGridTest {
+
+    private static final double CELL_SIZE = 0.01;
+
+    private static final double DEFAULT_HEIGHT = 10;
+
+    @Test
+    public void onlyCellsInsideBboxKnown() {
+        HeightGrid grid = new HeightGrid(CELL_SIZE, DEFAULT_HEIGHT);
+
+        DataSet dataSet = new DataSet();
+        // cell inside of bbox
+        addBuilding(dataSet, 50.015, 20.015, "30");
+        // cell at edge of bbox, objects outside of bbox could touch it
+        addBuilding(dataSet, 50.015, 20.007, "40");
+
+        // whole cells: lon 20.01 - 20.03, lat 50.01 - 50.02
+        grid.update(bbox(50.005, 20.005, 50.025, 20.035), dataSet);
+
+        Assert.assertEquals(2, grid.getCells());
+        Assert.assertEquals(30, grid.getMaxHeight(cellBbox(50.015, 20.015)), 0);
+        // known cell without buildings
+        Assert.assertEquals(0, grid.getMaxHeight(cellBbox(50.015, 20.025)), 0);
+        Assert.assertEquals(DEFAULT_HEIGHT, grid.getMaxHeight(cellBbox(50.015, 20.007)), 0);
+        Assert.assertEquals(DEFAULT_HEIGHT, grid.getMaxHeight(cellBbox(50.005, 20.015)), 0);
+        Assert.assertEquals(30, grid.getMaxHeight(bbox(50.011, 20.011, 50.019, 20.029)), 0);
+
+        Assert.assertEquals(30, grid.getMaxHeight(), 0);
+    }
+
+    @Test
+    public void bboxSmallerThanCell() {
+        HeightGrid grid = new HeightGrid(CELL_SIZE, DEFAULT_HEIGHT);
+
+        DataSet dataSet = new DataSet();
+        addBuilding(dataSet, 50.015, 20.015, "30");
+
+        grid.update(bbox(50.011, 20.011, 50.019, 20.019), dataSet);
+
+        Assert.assertEquals(0, grid.getCells());
+        Assert.assertEquals(DEFAULT_HEIGHT, grid.getMaxHeight(cellBbox(50.015, 20.015)), 0);
+        Assert.assertEquals(DEFAULT_HEIGHT, grid.getMaxHeight(), 0);
+    }
+
+    private static void addBuilding(DataSet dataSet, double lat, double lon, String height) {
+        double d = CELL_SIZE / 10;
+        List<Node> nodes = new ArrayList<Node>();
+        for (LatLon coor : new LatLon[] { new LatLon(lat, lon), new LatLon(lat, lon + d),
+                new LatLon(lat + d, lon + d) }) {
+            Node n = new Node(coor);
+            dataSet.addPrimitive(n);
+            nodes.add(n);
+        }
+        nodes.add(nodes.get(0));
+
+        Way w = new Way();
+        w.setNodes(nodes);
+        w.put("building", "yes");
+        w.put("height", height);
+        dataSet.addPrimitive(w);
+    }
+
+    private static Bbox bbox(double latMin, double lonMin, double latMax, double lonMax) {
+        Bbox bbox = new Bbox(lonMin, latMin);
+        bbox.addPoint(lonMax, latMax);
+        return bbox;
+    }
+
+    private static Bbox cellBbox(double lat, double lon) {
+        double d = CELL_SIZE / 10;
+        return bbox(lat - d, lon - d, lat + d, lon + d);
+    }
+}
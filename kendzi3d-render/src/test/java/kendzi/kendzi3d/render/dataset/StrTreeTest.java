@@ -0,0 +1,82 @@
+package kendzi.kendzi3d.render.dataset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import kendzi.josm.datasource.Bbox;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StrTreeTest {
+
+    @Test
+    public void queryAsBruteForce() {
+        Random random = new Random(1);
+
+        for (int size : new int[] { 0, 1, 15, 16, 17, 300, 5000 }) {
+            List<Bbox> bboxes = new ArrayList<Bbox>();
+            StrTree<Integer> tree = new StrTree<Integer>();
+            for (int i = 0; i < size; i++) {
+                Bbox bbox = randomBbox(random, 0.01);
+                // points too, like nodes
+                if (i % 3 == 0) {
+                    bbox = new Bbox(bbox.getLon_min(), bbox.getLat_min());
+                }
+                bboxes.add(bbox);
+                tree.add(bbox, i);
+            }
+            tree.build();
+
+            for (int q = 0; q < 200; q++) {
+                Bbox query = randomBbox(random, 0.2);
+
+                List<Integer> expected = new ArrayList<Integer>();
+                for (int i = 0; i < size; i++) {
+                    if (bboxes.get(i).intersects(query)) {
+                        expected.add(i);
+                    }
+                }
+
+                List<Integer> found = new ArrayList<Integer>();
+                tree.query(query, found);
+                Collections.sort(found);
+
+                Assert.assertEquals("size: " + size + " query: " + q, expected, found);
+            }
+        }
+    }
+
+    @Test
+    public void touchingEdge() {
+        StrTree<String> tree = new StrTree<String>();
+        Bbox bbox = new Bbox(1, 1);
+        bbox.addPoint(2, 2);
+        tree.add(bbox, "a");
+        tree.build();
+
+        List<String> found = new ArrayList<String>();
+        tree.query(new Bbox(2, 2), found);
+        Assert.assertEquals(1, found.size());
+
+        found.clear();
+        tree.query(new Bbox(2.001, 2), found);
+        Assert.assertEquals(0, found.size());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void addAfterBuild() {
+        StrTree<String> tree = new StrTree<String>();
+        tree.build();
+        tree.add(new Bbox(0, 0), "a");
+    }
+
+    private static Bbox randomBbox(Random random, double maxSize) {
+        Bbox bbox = new Bbox(random.nextDouble(), random.nextDouble());
+        bbox.addPoint(bbox.getLon_min() + random.nextDouble() * maxSize, bbox.getLat_min() + random.nextDouble()
+                * maxSize);
+        return bbox;
+    }
+}
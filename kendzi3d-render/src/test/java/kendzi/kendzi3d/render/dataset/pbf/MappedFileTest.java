@@ -0,0 +1,100 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedFileTest {
+
+    private static final long[] KEYS = { -5, 1, 3, 3, 3, 7, 10 };
+
+    @Test
+    public void lowerBoundAndFind() throws IOException {
+        File file = writeRecords();
+        try {
+            // whole file in one chunk and records split between chunks
+            for (int chunkBits : new int[] { 30, 2, 3, 5 }) {
+                MappedFile mf = new MappedFile(file, chunkBits);
+
+                Assert.assertEquals(KEYS.length, mf.records());
+                for (int i = 0; i < KEYS.length; i++) {
+                    Assert.assertEquals(KEYS[i], mf.key(i));
+                    Assert.assertEquals(100 + i, mf.value(i));
+                }
+
+                Assert.assertEquals(0, mf.lowerBound(-10));
+                Assert.assertEquals(0, mf.lowerBound(-5));
+                Assert.assertEquals(1, mf.lowerBound(0));
+                Assert.assertEquals(2, mf.lowerBound(3));
+                Assert.assertEquals(5, mf.lowerBound(4));
+                Assert.assertEquals(6, mf.lowerBound(10));
+                Assert.assertEquals(7, mf.lowerBound(11));
+
+                Assert.assertEquals(0, mf.find(-5));
+                // first of equal keys
+                Assert.assertEquals(2, mf.find(3));
+                Assert.assertEquals(6, mf.find(10));
+                Assert.assertEquals(-1, mf.find(4));
+                Assert.assertEquals(-1, mf.find(11));
+                Assert.assertEquals(-1, mf.find(-6));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void readsCrossingChunks() throws IOException {
+        byte[] bytes = new byte[100];
+        new Random(1).nextBytes(bytes);
+
+        File file = File.createTempFile("mapped", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+
+            ByteBuffer expected = ByteBuffer.wrap(bytes);
+            // 16 bytes in chunk, last chunk is shorter
+            MappedFile mf = new MappedFile(file, 4);
+            Assert.assertEquals(100, mf.length());
+
+            for (int pos = 0; pos + 8 <= bytes.length; pos++) {
+                Assert.assertEquals("pos: " + pos, expected.getLong(pos), mf.getLong(pos));
+                Assert.assertEquals("pos: " + pos, expected.getInt(pos), mf.getInt(pos));
+                Assert.assertEquals("pos: " + pos, bytes[pos], mf.get(pos));
+            }
+
+            byte[] dst = new byte[20];
+            mf.get(10, dst);
+            for (int i = 0; i < dst.length; i++) {
+                Assert.assertEquals(bytes[10 + i], dst[i]);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static File writeRecords() throws IOException {
+        File file = File.createTempFile("records", ".bin");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < KEYS.length; i++) {
+                out.writeLong(KEYS[i]);
+                out.writeLong(100 + i);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,274 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import kendzi.josm.datasource.Bbox;
+import kendzi.kendzi3d.render.dataset.pbf.PbfBuilder.Message;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+
+/**
+ * Compares data selected from store with selection of database query: nodes
+ * and ways in bbox, nodes of these ways, relations of these nodes and ways and
+ * their child relations.
+ */
+public class OsmStoreTest {
+
+    private static final double CELL_SIZE = 0.005;
+
+    private static final int NODES = 600;
+    private static final int WAYS = 150;
+    private static final int RELATIONS = 60;
+
+    private final Random random = new Random(1);
+
+    /** Coordinates of nodes in 1e-7 degrees, lat and lon. */
+    private final Map<Long, long[]> nodes = new HashMap<Long, long[]>();
+    private final Set<Long> taggedNodes = new TreeSet<Long>();
+    private final Map<Long, long[]> ways = new HashMap<Long, long[]>();
+    /** Members of relations, type (0 node, 1 way, 2 relation) and id. */
+    private final Map<Long, long[][]> relations = new HashMap<Long, long[][]>();
+
+    @Test
+    public void findDataAsDatabase() throws Exception {
+        File dir = RecordSorterTest.createTempDir();
+        File pbf = new File(dir, "test.osm.pbf");
+        File storeDir = new File(dir, "store");
+        try {
+            createData();
+            writePbf(pbf);
+
+            OsmStore store = OsmStore.open(pbf, storeDir, CELL_SIZE);
+
+            for (int q = 0; q < 50; q++) {
+                Bbox bbox = new Bbox(20 + 0.05 * this.random.nextDouble(), 50 + 0.05 * this.random.nextDouble());
+                bbox.addPoint(bbox.getLon_min() + 0.01 * this.random.nextDouble(), bbox.getLat_min() + 0.01
+                        * this.random.nextDouble());
+
+                DataSet dataSet = store.findData(bbox);
+
+                Set<Long> expectedWays = new TreeSet<Long>();
+                Set<Long> expectedNodes = new TreeSet<Long>();
+                Set<Long> expectedRelations = new TreeSet<Long>();
+                select(bbox, expectedNodes, expectedWays, expectedRelations);
+
+                Assert.assertEquals("query: " + q, expectedNodes, ids(dataSet.getNodes()));
+                Assert.assertEquals("query: " + q, expectedWays, ids(dataSet.getWays()));
+                Assert.assertEquals("query: " + q, expectedRelations, ids(dataSet.getRelations()));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Selection of database query. Nodes without tags which are not part of
+     * way or relation are left out, nothing is built from them.
+     */
+    private void select(Bbox bbox, Set<Long> bboxNodes, Set<Long> bboxWays, Set<Long> bboxRelations) {
+        Set<Long> memberNodes = new TreeSet<Long>();
+        for (long[][] members : this.relations.values()) {
+            for (long[] member : members) {
+                if (member[0] == 0) {
+                    memberNodes.add(member[1]);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, long[]> e : this.nodes.entrySet()) {
+            long id = e.getKey();
+            if (contains(bbox, e.getValue()) && (this.taggedNodes.contains(id) || memberNodes.contains(id))) {
+                bboxNodes.add(id);
+            }
+        }
+
+        for (Map.Entry<Long, long[]> e : this.ways.entrySet()) {
+            Bbox wayBbox = null;
+            for (long nodeId : e.getValue()) {
+                long[] c = this.nodes.get(nodeId);
+                if (c == null) {
+                    continue;
+                }
+                if (wayBbox == null) {
+                    wayBbox = new Bbox(lon(c), lat(c));
+                } else {
+                    wayBbox.addPoint(lon(c), lat(c));
+                }
+            }
+            if (wayBbox != null && wayBbox.intersects(bbox)) {
+                bboxWays.add(e.getKey());
+                for (long nodeId : e.getValue()) {
+                    if (this.nodes.containsKey(nodeId)) {
+                        bboxNodes.add(nodeId);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<Long, long[][]> e : this.relations.entrySet()) {
+            for (long[] member : e.getValue()) {
+                if (member[0] == 0 && bboxNodes.contains(member[1]) || member[0] == 1
+                        && bboxWays.contains(member[1])) {
+                    bboxRelations.add(e.getKey());
+                }
+            }
+        }
+
+        // child relations
+        List<Long> queue = new ArrayList<Long>(bboxRelations);
+        while (!queue.isEmpty()) {
+            long[][] members = this.relations.get(queue.remove(queue.size() - 1));
+            for (long[] member : members) {
+                if (member[0] == 2 && this.relations.containsKey(member[1]) && bboxRelations.add(member[1])) {
+                    queue.add(member[1]);
+                }
+            }
+        }
+    }
+
+    private void createData() {
+        for (long id = 1; id <= NODES; id++) {
+            this.nodes.put(id, new long[] { 500000000 + this.random.nextInt(500000),
+                    200000000 + this.random.nextInt(500000) });
+            if (this.random.nextInt(5) == 0) {
+                this.taggedNodes.add(id);
+            }
+        }
+
+        for (long id = 1; id <= WAYS; id++) {
+            int count = 2 + this.random.nextInt(4);
+            long[] wayNodes = new long[count];
+            long first = 1 + this.random.nextInt(NODES);
+            for (int i = 0; i < count; i++) {
+                // nodes are near in order of ids
+                wayNodes[i] = Math.min(NODES, first + this.random.nextInt(20));
+            }
+            if (id % 10 == 0) {
+                // node out of extract
+                wayNodes[0] = NODES + 100;
+            }
+            this.ways.put(id, wayNodes);
+        }
+
+        for (long id = 1; id <= RELATIONS; id++) {
+            long[][] members = new long[1 + this.random.nextInt(3)][];
+            for (int i = 0; i < members.length; i++) {
+                int type = this.random.nextInt(3);
+                int max = type == 0 ? NODES : type == 1 ? WAYS : RELATIONS + 5;
+                members[i] = new long[] { type, 1 + this.random.nextInt(max) };
+            }
+            this.relations.put(id, members);
+        }
+    }
+
+    private void writePbf(File file) throws IOException {
+        long[] ids = new long[NODES];
+        long[] lats = new long[NODES];
+        long[] lons = new long[NODES];
+        List<Long> keysVals = new ArrayList<Long>();
+        for (int i = 0; i < NODES; i++) {
+            long id = i + 1;
+            ids[i] = id;
+            lats[i] = this.nodes.get(id)[0];
+            lons[i] = this.nodes.get(id)[1];
+            if (this.taggedNodes.contains(id)) {
+                keysVals.add(1L);
+                keysVals.add(2L);
+            }
+            keysVals.add(0L);
+        }
+        Message dense = new Message()
+                .packed(1, ids, true, true)
+                .packed(8, lats, true, true)
+                .packed(9, lons, true, true)
+                .packed(10, toArray(keysVals), false, false);
+
+        Message wayGroup = new Message();
+        for (long id = 1; id <= WAYS; id++) {
+            wayGroup.message(3, new Message()
+                    .varint(1, id)
+                    .packed(2, new long[] { 3 }, false, false)
+                    .packed(3, new long[] { 4 }, false, false)
+                    .packed(8, this.ways.get(id), true, true));
+        }
+
+        Message relationGroup = new Message();
+        for (long id = 1; id <= RELATIONS; id++) {
+            long[][] members = this.relations.get(id);
+            long[] roles = new long[members.length];
+            long[] memberIds = new long[members.length];
+            long[] types = new long[members.length];
+            for (int i = 0; i < members.length; i++) {
+                roles[i] = 5;
+                types[i] = members[i][0];
+                memberIds[i] = members[i][1];
+            }
+            relationGroup.message(4, new Message()
+                    .varint(1, id)
+                    .packed(8, roles, false, false)
+                    .packed(9, memberIds, true, true)
+                    .packed(10, types, false, false));
+        }
+
+        Message strings = PbfBuilder.strings("", "amenity", "bench", "building", "yes", "part");
+        new PbfBuilder()
+                .header("OsmSchema-V0.6", "DenseNodes")
+                .block(new Message().message(1, strings).message(2, new Message().message(2, dense)), true)
+                .block(new Message().message(1, strings).message(2, wayGroup), true)
+                .block(new Message().message(1, strings).message(2, relationGroup), false)
+                .write(file);
+    }
+
+    private static boolean contains(Bbox bbox, long[] c) {
+        return bbox.contains(lon(c), lat(c));
+    }
+
+    private static double lat(long[] c) {
+        return c[0] / 10000000d;
+    }
+
+    private static double lon(long[] c) {
+        return c[1] / 10000000d;
+    }
+
+    private static Set<Long> ids(Collection<? extends OsmPrimitive> primitives) {
+        Set<Long> ret = new TreeSet<Long>();
+        for (OsmPrimitive p : primitives) {
+            // members which are not selected are incomplete
+            if (!p.isIncomplete()) {
+                ret.add(p.getUniqueId());
+            }
+        }
+        return ret;
+    }
+
+    private static long[] toArray(List<Long> list) {
+        long[] ret = new long[list.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = list.get(i);
+        }
+        return ret;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
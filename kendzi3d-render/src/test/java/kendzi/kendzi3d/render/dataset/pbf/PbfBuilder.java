@@ -0,0 +1,174 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.Deflater;
+
+/**
+ * Writes small pbf files for tests. Blocks are built from protobuf messages,
+ * fields can be written packed or not.
+ */
+class PbfBuilder {
+
+    private final ByteArrayOutputStream file = new ByteArrayOutputStream();
+
+    /**
+     * Adds header block with features.
+     */
+    PbfBuilder header(String... features) throws IOException {
+        Message header = new Message();
+        for (String feature : features) {
+            header.string(4, feature);
+        }
+        return blob("OSMHeader", header.toByteArray(), false);
+    }
+
+    /**
+     * Adds data block, zlib compressed or raw.
+     */
+    PbfBuilder block(Message block, boolean compress) throws IOException {
+        return blob("OSMData", block.toByteArray(), compress);
+    }
+
+    private PbfBuilder blob(String type, byte[] data, boolean compress) throws IOException {
+        Message blob = new Message();
+        if (compress) {
+            Deflater deflater = new Deflater();
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[data.length + 64];
+            int length = deflater.deflate(buffer);
+            deflater.end();
+
+            byte[] zlib = new byte[length];
+            System.arraycopy(buffer, 0, zlib, 0, length);
+            blob.varint(2, data.length);
+            blob.bytes(3, zlib);
+        } else {
+            blob.bytes(1, data);
+        }
+        byte[] blobBytes = blob.toByteArray();
+
+        Message header = new Message();
+        header.string(1, type);
+        header.varint(3, blobBytes.length);
+        byte[] headerBytes = header.toByteArray();
+
+        DataOutputStream out = new DataOutputStream(this.file);
+        out.writeInt(headerBytes.length);
+        out.write(headerBytes);
+        out.write(blobBytes);
+        return this;
+    }
+
+    byte[] toByteArray() {
+        return this.file.toByteArray();
+    }
+
+    void write(File f) throws IOException {
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(toByteArray());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return string table message
+     */
+    static Message strings(String... strings) throws IOException {
+        Message table = new Message();
+        for (String s : strings) {
+            table.string(1, s);
+        }
+        return table;
+    }
+
+    /**
+     * Protobuf message.
+     */
+    static class Message {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Message varint(int field, long value) {
+            tag(field, 0);
+            writeVarint(this.out, value);
+            return this;
+        }
+
+        Message signed(int field, long value) {
+            return varint(field, value << 1 ^ value >> 63);
+        }
+
+        Message bytes(int field, byte[] value) {
+            tag(field, 2);
+            writeVarint(this.out, value.length);
+            this.out.write(value, 0, value.length);
+            return this;
+        }
+
+        Message string(int field, String value) throws UnsupportedEncodingException {
+            return bytes(field, value.getBytes("UTF-8"));
+        }
+
+        Message message(int field, Message value) {
+            return bytes(field, value.toByteArray());
+        }
+
+        /**
+         * Writes repeated field packed.
+         *
+         * @param signed if values are zigzag encoded
+         * @param delta if differences of values are written
+         */
+        Message packed(int field, long[] values, boolean signed, boolean delta) {
+            ByteArrayOutputStream packed = new ByteArrayOutputStream();
+            long last = 0;
+            for (long value : values) {
+                long v = delta ? value - last : value;
+                last = value;
+                writeVarint(packed, signed ? v << 1 ^ v >> 63 : v);
+            }
+            return bytes(field, packed.toByteArray());
+        }
+
+        /**
+         * Writes repeated field not packed, each value with its tag.
+         */
+        Message repeated(int field, long[] values, boolean signed, boolean delta) {
+            long last = 0;
+            for (long value : values) {
+                long v = delta ? value - last : value;
+                last = value;
+                if (signed) {
+                    signed(field, v);
+                } else {
+                    varint(field, v);
+                }
+            }
+            return this;
+        }
+
+        private void tag(int field, int wireType) {
+            writeVarint(this.out, field << 3 | wireType);
+        }
+
+        byte[] toByteArray() {
+            return this.out.toByteArray();
+        }
+
+        private static void writeVarint(ByteArrayOutputStream out, long value) {
+            while ((value & ~0x7fL) != 0) {
+                out.write((int) (value & 0x7f | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import kendzi.kendzi3d.render.dataset.pbf.PbfBuilder.Message;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+
+public class PbfReaderTest {
+
+    @Test
+    public void denseNodes() throws IOException {
+        Message dense = new Message()
+                .packed(1, new long[] { 1, 2, 5 }, true, true)
+                .packed(8, new long[] { 60000, 60500, -1000 }, true, true)
+                .packed(9, new long[] { 940000, 941000, 1000000 }, true, true)
+                // node 2 without tags
+                .packed(10, new long[] { 1, 2, 3, 4, 0, 0, 1, 2, 0 }, false, false);
+
+        Message block = new Message()
+                .message(1, PbfBuilder.strings("", "amenity", "bench", "name", "a \"b\""))
+                .message(2, new Message().message(2, dense))
+                // granularity and offsets after group, in 1e-6 degrees
+                .varint(17, 1000)
+                .varint(19, 50000000000L)
+                .varint(20, 19000000000L);
+
+        List<String> read = read(new PbfBuilder().header("OsmSchema-V0.6", "DenseNodes").block(block, true));
+
+        Assert.assertEquals(Arrays.asList(
+                "n1 50.0600000 19.9400000 [amenity, bench, name, a \"b\"]",
+                "n2 50.0605000 19.9410000 []",
+                "n5 49.9990000 20.0000000 [amenity, bench]"), read);
+    }
+
+    @Test
+    public void denseNodesWithoutTags() throws IOException {
+        // keys and values are left out when no node has tags
+        Message dense = new Message()
+                .packed(1, new long[] { 10, 11 }, true, true)
+                .packed(8, new long[] { 500600000, 500610000 }, true, true)
+                .packed(9, new long[] { 199400000, 199410000 }, true, true);
+
+        Message block = new Message()
+                .message(1, PbfBuilder.strings(""))
+                .message(2, new Message().message(2, dense));
+
+        List<String> read = read(new PbfBuilder().header("OsmSchema-V0.6", "DenseNodes").block(block, false));
+
+        Assert.assertEquals(Arrays.asList(
+                "n10 50.0600000 19.9400000 []",
+                "n11 50.0610000 19.9410000 []"), read);
+    }
+
+    @Test
+    public void primitivesWithPackedAndUnpackedFields() throws IOException {
+        Message node = new Message()
+                .signed(1, 3)
+                .repeated(2, new long[] { 1 }, false, false)
+                .repeated(3, new long[] { 2 }, false, false)
+                .signed(8, 500600000)
+                .signed(9, -1000000);
+
+        Message way = new Message()
+                .varint(1, 20)
+                .packed(2, new long[] { 1, 3 }, false, false)
+                .packed(3, new long[] { 2, 4 }, false, false)
+                // node refs not packed
+                .repeated(8, new long[] { 3, 1, 3 }, true, true);
+
+        Message relation = new Message()
+                .varint(1, 30)
+                .repeated(8, new long[] { 5, 0, 5 }, false, false)
+                .packed(9, new long[] { 20, 3, 31 }, true, true)
+                .repeated(10, new long[] { 1, 0, 2 }, false, false);
+
+        Message block = new Message()
+                .message(1, PbfBuilder.strings("", "amenity", "bench", "name", "x", "outer"))
+                .message(2, new Message().message(1, node))
+                .message(2, new Message().message(3, way).message(4, relation));
+
+        List<String> read = read(new PbfBuilder().header("OsmSchema-V0.6").block(block, true));
+
+        Assert.assertEquals(Arrays.asList(
+                "n3 50.0600000 -0.1000000 [amenity, bench]",
+                "w20 [3, 1, 3] [amenity, bench, name, x]",
+                "r30 [WAY 20 outer, NODE 3 , RELATION 31 outer] []"), read);
+    }
+
+    @Test(expected = IOException.class)
+    public void notSupportedFeature() throws IOException {
+        read(new PbfBuilder().header("OsmSchema-V0.6", "HistoricalInformation"));
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongStringIndex() throws IOException {
+        Message way = new Message().varint(1, 20).packed(2, new long[] { 7 }, false, false)
+                .packed(3, new long[] { 1 }, false, false);
+        Message block = new Message().message(1, PbfBuilder.strings("", "a")).message(2,
+                new Message().message(3, way));
+
+        read(new PbfBuilder().header("OsmSchema-V0.6").block(block, false));
+    }
+
+    private static List<String> read(PbfBuilder pbf) throws IOException {
+        final List<String> ret = new ArrayList<String>();
+        new PbfReader(new PbfHandler() {
+
+            @Override
+            public void node(long id, double lat, double lon, String[] tags) {
+                ret.add(String.format(Locale.ROOT, "n%d %.7f %.7f %s", id, lat, lon, Arrays.toString(tags)));
+            }
+
+            @Override
+            public void way(long id, long[] nodes, String[] tags) {
+                ret.add("w" + id + " " + Arrays.toString(nodes) + " " + Arrays.toString(tags));
+            }
+
+            @Override
+            public void relation(long id, long[] memberIds, OsmPrimitiveType[] memberTypes, String[] memberRoles,
+                    String[] tags) {
+                List<String> members = new ArrayList<String>();
+                for (int i = 0; i < memberIds.length; i++) {
+                    members.add(memberTypes[i].name() + " " + memberIds[i] + " " + memberRoles[i]);
+                }
+                ret.add("r" + id + " " + members + " " + Arrays.toString(tags));
+            }
+        }).read(new ByteArrayInputStream(pbf.toByteArray()));
+        return ret;
+    }
+}
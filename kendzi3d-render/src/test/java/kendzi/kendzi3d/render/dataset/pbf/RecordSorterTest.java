@@ -0,0 +1,110 @@
+package kendzi.kendzi3d.render.dataset.pbf;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RecordSorterTest {
+
+    private static final Comparator<long[]> RECORD_ORDER = new Comparator<long[]>() {
+        @Override
+        public int compare(long[] r1, long[] r2) {
+            if (r1[0] != r2[0]) {
+                return r1[0] < r2[0] ? -1 : 1;
+            }
+            if (r1[1] != r2[1]) {
+                return r1[1] < r2[1] ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    @Test
+    public void mergeRunsWithDuplicates() throws IOException {
+        // duplicates inside of runs and between runs
+        assertSorted(1000, 7, 30);
+    }
+
+    @Test
+    public void oneRun() throws IOException {
+        assertSorted(7, 7, 5);
+        assertSorted(5, 7, 5);
+    }
+
+    @Test
+    public void empty() throws IOException {
+        assertSorted(0, 7, 5);
+    }
+
+    private static void assertSorted(int count, int runSize, int maxKey) throws IOException {
+        File dir = createTempDir();
+        try {
+            Random random = new Random(count);
+            TreeSet<long[]> expected = new TreeSet<long[]>(RECORD_ORDER);
+
+            RecordSorter sorter = new RecordSorter(dir, "test", runSize);
+            for (int i = 0; i < count; i++) {
+                // negative keys are sorted as signed
+                long key = random.nextInt(2 * maxKey) - maxKey;
+                long value = random.nextInt(4);
+                sorter.add(key, value);
+                expected.add(new long[] { key, value });
+            }
+
+            File out = new File(dir, "sorted");
+            sorter.writeSorted(out);
+
+            List<long[]> sorted = readRecords(out);
+            Assert.assertEquals(expected.size(), sorted.size());
+            int i = 0;
+            for (long[] record : expected) {
+                Assert.assertArrayEquals(record, sorted.get(i++));
+            }
+
+            // temporary files of runs are deleted
+            Assert.assertEquals(1, dir.listFiles().length);
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static List<long[]> readRecords(File file) throws IOException {
+        List<long[]> ret = new ArrayList<long[]>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                long key;
+                try {
+                    key = in.readLong();
+                } catch (EOFException e) {
+                    return ret;
+                }
+                ret.add(new long[] { key, in.readLong() });
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    static File createTempDir() throws IOException {
+        File dir = File.createTempFile("store", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("can't create temporary directory: " + dir);
+        }
+        return dir;
+    }
+}
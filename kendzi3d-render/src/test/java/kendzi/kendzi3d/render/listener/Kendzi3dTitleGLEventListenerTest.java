@@ -0,0 +1,28 @@
+package kendzi.kendzi3d.render.listener;
+
+import javax.vecmath.Vector2d;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Kendzi3dTitleGLEventListenerTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void heightShiftFromTop() {
+        Vector2d shift = Kendzi3dTitleGLEventListener.heightShift(0, 0);
+
+        Assert.assertEquals(0, shift.x, EPSILON);
+        Assert.assertEquals(0, shift.y, EPSILON);
+    }
+
+    @Test
+    public void heightShiftFromSouth() {
+        // camera looks to north, top of object is moved to north
+        Vector2d shift = Kendzi3dTitleGLEventListener.heightShift(0, Math.toRadians(-30));
+
+        Assert.assertEquals(0, shift.x, EPSILON);
+        Assert.assertEquals(Math.tan(Math.toRadians(30)), shift.y, EPSILON);
+    }
+}
@@ -6,6 +6,8 @@ import kendzi.kendzi3d.render.conf.RenderDataSourceConf;
 import kendzi.kendzi3d.render.conf.RenderDataSourceConfLoader;
 import kendzi.kendzi3d.render.conf.RenderEngineConf;
 import kendzi.kendzi3d.render.conf.RenderEngineConfLoader;
+import kendzi.kendzi3d.tile.server.store.TileStore;
+import kendzi.kendzi3d.tile.server.store.TileStoreFactory;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -73,4 +75,25 @@ public class ServiceConfiguration {
 
         return RenderDataSourceConfLoader.load(p);
     }
+
+    @Bean TileServerConf tileServerConf() {
+
+        Properties p = new Properties() {
+            /**
+             * 
+             */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getProperty(String key, String defaultValue) {
+                return ServiceConfiguration.this.environment.getProperty(key, defaultValue);
+            }
+        };
+
+        return TileServerConfLoader.load(p);
+    }
+
+    @Bean(destroyMethod="close") TileStore tileStore() {
+        return TileStoreFactory.create(tileServerConf());
+    }
 }
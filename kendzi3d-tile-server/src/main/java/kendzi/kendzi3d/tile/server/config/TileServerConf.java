@@ -0,0 +1,405 @@
+package kendzi.kendzi3d.tile.server.config;
+
+/**
+ * Configuration of tile server.
+ */
+public class TileServerConf {
+
+    /**
+     * Number of render workers. Each worker owns separate offscreen GL context.
+     */
+    private int renderWorkers;
+
+    /**
+     * Number of consecutive render errors after which worker is recycled.
+     */
+    private int workerMaxErrors;
+
+    /**
+     * Interval in milliseconds between checks of workers health.
+     */
+    private long workerCheckInterval;
+
+    /**
+     * Size of metatile in tiles. Block of metaTile x metaTile tiles is
+     * rendered from one data fetch.
+     */
+    private int metaTile;
+
+    /**
+     * Type of tile store.
+     */
+    private StoreType storeType;
+
+    /**
+     * Directory of file tile store.
+     */
+    private String storeDir;
+
+    /**
+     * File of pack file tile store.
+     */
+    private String storePackFile;
+
+    /**
+     * Percent of dead bytes in pack file above which it is compacted on
+     * start, zero disables compaction.
+     */
+    private int storePackCompactDead;
+
+    /**
+     * Size of in memory tile cache in megabytes, zero disables cache.
+     */
+    private int memoryCacheSize;
+
+    /**
+     * Maximal time in milliseconds to wait for rendered tile, zero means no
+     * limit. Jobs not started before this time are dropped.
+     */
+    private long renderTimeout;
+
+    /**
+     * Maximal number of jobs waiting in render queue, when queue is full new
+     * tiles are rejected. Zero means no limit. Seeding jobs are not limited.
+     */
+    private int renderQueueMax;
+
+    /**
+     * Time in seconds after which client should retry when tile was rejected.
+     */
+    private int retryAfter;
+
+    /**
+     * Number of threads loading data for jobs waiting in render queue, zero
+     * disables prefetching.
+     */
+    private int prefetchThreads;
+
+    /**
+     * Number of jobs from head of render queue for which data are prefetched.
+     */
+    private int prefetchSize;
+
+    /**
+     * Minimal zoom of overview tiles, composed from tiles of higher zoom.
+     */
+    private int overviewMinZoom;
+
+    /**
+     * File with progress of seeding.
+     */
+    private String seedCheckpoint;
+
+    /**
+     * Directory with change files (osmChange or lists of bboxes), tiles
+     * affected by them are expired. Null disables expiry.
+     */
+    private String expireDir;
+
+    /**
+     * Interval in milliseconds between checks of expire directory.
+     */
+    private long expireInterval;
+
+    /**
+     * Maximal zoom of expired tiles.
+     */
+    private int expireMaxZoom;
+
+    /**
+     * If expired tiles should be rendered again in background, otherwise they
+     * are rendered when requested.
+     */
+    private boolean expireRender;
+
+    public enum StoreType {
+        /**
+         * Each tile in separate file.
+         */
+        FILE(),
+        /**
+         * All tiles in one append only file.
+         */
+        PACK()
+    }
+
+    /**
+     * @return the renderWorkers
+     */
+    public int getRenderWorkers() {
+        return this.renderWorkers;
+    }
+
+    /**
+     * @param renderWorkers the renderWorkers to set
+     */
+    public void setRenderWorkers(int renderWorkers) {
+        this.renderWorkers = renderWorkers;
+    }
+
+    /**
+     * @return the workerMaxErrors
+     */
+    public int getWorkerMaxErrors() {
+        return this.workerMaxErrors;
+    }
+
+    /**
+     * @param workerMaxErrors the workerMaxErrors to set
+     */
+    public void setWorkerMaxErrors(int workerMaxErrors) {
+        this.workerMaxErrors = workerMaxErrors;
+    }
+
+    /**
+     * @return the workerCheckInterval
+     */
+    public long getWorkerCheckInterval() {
+        return this.workerCheckInterval;
+    }
+
+    /**
+     * @param workerCheckInterval the workerCheckInterval to set
+     */
+    public void setWorkerCheckInterval(long workerCheckInterval) {
+        this.workerCheckInterval = workerCheckInterval;
+    }
+
+    /**
+     * @return the metaTile
+     */
+    public int getMetaTile() {
+        return this.metaTile;
+    }
+
+    /**
+     * @param metaTile the metaTile to set
+     */
+    public void setMetaTile(int metaTile) {
+        this.metaTile = metaTile;
+    }
+
+    /**
+     * @return the storeType
+     */
+    public StoreType getStoreType() {
+        return this.storeType;
+    }
+
+    /**
+     * @param storeType the storeType to set
+     */
+    public void setStoreType(StoreType storeType) {
+        this.storeType = storeType;
+    }
+
+    /**
+     * @return the storeDir
+     */
+    public String getStoreDir() {
+        return this.storeDir;
+    }
+
+    /**
+     * @param storeDir the storeDir to set
+     */
+    public void setStoreDir(String storeDir) {
+        this.storeDir = storeDir;
+    }
+
+    /**
+     * @return the storePackFile
+     */
+    public String getStorePackFile() {
+        return this.storePackFile;
+    }
+
+    /**
+     * @param storePackFile the storePackFile to set
+     */
+    public void setStorePackFile(String storePackFile) {
+        this.storePackFile = storePackFile;
+    }
+
+    /**
+     * @return the storePackCompactDead
+     */
+    public int getStorePackCompactDead() {
+        return this.storePackCompactDead;
+    }
+
+    /**
+     * @param storePackCompactDead the storePackCompactDead to set
+     */
+    public void setStorePackCompactDead(int storePackCompactDead) {
+        this.storePackCompactDead = storePackCompactDead;
+    }
+
+    /**
+     * @return the memoryCacheSize
+     */
+    public int getMemoryCacheSize() {
+        return this.memoryCacheSize;
+    }
+
+    /**
+     * @param memoryCacheSize the memoryCacheSize to set
+     */
+    public void setMemoryCacheSize(int memoryCacheSize) {
+        this.memoryCacheSize = memoryCacheSize;
+    }
+
+    /**
+     * @return the renderTimeout
+     */
+    public long getRenderTimeout() {
+        return this.renderTimeout;
+    }
+
+    /**
+     * @param renderTimeout the renderTimeout to set
+     */
+    public void setRenderTimeout(long renderTimeout) {
+        this.renderTimeout = renderTimeout;
+    }
+
+    /**
+     * @return the renderQueueMax
+     */
+    public int getRenderQueueMax() {
+        return this.renderQueueMax;
+    }
+
+    /**
+     * @param renderQueueMax the renderQueueMax to set
+     */
+    public void setRenderQueueMax(int renderQueueMax) {
+        this.renderQueueMax = renderQueueMax;
+    }
+
+    /**
+     * @return the retryAfter
+     */
+    public int getRetryAfter() {
+        return this.retryAfter;
+    }
+
+    /**
+     * @param retryAfter the retryAfter to set
+     */
+    public void setRetryAfter(int retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the prefetchThreads
+     */
+    public int getPrefetchThreads() {
+        return this.prefetchThreads;
+    }
+
+    /**
+     * @param prefetchThreads the prefetchThreads to set
+     */
+    public void setPrefetchThreads(int prefetchThreads) {
+        this.prefetchThreads = prefetchThreads;
+    }
+
+    /**
+     * @return the prefetchSize
+     */
+    public int getPrefetchSize() {
+        return this.prefetchSize;
+    }
+
+    /**
+     * @param prefetchSize the prefetchSize to set
+     */
+    public void setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
+    /**
+     * @return the overviewMinZoom
+     */
+    public int getOverviewMinZoom() {
+        return this.overviewMinZoom;
+    }
+
+    /**
+     * @param overviewMinZoom the overviewMinZoom to set
+     */
+    public void setOverviewMinZoom(int overviewMinZoom) {
+        this.overviewMinZoom = overviewMinZoom;
+    }
+
+    /**
+     * @return the seedCheckpoint
+     */
+    public String getSeedCheckpoint() {
+        return this.seedCheckpoint;
+    }
+
+    /**
+     * @param seedCheckpoint the seedCheckpoint to set
+     */
+    public void setSeedCheckpoint(String seedCheckpoint) {
+        this.seedCheckpoint = seedCheckpoint;
+    }
+
+    /**
+     * @return the expireDir
+     */
+    public String getExpireDir() {
+        return this.expireDir;
+    }
+
+    /**
+     * @param expireDir the expireDir to set
+     */
+    public void setExpireDir(String expireDir) {
+        this.expireDir = expireDir;
+    }
+
+    /**
+     * @return the expireInterval
+     */
+    public long getExpireInterval() {
+        return this.expireInterval;
+    }
+
+    /**
+     * @param expireInterval the expireInterval to set
+     */
+    public void setExpireInterval(long expireInterval) {
+        this.expireInterval = expireInterval;
+    }
+
+    /**
+     * @return the expireMaxZoom
+     */
+    public int getExpireMaxZoom() {
+        return this.expireMaxZoom;
+    }
+
+    /**
+     * @param expireMaxZoom the expireMaxZoom to set
+     */
+    public void setExpireMaxZoom(int expireMaxZoom) {
+        this.expireMaxZoom = expireMaxZoom;
+    }
+
+    /**
+     * @return the expireRender
+     */
+    public boolean isExpireRender() {
+        return this.expireRender;
+    }
+
+    /**
+     * @param expireRender the expireRender to set
+     */
+    public void setExpireRender(boolean expireRender) {
+        this.expireRender = expireRender;
+    }
+}
@@ -0,0 +1,167 @@
+package kendzi.kendzi3d.tile.server.config;
+
+import java.util.Properties;
+
+import kendzi.josm.kendzi3d.util.StringUtil;
+import kendzi.kendzi3d.tile.server.store.TileKeyUtil;
+
+public class TileServerConfLoader {
+
+    private final static int RENDER_WORKERS = 1;
+
+    private final static int WORKER_MAX_ERRORS = 10;
+
+    private final static long WORKER_CHECK_INTERVAL = 10000;
+
+    private final static int META_TILE = 1;
+
+    private final static String STORE = "file";
+
+    private final static String STORE_DIR = "/osm_dev/tiles_cache";
+
+    private final static String STORE_PACK_FILE = null;
+
+    private final static int STORE_PACK_COMPACT_DEAD = 50;
+
+    private final static int MEMORY_CACHE_SIZE = 64;
+
+    private final static long RENDER_TIMEOUT = 30000;
+
+    private final static int RENDER_QUEUE_MAX = 500;
+
+    private final static int RETRY_AFTER = 10;
+
+    private final static int PREFETCH_THREADS = 1;
+
+    private final static int PREFETCH_SIZE = 2;
+
+    private final static int OVERVIEW_MIN_ZOOM = 10;
+
+    private final static String SEED_CHECKPOINT = "/osm_dev/tiles_seed.properties";
+
+    private final static String EXPIRE_DIR = null;
+
+    private final static long EXPIRE_INTERVAL = 60000;
+
+    private final static int EXPIRE_MAX_ZOOM = 18;
+
+    private final static String EXPIRE_RENDER = "false";
+
+    private final static String PREFIX = "k3dr.server.";
+
+    public static TileServerConf load(Properties prop) {
+        return load(prop, PREFIX);
+    }
+
+    public static TileServerConf load(Properties prop, String prefix) {
+        TileServerConf c = new TileServerConf();
+
+        c.setRenderWorkers(getInt(prop, prefix + "render.workers", RENDER_WORKERS));
+        c.setWorkerMaxErrors(getInt(prop, prefix + "render.worker.max.errors", WORKER_MAX_ERRORS));
+        c.setWorkerCheckInterval(getLong(prop, prefix + "render.worker.check.interval", WORKER_CHECK_INTERVAL));
+        c.setMetaTile(getInt(prop, prefix + "metatile", META_TILE));
+
+        String store = prop.getProperty(prefix + "store", STORE);
+        if (store != null) {
+            store = store.trim().toUpperCase();
+        }
+        c.setStoreType(TileServerConf.StoreType.valueOf(store));
+
+        c.setStoreDir(prop.getProperty(prefix + "store.dir", STORE_DIR));
+        c.setStorePackFile(prop.getProperty(prefix + "store.pack.file", STORE_PACK_FILE));
+        c.setStorePackCompactDead(getInt(prop, prefix + "store.pack.compact.dead", STORE_PACK_COMPACT_DEAD));
+
+        c.setMemoryCacheSize(getInt(prop, prefix + "cache.memory.size", MEMORY_CACHE_SIZE));
+
+        c.setRenderTimeout(getLong(prop, prefix + "render.timeout", RENDER_TIMEOUT));
+
+        c.setRenderQueueMax(getInt(prop, prefix + "render.queue.max", RENDER_QUEUE_MAX));
+
+        c.setRetryAfter(getInt(prop, prefix + "render.retry.after", RETRY_AFTER));
+
+        c.setPrefetchThreads(getInt(prop, prefix + "prefetch.threads", PREFETCH_THREADS));
+        c.setPrefetchSize(getInt(prop, prefix + "prefetch.size", PREFETCH_SIZE));
+
+        c.setOverviewMinZoom(getInt(prop, prefix + "overview.min.zoom", OVERVIEW_MIN_ZOOM));
+
+        c.setSeedCheckpoint(prop.getProperty(prefix + "seed.checkpoint", SEED_CHECKPOINT));
+
+        c.setExpireDir(prop.getProperty(prefix + "expire.dir", EXPIRE_DIR));
+        c.setExpireInterval(getLong(prop, prefix + "expire.interval", EXPIRE_INTERVAL));
+        c.setExpireMaxZoom(getInt(prop, prefix + "expire.max.zoom", EXPIRE_MAX_ZOOM));
+        c.setExpireRender(Boolean.parseBoolean(prop.getProperty(prefix + "expire.render", EXPIRE_RENDER).trim()));
+
+        validate(c);
+
+        return c;
+    }
+
+    private static void validate(TileServerConf c) {
+        if (c.getRenderWorkers() < 1) {
+            throw new RuntimeException("number of render workers need to be positive: " + c.getRenderWorkers());
+        }
+        if (c.getPrefetchThreads() < 0) {
+            throw new RuntimeException("number of prefetch threads can't be negative: " + c.getPrefetchThreads());
+        }
+        if (c.getPrefetchThreads() > 0 && c.getPrefetchSize() < 1) {
+            throw new RuntimeException("number of prefetched jobs need to be positive: " + c.getPrefetchSize());
+        }
+        int metaTile = c.getMetaTile();
+        if (metaTile < 1 || (metaTile & (metaTile - 1)) != 0) {
+            throw new RuntimeException("size of metatile need to be power of two: " + metaTile);
+        }
+
+        if (c.getOverviewMinZoom() < 0) {
+            throw new RuntimeException("minimal overview zoom can't be negative: " + c.getOverviewMinZoom());
+        }
+
+        if (c.getExpireMaxZoom() < 0 || c.getExpireMaxZoom() > TileKeyUtil.MAX_ZOOM) {
+            throw new RuntimeException("maximal zoom of expired tiles need to be between 0 and "
+                    + TileKeyUtil.MAX_ZOOM + ": " + c.getExpireMaxZoom());
+        }
+        if (c.getExpireInterval() <= 0) {
+            throw new RuntimeException("interval of expire directory checks need to be positive: "
+                    + c.getExpireInterval());
+        }
+
+        if (TileServerConf.StoreType.FILE.equals(c.getStoreType())) {
+            if (StringUtil.isBlankOrNull(c.getStoreDir())) {
+                throw new RuntimeException("for file tile store parameter store.dir is required");
+            }
+        } else if (TileServerConf.StoreType.PACK.equals(c.getStoreType())) {
+            if (StringUtil.isBlankOrNull(c.getStorePackFile())) {
+                throw new RuntimeException("for pack tile store parameter store.pack.file is required");
+            }
+            if (c.getStorePackCompactDead() < 0 || c.getStorePackCompactDead() > 100) {
+                throw new RuntimeException("percent of dead bytes in pack file need to be between 0 and 100: "
+                        + c.getStorePackCompactDead());
+            }
+        }
+    }
+
+    private static Integer getInt(Properties prop, String key, Integer d) {
+        String p = prop.getProperty(key, null);
+        if (p == null) {
+            return d;
+        }
+        try {
+            return Integer.parseInt(p.trim());
+        } catch (Exception e) {
+            //
+        }
+        return d;
+    }
+
+    private static Long getLong(Properties prop, String key, Long d) {
+        String p = prop.getProperty(key, null);
+        if (p == null) {
+            return d;
+        }
+        try {
+            return Long.parseLong(p.trim());
+        } catch (Exception e) {
+            //
+        }
+        return d;
+    }
+}
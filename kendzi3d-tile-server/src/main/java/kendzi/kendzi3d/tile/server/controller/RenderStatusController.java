@@ -7,6 +7,7 @@ import javax.servlet.http.HttpServletResponse;
 import kendzi.kendzi3d.tile.server.dto.RenderStatus;
 import kendzi.kendzi3d.tile.server.service.RenderService;
 import kendzi.kendzi3d.tile.server.service.RenderStatusService;
+import kendzi.kendzi3d.tile.server.service.TileService;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -23,6 +24,9 @@ public class RenderStatusController {
     @Autowired
     RenderStatusService renderStatusService;
 
+    @Autowired
+    TileService tileService;
+
 
     @RequestMapping(value="/status" )
     public ModelAndView test(HttpServletResponse response) {
@@ -30,6 +34,12 @@ public class RenderStatusController {
         List<RenderStatus> list = this.renderStatusService.findAll();
         ModelAndView modelAndView = new ModelAndView("renderStatus");
         modelAndView.addObject("renderStatusList", list);
+        modelAndView.addObject("renderWorkerStatusList", this.renderService.getWorkersStatus());
+        modelAndView.addObject("renderQueueSize", this.renderService.getQueueSize());
+        modelAndView.addObject("renderExpiredJobs", this.renderService.getExpiredJobs());
+        modelAndView.addObject("renderRejectedJobs", this.renderService.getRejectedJobs());
+        modelAndView.addObject("renderLatencyList", this.renderService.getRenderStats().getLatencyStatus());
+        modelAndView.addObject("tileCacheStatus", this.tileService.getCacheStatus());
 
         return modelAndView;
     }
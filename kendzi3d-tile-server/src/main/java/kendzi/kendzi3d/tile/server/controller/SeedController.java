@@ -0,0 +1,62 @@
+package kendzi.kendzi3d.tile.server.controller;
+
+import kendzi.kendzi3d.tile.server.seed.SeedArea;
+import kendzi.kendzi3d.tile.server.service.OverviewService;
+import kendzi.kendzi3d.tile.server.service.SeedService;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.ModelAndView;
+
+@Controller
+public class SeedController {
+
+    @Autowired
+    SeedService seedService;
+
+    @Autowired
+    OverviewService overviewService;
+
+    @RequestMapping(value="/seed" )
+    public ModelAndView status() {
+
+        ModelAndView modelAndView = new ModelAndView("seedStatus");
+        modelAndView.addObject("seedStatus", this.seedService.getStatus());
+
+        return modelAndView;
+    }
+
+    @RequestMapping(value="/seed/start" )
+    public ModelAndView start(
+            @RequestParam double minLon,
+            @RequestParam double minLat,
+            @RequestParam double maxLon,
+            @RequestParam double maxLat,
+            @RequestParam int minZoom,
+            @RequestParam int maxZoom) {
+
+        if (minZoom > maxZoom || minZoom < this.overviewService.getMinZoom()) {
+            throw new RuntimeException("wrong zoom range: " + minZoom + " - " + maxZoom);
+        }
+
+        this.seedService.start(new SeedArea(
+                Math.min(minLon, maxLon),
+                Math.min(minLat, maxLat),
+                Math.max(minLon, maxLon),
+                Math.max(minLat, maxLat),
+                minZoom,
+                maxZoom));
+
+        return new ModelAndView("redirect:/seed");
+    }
+
+    @RequestMapping(value="/seed/stop" )
+    public ModelAndView stop() {
+
+        this.seedService.stop();
+
+        return new ModelAndView("redirect:/seed");
+    }
+}
@@ -1,13 +1,7 @@
 package kendzi.kendzi3d.tile.server.controller;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.DateFormat;
-import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
@@ -19,19 +13,29 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import kendzi.kendzi3d.render.tile.Tile;
+import kendzi.kendzi3d.tile.server.config.TileServerConf;
+import kendzi.kendzi3d.tile.server.render.RenderOverloadedException;
+import kendzi.kendzi3d.tile.server.render.job.RenderPriority;
 import kendzi.kendzi3d.tile.server.service.RenderService;
+import kendzi.kendzi3d.tile.server.service.TileCallback;
+import kendzi.kendzi3d.tile.server.service.TileRequest;
+import kendzi.kendzi3d.tile.server.service.TileService;
+import kendzi.kendzi3d.tile.server.store.StoredTile;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Controller;
-import org.springframework.util.FileCopyUtils;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.servlet.ModelAndView;
 
 
@@ -41,8 +45,6 @@ public class TileController {
     /** Log. */
     private static final Logger log = Logger.getLogger(TileController.class);
 
-    private static final String cacheDir = "/osm_dev/tiles_cache/{2}/{0}/{1}.png";
-
     private static final int EXPIRES_DATE = 20660;
 
     private int sleep = 0;
@@ -50,6 +52,12 @@ public class TileController {
     @Autowired
     RenderService renderService;
 
+    @Autowired
+    TileService tileService;
+
+    @Autowired
+    TileServerConf tileServerConf;
+
     @RequestMapping(value="/home" )
     public ModelAndView test(HttpServletResponse response) throws IOException{
 
@@ -65,9 +73,10 @@ public class TileController {
             @PathVariable Integer x,
             @PathVariable Integer y,
 
+            HttpServletRequest request,
             HttpServletResponse response) throws IOException{
 
-        tiles(z, x, y, null, response);
+        tiles(z, x, y, null, request, response);
     }
 
     @RequestMapping(value="/tilesAsync/{z}/{x}/{y}.png/{parm}", method = RequestMethod.GET )
@@ -77,48 +86,86 @@ public class TileController {
             @PathVariable Integer y,
             @PathVariable String parm,
 
+            HttpServletRequest request,
             HttpServletResponse response) {
 
         boolean dirty = false;
         boolean status = false;
+        RenderPriority priority = RenderPriority.INTERACTIVE;
         if ("dirty".equals(parm)) {
             dirty = true;
         } else if ("status".equals(parm)) {
             status = true;
-        }
-
-        if (z < 14) {
-            throw new RuntimeException("zoom biger than 14");
+        } else if ("prefetch".equals(parm)) {
+            priority = RenderPriority.PREFETCH;
         }
 
         log.info("render call for z: " + z + " x: " + x + " y: " + y + " dirty: " + dirty + " status: " + status);
 
         Tile tile = new Tile(x, y, z);
 
-        byte [] tileBytes = null;
+        StoredTile storedTile = this.tileService.getTile(tile, dirty, priority);
 
-        if (dirty || !isInCache(tile)) {
-            tileBytes = this.renderService.render(tile);
-            saveToCache(tile, tileBytes);
-        } else {
-            tileBytes = loadFromCache(tile);
-        }
+        response.setHeader("Cache-Control","max-age=" + EXPIRES_DATE);
+        response.setHeader("Expires", htmlExpiresDate(EXPIRES_DATE));
+        response.setHeader("ETag", storedTile.getEtag());
+        response.setHeader("Last-Modified", formatHtmlExpiresDate().format(storedTile.getLastModified()));
 
-        ByteArrayInputStream fileIn = new ByteArrayInputStream(tileBytes);
+        if (isNotModified(storedTile, request.getHeader("If-None-Match"), getIfModifiedSince(request))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
 
-        response.setContentType("image/png");
-        response.setContentLength(new Long(tileBytes.length).intValue());
+        byte [] tileBytes = storedTile.getImage();
 
-        response.setHeader("Cache-Control","max-age=" + EXPIRES_DATE);
-        response.setHeader("Expires", htmlExpiresDate(EXPIRES_DATE));
+        response.setContentType(storedTile.getContentType());
+        response.setContentLength(tileBytes.length);
 
         try {
-            FileCopyUtils.copy(fileIn, response.getOutputStream());
+            // written directly from tile buffer, without copying
+            response.getOutputStream().write(tileBytes);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Checks conditional request headers. If-None-Match has precedence over
+     * If-Modified-Since.
+     *
+     * @param storedTile tile
+     * @param ifNoneMatch value of If-None-Match header or null
+     * @param ifModifiedSince value of If-Modified-Since header or -1
+     * @return if client has current version of tile
+     */
+    static boolean isNotModified(StoredTile storedTile, String ifNoneMatch, long ifModifiedSince) {
+        if (ifNoneMatch != null) {
+            String etag = storedTile.getEtag();
+            for (String match : ifNoneMatch.split(",")) {
+                match = match.trim();
+                if ("*".equals(match) || etag.equals(match)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (ifModifiedSince >= 0) {
+            // http dates have precision of seconds
+            return storedTile.getLastModified() / 1000 <= ifModifiedSince / 1000;
+        }
+        return false;
+    }
+
+    private static long getIfModifiedSince(HttpServletRequest request) {
+        try {
+            return request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            // wrong date format
+            return -1;
+        }
+    }
+
     public String htmlExpiresDate(int seconds) {
 
         Calendar cal = new GregorianCalendar();
@@ -178,126 +225,139 @@ public class TileController {
 
 
     @RequestMapping(value="/tiles/{z}/{x}/{y}.png", method = RequestMethod.GET )
-    public Callable<HttpEntity<byte[]>> tiles2(
+    public DeferredResult<HttpEntity<byte[]>> tiles2(
             @PathVariable Integer z,
             @PathVariable Integer x,
             @PathVariable Integer y,
 
+            HttpServletRequest request,
             HttpServletResponse response) {
 
-        return tiles2(z, x, y, null, response);
+        return tiles2(z, x, y, null, request, response);
     }
 
 
+    /**
+     * Tile is returned without blocking any thread while it is rendering. Request
+     * is completed by render worker, so number of pending requests doesn't depend
+     * on number of threads.
+     */
     @RequestMapping(value="/tiles/{z}/{x}/{y}.png/{parm}", method = RequestMethod.GET )
-    public Callable<HttpEntity<byte[]>> tiles2(
+    public DeferredResult<HttpEntity<byte[]>> tiles2(
             @PathVariable Integer z,
             @PathVariable Integer x,
             @PathVariable final Integer y,
             @PathVariable String parm,
 
+            HttpServletRequest request,
             HttpServletResponse response) {
 
         boolean dirty = false;
         boolean status = false;
+        RenderPriority priority = RenderPriority.INTERACTIVE;
         if ("dirty".equals(parm)) {
             dirty = true;
         } else if ("status".equals(parm)) {
             status = true;
-        }
-
-        final boolean isDirty = dirty;
-
-        if (z < 14) {
-            throw new RuntimeException("zoom biger than 14");
+        } else if ("prefetch".equals(parm)) {
+            priority = RenderPriority.PREFETCH;
         }
 
         log.info("z: " + z + " x: " + x + " y: " + y);
 
         final Tile tile = new Tile(x, y, z);
 
-        return new Callable<HttpEntity<byte[]>>() {
-
-            @Override
-            public HttpEntity<byte[]> call() throws Exception {
-
-                byte [] tileBytes = null;
-
-                if (isDirty || !isInCache(tile)) {
-                    tileBytes = TileController.this.renderService.render(tile);
-                    saveToCache(tile, tileBytes);
-                } else {
-                    tileBytes = loadFromCache(tile);
-                }
-
-                final byte [] documentBody = tileBytes;
-
-                HttpHeaders header = new HttpHeaders();
-                header.setContentType(new MediaType("image", "png"));
+        // request headers are read before request is completed in other thread
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        final long ifModifiedSince = getIfModifiedSince(request);
 
-                header.setContentLength(documentBody.length);
+        long timeout = this.tileServerConf.getRenderTimeout();
 
+        final DeferredResult<HttpEntity<byte[]>> deferredResult = new DeferredResult<HttpEntity<byte[]>>(
+                timeout > 0 ? timeout : null, overloadedEntity());
 
+        final TileRequest tileRequest = this.tileService.getTile(tile, dirty, priority, new TileCallback() {
 
+            @Override
+            public void tileReady(StoredTile storedTile) {
+                deferredResult.setResult(tileEntity(storedTile, ifNoneMatch, ifModifiedSince));
+            }
 
+            @Override
+            public void tileFailed(RuntimeException error) {
+                if (error instanceof RenderOverloadedException) {
+                    log.warn("renderer overloaded: " + error.getMessage());
+                    deferredResult.setResult(overloadedEntity());
+                } else {
+                    log.error("error rendering tile: " + tile, error);
+                    deferredResult.setResult(new ResponseEntity<byte[]>(HttpStatus.INTERNAL_SERVER_ERROR));
+                }
+            }
+        });
 
-                header.set("Cache-Control","max-age=" + EXPIRES_DATE);
-                header.set("Expires", htmlExpiresDate(EXPIRES_DATE));
+        // render job without waiters is cancelled before worker starts it
+        deferredResult.onTimeout(new Runnable() {
 
-                return new HttpEntity<byte[]>(documentBody, header);
+            @Override
+            public void run() {
+                log.warn("timeout waiting for tile: " + tile);
+                tileRequest.release();
             }
-        };
-    }
+        });
+        // also when client disconnected
+        deferredResult.onCompletion(new Runnable() {
 
-    private void saveToCache(Tile tile, byte[] tileBytes) {
+            @Override
+            public void run() {
+                tileRequest.release();
+            }
+        });
 
-        if (tileBytes == null) {
-            throw new RuntimeException("tileBytes cant be null!");
-        }
+        return deferredResult;
+    }
 
-        ByteArrayInputStream in = new ByteArrayInputStream(tileBytes);
+    private HttpEntity<byte[]> overloadedEntity() {
+        HttpHeaders header = new HttpHeaders();
+        header.set("Retry-After", Integer.toString(this.tileServerConf.getRetryAfter()));
+        header.set("Cache-Control", "no-cache");
+        return new ResponseEntity<byte[]>(header, HttpStatus.SERVICE_UNAVAILABLE);
+    }
 
-        File f = new File(getFileName(tile));
+    private HttpEntity<byte[]> tileEntity(StoredTile storedTile, String ifNoneMatch, long ifModifiedSince) {
 
-        try {
-            File parent = f.getParentFile();
-            parent.mkdirs();
+        HttpHeaders header = new HttpHeaders();
 
-            FileOutputStream out = new FileOutputStream(f);
-            FileCopyUtils.copy(in, out);
+        header.set("Cache-Control","max-age=" + EXPIRES_DATE);
+        header.set("Expires", htmlExpiresDate(EXPIRES_DATE));
+        header.set("ETag", storedTile.getEtag());
+        header.set("Last-Modified", formatHtmlExpiresDate().format(storedTile.getLastModified()));
 
-        } catch (IOException e) {
-            log.error("Error saving file to cache", e);
+        if (isNotModified(storedTile, ifNoneMatch, ifModifiedSince)) {
+            return new ResponseEntity<byte[]>(header, HttpStatus.NOT_MODIFIED);
         }
-    }
-
-    private byte[] loadFromCache(Tile tile) {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        File f = new File(getFileName(tile));
 
+        final byte [] documentBody = storedTile.getImage();
 
-        try {
-            FileInputStream in = new FileInputStream(f);
-            FileCopyUtils.copy(in, out);
-            return out.toByteArray();
-        } catch (IOException e) {
-            log.error("Error loading file from cache", e);
-        }
-        return null;
-    }
-
+        header.setContentType(MediaType.parseMediaType(storedTile.getContentType()));
 
-    private boolean isInCache(Tile tile) {
-        File f = new File(getFileName(tile));
+        header.setContentLength(documentBody.length);
 
-        return f.exists();
+        return new HttpEntity<byte[]>(documentBody, header);
     }
 
-    private String getFileName(Tile t) {
-        return MessageFormat.format(
-                this.cacheDir,
-                Long.toString(t.getX()),
-                Long.toString(t.getY()),
-                Long.toString(t.getZ()));
+    /**
+     * When renderer is overloaded client gets 503 with time after which it
+     * should try again.
+     *
+     * @param e exception
+     * @param response response
+     */
+    @ExceptionHandler(RenderOverloadedException.class)
+    public void overloaded(RenderOverloadedException e, HttpServletResponse response) {
+        log.warn("renderer overloaded: " + e.getMessage());
+
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", Integer.toString(this.tileServerConf.getRetryAfter()));
+        response.setHeader("Cache-Control", "no-cache");
     }
 }
@@ -0,0 +1,99 @@
+package kendzi.kendzi3d.tile.server.dto;
+
+/**
+ * Latency of one stage of rendering, times are in milliseconds.
+ */
+public class LatencyStatus {
+    private String name;
+    private long count;
+    private double mean;
+    private double p50;
+    private double p90;
+    private double p99;
+    private double max;
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return this.name;
+    }
+    /**
+     * @param name the name to set
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+    /**
+     * @return the count
+     */
+    public long getCount() {
+        return this.count;
+    }
+    /**
+     * @param count the count to set
+     */
+    public void setCount(long count) {
+        this.count = count;
+    }
+    /**
+     * @return the mean
+     */
+    public double getMean() {
+        return this.mean;
+    }
+    /**
+     * @param mean the mean to set
+     */
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+    /**
+     * @return the p50
+     */
+    public double getP50() {
+        return this.p50;
+    }
+    /**
+     * @param p50 the p50 to set
+     */
+    public void setP50(double p50) {
+        this.p50 = p50;
+    }
+    /**
+     * @return the p90
+     */
+    public double getP90() {
+        return this.p90;
+    }
+    /**
+     * @param p90 the p90 to set
+     */
+    public void setP90(double p90) {
+        this.p90 = p90;
+    }
+    /**
+     * @return the p99
+     */
+    public double getP99() {
+        return this.p99;
+    }
+    /**
+     * @param p99 the p99 to set
+     */
+    public void setP99(double p99) {
+        this.p99 = p99;
+    }
+    /**
+     * @return the max
+     */
+    public double getMax() {
+        return this.max;
+    }
+    /**
+     * @param max the max to set
+     */
+    public void setMax(double max) {
+        this.max = max;
+    }
+}
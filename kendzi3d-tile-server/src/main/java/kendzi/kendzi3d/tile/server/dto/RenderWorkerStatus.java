@@ -0,0 +1,151 @@
+package kendzi.kendzi3d.tile.server.dto;
+
+import java.util.Date;
+
+public class RenderWorkerStatus {
+    private String name;
+    private boolean alive;
+    private boolean initialized;
+    private boolean busy;
+    private long jobsCount;
+    private long errorsCount;
+    private int consecutiveErrors;
+    private int restarts;
+    private boolean dead;
+    private Date lastJobTime;
+    private double utilization;
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+    /**
+     * @param name the name to set
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+    /**
+     * @return the alive
+     */
+    public boolean isAlive() {
+        return alive;
+    }
+    /**
+     * @param alive the alive to set
+     */
+    public void setAlive(boolean alive) {
+        this.alive = alive;
+    }
+    /**
+     * @return the initialized
+     */
+    public boolean isInitialized() {
+        return initialized;
+    }
+    /**
+     * @param initialized the initialized to set
+     */
+    public void setInitialized(boolean initialized) {
+        this.initialized = initialized;
+    }
+    /**
+     * @return the busy
+     */
+    public boolean isBusy() {
+        return busy;
+    }
+    /**
+     * @param busy the busy to set
+     */
+    public void setBusy(boolean busy) {
+        this.busy = busy;
+    }
+    /**
+     * @return the jobsCount
+     */
+    public long getJobsCount() {
+        return jobsCount;
+    }
+    /**
+     * @param jobsCount the jobsCount to set
+     */
+    public void setJobsCount(long jobsCount) {
+        this.jobsCount = jobsCount;
+    }
+    /**
+     * @return the errorsCount
+     */
+    public long getErrorsCount() {
+        return errorsCount;
+    }
+    /**
+     * @param errorsCount the errorsCount to set
+     */
+    public void setErrorsCount(long errorsCount) {
+        this.errorsCount = errorsCount;
+    }
+    /**
+     * @return the consecutiveErrors
+     */
+    public int getConsecutiveErrors() {
+        return consecutiveErrors;
+    }
+    /**
+     * @param consecutiveErrors the consecutiveErrors to set
+     */
+    public void setConsecutiveErrors(int consecutiveErrors) {
+        this.consecutiveErrors = consecutiveErrors;
+    }
+    /**
+     * @return the restarts
+     */
+    public int getRestarts() {
+        return restarts;
+    }
+    /**
+     * @param restarts the restarts to set
+     */
+    public void setRestarts(int restarts) {
+        this.restarts = restarts;
+    }
+    /**
+     * @return if worker is not restarted any more after too many failed
+     *         initializations
+     */
+    public boolean isDead() {
+        return dead;
+    }
+    /**
+     * @param dead the dead to set
+     */
+    public void setDead(boolean dead) {
+        this.dead = dead;
+    }
+    /**
+     * @return the lastJobTime
+     */
+    public Date getLastJobTime() {
+        return lastJobTime;
+    }
+    /**
+     * @param lastJobTime the lastJobTime to set
+     */
+    public void setLastJobTime(Date lastJobTime) {
+        this.lastJobTime = lastJobTime;
+    }
+    /**
+     * @return the utilization, part of time spent on rendering
+     */
+    public double getUtilization() {
+        return utilization;
+    }
+    /**
+     * @param utilization the utilization to set
+     */
+    public void setUtilization(double utilization) {
+        this.utilization = utilization;
+    }
+}
@@ -0,0 +1,163 @@
+package kendzi.kendzi3d.tile.server.dto;
+
+import java.util.Date;
+
+public class SeedStatus {
+    private String area;
+    private boolean running;
+    private boolean finished;
+    private Date startDate;
+    private int zoom;
+    private long total;
+    private long done;
+    private long rendered;
+    private long skipped;
+    private long errors;
+    private double tilesPerSecond;
+    private long eta;
+
+    /**
+     * @return the area
+     */
+    public String getArea() {
+        return this.area;
+    }
+    /**
+     * @param area the area to set
+     */
+    public void setArea(String area) {
+        this.area = area;
+    }
+    /**
+     * @return the running
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+    /**
+     * @param running the running to set
+     */
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+    /**
+     * @return the finished
+     */
+    public boolean isFinished() {
+        return this.finished;
+    }
+    /**
+     * @param finished the finished to set
+     */
+    public void setFinished(boolean finished) {
+        this.finished = finished;
+    }
+    /**
+     * @return the startDate
+     */
+    public Date getStartDate() {
+        return this.startDate;
+    }
+    /**
+     * @param startDate the startDate to set
+     */
+    public void setStartDate(Date startDate) {
+        this.startDate = startDate;
+    }
+    /**
+     * @return the zoom
+     */
+    public int getZoom() {
+        return this.zoom;
+    }
+    /**
+     * @param zoom the zoom to set
+     */
+    public void setZoom(int zoom) {
+        this.zoom = zoom;
+    }
+    /**
+     * @return the total
+     */
+    public long getTotal() {
+        return this.total;
+    }
+    /**
+     * @param total the total to set
+     */
+    public void setTotal(long total) {
+        this.total = total;
+    }
+    /**
+     * @return the done
+     */
+    public long getDone() {
+        return this.done;
+    }
+    /**
+     * @param done the done to set
+     */
+    public void setDone(long done) {
+        this.done = done;
+    }
+    /**
+     * @return the rendered
+     */
+    public long getRendered() {
+        return this.rendered;
+    }
+    /**
+     * @param rendered the rendered to set
+     */
+    public void setRendered(long rendered) {
+        this.rendered = rendered;
+    }
+    /**
+     * @return the skipped
+     */
+    public long getSkipped() {
+        return this.skipped;
+    }
+    /**
+     * @param skipped the skipped to set
+     */
+    public void setSkipped(long skipped) {
+        this.skipped = skipped;
+    }
+    /**
+     * @return the errors
+     */
+    public long getErrors() {
+        return this.errors;
+    }
+    /**
+     * @param errors the errors to set
+     */
+    public void setErrors(long errors) {
+        this.errors = errors;
+    }
+    /**
+     * @return the tiles per second
+     */
+    public double getTilesPerSecond() {
+        return this.tilesPerSecond;
+    }
+    /**
+     * @param tilesPerSecond the tiles per second to set
+     */
+    public void setTilesPerSecond(double tilesPerSecond) {
+        this.tilesPerSecond = tilesPerSecond;
+    }
+    /**
+     * @return the estimated time to finish in seconds
+     */
+    public long getEta() {
+        return this.eta;
+    }
+    /**
+     * @param eta the estimated time to finish in seconds to set
+     */
+    public void setEta(long eta) {
+        this.eta = eta;
+    }
+}
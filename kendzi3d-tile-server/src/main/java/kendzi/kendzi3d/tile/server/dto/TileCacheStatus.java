@@ -0,0 +1,83 @@
+package kendzi.kendzi3d.tile.server.dto;
+
+public class TileCacheStatus {
+    private int entries;
+    private long size;
+    private long maxSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @return the entries
+     */
+    public int getEntries() {
+        return this.entries;
+    }
+    /**
+     * @param entries the entries to set
+     */
+    public void setEntries(int entries) {
+        this.entries = entries;
+    }
+    /**
+     * @return the size
+     */
+    public long getSize() {
+        return this.size;
+    }
+    /**
+     * @param size the size to set
+     */
+    public void setSize(long size) {
+        this.size = size;
+    }
+    /**
+     * @return the maxSize
+     */
+    public long getMaxSize() {
+        return this.maxSize;
+    }
+    /**
+     * @param maxSize the maxSize to set
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+    /**
+     * @return the hits
+     */
+    public long getHits() {
+        return this.hits;
+    }
+    /**
+     * @param hits the hits to set
+     */
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+    /**
+     * @return the misses
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+    /**
+     * @param misses the misses to set
+     */
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+    /**
+     * @return the evictions
+     */
+    public long getEvictions() {
+        return this.evictions;
+    }
+    /**
+     * @param evictions the evictions to set
+     */
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+}
@@ -0,0 +1,239 @@
+package kendzi.kendzi3d.tile.server.expire;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads changed areas into tile expiry. Supported files:
+ * <ul>
+ * <li>osmChange (.osc or .osc.gz) - position of every created, modified or
+ * deleted node is added, changed ways and relations are located by positions
+ * of their nodes and members,</li>
+ * <li>list of bboxes (.bbox) - one bbox per line: minLon,minLat,maxLon,maxLat,
+ * lines starting with # are skipped.</li>
+ * </ul>
+ *
+ * Ways and relations in osmChange don't have position. Their nodes and
+ * members are taken from change file and from stored data by
+ * {@link ChangeLocator}, so both old and new shape of way is expired. Nodes
+ * which are not in change file are located by it too.
+ */
+public class ChangeFileReader {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(ChangeFileReader.class);
+
+    /**
+     * @param file file
+     * @return if file is supported change file
+     */
+    public static boolean isChangeFile(File file) {
+        String name = file.getName();
+        return file.isFile() && (name.endsWith(".osc") || name.endsWith(".osc.gz") || name.endsWith(".bbox"));
+    }
+
+    /**
+     * Reads changes from file.
+     *
+     * @param file change file
+     * @param expiry tile expiry
+     * @param locator locator of primitives which don't have position in
+     *            change file, null when only positions in change file are
+     *            used
+     * @return number of read changes
+     * @throws IOException
+     */
+    public static int read(File file, TileExpiry expiry, ChangeLocator locator) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+        try {
+            String name = file.getName();
+            if (name.endsWith(".gz")) {
+                in = new GZIPInputStream(in, 64 * 1024);
+            }
+            if (name.endsWith(".bbox")) {
+                return readBboxList(in, expiry);
+            }
+            return readOsmChange(in, expiry, locator);
+        } catch (XMLStreamException e) {
+            throw new IOException("error reading osm change file: " + file, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads changed primitives from osmChange. Positions of nodes are added
+     * while xml is streamed, so size of file is not limited. Ids of ways,
+     * relations and nodes without position are collected and located after
+     * whole file is read.
+     *
+     * @param in input stream
+     * @param expiry tile expiry
+     * @param locator locator of primitives which don't have position in
+     *            change file, null when only positions in change file are
+     *            used
+     * @return number of read changed primitives
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public static int readOsmChange(InputStream in, TileExpiry expiry, ChangeLocator locator)
+            throws XMLStreamException, IOException {
+        Set<Long> locatedNodeIds = new HashSet<Long>();
+        Set<Long> nodeIds = new HashSet<Long>();
+        Set<Long> wayIds = new HashSet<Long>();
+        Set<Long> relationIds = new HashSet<Long>();
+
+        int count = 0;
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                String name = reader.getLocalName();
+                if ("node".equals(name)) {
+                    long id = Long.parseLong(reader.getAttributeValue(null, "id"));
+                    String lat = reader.getAttributeValue(null, "lat");
+                    String lon = reader.getAttributeValue(null, "lon");
+                    if (lat != null && lon != null) {
+                        expiry.addPoint(Double.parseDouble(lon), Double.parseDouble(lat));
+                        locatedNodeIds.add(id);
+                    } else {
+                        // deleted nodes can be without position
+                        nodeIds.add(id);
+                    }
+                    count++;
+
+                } else if ("way".equals(name)) {
+                    wayIds.add(Long.parseLong(reader.getAttributeValue(null, "id")));
+                    count++;
+
+                } else if ("relation".equals(name)) {
+                    relationIds.add(Long.parseLong(reader.getAttributeValue(null, "id")));
+                    count++;
+
+                } else if ("nd".equals(name)) {
+                    nodeIds.add(Long.parseLong(reader.getAttributeValue(null, "ref")));
+
+                } else if ("member".equals(name)) {
+                    long ref = Long.parseLong(reader.getAttributeValue(null, "ref"));
+                    String type = reader.getAttributeValue(null, "type");
+                    if ("node".equals(type)) {
+                        nodeIds.add(ref);
+                    } else if ("way".equals(type)) {
+                        wayIds.add(ref);
+                    } else if ("relation".equals(type)) {
+                        relationIds.add(ref);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        locate(expiry, locator, locatedNodeIds, nodeIds, wayIds, relationIds);
+
+        return count;
+    }
+
+    /**
+     * Locates ways and relations by positions of their nodes and members.
+     *
+     * @param expiry tile expiry
+     * @param locator locator, can be null
+     * @param locatedNodeIds ids of nodes which positions are already added
+     * @param nodeIds ids of nodes
+     * @param wayIds ids of ways
+     * @param relationIds ids of relations
+     * @throws IOException
+     */
+    private static void locate(TileExpiry expiry, ChangeLocator locator, Set<Long> locatedNodeIds,
+            Set<Long> nodeIds, Set<Long> wayIds, Set<Long> relationIds) throws IOException {
+
+        if (locator != null) {
+            // members of relations, also of child relations
+            Set<Long> visited = new HashSet<Long>();
+            Set<Long> relations = relationIds;
+            while (!relations.isEmpty()) {
+                visited.addAll(relations);
+                Set<Long> childRelations = new HashSet<Long>();
+                locator.findRelationMembers(relations, nodeIds, wayIds, childRelations);
+                childRelations.removeAll(visited);
+                relations = childRelations;
+            }
+
+            if (!wayIds.isEmpty()) {
+                locator.findWayNodes(wayIds, nodeIds);
+            }
+        }
+
+        nodeIds.removeAll(locatedNodeIds);
+        if (nodeIds.isEmpty()) {
+            return;
+        }
+
+        int found = 0;
+        if (locator != null) {
+            found = locator.addNodes(nodeIds, expiry);
+        }
+        if (found < nodeIds.size()) {
+            log.warn("nodes without position: " + (nodeIds.size() - found) + " were skipped");
+        }
+    }
+
+    /**
+     * Reads list of bboxes.
+     *
+     * @param in input stream
+     * @param expiry tile expiry
+     * @return number of read bboxes
+     * @throws IOException
+     */
+    public static int readBboxList(InputStream in, TileExpiry expiry) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        int count = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] s = line.split("[,\\s]+");
+            if (s.length != 4) {
+                throw new IOException("wrong bbox: " + line);
+            }
+            try {
+                double lon1 = Double.parseDouble(s[0]);
+                double lat1 = Double.parseDouble(s[1]);
+                double lon2 = Double.parseDouble(s[2]);
+                double lat2 = Double.parseDouble(s[3]);
+
+                expiry.addBbox(Math.min(lon1, lon2), Math.min(lat1, lat2), Math.max(lon1, lon2),
+                        Math.max(lat1, lat2));
+            } catch (NumberFormatException e) {
+                throw new IOException("wrong bbox: " + line, e);
+            }
+            count++;
+        }
+        return count;
+    }
+}
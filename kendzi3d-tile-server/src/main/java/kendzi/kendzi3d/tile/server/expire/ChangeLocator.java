@@ -0,0 +1,44 @@
+package kendzi.kendzi3d.tile.server.expire;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Locates primitives of osmChange which don't have position in change file.
+ * Ways and relations are resolved to their nodes, nodes to positions, from
+ * stored data.
+ */
+public interface ChangeLocator {
+
+    /**
+     * Finds nodes of ways.
+     *
+     * @param wayIds ids of ways
+     * @param nodeIds found ids of nodes are added to it
+     * @throws IOException
+     */
+    void findWayNodes(Collection<Long> wayIds, Set<Long> nodeIds) throws IOException;
+
+    /**
+     * Finds members of relations.
+     *
+     * @param relationIds ids of relations
+     * @param nodeIds found ids of node members are added to it
+     * @param wayIds found ids of way members are added to it
+     * @param childRelationIds found ids of relation members are added to it
+     * @throws IOException
+     */
+    void findRelationMembers(Collection<Long> relationIds, Set<Long> nodeIds, Set<Long> wayIds,
+            Set<Long> childRelationIds) throws IOException;
+
+    /**
+     * Adds positions of nodes to tile expiry.
+     *
+     * @param nodeIds ids of nodes
+     * @param expiry tile expiry
+     * @return number of found nodes
+     * @throws IOException
+     */
+    int addNodes(Collection<Long> nodeIds, TileExpiry expiry) throws IOException;
+}
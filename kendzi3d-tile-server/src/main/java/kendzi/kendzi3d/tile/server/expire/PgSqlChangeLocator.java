@@ -0,0 +1,150 @@
+package kendzi.kendzi3d.tile.server.expire;
+
+import java.io.IOException;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+/**
+ * Locates primitives of osmChange in pgsnapshot database. Ids are queried in
+ * batches.
+ */
+public class PgSqlChangeLocator implements ChangeLocator {
+
+    private static final int BATCH_SIZE = 10000;
+
+    private static final String WAY_NODES_SQL = "SELECT w.nodes FROM ways w WHERE w.id = ANY ( ? )";
+
+    private static final String RELATION_MEMBERS_SQL = "SELECT m.member_id, m.member_type FROM relation_members m "
+            + "WHERE m.relation_id = ANY ( ? )";
+
+    private static final String NODES_SQL = "SELECT ST_X(n.geom) AS lon, ST_Y(n.geom) AS lat FROM nodes n "
+            + "WHERE n.id = ANY ( ? )";
+
+    private final DataSource dataSource;
+
+    /**
+     * @param dataSource pgsnapshot database
+     */
+    public PgSqlChangeLocator(DataSource dataSource) {
+        super();
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void findWayNodes(Collection<Long> wayIds, Set<Long> nodeIds) throws IOException {
+        try {
+            Connection connection = this.dataSource.getConnection();
+            try {
+                for (List<Long> batch : batches(wayIds)) {
+                    ResultSet rs = select(connection, WAY_NODES_SQL, batch);
+                    try {
+                        while (rs.next()) {
+                            Array nodes = rs.getArray(1);
+                            if (nodes == null) {
+                                continue;
+                            }
+                            for (Object id : (Object[]) nodes.getArray()) {
+                                nodeIds.add(((Number) id).longValue());
+                            }
+                        }
+                    } finally {
+                        rs.getStatement().close();
+                    }
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new IOException("error finding nodes of ways", e);
+        }
+    }
+
+    @Override
+    public void findRelationMembers(Collection<Long> relationIds, Set<Long> nodeIds, Set<Long> wayIds,
+            Set<Long> childRelationIds) throws IOException {
+        try {
+            Connection connection = this.dataSource.getConnection();
+            try {
+                for (List<Long> batch : batches(relationIds)) {
+                    ResultSet rs = select(connection, RELATION_MEMBERS_SQL, batch);
+                    try {
+                        while (rs.next()) {
+                            long id = rs.getLong(1);
+                            String type = rs.getString(2);
+                            if ("N".equals(type)) {
+                                nodeIds.add(id);
+                            } else if ("W".equals(type)) {
+                                wayIds.add(id);
+                            } else if ("R".equals(type)) {
+                                childRelationIds.add(id);
+                            }
+                        }
+                    } finally {
+                        rs.getStatement().close();
+                    }
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new IOException("error finding members of relations", e);
+        }
+    }
+
+    @Override
+    public int addNodes(Collection<Long> nodeIds, TileExpiry expiry) throws IOException {
+        try {
+            int count = 0;
+            Connection connection = this.dataSource.getConnection();
+            try {
+                for (List<Long> batch : batches(nodeIds)) {
+                    ResultSet rs = select(connection, NODES_SQL, batch);
+                    try {
+                        while (rs.next()) {
+                            expiry.addPoint(rs.getDouble(1), rs.getDouble(2));
+                            count++;
+                        }
+                    } finally {
+                        rs.getStatement().close();
+                    }
+                }
+            } finally {
+                connection.close();
+            }
+            return count;
+        } catch (SQLException e) {
+            throw new IOException("error finding positions of nodes", e);
+        }
+    }
+
+    private static ResultSet select(Connection connection, String sql, List<Long> ids) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql);
+        ps.setArray(1, connection.createArrayOf("bigint", ids.toArray(new Long[ids.size()])));
+        return ps.executeQuery();
+    }
+
+    private static List<List<Long>> batches(Collection<Long> ids) {
+        List<List<Long>> ret = new ArrayList<List<Long>>();
+        List<Long> batch = new ArrayList<Long>(Math.min(ids.size(), BATCH_SIZE));
+        for (Long id : ids) {
+            if (batch.size() == BATCH_SIZE) {
+                ret.add(batch);
+                batch = new ArrayList<Long>(BATCH_SIZE);
+            }
+            batch.add(id);
+        }
+        if (!batch.isEmpty()) {
+            ret.add(batch);
+        }
+        return ret;
+    }
+}
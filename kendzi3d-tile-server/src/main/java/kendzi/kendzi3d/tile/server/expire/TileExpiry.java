@@ -0,0 +1,133 @@
+package kendzi.kendzi3d.tile.server.expire;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.vecmath.Vector2d;
+
+import kendzi.kendzi3d.render.dataset.DataMargin;
+import kendzi.kendzi3d.render.tile.LatLonUtil;
+import kendzi.kendzi3d.render.tile.Tile;
+import kendzi.kendzi3d.render.tile.TitleToLatLon;
+import kendzi.kendzi3d.tile.server.store.TileKeyUtil;
+
+/**
+ * Collects tiles affected by changes of data. Tile is affected when change is
+ * inside of area loaded for rendering it, which is tile bbox with margin added
+ * by data provider, so each change is extended by the same margin.
+ */
+public class TileExpiry {
+
+    private final int minZoom;
+
+    private final int maxZoom;
+
+    private final double marginX;
+
+    private final double marginY;
+
+    /**
+     * Keys of affected tiles, sorted by zoom.
+     */
+    private final Set<Long> tiles = new TreeSet<Long>();
+
+    /**
+     * Uses the largest margin of data which {@link DataMargin} can add to tile
+     * now, so every tile which data contain change is expired.
+     *
+     * @param minZoom minimal zoom of expired tiles
+     * @param maxZoom maximal zoom of expired tiles
+     * @param dataMargin margin of data loaded for tile
+     */
+    public TileExpiry(int minZoom, int maxZoom, DataMargin dataMargin) {
+        this(minZoom, maxZoom, dataMargin.getMaxMargin());
+    }
+
+    private TileExpiry(int minZoom, int maxZoom, Vector2d margin) {
+        this(minZoom, maxZoom, margin.x, margin.y);
+    }
+
+    /**
+     * @param minZoom minimal zoom of expired tiles
+     * @param maxZoom maximal zoom of expired tiles
+     * @param marginX margin in meters added to west and east of change
+     * @param marginY margin in meters added to north and south of change
+     */
+    public TileExpiry(int minZoom, int maxZoom, double marginX, double marginY) {
+        super();
+        if (minZoom < 0 || minZoom > maxZoom || maxZoom > TileKeyUtil.MAX_ZOOM) {
+            throw new RuntimeException("wrong zoom range: " + minZoom + " - " + maxZoom);
+        }
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.marginX = marginX;
+        this.marginY = marginY;
+    }
+
+    /**
+     * Adds changed point.
+     *
+     * @param lon longitude
+     * @param lat latitude
+     */
+    public void addPoint(double lon, double lat) {
+        addBbox(lon, lat, lon, lat);
+    }
+
+    /**
+     * Adds changed area.
+     *
+     * @param minLon minimal longitude
+     * @param minLat minimal latitude
+     * @param maxLon maximal longitude
+     * @param maxLat maximal latitude
+     */
+    public void addBbox(double minLon, double minLat, double maxLon, double maxLat) {
+        double deltaLat = Math.toDegrees(LatLonUtil.deltaLat(this.marginY));
+        // the same as data provider, which takes longitude delta at north of bbox
+        double deltaLon = Math.toDegrees(LatLonUtil.deltaLon(maxLat + deltaLat, this.marginX));
+
+        double west = minLon - deltaLon;
+        double east = maxLon + deltaLon;
+        double south = minLat - deltaLat;
+        double north = maxLat + deltaLat;
+
+        for (int z = this.minZoom; z <= this.maxZoom; z++) {
+            int x0 = clamp(TitleToLatLon.lonToTile(west, z), z);
+            int x1 = clamp(TitleToLatLon.lonToTile(east, z), z);
+            // y grows to south
+            int y0 = clamp(TitleToLatLon.latToTile(north, z), z);
+            int y1 = clamp(TitleToLatLon.latToTile(south, z), z);
+
+            for (int y = y0; y <= y1; y++) {
+                for (int x = x0; x <= x1; x++) {
+                    this.tiles.add(TileKeyUtil.key(x, y, z));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return affected tiles, from the lowest zoom
+     */
+    public List<Tile> getTiles() {
+        List<Tile> ret = new ArrayList<Tile>(this.tiles.size());
+        for (Long key : this.tiles) {
+            ret.add(TileKeyUtil.tile(key));
+        }
+        return ret;
+    }
+
+    /**
+     * @return number of affected tiles
+     */
+    public int size() {
+        return this.tiles.size();
+    }
+
+    private static int clamp(int t, int z) {
+        return Math.max(0, Math.min(t, (1 << z) - 1));
+    }
+}
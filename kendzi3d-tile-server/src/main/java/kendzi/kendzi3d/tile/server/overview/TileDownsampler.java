@@ -0,0 +1,150 @@
+package kendzi.kendzi3d.tile.server.overview;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Composes four tiles of zoom z + 1 into one tile of zoom z. Each 2 x 2 block
+ * of pixels is averaged (box filter). Colors are weighted by alpha, so
+ * transparent pixels don't darken edges of buildings.
+ */
+public class TileDownsampler {
+
+    /**
+     * Size of tile used when no child tile is known.
+     */
+    public static final int TILE_SIZE = 256;
+
+    private TileDownsampler() {
+        //
+    }
+
+    /**
+     * Creates png image of tile from images of its children. Missing child is
+     * left transparent.
+     *
+     * @param children png images of children in order: left top, right top,
+     *            left bottom, right bottom; elements can be null
+     * @return png image of tile
+     */
+    public static byte[] downsample(byte[][] children) {
+        BufferedImage[] images = new BufferedImage[4];
+        int size = 0;
+        for (int i = 0; i < 4; i++) {
+            if (children[i] != null) {
+                images[i] = read(children[i]);
+                if (size == 0) {
+                    size = images[i].getWidth();
+                }
+            }
+        }
+        if (size == 0) {
+            size = TILE_SIZE;
+        }
+        return write(downsample(images, size));
+    }
+
+    /**
+     * @param children images of children in order: left top, right top, left
+     *            bottom, right bottom; elements can be null
+     * @param size size of tile in pixels, it have to be even
+     * @return image of tile
+     */
+    public static BufferedImage downsample(BufferedImage[] children, int size) {
+        int half = size / 2;
+        BufferedImage ret = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+
+        int[] row0 = new int[size];
+        int[] row1 = new int[size];
+        int[] out = new int[half];
+
+        for (int i = 0; i < 4; i++) {
+            if (children[i] == null) {
+                continue;
+            }
+            BufferedImage child = toSize(children[i], size);
+
+            int offsetX = (i % 2) * half;
+            int offsetY = (i / 2) * half;
+
+            for (int y = 0; y < half; y++) {
+                child.getRGB(0, 2 * y, size, 1, row0, 0, size);
+                child.getRGB(0, 2 * y + 1, size, 1, row1, 0, size);
+
+                for (int x = 0; x < half; x++) {
+                    out[x] = average(row0[2 * x], row0[2 * x + 1], row1[2 * x], row1[2 * x + 1]);
+                }
+                ret.setRGB(offsetX, offsetY + y, half, 1, out, 0, half);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Averages four ARGB pixels, colors are weighted by alpha.
+     */
+    static int average(int p0, int p1, int p2, int p3) {
+        int a0 = p0 >>> 24;
+        int a1 = p1 >>> 24;
+        int a2 = p2 >>> 24;
+        int a3 = p3 >>> 24;
+
+        int alphaSum = a0 + a1 + a2 + a3;
+        if (alphaSum == 0) {
+            return 0;
+        }
+
+        int r = (((p0 >> 16) & 0xff) * a0 + ((p1 >> 16) & 0xff) * a1 + ((p2 >> 16) & 0xff) * a2
+                + ((p3 >> 16) & 0xff) * a3 + alphaSum / 2) / alphaSum;
+        int g = (((p0 >> 8) & 0xff) * a0 + ((p1 >> 8) & 0xff) * a1 + ((p2 >> 8) & 0xff) * a2
+                + ((p3 >> 8) & 0xff) * a3 + alphaSum / 2) / alphaSum;
+        int b = ((p0 & 0xff) * a0 + (p1 & 0xff) * a1 + (p2 & 0xff) * a2 + (p3 & 0xff) * a3 + alphaSum / 2)
+                / alphaSum;
+        int a = (alphaSum + 2) / 4;
+
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static BufferedImage toSize(BufferedImage image, int size) {
+        if (image.getWidth() == size && image.getHeight() == size) {
+            return image;
+        }
+        BufferedImage ret = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = ret.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, size, size, null);
+        } finally {
+            g.dispose();
+        }
+        return ret;
+    }
+
+    private static BufferedImage read(byte[] image) {
+        try {
+            BufferedImage ret = ImageIO.read(new ByteArrayInputStream(image));
+            if (ret == null) {
+                throw new IOException("unknown image format");
+            }
+            return ret;
+        } catch (IOException e) {
+            throw new RuntimeException("error reading tile image", e);
+        }
+    }
+
+    private static byte[] write(BufferedImage image) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", baos);
+        } catch (IOException e) {
+            throw new RuntimeException("error writing tile image", e);
+        }
+        return baos.toByteArray();
+    }
+}
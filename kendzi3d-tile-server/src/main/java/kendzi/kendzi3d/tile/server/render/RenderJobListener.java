@@ -0,0 +1,15 @@
+package kendzi.kendzi3d.tile.server.render;
+
+/**
+ * Listener notified when render job is finished, failed or cancelled.
+ */
+public interface RenderJobListener {
+
+    /**
+     * Called once, after job is done. It is called in thread which finished
+     * the job, so it should be short.
+     *
+     * @param status status of finished job
+     */
+    void jobDone(RenderJobStatus status);
+}
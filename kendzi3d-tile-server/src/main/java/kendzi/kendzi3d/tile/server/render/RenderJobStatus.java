@@ -1,21 +1,93 @@
 package kendzi.kendzi3d.tile.server.render;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import kendzi.kendzi3d.render.RenderResult;
 import kendzi.kendzi3d.tile.server.render.job.RenderJob;
+import kendzi.kendzi3d.tile.server.render.job.RenderPriority;
+
+import org.apache.log4j.Logger;
 
+/**
+ * Status of render job. It is a future of render result, only threads waiting
+ * for this job are woken up when it is done.
+ *
+ * Job can be shared by many waiters. When the last waiter gives up before job
+ * is taken by worker, job is cancelled.
+ */
+public class RenderJobStatus implements Future<RenderResult> {
 
-public class RenderJobStatus {
+    /** Log. */
+    private static final Logger log = Logger.getLogger(RenderJobStatus.class);
+
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
 
     private boolean ready;
 
+    private boolean started;
+
+    private boolean cancelled;
+
+    /**
+     * If data of job was changed after job was started.
+     */
+    private volatile boolean dataChanged;
+
     private RenderJob renderJob;
 
     private RenderResult jobResult;
 
+    private Throwable error;
+
+    private List<RenderJobListener> listeners = new ArrayList<RenderJobListener>(1);
+
+    /**
+     * Priority of job. Changed only by work poll when job is not in queue.
+     */
+    private volatile RenderPriority priority;
+
+    /**
+     * Order of adding to work poll.
+     */
+    private long sequence;
+
+    /**
+     * Time after which job is dropped if it is not yet started, zero means no
+     * deadline.
+     */
+    private long deadline;
+
+    /**
+     * Number of threads waiting for result.
+     */
+    private int waiters;
+
+    /**
+     * Time of adding to work poll in nanoseconds.
+     */
+    private volatile long queuedTime;
+
+    /**
+     * Time of taking by worker in nanoseconds.
+     */
+    private volatile long startedTime;
+
 
 
     public RenderJobStatus(RenderJob renderJob) {
+        this(renderJob, RenderPriority.INTERACTIVE);
+    }
+
+    public RenderJobStatus(RenderJob renderJob, RenderPriority priority) {
         this.renderJob = renderJob;
+        this.priority = priority;
         this.ready = false;
     }
 
@@ -27,10 +99,259 @@ public class RenderJobStatus {
         return this.ready;
     }
 
-    public synchronized void execute(RenderResult jobResult) {
+    /**
+     * Marks job as done with result.
+     *
+     * @param jobResult result of job
+     */
+    public void execute(RenderResult jobResult) {
+        complete(jobResult, null, false);
+    }
+
+    /**
+     * Marks job as done with error.
+     *
+     * @param error error
+     */
+    public void fail(Throwable error) {
+        complete(null, error, false);
+    }
+
+    /**
+     * Marks job as taken by worker. Job which is started can't be cancelled.
+     *
+     * @return false if job was already cancelled and it should not be rendered
+     */
+    public synchronized boolean markStarted() {
+        if (this.ready) {
+            return false;
+        }
+        this.started = true;
+        this.startedTime = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * @return if job was taken by worker
+     */
+    public synchronized boolean isStarted() {
+        return this.started;
+    }
 
-        this.jobResult= jobResult;
-        this.ready = true;
+    /**
+     * Marks that data of started job was changed, result can be rendered
+     * from old data.
+     */
+    public void markDataChanged() {
+        this.dataChanged = true;
+    }
+
+    /**
+     * @return if data of job was changed after job was started
+     */
+    public boolean isDataChanged() {
+        return this.dataChanged;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only job which is not yet taken by worker can be cancelled.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (this.started || this.ready) {
+                return false;
+            }
+        }
+        return complete(null, null, true);
+    }
+
+    /**
+     * Registers thread waiting for result. Deadline of job is extended to the
+     * latest deadline of its waiters.
+     *
+     * @param waiterDeadline time after which waiter is not interested in
+     *            result, zero means no deadline
+     * @return false if job was cancelled and waiter should not use it
+     */
+    public synchronized boolean addWaiter(long waiterDeadline) {
+        if (this.cancelled) {
+            return false;
+        }
+
+        if (this.waiters == 0) {
+            this.deadline = waiterDeadline;
+        } else if (this.deadline != 0) {
+            this.deadline = waiterDeadline == 0 ? 0 : Math.max(this.deadline, waiterDeadline);
+        }
+        this.waiters++;
+        return true;
+    }
+
+    /**
+     * Unregisters waiting thread. When there is no waiter left and job is not
+     * yet started it is cancelled.
+     *
+     * @return true if job was cancelled
+     */
+    public boolean releaseWaiter() {
+        synchronized (this) {
+            this.waiters--;
+            if (this.waiters > 0 || this.started || this.ready) {
+                return false;
+            }
+        }
+        return complete(null, null, true);
+    }
+
+    /**
+     * @param now current time
+     * @return if deadline of job passed
+     */
+    public synchronized boolean isExpired(long now) {
+        return this.deadline != 0 && this.deadline < now;
+    }
+
+    private boolean complete(RenderResult result, Throwable error, boolean cancel) {
+        List<RenderJobListener> toNotify;
+        synchronized (this) {
+            if (this.ready) {
+                return false;
+            }
+            this.jobResult = result;
+            this.error = error;
+            this.cancelled = cancel;
+            this.ready = true;
+
+            toNotify = this.listeners;
+            this.listeners = null;
+        }
+
+        this.doneLatch.countDown();
+
+        for (RenderJobListener listener : toNotify) {
+            fireJobDone(listener);
+        }
+        return true;
+    }
+
+    /**
+     * Adds listener called when job is done. If job is already done listener
+     * is called immediately in current thread.
+     *
+     * @param listener listener
+     */
+    public void addListener(RenderJobListener listener) {
+        synchronized (this) {
+            if (!this.ready) {
+                this.listeners.add(listener);
+                return;
+            }
+        }
+        fireJobDone(listener);
+    }
+
+    private void fireJobDone(RenderJobListener listener) {
+        try {
+            listener.jobDone(this);
+        } catch (Exception e) {
+            log.error("error in render job listener for job: " + this.renderJob, e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return isReady();
+    }
+
+    @Override
+    public RenderResult get() throws InterruptedException, ExecutionException {
+        this.doneLatch.await();
+        return getResult();
+    }
+
+    @Override
+    public RenderResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+    TimeoutException {
+        if (!this.doneLatch.await(timeout, unit)) {
+            throw new TimeoutException("timeout waiting for job: " + this.renderJob);
+        }
+        return getResult();
+    }
+
+    private synchronized RenderResult getResult() throws ExecutionException {
+        if (this.cancelled) {
+            throw new CancellationException("job was cancelled: " + this.renderJob);
+        }
+        if (this.error != null) {
+            throw new ExecutionException(this.error);
+        }
+        return this.jobResult;
+    }
+
+    /**
+     * @return the priority
+     */
+    public RenderPriority getPriority() {
+        return this.priority;
+    }
+
+    /**
+     * @param priority the priority to set
+     */
+    void setPriority(RenderPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return the sequence
+     */
+    long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * @param sequence the sequence to set
+     */
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @param queuedTime the time of adding to work poll in nanoseconds
+     */
+    void setQueuedTime(long queuedTime) {
+        this.queuedTime = queuedTime;
+    }
+
+    /**
+     * @return the time of adding to work poll in nanoseconds
+     */
+    public long getQueuedTime() {
+        return this.queuedTime;
+    }
+
+    /**
+     * @return time of waiting in queue in nanoseconds, zero if job was not
+     *         started
+     */
+    public long getQueueWaitTime() {
+        long started = this.startedTime;
+        return started == 0 ? 0 : started - this.queuedTime;
+    }
+
+    /**
+     * @return the deadline
+     */
+    public synchronized long getDeadline() {
+        return this.deadline;
     }
 
     /**
@@ -39,4 +360,11 @@ public class RenderJobStatus {
     public synchronized RenderResult getJobResult() {
         return jobResult;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the error
+     */
+    public synchronized Throwable getError() {
+        return error;
+    }
+}
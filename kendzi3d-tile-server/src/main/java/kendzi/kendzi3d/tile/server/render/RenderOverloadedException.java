@@ -0,0 +1,19 @@
+package kendzi.kendzi3d.tile.server.render;
+
+/**
+ * Thrown when tile can't be rendered in acceptable time because renderer is
+ * overloaded. Render queue is full or job was not rendered before its deadline.
+ * Client should try again later.
+ */
+public class RenderOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RenderOverloadedException(String message) {
+        super(message);
+    }
+
+    public RenderOverloadedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,289 @@
+package kendzi.kendzi3d.tile.server.render;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import kendzi.kendzi3d.tile.server.dto.RenderWorkerStatus;
+import kendzi.kendzi3d.tile.server.render.job.ExitJob;
+import kendzi.kendzi3d.tile.server.render.job.RenderPriority;
+import kendzi.kendzi3d.tile.server.render.prefetch.DataPrefetcher;
+import kendzi.kendzi3d.tile.server.render.worker.TitleJobRender;
+import kendzi.kendzi3d.tile.server.render.worker.TitleJobRenderFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Pool of render workers fed from one shared work poll. Every worker has its
+ * own render context. Pool restarts workers which died or stopped because of
+ * too many errors.
+ *
+ * Worker which fails to initialize is restarted with exponentially growing
+ * delay, after too many consecutive failed initializations it is given up and
+ * reported as dead.
+ */
+public class RenderWorkerPool {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(RenderWorkerPool.class);
+
+    /**
+     * Number of consecutive failed initializations after which worker is not
+     * restarted any more.
+     */
+    static final int MAX_INIT_FAILURES = 10;
+
+    /**
+     * Maximal delay of restart is check interval multiplied by 2 to this
+     * power.
+     */
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    private WorkPoll workPoll;
+
+    private TitleJobRenderFactory titleJobRenderFactory;
+
+    private int maxErrors;
+
+    private long checkInterval;
+
+    private DataPrefetcher dataPrefetcher;
+
+    private RenderWorkerThread[] workers;
+
+    private int[] restarts;
+
+    /**
+     * Number of consecutive failed initializations of each worker.
+     */
+    private int[] initFailures;
+
+    /**
+     * Time of next restart of each dead worker, zero when restart is not
+     * scheduled.
+     */
+    private long[] nextRestart;
+
+    /**
+     * Workers which are not restarted any more.
+     */
+    private boolean[] dead;
+
+    private Thread supervisor;
+
+    private volatile boolean shutdown;
+
+    /**
+     * @param workPoll shared work poll
+     * @param titleJobRenderFactory factory of render workers
+     * @param size number of workers
+     * @param maxErrors number of consecutive errors after which worker is recycled
+     * @param checkInterval interval in milliseconds between checks of workers
+     * @param dataPrefetcher prefetcher of data for next jobs, null when disabled
+     */
+    public RenderWorkerPool(WorkPoll workPoll, TitleJobRenderFactory titleJobRenderFactory, int size, int maxErrors,
+            long checkInterval, DataPrefetcher dataPrefetcher) {
+        super();
+        this.dataPrefetcher = dataPrefetcher;
+        this.workPoll = workPoll;
+        this.titleJobRenderFactory = titleJobRenderFactory;
+        this.maxErrors = maxErrors;
+        this.checkInterval = checkInterval;
+        this.workers = new RenderWorkerThread[size];
+        this.restarts = new int[size];
+        this.initFailures = new int[size];
+        this.nextRestart = new long[size];
+        this.dead = new boolean[size];
+    }
+
+    /**
+     * Starts all workers and supervisor thread.
+     */
+    public synchronized void start() {
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = startWorker(i);
+        }
+
+        this.supervisor = new Thread("render-worker-supervisor") {
+            @Override
+            public void run() {
+                while (!RenderWorkerPool.this.shutdown) {
+                    try {
+                        Thread.sleep(RenderWorkerPool.this.checkInterval);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    checkWorkers();
+                }
+            }
+        };
+        this.supervisor.setDaemon(true);
+        this.supervisor.start();
+    }
+
+    /**
+     * Restarts workers which are not alive. Worker which died before it was
+     * initialized is restarted after delay.
+     */
+    public synchronized void checkWorkers() {
+        if (this.shutdown) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < this.workers.length; i++) {
+            if (this.dead[i]) {
+                continue;
+            }
+
+            RenderWorkerThread worker = this.workers[i];
+            if (worker != null && worker.isAlive()) {
+                if (worker.isInitialized()) {
+                    this.initFailures[i] = 0;
+                }
+                continue;
+            }
+
+            if (this.nextRestart[i] == 0) {
+                // first check after worker died
+                if (worker != null && !worker.isInitialized()) {
+                    initFailed(i);
+                } else {
+                    this.initFailures[i] = 0;
+                }
+                if (this.dead[i]) {
+                    continue;
+                }
+                this.nextRestart[i] = now + restartDelay(i);
+            }
+
+            if (now < this.nextRestart[i]) {
+                continue;
+            }
+
+            log.warn("render worker: " + i + " is not alive, restarting");
+            try {
+                this.workers[i] = startWorker(i);
+                this.restarts[i]++;
+                this.nextRestart[i] = 0;
+            } catch (Exception e) {
+                log.error("error restarting render worker: " + i, e);
+                initFailed(i);
+                this.nextRestart[i] = now + restartDelay(i);
+            }
+        }
+    }
+
+    private void initFailed(int i) {
+        this.initFailures[i]++;
+        if (this.initFailures[i] >= MAX_INIT_FAILURES) {
+            this.dead[i] = true;
+            log.error("render worker: " + i + " failed to initialize " + this.initFailures[i]
+                    + " times in a row, it is not restarted any more");
+        }
+    }
+
+    /**
+     * @param i worker index
+     * @return delay of restart in milliseconds, it is doubled after each
+     *         consecutive failed initialization
+     */
+    private long restartDelay(int i) {
+        if (this.initFailures[i] == 0) {
+            return 0;
+        }
+        return this.checkInterval << Math.min(this.initFailures[i] - 1, MAX_BACKOFF_SHIFT);
+    }
+
+    private RenderWorkerThread startWorker(int i) {
+
+        TitleJobRender titleJobRender = this.titleJobRenderFactory.create();
+
+        RenderWorkerThread worker = new RenderWorkerThread(this.workPoll, titleJobRender, this.maxErrors,
+                this.dataPrefetcher);
+        worker.setName("render-worker-" + i);
+        worker.start();
+
+        log.info("started render worker: " + worker.getName());
+        return worker;
+    }
+
+    /**
+     * Graceful shutdown. Every worker gets exit job, so jobs added before
+     * shutdown are still rendered.
+     *
+     * @param timeout maximal time in milliseconds to wait for each worker
+     */
+    public void shutdown(long timeout) {
+        RenderWorkerThread[] toStop;
+        synchronized (this) {
+            if (this.shutdown) {
+                return;
+            }
+            this.shutdown = true;
+            if (this.supervisor != null) {
+                this.supervisor.interrupt();
+            }
+            toStop = this.workers.clone();
+        }
+
+        for (RenderWorkerThread worker : toStop) {
+            if (worker != null && worker.isAlive()) {
+                // the lowest priority, jobs added before shutdown are rendered first
+                this.workPoll.putJob(new RenderJobStatus(new ExitJob(), RenderPriority.SEEDING));
+            }
+        }
+
+        for (RenderWorkerThread worker : toStop) {
+            if (worker == null) {
+                continue;
+            }
+            try {
+                worker.join(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (worker.isAlive()) {
+                log.warn("render worker: " + worker.getName() + " didn't stop in: " + timeout + " ms");
+            }
+        }
+    }
+
+    /**
+     * @return status of all workers
+     */
+    public synchronized List<RenderWorkerStatus> getWorkersStatus() {
+        List<RenderWorkerStatus> ret = new ArrayList<RenderWorkerStatus>();
+        for (int i = 0; i < this.workers.length; i++) {
+            RenderWorkerThread worker = this.workers[i];
+            if (worker == null) {
+                continue;
+            }
+
+            RenderWorkerStatus s = new RenderWorkerStatus();
+            s.setName(worker.getName());
+            s.setAlive(worker.isAlive());
+            s.setInitialized(worker.isInitialized());
+            s.setBusy(worker.isBusy());
+            s.setJobsCount(worker.getJobsCount());
+            s.setErrorsCount(worker.getErrorsCount());
+            s.setConsecutiveErrors(worker.getConsecutiveErrors());
+            s.setRestarts(this.restarts[i]);
+            s.setDead(this.dead[i]);
+            s.setUtilization(worker.getUtilization());
+            if (worker.getLastJobTime() > 0) {
+                s.setLastJobTime(new Date(worker.getLastJobTime()));
+            }
+            ret.add(s);
+        }
+        return ret;
+    }
+
+    /**
+     * @return number of workers
+     */
+    public int getSize() {
+        return this.workers.length;
+    }
+}
@@ -2,8 +2,10 @@ package kendzi.kendzi3d.tile.server.render;
 
 import kendzi.kendzi3d.render.RenderResult;
 import kendzi.kendzi3d.tile.server.render.job.ExitJob;
+import kendzi.kendzi3d.tile.server.render.job.MetaTileJob;
 import kendzi.kendzi3d.tile.server.render.job.RenderJob;
 import kendzi.kendzi3d.tile.server.render.job.TileJob;
+import kendzi.kendzi3d.tile.server.render.prefetch.DataPrefetcher;
 import kendzi.kendzi3d.tile.server.render.worker.TitleJobRender;
 
 import org.apache.log4j.Logger;
@@ -13,16 +15,70 @@ public class RenderWorkerThread extends Thread {
     /** Log. */
     private static final Logger log = Logger.getLogger(RenderWorkerThread.class);
 
+    /**
+     * Initialization of JOSM preferences and GL pbuffers is not thread safe, so
+     * workers are initialized one by one.
+     */
+    private static final Object INIT_LOCK = new Object();
+
     WorkPoll workPoll;
 
     TitleJobRender titleJobRender;
 
-    private boolean run = true;
+    /**
+     * Prefetcher of data for next jobs, null when disabled.
+     */
+    DataPrefetcher dataPrefetcher;
+
+    private volatile boolean run = true;
+
+    /**
+     * Number of consecutive errors after which worker stops, zero or less means
+     * no limit.
+     */
+    private int maxErrors;
+
+    private volatile boolean initialized;
+
+    private volatile boolean busy;
+
+    private volatile int consecutiveErrors;
+
+    private volatile long jobsCount;
+
+    private volatile long errorsCount;
+
+    private volatile long lastJobTime;
+
+    /**
+     * Time spent on rendering jobs in nanoseconds.
+     */
+    private volatile long busyTime;
+
+    private volatile long startTime;
 
     public RenderWorkerThread(WorkPoll workPoll, TitleJobRender titleRender) {
+        this(workPoll, titleRender, 0);
+    }
+
+    public RenderWorkerThread(WorkPoll workPoll, TitleJobRender titleRender, int maxErrors) {
+        this(workPoll, titleRender, maxErrors, null);
+    }
+
+    /**
+     * @param workPoll work poll
+     * @param titleRender render
+     * @param maxErrors number of consecutive errors after which worker stops
+     * @param dataPrefetcher prefetcher of data for next jobs, null when
+     *            disabled
+     */
+    public RenderWorkerThread(WorkPoll workPoll, TitleJobRender titleRender, int maxErrors,
+            DataPrefetcher dataPrefetcher) {
         super();
         this.workPoll = workPoll;
         this.titleJobRender = titleRender;
+        this.maxErrors = maxErrors;
+        this.dataPrefetcher = dataPrefetcher;
     }
 
     /**
@@ -32,47 +88,85 @@ public class RenderWorkerThread extends Thread {
      */
     @Override
     public void run() {
-        this.titleJobRender.init();
+        synchronized (INIT_LOCK) {
+            this.titleJobRender.init();
+        }
+        this.initialized = true;
+        this.startTime = System.nanoTime();
+
         while (this.run) {
+            RenderJobStatus sj;
             try {
-                RenderJobStatus sj = takeJob();
+                sj = takeJob();
+            } catch (InterruptedException e) {
+                log.info("worker interrupted: " + getName());
+                break;
+            }
+
+            if (!sj.markStarted()) {
+                // job was cancelled
+                continue;
+            }
+
+            RenderJob renderJob = sj.getRenderJob();
 
-                RenderJob renderJob = sj.getRenderJob();
+            if (renderJob instanceof ExitJob) {
+                sj.execute(null);
+                break;
+            }
 
-                RenderResult jobResult = null;
-                try {
+            if (this.dataPrefetcher != null) {
+                // data for next jobs are loaded while this job is rendered
+                this.dataPrefetcher.prefetch(this.workPoll);
+            }
 
-                    if (renderJob instanceof ExitJob) {
-                        break;
-                    }
+            RenderResult jobResult = null;
+            Exception error = null;
+            long jobStart = System.nanoTime();
+            try {
+                this.busy = true;
 
-                    jobResult = renderJob(renderJob);
+                jobResult = renderJob(renderJob);
+
+                this.consecutiveErrors = 0;
 
-                } catch (Exception e) {
-                    log.error("Error rendering job: " + renderJob, e);
-                } finally {
-                    // mark as executed, not important if it is error
-                    sj.execute(jobResult);
-                    synchronized (this.workPoll) {
-                        this.workPoll.notifyAll();
-                    }
-                    //                this.notifyAll();
-                }
             } catch (Exception e) {
-                log.error("error taking job", e);
+                log.error("Error rendering job: " + renderJob, e);
+                error = e;
+
+                this.errorsCount++;
+                this.consecutiveErrors++;
+
+                if (this.maxErrors > 0 && this.consecutiveErrors >= this.maxErrors) {
+                    log.error("too many consecutive errors: " + this.consecutiveErrors + " stopping worker: " + getName());
+                    this.run = false;
+                }
+            } catch (Error e) {
+                // worker thread dies, waiting threads need to be released
+                sj.fail(e);
+                throw e;
+            } finally {
+                this.busy = false;
+                this.busyTime += System.nanoTime() - jobStart;
+                this.jobsCount++;
+                this.lastJobTime = System.currentTimeMillis();
+            }
+
+            // wakes up only threads waiting for this job
+            if (error != null) {
+                sj.fail(error);
+            } else {
+                sj.execute(jobResult);
             }
         }
         this.titleJobRender.release();
     }
 
-    //    @Override
-    //    synchronized void notifyAll() {
-    //        notifyAll()
-    //    }
-
     private RenderResult renderJob(RenderJob renderJob) {
 
-        if (renderJob instanceof TileJob) {
+        if (renderJob instanceof MetaTileJob) {
+            return this.titleJobRender.render((MetaTileJob)renderJob);
+        } else if (renderJob instanceof TileJob) {
             return this.titleJobRender.render((TileJob)renderJob);
         } else {
             log.error("unknown render job: " + renderJob);
@@ -80,8 +174,62 @@ public class RenderWorkerThread extends Thread {
         return null;
     }
 
-    private RenderJobStatus takeJob() {
+    private RenderJobStatus takeJob() throws InterruptedException {
         return this.workPoll.takeOrWait();
     }
 
+    /**
+     * @return if worker finished initialization of render context
+     */
+    public boolean isInitialized() {
+        return this.initialized;
+    }
+
+    /**
+     * @return if worker is rendering job
+     */
+    public boolean isBusy() {
+        return this.busy;
+    }
+
+    /**
+     * @return number of consecutive errors
+     */
+    public int getConsecutiveErrors() {
+        return this.consecutiveErrors;
+    }
+
+    /**
+     * @return number of executed jobs
+     */
+    public long getJobsCount() {
+        return this.jobsCount;
+    }
+
+    /**
+     * @return number of jobs finished with error
+     */
+    public long getErrorsCount() {
+        return this.errorsCount;
+    }
+
+    /**
+     * @return part of time since initialization spent on rendering jobs, in
+     *         range 0 - 1
+     */
+    public double getUtilization() {
+        long start = this.startTime;
+        if (start == 0) {
+            return 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        return elapsed <= 0 ? 0 : Math.min(1d, (double) this.busyTime / elapsed);
+    }
+
+    /**
+     * @return time of last executed job
+     */
+    public long getLastJobTime() {
+        return this.lastJobTime;
+    }
 }
@@ -1,67 +1,273 @@
 package kendzi.kendzi3d.tile.server.render;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import kendzi.kendzi3d.render.RenderResult;
 import kendzi.kendzi3d.tile.server.render.job.RenderJob;
+import kendzi.kendzi3d.tile.server.render.job.RenderPriority;
 
+import org.apache.log4j.Logger;
+
+/**
+ * Queue of render jobs. Workers take jobs from blocking queue, callers wait
+ * only for status of their own job.
+ *
+ * Jobs are ordered by priority and then by order of adding. Cancelled jobs are
+ * removed from queue. Jobs with passed deadline are dropped when they are
+ * taken from queue, or before size of queue is checked, so only live jobs are
+ * counted.
+ */
 public class WorkPoll {
-    // http://docs.oracle.com/javase/tutorial/essential/concurrency/guardmeth.html
 
+    /** Log. */
+    private static final Logger log = Logger.getLogger(WorkPoll.class);
+
+    /**
+     * Order in which jobs are taken.
+     */
+    private static final Comparator<RenderJobStatus> JOB_ORDER = new Comparator<RenderJobStatus>() {
+
+        @Override
+        public int compare(RenderJobStatus o1, RenderJobStatus o2) {
+            int c = o1.getPriority().compareTo(o2.getPriority());
+            if (c != 0) {
+                return c;
+            }
+            return o1.getSequence() < o2.getSequence() ? -1 : (o1.getSequence() == o2.getSequence() ? 0 : 1);
+        }
+    };
 
-    ArrayList<RenderJobStatus> poll = new ArrayList<RenderJobStatus>();
+    private final BlockingQueue<RenderJobStatus> poll = new PriorityBlockingQueue<RenderJobStatus>(64, JOB_ORDER);
 
-    //    SynchronousQueue<TitleJob> queue = new SynchronousQueue<TitleJob>();
-    //    //    BlockingQueue<TitleJob> queue = new BlockingQueue<TitleJob>();
-    //    ArrayList<TitleJob> queue = new ArrayList<TitleJob>();
-    //
-    //    int MAX_QUEUE_SIZE = 5;
+    private final AtomicLong sequence = new AtomicLong();
 
+    /**
+     * Number of jobs dropped because of passed deadline.
+     */
+    private final AtomicLong expired = new AtomicLong();
 
-    public synchronized RenderResult putJobAndWaitForResult(RenderJob tj) {
-        RenderJobStatus sj = new RenderJobStatus(tj);
+    /**
+     * Number of jobs rejected because poll was full.
+     */
+    private final AtomicLong rejected = new AtomicLong();
 
-        addJob(sj);
+    /**
+     * Removes cancelled job from queue.
+     */
+    private final RenderJobListener removeCancelled = new RenderJobListener() {
 
-        // wait for result (generated in different thread!
-        while (!sj.isReady()) {
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                //
+        @Override
+        public void jobDone(RenderJobStatus status) {
+            if (status.isCancelled()) {
+                WorkPoll.this.poll.remove(status);
             }
         }
-        return sj.getJobResult();
+    };
+
+    /**
+     * Adds job to poll and waits for its result.
+     *
+     * @param tj job
+     * @return result of job or null if job failed
+     */
+    public RenderResult putJobAndWaitForResult(RenderJob tj) {
+        RenderJobStatus sj = putJob(tj);
+
+        boolean interrupted = false;
+        try {
+            // wait for result (generated in different thread!
+            while (true) {
+                try {
+                    return sj.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    log.debug("job finished with error: " + tj, e);
+                    return null;
+                } catch (CancellationException e) {
+                    return null;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Adds job to poll without waiting for result.
+     * @param tj job
+     * @return status of added job
+     */
+    public RenderJobStatus putJob(RenderJob tj) {
+        return putJob(new RenderJobStatus(tj));
     }
 
-    private void addJob(RenderJobStatus sj) {
+    /**
+     * Adds job with already created status to poll without waiting for
+     * result.
+     * @param sj status of job
+     * @return status of added job
+     */
+    public synchronized RenderJobStatus putJob(RenderJobStatus sj) {
 
+        sj.setSequence(this.sequence.incrementAndGet());
+        sj.setQueuedTime(System.nanoTime());
         this.poll.add(sj);
+        // called at once when job is already cancelled
+        sj.addListener(this.removeCancelled);
+
+        return sj;
+    }
+
+    /**
+     * Adds job to poll only if number of waiting jobs is lower than limit.
+     *
+     * @param sj status of job
+     * @param maxSize maximal number of jobs in poll, zero or less means no
+     *            limit
+     * @return false if poll is full and job was not added
+     */
+    public synchronized boolean offerJob(RenderJobStatus sj, int maxSize) {
+        if (maxSize > 0 && this.poll.size() >= maxSize) {
+            removeExpired();
+            if (this.poll.size() >= maxSize) {
+                this.rejected.incrementAndGet();
+                return false;
+            }
+        }
+        putJob(sj);
+        return true;
+    }
+
+    /**
+     * Takes job from poll, waits if poll is empty.
+     *
+     * @return job status
+     * @throws InterruptedException when thread is interrupted while waiting
+     */
+    public RenderJobStatus takeOrWait() throws InterruptedException {
+        while (true) {
+            RenderJobStatus sj = this.poll.take();
+
+            if (sj.isDone()) {
+                // cancelled
+                continue;
+            }
+
+            if (dropExpired(sj, System.currentTimeMillis())) {
+                continue;
+            }
+
+            return sj;
+        }
+    }
+
+    /**
+     * Cancels jobs with passed deadline which are waiting in queue, cancelled
+     * jobs are removed from queue.
+     */
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        for (RenderJobStatus sj : this.poll) {
+            dropExpired(sj, now);
+        }
+    }
+
+    private boolean dropExpired(RenderJobStatus sj, long now) {
+        if (sj.isExpired(now) && sj.cancel(false)) {
+            this.expired.incrementAndGet();
+            log.debug("dropped expired job: " + sj.getRenderJob());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns jobs which will be taken first, without removing them from poll.
+     * Cancelled jobs are skipped.
+     *
+     * @param count maximal number of returned jobs
+     * @return first jobs in order in which they would be taken
+     */
+    public List<RenderJobStatus> peek(int count) {
+        List<RenderJobStatus> ret = new ArrayList<RenderJobStatus>(count + 1);
+        if (count <= 0) {
+            return ret;
+        }
 
-        notifyAll();
+        // queue is not sorted, only its head is known, so count first jobs
+        // are selected in one pass
+        for (RenderJobStatus sj : this.poll) {
+            if (sj.isDone()) {
+                continue;
+            }
+            int i = ret.size();
+            while (i > 0 && JOB_ORDER.compare(sj, ret.get(i - 1)) < 0) {
+                i--;
+            }
+            if (i < count) {
+                ret.add(i, sj);
+                if (ret.size() > count) {
+                    ret.remove(count);
+                }
+            }
+        }
+        return ret;
     }
 
-    //    private StatusJob takeJob() {
-    //        if (this.poll.isEmpty()) {
-    //            return null;
-    //        }
-    //        return this.poll.remove(0);
-    //    }
-
-    public synchronized RenderJobStatus takeOrWait() {
-
-        // Wait until message is
-        // available.
-        while (this.poll.isEmpty()) {
-            try {
-                wait();
-            } catch (InterruptedException e) {}
+    /**
+     * Raises priority of job. When job is still in queue it is moved to its
+     * new position.
+     *
+     * @param sj status of job
+     * @param priority new priority
+     */
+    public synchronized void raisePriority(RenderJobStatus sj, RenderPriority priority) {
+        if (priority.compareTo(sj.getPriority()) >= 0) {
+            return;
         }
 
-        RenderJobStatus remove = this.poll.remove(0);
-        notifyAll();
-        return remove;
+        if (this.poll.remove(sj)) {
+            sj.setPriority(priority);
+            this.poll.add(sj);
+            if (sj.isCancelled()) {
+                // cancelled while it was out of queue
+                this.poll.remove(sj);
+            }
+        } else {
+            // already taken by worker
+            sj.setPriority(priority);
+        }
     }
 
+    /**
+     * @return number of jobs dropped because of passed deadline
+     */
+    public long getExpired() {
+        return this.expired.get();
+    }
 
+    /**
+     * @return number of jobs rejected because poll was full
+     */
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    /**
+     * @return number of live jobs waiting in poll
+     */
+    public int size() {
+        removeExpired();
+        return this.poll.size();
+    }
 }
@@ -0,0 +1,30 @@
+package kendzi.kendzi3d.tile.server.render.job;
+
+/**
+ * Job for rendering block of size x size tiles. Tile coordinates points to
+ * left top tile of block.
+ */
+public class MetaTileJob extends TileJob {
+
+    int size;
+
+    /**
+     * @return the size of block in tiles
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * @param size the size to set
+     */
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public MetaTileJob(int x, int y, int z, int size, String profile) {
+        super(x, y, z, profile);
+
+        this.size = size;
+    }
+}
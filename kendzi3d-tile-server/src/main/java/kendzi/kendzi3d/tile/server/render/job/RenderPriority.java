@@ -0,0 +1,20 @@
+package kendzi.kendzi3d.tile.server.render.job;
+
+/**
+ * Priority of render job. Jobs with higher priority are taken by workers
+ * first, jobs with the same priority are taken in order of adding.
+ */
+public enum RenderPriority {
+    /**
+     * Tile requested by user, somebody is waiting for it.
+     */
+    INTERACTIVE(),
+    /**
+     * Tile which will be probably requested soon.
+     */
+    PREFETCH(),
+    /**
+     * Warming of tile cache.
+     */
+    SEEDING()
+}
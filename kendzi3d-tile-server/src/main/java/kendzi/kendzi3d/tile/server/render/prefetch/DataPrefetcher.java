@@ -0,0 +1,320 @@
+package kendzi.kendzi3d.tile.server.render.prefetch;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import kendzi.kendzi3d.render.ImageRender;
+import kendzi.kendzi3d.render.conf.RenderDataSourceConf;
+import kendzi.kendzi3d.render.dataset.DataMargin;
+import kendzi.kendzi3d.render.dataset.DataSetCache;
+import kendzi.kendzi3d.render.dataset.DataSetProvider;
+import kendzi.kendzi3d.render.dataset.DataSetProviderFactory;
+import kendzi.kendzi3d.tile.server.render.RenderJobStatus;
+import kendzi.kendzi3d.tile.server.render.WorkPoll;
+import kendzi.kendzi3d.tile.server.render.job.MetaTileJob;
+import kendzi.kendzi3d.tile.server.render.job.TileJob;
+
+import org.apache.log4j.Logger;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+
+/**
+ * Loads data for jobs waiting in work poll before workers take them. Data are
+ * loaded by separate threads, each with its own data set provider, so data
+ * source is queried while workers render previous jobs. Worker takes already
+ * loaded data set instead of querying data source itself.
+ *
+ * Number of prefetched data sets is limited, the oldest not taken are dropped.
+ */
+public class DataPrefetcher {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(DataPrefetcher.class);
+
+    private final RenderDataSourceConf conf;
+
+    private final DataSource dataSource;
+
+    private final DataSetCache dataSetCache;
+
+    private final DataMargin dataMargin;
+
+    /**
+     * Number of jobs from head of work poll for which data are prefetched.
+     */
+    private final int lookAhead;
+
+    /**
+     * Maximal number of prefetched data sets waiting for workers.
+     */
+    private final int maxSize;
+
+    private final Thread[] loaders;
+
+    private final BlockingQueue<Prefetch> queue = new LinkedBlockingQueue<Prefetch>();
+
+    /**
+     * Prefetched data sets by area, in order of adding.
+     */
+    private final Map<Key, Prefetch> prefetched = new LinkedHashMap<Key, Prefetch>();
+
+    private volatile boolean shutdown;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param conf configuration of data source
+     * @param dataSource pool of database connections, null for file data source
+     * @param dataSetCache cache of data shared with workers, null when disabled
+     * @param dataMargin margin of data loaded for tile, shared with workers
+     * @param threads number of threads loading data
+     * @param lookAhead number of jobs from head of work poll for which data
+     *            are prefetched
+     */
+    public DataPrefetcher(RenderDataSourceConf conf, DataSource dataSource, DataSetCache dataSetCache,
+            DataMargin dataMargin, int threads, int lookAhead) {
+        super();
+        this.conf = conf;
+        this.dataSource = dataSource;
+        this.dataSetCache = dataSetCache;
+        this.dataMargin = dataMargin;
+        this.lookAhead = lookAhead;
+        this.maxSize = 2 * lookAhead;
+        this.loaders = new Thread[threads];
+    }
+
+    /**
+     * Starts threads loading data.
+     */
+    public void start() {
+        for (int i = 0; i < this.loaders.length; i++) {
+            Thread loader = new Thread("data-prefetch-" + i) {
+                @Override
+                public void run() {
+                    load();
+                }
+            };
+            loader.setDaemon(true);
+            loader.start();
+            this.loaders[i] = loader;
+        }
+    }
+
+    private void load() {
+        DataSetProvider provider;
+        try {
+            provider = DataSetProviderFactory.loadConf(this.conf, this.dataSource, this.dataSetCache,
+                    this.dataMargin);
+        } catch (Exception e) {
+            log.error("error creating data set provider, thread stops: " + Thread.currentThread().getName(), e);
+            return;
+        }
+
+        try {
+            while (!this.shutdown) {
+                Prefetch p = this.queue.take();
+                if (!p.state.compareAndSet(Prefetch.QUEUED, Prefetch.LOADING)) {
+                    // taken by worker or dropped before loading
+                    continue;
+                }
+                try {
+                    p.dataSet = provider.findData(p.leftTop, p.rightBottom);
+                } catch (Exception e) {
+                    log.error("error prefetching data for: " + p.leftTop + ", " + p.rightBottom, e);
+                } finally {
+                    p.done.countDown();
+                }
+            }
+        } catch (InterruptedException e) {
+            // shutdown
+        } finally {
+            provider.release();
+        }
+    }
+
+    /**
+     * Prefetches data for jobs from head of work poll. Called by worker after
+     * it takes job.
+     *
+     * @param workPoll work poll
+     */
+    public void prefetch(WorkPoll workPoll) {
+        if (this.shutdown) {
+            return;
+        }
+        List<RenderJobStatus> jobs = workPoll.peek(this.lookAhead);
+
+        synchronized (this.prefetched) {
+            for (RenderJobStatus sj : jobs) {
+                if (!(sj.getRenderJob() instanceof TileJob)) {
+                    continue;
+                }
+                TileJob job = (TileJob) sj.getRenderJob();
+                int size = job instanceof MetaTileJob ? ((MetaTileJob) job).getSize() : 1;
+
+                LatLon[] bounds = ImageRender.blockBounds(job, size);
+                Key key = new Key(bounds[0], bounds[1]);
+                if (this.prefetched.containsKey(key)) {
+                    continue;
+                }
+
+                Prefetch p = new Prefetch(bounds[0], bounds[1]);
+                this.prefetched.put(key, p);
+                this.queue.add(p);
+            }
+
+            Iterator<Prefetch> it = this.prefetched.values().iterator();
+            while (this.prefetched.size() > this.maxSize && it.hasNext()) {
+                it.next().state.compareAndSet(Prefetch.QUEUED, Prefetch.DROPPED);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Takes prefetched data set. When data for area are still loading waits
+     * for them.
+     *
+     * @param leftTop left top corner of area
+     * @param rightBottom right bottom corner of area
+     * @return data set or null when data were not prefetched, then caller
+     *         need to load them itself
+     * @throws InterruptedException when thread is interrupted while waiting
+     */
+    public DataSet take(LatLon leftTop, LatLon rightBottom) throws InterruptedException {
+        Prefetch p;
+        synchronized (this.prefetched) {
+            p = this.prefetched.remove(new Key(leftTop, rightBottom));
+        }
+
+        if (p == null || p.state.compareAndSet(Prefetch.QUEUED, Prefetch.DROPPED)) {
+            // not prefetched or loading didn't start yet, caller loads data
+            // faster than waiting for free thread
+            this.misses.incrementAndGet();
+            return null;
+        }
+
+        p.done.await();
+        if (p.dataSet == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return p.dataSet;
+    }
+
+    /**
+     * Drops all prefetched data sets, so data changed in data source are
+     * loaded again.
+     */
+    public void clear() {
+        synchronized (this.prefetched) {
+            for (Prefetch p : this.prefetched.values()) {
+                p.state.compareAndSet(Prefetch.QUEUED, Prefetch.DROPPED);
+            }
+            this.prefetched.clear();
+        }
+    }
+
+    /**
+     * Stops threads loading data.
+     */
+    public void shutdown() {
+        this.shutdown = true;
+        clear();
+        for (Thread loader : this.loaders) {
+            if (loader != null) {
+                loader.interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return number of data sets taken by workers from prefetcher
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return number of data sets which workers had to load itself
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Data set loaded for one area.
+     */
+    private static class Prefetch {
+        static final int QUEUED = 0;
+        static final int LOADING = 1;
+        static final int DROPPED = 2;
+
+        final LatLon leftTop;
+        final LatLon rightBottom;
+
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * Loaded data set, null when loading failed. Visible to worker after
+         * latch is released.
+         */
+        DataSet dataSet;
+
+        Prefetch(LatLon leftTop, LatLon rightBottom) {
+            this.leftTop = leftTop;
+            this.rightBottom = rightBottom;
+        }
+    }
+
+    /**
+     * Area of data set. Worker and prefetcher calculates corners of area in
+     * the same way, so they are compared exactly.
+     */
+    private static class Key {
+        final double north;
+        final double west;
+        final double south;
+        final double east;
+
+        Key(LatLon leftTop, LatLon rightBottom) {
+            this.north = leftTop.lat();
+            this.west = leftTop.lon();
+            this.south = rightBottom.lat();
+            this.east = rightBottom.lon();
+        }
+
+        @Override
+        public int hashCode() {
+            long h = Double.doubleToLongBits(this.north);
+            h = 31 * h + Double.doubleToLongBits(this.west);
+            h = 31 * h + Double.doubleToLongBits(this.south);
+            h = 31 * h + Double.doubleToLongBits(this.east);
+            return (int) (h ^ h >>> 32);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return this.north == other.north && this.west == other.west && this.south == other.south
+                    && this.east == other.east;
+        }
+    }
+}
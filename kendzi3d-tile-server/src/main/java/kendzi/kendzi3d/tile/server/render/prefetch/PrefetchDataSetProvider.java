@@ -0,0 +1,41 @@
+package kendzi.kendzi3d.tile.server.render.prefetch;
+
+import kendzi.kendzi3d.render.dataset.DataSetProvider;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+
+/**
+ * Data set provider of render worker. Takes data set loaded by prefetcher,
+ * when data were not prefetched loads them from worker's own provider.
+ */
+public class PrefetchDataSetProvider implements DataSetProvider {
+
+    private final DataSetProvider dataSetProvider;
+
+    private final DataPrefetcher dataPrefetcher;
+
+    /**
+     * @param dataSetProvider provider of worker
+     * @param dataPrefetcher prefetcher shared by workers
+     */
+    public PrefetchDataSetProvider(DataSetProvider dataSetProvider, DataPrefetcher dataPrefetcher) {
+        super();
+        this.dataSetProvider = dataSetProvider;
+        this.dataPrefetcher = dataPrefetcher;
+    }
+
+    @Override
+    public DataSet findData(LatLon leftTop, LatLon rightBottom) throws Exception {
+        DataSet dataSet = this.dataPrefetcher.take(leftTop, rightBottom);
+        if (dataSet != null) {
+            return dataSet;
+        }
+        return this.dataSetProvider.findData(leftTop, rightBottom);
+    }
+
+    @Override
+    public void release() {
+        this.dataSetProvider.release();
+    }
+}
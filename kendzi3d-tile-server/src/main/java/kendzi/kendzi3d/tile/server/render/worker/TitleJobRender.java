@@ -1,6 +1,8 @@
 package kendzi.kendzi3d.tile.server.render.worker;
 
+import kendzi.kendzi3d.render.MetaTileRenderResult;
 import kendzi.kendzi3d.render.RenderResult;
+import kendzi.kendzi3d.tile.server.render.job.MetaTileJob;
 import kendzi.kendzi3d.tile.server.render.job.TileJob;
 
 public interface TitleJobRender {
@@ -17,6 +19,13 @@ public interface TitleJobRender {
      */
     RenderResult render(TileJob tj);
 
+    /**
+     *  Render job for block of tiles.
+     * @param mtj metatile job
+     * @return rendered tiles
+     */
+    MetaTileRenderResult render(MetaTileJob mtj);
+
     /**
      * Release of render worker.
      */
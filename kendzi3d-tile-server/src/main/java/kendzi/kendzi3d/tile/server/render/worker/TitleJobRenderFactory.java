@@ -0,0 +1,14 @@
+package kendzi.kendzi3d.tile.server.render.worker;
+
+/**
+ * Creates independent instances of render workers. Each created worker has its
+ * own rendering context and data source, so workers can render in parallel.
+ */
+public interface TitleJobRenderFactory {
+
+    /**
+     * Creates new render worker. Worker is not initialized.
+     * @return render worker
+     */
+    TitleJobRender create();
+}
@@ -1,9 +1,11 @@
 package kendzi.kendzi3d.tile.server.render.worker.impl;
 
 import kendzi.kendzi3d.render.ImageRender;
+import kendzi.kendzi3d.render.MetaTileRenderResult;
 import kendzi.kendzi3d.render.RenderResult;
 import kendzi.kendzi3d.render.conf.RenderEngineConf;
 import kendzi.kendzi3d.render.dataset.DataSetProvider;
+import kendzi.kendzi3d.tile.server.render.job.MetaTileJob;
 import kendzi.kendzi3d.tile.server.render.job.TileJob;
 import kendzi.kendzi3d.tile.server.render.worker.TitleJobRender;
 
@@ -38,9 +40,16 @@ public class Kendzi3dTileRenderWorker implements TitleJobRender {
         return this.imageRender.render(t);
     }
 
+    @Override
+    public MetaTileRenderResult render(MetaTileJob t) {
+
+        return this.imageRender.render(t, t.getSize());
+    }
+
     @Override
     public void release() {
         this.imageRender.release();
+        this.dataSource.release();
     }
 
 }
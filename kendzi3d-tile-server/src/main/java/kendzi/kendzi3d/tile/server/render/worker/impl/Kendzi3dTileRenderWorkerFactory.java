@@ -0,0 +1,77 @@
+package kendzi.kendzi3d.tile.server.render.worker.impl;
+
+import javax.sql.DataSource;
+
+import kendzi.kendzi3d.render.conf.RenderDataSourceConf;
+import kendzi.kendzi3d.render.conf.RenderEngineConf;
+import kendzi.kendzi3d.render.dataset.DataMargin;
+import kendzi.kendzi3d.render.dataset.DataSetCache;
+import kendzi.kendzi3d.render.dataset.DataSetProvider;
+import kendzi.kendzi3d.render.dataset.DataSetProviderFactory;
+import kendzi.kendzi3d.tile.server.render.module.RenderModule;
+import kendzi.kendzi3d.tile.server.render.prefetch.DataPrefetcher;
+import kendzi.kendzi3d.tile.server.render.prefetch.PrefetchDataSetProvider;
+import kendzi.kendzi3d.tile.server.render.worker.TitleJobRender;
+import kendzi.kendzi3d.tile.server.render.worker.TitleJobRenderFactory;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Creates render workers. Every worker gets separate injector, so singletons
+ * like RenderJOSM, ModelRender, texture cache and data set provider are not
+ * shared between GL contexts. Pool of database connections is shared, each
+ * worker keeps its own connection borrowed from it. Cache of data loaded from
+ * database is shared too. When prefetcher is enabled worker takes data loaded
+ * by it.
+ */
+public class Kendzi3dTileRenderWorkerFactory implements TitleJobRenderFactory {
+
+    private RenderEngineConf renderEngineConf;
+
+    private RenderDataSourceConf renderDataSourceConf;
+
+    private DataSource dataSource;
+
+    private DataSetCache dataSetCache;
+
+    private DataMargin dataMargin;
+
+    private DataPrefetcher dataPrefetcher;
+
+    /**
+     * @param renderEngineConf configuration of render
+     * @param renderDataSourceConf configuration of data source
+     * @param dataSource pool of database connections shared by workers, null
+     *            for file data source
+     * @param dataSetCache cache of data shared by workers, null when disabled
+     * @param dataMargin margin of data loaded for tile, shared by workers
+     * @param dataPrefetcher prefetcher of data shared by workers, null when
+     *            disabled
+     */
+    public Kendzi3dTileRenderWorkerFactory(RenderEngineConf renderEngineConf,
+            RenderDataSourceConf renderDataSourceConf, DataSource dataSource, DataSetCache dataSetCache,
+            DataMargin dataMargin, DataPrefetcher dataPrefetcher) {
+        super();
+        this.renderEngineConf = renderEngineConf;
+        this.renderDataSourceConf = renderDataSourceConf;
+        this.dataSource = dataSource;
+        this.dataSetCache = dataSetCache;
+        this.dataMargin = dataMargin;
+        this.dataPrefetcher = dataPrefetcher;
+    }
+
+    @Override
+    public TitleJobRender create() {
+
+        DataSetProvider dsp = DataSetProviderFactory.loadConf(this.renderDataSourceConf, this.dataSource,
+                this.dataSetCache, this.dataMargin);
+        if (this.dataPrefetcher != null) {
+            dsp = new PrefetchDataSetProvider(dsp, this.dataPrefetcher);
+        }
+
+        Injector injector = Guice.createInjector(new RenderModule(this.renderEngineConf, dsp));
+
+        return injector.getInstance(Kendzi3dTileRenderWorker.class);
+    }
+}
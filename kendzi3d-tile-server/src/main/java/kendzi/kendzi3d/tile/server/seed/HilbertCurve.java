@@ -0,0 +1,54 @@
+package kendzi.kendzi3d.tile.server.seed;
+
+/**
+ * Hilbert space filling curve. Points which are close on curve are close in
+ * space, so tiles visited in this order share data and models.
+ */
+public class HilbertCurve {
+
+    /**
+     * Converts distance on curve to point.
+     *
+     * @param n size of square side, need to be power of two
+     * @param d distance on curve, from 0 to n * n - 1
+     * @param xy result point, xy[0] is x and xy[1] is y
+     */
+    public static void d2xy(int n, long d, int [] xy) {
+        long t = d;
+        int x = 0;
+        int y = 0;
+        for (int s = 1; s < n; s *= 2) {
+            int rx = (int) (1 & (t / 2));
+            int ry = (int) (1 & (t ^ rx));
+
+            // rotate
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+
+            x += s * rx;
+            y += s * ry;
+            t /= 4;
+        }
+        xy[0] = x;
+        xy[1] = y;
+    }
+
+    /**
+     * @param size size
+     * @return the smallest power of two not smaller than size
+     */
+    public static int squareSize(int size) {
+        int n = 1;
+        while (n < size) {
+            n *= 2;
+        }
+        return n;
+    }
+}
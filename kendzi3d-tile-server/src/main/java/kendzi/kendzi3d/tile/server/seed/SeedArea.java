@@ -0,0 +1,132 @@
+package kendzi.kendzi3d.tile.server.seed;
+
+import java.util.Properties;
+
+/**
+ * Area and zoom levels of tiles to seed.
+ */
+public class SeedArea {
+
+    private double minLon;
+    private double minLat;
+    private double maxLon;
+    private double maxLat;
+    private int minZoom;
+    private int maxZoom;
+
+    public SeedArea(double minLon, double minLat, double maxLon, double maxLat, int minZoom, int maxZoom) {
+        super();
+        this.minLon = minLon;
+        this.minLat = minLat;
+        this.maxLon = maxLon;
+        this.maxLat = maxLat;
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+    }
+
+    /**
+     * Saves area to properties.
+     *
+     * @param p properties
+     */
+    public void store(Properties p) {
+        p.setProperty("minLon", Double.toString(this.minLon));
+        p.setProperty("minLat", Double.toString(this.minLat));
+        p.setProperty("maxLon", Double.toString(this.maxLon));
+        p.setProperty("maxLat", Double.toString(this.maxLat));
+        p.setProperty("minZoom", Integer.toString(this.minZoom));
+        p.setProperty("maxZoom", Integer.toString(this.maxZoom));
+    }
+
+    /**
+     * Loads area from properties.
+     *
+     * @param p properties
+     * @return area
+     */
+    public static SeedArea load(Properties p) {
+        return new SeedArea(
+                Double.parseDouble(p.getProperty("minLon")),
+                Double.parseDouble(p.getProperty("minLat")),
+                Double.parseDouble(p.getProperty("maxLon")),
+                Double.parseDouble(p.getProperty("maxLat")),
+                Integer.parseInt(p.getProperty("minZoom")),
+                Integer.parseInt(p.getProperty("maxZoom")));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SeedArea)) {
+            return false;
+        }
+        SeedArea o = (SeedArea) obj;
+        return Double.compare(this.minLon, o.minLon) == 0
+                && Double.compare(this.minLat, o.minLat) == 0
+                && Double.compare(this.maxLon, o.maxLon) == 0
+                && Double.compare(this.maxLat, o.maxLat) == 0
+                && this.minZoom == o.minZoom
+                && this.maxZoom == o.maxZoom;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = Double.doubleToLongBits(this.minLon);
+        h = 31 * h + Double.doubleToLongBits(this.minLat);
+        h = 31 * h + Double.doubleToLongBits(this.maxLon);
+        h = 31 * h + Double.doubleToLongBits(this.maxLat);
+        h = 31 * h + this.minZoom;
+        h = 31 * h + this.maxZoom;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "lon: " + this.minLon + " - " + this.maxLon + ", lat: " + this.minLat + " - " + this.maxLat
+                + ", zoom: " + this.minZoom + " - " + this.maxZoom;
+    }
+
+    /**
+     * @return the minLon
+     */
+    public double getMinLon() {
+        return this.minLon;
+    }
+
+    /**
+     * @return the minLat
+     */
+    public double getMinLat() {
+        return this.minLat;
+    }
+
+    /**
+     * @return the maxLon
+     */
+    public double getMaxLon() {
+        return this.maxLon;
+    }
+
+    /**
+     * @return the maxLat
+     */
+    public double getMaxLat() {
+        return this.maxLat;
+    }
+
+    /**
+     * @return the minZoom
+     */
+    public int getMinZoom() {
+        return this.minZoom;
+    }
+
+    /**
+     * @return the maxZoom
+     */
+    public int getMaxZoom() {
+        return this.maxZoom;
+    }
+}
@@ -0,0 +1,451 @@
+package kendzi.kendzi3d.tile.server.seed;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kendzi.kendzi3d.render.tile.Tile;
+import kendzi.kendzi3d.render.tile.TitleToLatLon;
+import kendzi.kendzi3d.tile.server.dto.SeedStatus;
+import kendzi.kendzi3d.tile.server.render.RenderJobListener;
+import kendzi.kendzi3d.tile.server.render.RenderJobStatus;
+import kendzi.kendzi3d.tile.server.render.job.RenderPriority;
+import kendzi.kendzi3d.tile.server.service.OverviewService;
+import kendzi.kendzi3d.tile.server.service.TileService;
+import kendzi.kendzi3d.tile.server.store.TileStore;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Renders all tiles of area which are not yet in tile store. Tiles (or
+ * metatiles) of each zoom level are visited in order of Hilbert curve, so
+ * neighbouring jobs render neighbouring areas.
+ *
+ * Only limited number of jobs is queued at once, so seeding doesn't fill work
+ * poll. Progress is periodically saved to checkpoint file, interrupted seeding
+ * of the same area is resumed from it.
+ *
+ * Tiles of overview zoom levels are not rendered, after rendering they are
+ * composed from tiles of higher zoom, from the highest overview zoom down.
+ */
+public class SeedTask implements Runnable {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(SeedTask.class);
+
+    /**
+     * Interval in milliseconds between saves of checkpoint.
+     */
+    private static final long CHECKPOINT_INTERVAL = 10000;
+
+    private final SeedArea area;
+
+    private final TileService tileService;
+
+    private final OverviewService overviewService;
+
+    private final TileStore tileStore;
+
+    private final File checkpointFile;
+
+    /**
+     * Maximal number of queued jobs.
+     */
+    private final int window;
+
+    private final Semaphore windowSemaphore;
+
+    private volatile boolean stopped;
+
+    private volatile boolean running;
+
+    private volatile boolean finished;
+
+    private volatile int zoom;
+
+    private volatile long total;
+
+    private final AtomicLong done = new AtomicLong();
+
+    private final AtomicLong rendered = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Number of tiles done before this run, when seeding was resumed.
+     */
+    private volatile long resumed;
+
+    private volatile long startTime;
+
+    /**
+     * Positions on curve of jobs in progress. Guarded by itself.
+     */
+    private final TreeSet<Long> inFlight = new TreeSet<Long>();
+
+    /**
+     * Next position on curve to visit. Guarded by inFlight.
+     */
+    private long nextIndex;
+
+    private long lastCheckpoint;
+
+    /**
+     * @param area area to seed
+     * @param tileService tile service
+     * @param overviewService overview service
+     * @param tileStore tile store
+     * @param checkpointFile file with progress
+     * @param window maximal number of queued jobs
+     */
+    public SeedTask(SeedArea area, TileService tileService, OverviewService overviewService, TileStore tileStore,
+            File checkpointFile, int window) {
+        super();
+        this.area = area;
+        this.tileService = tileService;
+        this.overviewService = overviewService;
+        this.tileStore = tileStore;
+        this.checkpointFile = checkpointFile;
+        this.window = window;
+        this.windowSemaphore = new Semaphore(window);
+    }
+
+    @Override
+    public void run() {
+        this.running = true;
+        this.startTime = System.currentTimeMillis();
+        try {
+            this.total = countTiles();
+
+            int resumeZoom = this.area.getMinZoom();
+            long resumeIndex = 0;
+
+            Properties checkpoint = loadCheckpoint();
+            if (checkpoint != null) {
+                resumeZoom = Integer.parseInt(checkpoint.getProperty("zoom"));
+                resumeIndex = Long.parseLong(checkpoint.getProperty("index"));
+                log.info("resuming seeding of: " + this.area + " from zoom: " + resumeZoom + " index: " + resumeIndex);
+            }
+
+            int minRenderZoom = Math.max(this.area.getMinZoom(), OverviewService.MIN_RENDER_ZOOM);
+
+            for (int z = minRenderZoom; z <= this.area.getMaxZoom() && !this.stopped; z++) {
+                if (z < resumeZoom) {
+                    this.done.addAndGet(countTiles(z));
+                    this.resumed = this.done.get();
+                    continue;
+                }
+
+                seedZoom(z, z == resumeZoom ? resumeIndex : 0);
+
+                waitForJobs();
+            }
+
+            waitForJobs();
+
+            for (int z = Math.min(this.area.getMaxZoom(), minRenderZoom - 1); z >= this.area.getMinZoom()
+                    && !this.stopped; z--) {
+                buildOverviewZoom(z);
+            }
+
+            if (!this.stopped) {
+                this.finished = true;
+                this.checkpointFile.delete();
+                log.info("seeding of: " + this.area + " finished, tiles: " + this.done.get()
+                        + " rendered: " + this.rendered.get() + " errors: " + this.errors.get());
+            } else {
+                saveCheckpoint();
+                log.info("seeding of: " + this.area + " stopped, tiles: " + this.done.get());
+            }
+        } catch (InterruptedException e) {
+            saveCheckpoint();
+            log.info("seeding of: " + this.area + " interrupted");
+        } catch (RuntimeException e) {
+            log.error("error seeding: " + this.area, e);
+            throw e;
+        } finally {
+            this.running = false;
+        }
+    }
+
+    private void seedZoom(int z, long from) throws InterruptedException {
+        this.zoom = z;
+
+        int size = this.tileService.getMetaTileSize(z);
+
+        int x0 = minX(z);
+        int x1 = maxX(z);
+        int y0 = minY(z);
+        int y1 = maxY(z);
+
+        int bx0 = x0 / size;
+        int by0 = y0 / size;
+        int w = x1 / size - bx0 + 1;
+        int h = y1 / size - by0 + 1;
+
+        int n = HilbertCurve.squareSize(Math.max(w, h));
+        long length = (long) n * n;
+
+        synchronized (this.inFlight) {
+            this.nextIndex = from;
+        }
+
+        int [] xy = new int[2];
+        for (long d = 0; d < length && !this.stopped; d++) {
+            HilbertCurve.d2xy(n, d, xy);
+            if (xy[0] >= w || xy[1] >= h) {
+                continue;
+            }
+
+            int tx = (bx0 + xy[0]) * size;
+            int ty = (by0 + xy[1]) * size;
+
+            // part of block inside area
+            int fromX = Math.max(tx, x0);
+            int toX = Math.min(tx + size - 1, x1);
+            int fromY = Math.max(ty, y0);
+            int toY = Math.min(ty + size - 1, y1);
+
+            long count = (long) (toX - fromX + 1) * (toY - fromY + 1);
+
+            if (d < from) {
+                this.done.addAndGet(count);
+                this.resumed = this.done.get();
+                continue;
+            }
+
+            if (isInStore(fromX, toX, fromY, toY, z)) {
+                this.skipped.addAndGet(count);
+                this.done.addAndGet(count);
+                next(d);
+                continue;
+            }
+
+            submit(new Tile(tx, ty, z), d, count);
+
+            if (System.currentTimeMillis() - this.lastCheckpoint > CHECKPOINT_INTERVAL) {
+                saveCheckpoint();
+            }
+        }
+    }
+
+    private void buildOverviewZoom(int z) {
+        this.zoom = z;
+        for (int y = minY(z); y <= maxY(z) && !this.stopped; y++) {
+            for (int x = minX(z); x <= maxX(z) && !this.stopped; x++) {
+                try {
+                    if (this.overviewService.build(new Tile(x, y, z)) != null) {
+                        this.rendered.incrementAndGet();
+                    } else {
+                        // some of children are not in store
+                        this.skipped.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    log.error("error building overview tile: " + x + ", " + y + ", " + z, e);
+                    this.errors.incrementAndGet();
+                }
+                this.done.incrementAndGet();
+            }
+        }
+    }
+
+    private void submit(Tile tile, final long d, final long count) throws InterruptedException {
+        this.windowSemaphore.acquire();
+
+        synchronized (this.inFlight) {
+            this.inFlight.add(d);
+            this.nextIndex = d + 1;
+        }
+
+        RenderJobStatus status;
+        try {
+            status = this.tileService.submit(tile, RenderPriority.SEEDING, 0);
+        } catch (RuntimeException e) {
+            log.error("error adding seed job for tile: " + tile, e);
+            jobDone(d, count, false);
+            return;
+        }
+
+        status.addListener(new RenderJobListener() {
+
+            @Override
+            public void jobDone(RenderJobStatus status) {
+                status.releaseWaiter();
+                SeedTask.this.jobDone(d, count, !status.isCancelled() && status.getError() == null);
+            }
+        });
+    }
+
+    private void jobDone(long d, long count, boolean success) {
+        synchronized (this.inFlight) {
+            this.inFlight.remove(d);
+        }
+        if (success) {
+            this.rendered.addAndGet(count);
+        } else {
+            this.errors.addAndGet(count);
+        }
+        this.done.addAndGet(count);
+        this.windowSemaphore.release();
+    }
+
+    private void next(long d) {
+        synchronized (this.inFlight) {
+            this.nextIndex = d + 1;
+        }
+    }
+
+    private void waitForJobs() throws InterruptedException {
+        this.windowSemaphore.acquire(this.window);
+        this.windowSemaphore.release(this.window);
+    }
+
+    private boolean isInStore(int fromX, int toX, int fromY, int toY, int z) {
+        for (int y = fromY; y <= toY; y++) {
+            for (int x = fromX; x <= toX; x++) {
+                if (!this.tileStore.contains(new Tile(x, y, z))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private long countTiles() {
+        long count = 0;
+        for (int z = this.area.getMinZoom(); z <= this.area.getMaxZoom(); z++) {
+            count += countTiles(z);
+        }
+        return count;
+    }
+
+    private long countTiles(int z) {
+        return (long) (maxX(z) - minX(z) + 1) * (maxY(z) - minY(z) + 1);
+    }
+
+    private int minX(int z) {
+        return clamp(TitleToLatLon.lonToTile(this.area.getMinLon(), z), z);
+    }
+
+    private int maxX(int z) {
+        return clamp(TitleToLatLon.lonToTile(this.area.getMaxLon(), z), z);
+    }
+
+    private int minY(int z) {
+        // y grows to south
+        return clamp(TitleToLatLon.latToTile(this.area.getMaxLat(), z), z);
+    }
+
+    private int maxY(int z) {
+        return clamp(TitleToLatLon.latToTile(this.area.getMinLat(), z), z);
+    }
+
+    private static int clamp(int t, int z) {
+        return Math.max(0, Math.min(t, (1 << z) - 1));
+    }
+
+    private Properties loadCheckpoint() {
+        if (!this.checkpointFile.exists()) {
+            return null;
+        }
+        Properties p = new Properties();
+        try {
+            InputStream in = new FileInputStream(this.checkpointFile);
+            try {
+                p.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            log.error("error reading seed checkpoint: " + this.checkpointFile, e);
+            return null;
+        }
+
+        if (!this.area.equals(SeedArea.load(p))) {
+            log.info("seed checkpoint: " + this.checkpointFile + " is for different area, starting from beginning");
+            return null;
+        }
+        return p;
+    }
+
+    /**
+     * Saves position on curve before which all jobs are done.
+     */
+    private void saveCheckpoint() {
+        this.lastCheckpoint = System.currentTimeMillis();
+
+        long index;
+        synchronized (this.inFlight) {
+            index = this.inFlight.isEmpty() ? this.nextIndex : this.inFlight.first();
+        }
+
+        Properties p = new Properties();
+        this.area.store(p);
+        p.setProperty("zoom", Integer.toString(this.zoom));
+        p.setProperty("index", Long.toString(index));
+
+        File tmp = new File(this.checkpointFile.getPath() + ".tmp");
+        try {
+            File parent = this.checkpointFile.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                p.store(out, "kendzi3d seed checkpoint");
+            } finally {
+                out.close();
+            }
+            this.checkpointFile.delete();
+            if (!tmp.renameTo(this.checkpointFile)) {
+                throw new IOException("can't rename file: " + tmp + " to: " + this.checkpointFile);
+            }
+        } catch (IOException e) {
+            log.error("error saving seed checkpoint: " + this.checkpointFile, e);
+        }
+    }
+
+    /**
+     * Stops seeding. Jobs already queued are finished.
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    /**
+     * @return status of seeding
+     */
+    public SeedStatus getStatus() {
+        SeedStatus s = new SeedStatus();
+        s.setArea(this.area.toString());
+        s.setRunning(this.running);
+        s.setFinished(this.finished);
+        s.setStartDate(new Date(this.startTime));
+        s.setZoom(this.zoom);
+        s.setTotal(this.total);
+        s.setDone(this.done.get());
+        s.setRendered(this.rendered.get());
+        s.setSkipped(this.skipped.get());
+        s.setErrors(this.errors.get());
+
+        double time = (System.currentTimeMillis() - this.startTime) / 1000d;
+        long doneNow = this.done.get() - this.resumed;
+        if (time > 0 && doneNow > 0) {
+            double tilesPerSecond = doneNow / time;
+            s.setTilesPerSecond(tilesPerSecond);
+            s.setEta((long) ((this.total - this.done.get()) / tilesPerSecond));
+        }
+        return s;
+    }
+}
@@ -0,0 +1,274 @@
+package kendzi.kendzi3d.tile.server.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import kendzi.josm.kendzi3d.util.StringUtil;
+import kendzi.kendzi3d.render.tile.Tile;
+import kendzi.kendzi3d.tile.server.config.TileServerConf;
+import kendzi.kendzi3d.tile.server.expire.ChangeFileReader;
+import kendzi.kendzi3d.tile.server.expire.ChangeLocator;
+import kendzi.kendzi3d.tile.server.expire.PgSqlChangeLocator;
+import kendzi.kendzi3d.tile.server.expire.TileExpiry;
+import kendzi.kendzi3d.tile.server.render.RenderJobListener;
+import kendzi.kendzi3d.tile.server.render.RenderJobStatus;
+import kendzi.kendzi3d.tile.server.render.job.RenderPriority;
+import kendzi.kendzi3d.tile.server.store.TileKeyUtil;
+import kendzi.kendzi3d.tile.server.store.TileStore;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Expires tiles affected by changes of data. Expire directory is checked
+ * periodically for change files (for example saved after each replication
+ * step), they are processed in order of names. Processed file is renamed with
+ * suffix .done, file which can't be read with suffix .failed.
+ *
+ * Only tiles which are in store are expired. They are marked as stale and
+ * rendered again on request, or in background after expiry when it is
+ * enabled. Overview tiles are composed again after their children.
+ */
+@Service
+public class ExpiryService {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(ExpiryService.class);
+
+    @Autowired
+    TileService tileService;
+
+    @Autowired
+    TileStore tileStore;
+
+    @Autowired
+    OverviewService overviewService;
+
+    @Autowired
+    RenderService renderService;
+
+    @Autowired
+    TileServerConf tileServerConf;
+
+    private Thread expireThread;
+
+    private volatile boolean shutdown;
+
+    @PostConstruct
+    public void init() {
+        if (StringUtil.isBlankOrNull(this.tileServerConf.getExpireDir())) {
+            log.info("expire directory is not set, tile expiry is disabled");
+            return;
+        }
+
+        final File dir = new File(this.tileServerConf.getExpireDir());
+        final long interval = this.tileServerConf.getExpireInterval();
+
+        this.expireThread = new Thread("tile-expiry") {
+            @Override
+            public void run() {
+                while (!ExpiryService.this.shutdown) {
+                    try {
+                        processDirectory(dir);
+
+                        Thread.sleep(interval);
+                    } catch (InterruptedException e) {
+                        continue;
+                    } catch (RuntimeException e) {
+                        log.error("error expiring tiles from directory: " + dir, e);
+                    }
+                }
+            }
+        };
+        this.expireThread.setDaemon(true);
+        this.expireThread.start();
+
+        log.info("started tile expiry from directory: " + dir);
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.shutdown = true;
+        if (this.expireThread != null) {
+            this.expireThread.interrupt();
+        }
+    }
+
+    /**
+     * Processes all change files from directory in order of names.
+     *
+     * @param dir directory with change files
+     * @throws InterruptedException
+     */
+    public void processDirectory(File dir) throws InterruptedException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            log.warn("can't list expire directory: " + dir);
+            return;
+        }
+        Arrays.sort(files);
+
+        for (File file : files) {
+            if (this.shutdown) {
+                return;
+            }
+            if (ChangeFileReader.isChangeFile(file)) {
+                process(file);
+            }
+        }
+    }
+
+    /**
+     * Expires tiles affected by change file.
+     *
+     * @param file change file
+     * @throws InterruptedException
+     */
+    public void process(File file) throws InterruptedException {
+        long s1 = System.currentTimeMillis();
+
+        TileExpiry expiry = new TileExpiry(this.overviewService.getMinZoom(), this.tileServerConf.getExpireMaxZoom(),
+                this.renderService.getDataMargin());
+        // ways and relations are located from database
+        DataSource dataSource = this.renderService.getDataSource();
+        ChangeLocator locator = dataSource != null ? new PgSqlChangeLocator(dataSource) : null;
+
+        int changes;
+        try {
+            changes = ChangeFileReader.read(file, expiry, locator);
+        } catch (IOException e) {
+            log.error("error reading change file: " + file, e);
+            rename(file, ".failed");
+            return;
+        }
+
+        if (changes > 0) {
+            // cached data is older than change
+            this.renderService.clearDataSetCache();
+        }
+
+        // before store, so tiles rendered from old data are not saved as fresh
+        int rendering = this.tileService.expireRendering(expiry.getTiles());
+
+        List<Tile> expired = expire(expiry);
+        rename(file, ".done");
+
+        log.info("change file: " + file + " changes: " + changes + " affected tiles: " + expiry.size()
+                + " expired: " + expired.size() + " rendering: " + rendering + " time: "
+                + (System.currentTimeMillis() - s1) + " ms");
+
+        if (this.tileServerConf.isExpireRender()) {
+            render(expired);
+        }
+    }
+
+    /**
+     * Marks affected tiles which are in store as stale.
+     *
+     * @param expiry affected tiles
+     * @return expired tiles, from the lowest zoom
+     */
+    public List<Tile> expire(TileExpiry expiry) {
+        List<Tile> expired = new ArrayList<Tile>();
+        for (Tile tile : expiry.getTiles()) {
+            if (this.tileStore.expire(tile)) {
+                expired.add(tile);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Renders expired tiles again with seeding priority, each metatile once.
+     * Only limited number of jobs is queued at once, like in seeding. Overview
+     * tiles are composed after all rendered tiles, from the highest zoom down.
+     *
+     * @param expired expired tiles, from the lowest zoom
+     * @throws InterruptedException
+     */
+    private void render(List<Tile> expired) throws InterruptedException {
+        long s1 = System.currentTimeMillis();
+
+        // two jobs per worker keep workers busy
+        int window = 2 * this.tileServerConf.getRenderWorkers();
+        final Semaphore windowSemaphore = new Semaphore(window);
+
+        Set<Long> metaTiles = new HashSet<Long>();
+        int jobs = 0;
+
+        for (Tile tile : expired) {
+            if (this.shutdown) {
+                return;
+            }
+            if (this.overviewService.isOverview(tile.getZ())) {
+                continue;
+            }
+
+            int size = this.tileService.getMetaTileSize(tile.getZ());
+            if (!metaTiles.add(TileKeyUtil.key(tile.getX() - tile.getX() % size, tile.getY() - tile.getY() % size,
+                    tile.getZ()))) {
+                continue;
+            }
+
+            windowSemaphore.acquire();
+
+            RenderJobStatus status;
+            try {
+                status = this.tileService.submit(tile, RenderPriority.SEEDING, 0);
+            } catch (RuntimeException e) {
+                log.error("error adding render job for expired tile: " + tile, e);
+                windowSemaphore.release();
+                continue;
+            }
+
+            status.addListener(new RenderJobListener() {
+
+                @Override
+                public void jobDone(RenderJobStatus status) {
+                    status.releaseWaiter();
+                    windowSemaphore.release();
+                }
+            });
+            jobs++;
+        }
+
+        windowSemaphore.acquire(window);
+        windowSemaphore.release(window);
+
+        int overviews = 0;
+        for (int i = expired.size() - 1; i >= 0 && !this.shutdown; i--) {
+            Tile tile = expired.get(i);
+            if (!this.overviewService.isOverview(tile.getZ())) {
+                continue;
+            }
+            try {
+                if (this.overviewService.build(tile) != null) {
+                    overviews++;
+                }
+            } catch (RuntimeException e) {
+                log.error("error building overview tile: " + tile, e);
+            }
+        }
+
+        log.info("rendered expired tiles, jobs: " + jobs + " overview tiles: " + overviews + " time: "
+                + (System.currentTimeMillis() - s1) + " ms");
+    }
+
+    private static void rename(File file, String suffix) {
+        File dest = new File(file.getPath() + suffix);
+        if (!file.renameTo(dest)) {
+            throw new RuntimeException("can't rename file: " + file + " to: " + dest);
+        }
+    }
+}
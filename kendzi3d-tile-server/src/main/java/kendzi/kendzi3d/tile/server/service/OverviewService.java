@@ -0,0 +1,165 @@
+package kendzi.kendzi3d.tile.server.service;
+
+import kendzi.kendzi3d.render.tile.Tile;
+import kendzi.kendzi3d.tile.server.config.TileServerConf;
+import kendzi.kendzi3d.tile.server.overview.TileDownsampler;
+import kendzi.kendzi3d.tile.server.store.StoredTile;
+import kendzi.kendzi3d.tile.server.store.TileStore;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Creates tiles of low zoom levels (overview pyramid) from tiles of higher zoom
+ * levels instead of rendering them. Tile of zoom z is composed from four tiles
+ * of zoom z + 1, down to configured minimal zoom.
+ *
+ * Only tile composed from all four children is saved to tile store. Tile with
+ * missing children is returned but it is build again on next request, until
+ * all children are rendered. Stale children are treated as missing, stale
+ * overview tile is served until all its children are rendered again.
+ */
+@Service
+public class OverviewService {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(OverviewService.class);
+
+    /**
+     * Minimal zoom of tiles rendered in 3d, tiles of lower zoom are composed
+     * from them.
+     */
+    public static final int MIN_RENDER_ZOOM = 14;
+
+    @Autowired
+    TileStore tileStore;
+
+    @Autowired
+    TileServerConf tileServerConf;
+
+    private volatile byte[] emptyTile;
+
+    /**
+     * @param zoom zoom
+     * @return if tiles of zoom are composed from tiles of higher zoom
+     */
+    public boolean isOverview(int zoom) {
+        return zoom < MIN_RENDER_ZOOM;
+    }
+
+    /**
+     * Gets overview tile from store or builds it from tiles of higher zoom.
+     * Children which are missing in store are build recursively, tiles of
+     * rendered zoom levels are only loaded from store.
+     *
+     * @param tile tile
+     * @param dirty if tile should be build even if it is in store
+     * @return tile image, transparent when there is no rendered tile under it
+     */
+    public StoredTile getTile(Tile tile, boolean dirty) {
+        if (!isOverview(tile.getZ()) || tile.getZ() < getMinZoom()) {
+            throw new RuntimeException("zoom: " + tile.getZ() + " is out of overview zoom levels: "
+                    + getMinZoom() + " - " + (MIN_RENDER_ZOOM - 1));
+        }
+
+        if (!dirty) {
+            StoredTile storedTile = this.tileStore.load(tile);
+            if (storedTile != null && storedTile.isStale()) {
+                StoredTile rebuilt = build(tile);
+                return rebuilt != null ? rebuilt : storedTile;
+            }
+            if (storedTile != null) {
+                return storedTile;
+            }
+        }
+
+        OverviewTile overview = build(tile, true);
+        if (overview == null) {
+            return StoredTile.create(getEmptyTile());
+        }
+        return overview.tile;
+    }
+
+    /**
+     * Builds overview tile only from children which are in store, and saves it
+     * when all children are present. Used after seeding when lower zoom levels
+     * are build in order from the highest.
+     *
+     * @param tile tile
+     * @return saved tile or null if some of children are missing
+     */
+    public StoredTile build(Tile tile) {
+        OverviewTile overview = build(tile, false);
+        if (overview == null || !overview.complete) {
+            return null;
+        }
+        return overview.tile;
+    }
+
+    /**
+     * @return minimal zoom of overview tiles
+     */
+    public int getMinZoom() {
+        return Math.min(this.tileServerConf.getOverviewMinZoom(), MIN_RENDER_ZOOM);
+    }
+
+    private OverviewTile build(Tile tile, boolean recursive) {
+        byte[][] children = new byte[4][];
+        boolean complete = true;
+        boolean empty = true;
+
+        for (int i = 0; i < 4; i++) {
+            Tile child = new Tile(2 * tile.getX() + i % 2, 2 * tile.getY() + i / 2, tile.getZ() + 1);
+
+            StoredTile childTile = this.tileStore.load(child);
+            if (childTile == null && recursive && isOverview(child.getZ())) {
+                OverviewTile childOverview = build(child, true);
+                if (childOverview != null) {
+                    childTile = childOverview.tile;
+                    complete &= childOverview.complete;
+                }
+            }
+
+            if (childTile == null) {
+                complete = false;
+            } else {
+                complete &= !childTile.isStale();
+                children[i] = childTile.getImage();
+                empty = false;
+            }
+        }
+
+        if (empty) {
+            return null;
+        }
+
+        byte[] image = TileDownsampler.downsample(children);
+
+        if (complete) {
+            log.debug("saving overview tile: " + tile);
+            return new OverviewTile(this.tileStore.save(tile, image), true);
+        }
+        return new OverviewTile(StoredTile.create(image), false);
+    }
+
+    private byte[] getEmptyTile() {
+        if (this.emptyTile == null) {
+            this.emptyTile = TileDownsampler.downsample(new byte[4][]);
+        }
+        return this.emptyTile;
+    }
+
+    /**
+     * Built tile and information if it was composed from all children.
+     */
+    private static class OverviewTile {
+        private final StoredTile tile;
+        private final boolean complete;
+
+        OverviewTile(StoredTile tile, boolean complete) {
+            this.tile = tile;
+            this.complete = complete;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package kendzi.kendzi3d.tile.server.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import kendzi.kendzi3d.tile.server.dto.LatencyStatus;
+import kendzi.kendzi3d.tile.server.dto.RenderWorkerStatus;
+import kendzi.kendzi3d.tile.server.stats.RenderStats;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Publishes render statistics in platform MBean server.
+ */
+@Service
+public class RenderMonitor implements RenderMonitorMBean {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(RenderMonitor.class);
+
+    /**
+     * Name of MBean.
+     */
+    private static final String MBEAN_NAME = "kendzi.kendzi3d.tile.server:type=RenderMonitor";
+
+    @Autowired
+    RenderService renderService;
+
+    private ObjectName objectName;
+
+    @PostConstruct
+    public void init() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                // left by previous deployment of application
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            this.objectName = name;
+        } catch (Exception e) {
+            // monitoring is not required to render tiles
+            log.error("error registering MBean: " + MBEAN_NAME, e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (this.objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+        } catch (Exception e) {
+            log.error("error unregistering MBean: " + MBEAN_NAME, e);
+        }
+    }
+
+    @Override
+    public int getQueueSize() {
+        return this.renderService.getQueueSize();
+    }
+
+    @Override
+    public long getExpiredJobs() {
+        return this.renderService.getExpiredJobs();
+    }
+
+    @Override
+    public long getRejectedJobs() {
+        return this.renderService.getRejectedJobs();
+    }
+
+    @Override
+    public long getPrefetchHits() {
+        return this.renderService.getPrefetchHits();
+    }
+
+    @Override
+    public long getPrefetchMisses() {
+        return this.renderService.getPrefetchMisses();
+    }
+
+    @Override
+    public int getWorkers() {
+        return this.renderService.getWorkersStatus().size();
+    }
+
+    @Override
+    public int getBusyWorkers() {
+        return this.renderService.getBusyWorkers();
+    }
+
+    @Override
+    public double getWorkerUtilization() {
+        List<RenderWorkerStatus> workers = this.renderService.getWorkersStatus();
+        if (workers.isEmpty()) {
+            return 0;
+        }
+        double sum = 0;
+        for (RenderWorkerStatus s : workers) {
+            sum += s.getUtilization();
+        }
+        return sum / workers.size();
+    }
+
+    @Override
+    public long getJobs() {
+        return stats().getJobs();
+    }
+
+    @Override
+    public long getFailedJobs() {
+        return stats().getFailedJobs();
+    }
+
+    @Override
+    public double getTotalP50() {
+        return stats().getTotal().getPercentile(50) / 1000d;
+    }
+
+    @Override
+    public double getTotalP99() {
+        return stats().getTotal().getPercentile(99) / 1000d;
+    }
+
+    @Override
+    public double getQueueWaitP99() {
+        return stats().getQueueWait().getPercentile(99) / 1000d;
+    }
+
+    @Override
+    public String[] getStageLatency() {
+        List<LatencyStatus> list = stats().getLatencyStatus();
+        String[] ret = new String[list.size()];
+        for (int i = 0; i < ret.length; i++) {
+            LatencyStatus s = list.get(i);
+            ret[i] = s.getName() + " count: " + s.getCount() + " mean: " + s.getMean() + " p50: " + s.getP50()
+                    + " p90: " + s.getP90() + " p99: " + s.getP99() + " max: " + s.getMax();
+        }
+        return ret;
+    }
+
+    private RenderStats stats() {
+        return this.renderService.getRenderStats();
+    }
+}
@@ -0,0 +1,77 @@
+package kendzi.kendzi3d.tile.server.service;
+
+/**
+ * JMX view of render statistics. Times are in milliseconds.
+ */
+public interface RenderMonitorMBean {
+
+    /**
+     * @return number of jobs waiting in queue
+     */
+    int getQueueSize();
+
+    /**
+     * @return number of jobs dropped because of passed deadline
+     */
+    long getExpiredJobs();
+
+    /**
+     * @return number of jobs rejected because queue was full
+     */
+    long getRejectedJobs();
+
+    /**
+     * @return number of data sets taken by workers from prefetcher
+     */
+    long getPrefetchHits();
+
+    /**
+     * @return number of data sets which workers had to load itself
+     */
+    long getPrefetchMisses();
+
+    /**
+     * @return number of workers
+     */
+    int getWorkers();
+
+    /**
+     * @return number of workers rendering job now
+     */
+    int getBusyWorkers();
+
+    /**
+     * @return mean part of time spent by workers on rendering, in range 0 - 1
+     */
+    double getWorkerUtilization();
+
+    /**
+     * @return number of finished render jobs
+     */
+    long getJobs();
+
+    /**
+     * @return number of failed render jobs
+     */
+    long getFailedJobs();
+
+    /**
+     * @return median of total job time
+     */
+    double getTotalP50();
+
+    /**
+     * @return 99th percentile of total job time
+     */
+    double getTotalP99();
+
+    /**
+     * @return 99th percentile of time of waiting in queue
+     */
+    double getQueueWaitP99();
+
+    /**
+     * @return latency of every render stage, one line for each stage
+     */
+    String[] getStageLatency();
+}
@@ -1,33 +1,52 @@
 package kendzi.kendzi3d.tile.server.service;
 
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
 
+import kendzi.josm.datasource.PooledPostgisDataSource;
+import kendzi.kendzi3d.render.MetaTileRenderResult;
 import kendzi.kendzi3d.render.RenderResult;
 import kendzi.kendzi3d.render.conf.RenderDataSourceConf;
+import kendzi.kendzi3d.render.conf.RenderDataSourceConf.InputSource;
 import kendzi.kendzi3d.render.conf.RenderEngineConf;
-import kendzi.kendzi3d.render.dataset.DataSetProvider;
+import kendzi.kendzi3d.render.dataset.DataMargin;
+import kendzi.kendzi3d.render.dataset.DataSetCache;
 import kendzi.kendzi3d.render.dataset.DataSetProviderFactory;
 import kendzi.kendzi3d.render.tile.Tile;
+import kendzi.kendzi3d.tile.server.config.TileServerConf;
 import kendzi.kendzi3d.tile.server.dto.RenderStatus;
-import kendzi.kendzi3d.tile.server.render.RenderWorkerThread;
+import kendzi.kendzi3d.tile.server.dto.RenderWorkerStatus;
+import kendzi.kendzi3d.tile.server.render.RenderJobListener;
+import kendzi.kendzi3d.tile.server.render.RenderJobStatus;
+import kendzi.kendzi3d.tile.server.render.RenderOverloadedException;
+import kendzi.kendzi3d.tile.server.render.RenderWorkerPool;
 import kendzi.kendzi3d.tile.server.render.WorkPoll;
+import kendzi.kendzi3d.tile.server.render.job.RenderJob;
+import kendzi.kendzi3d.tile.server.render.job.RenderPriority;
 import kendzi.kendzi3d.tile.server.render.job.TileJob;
-import kendzi.kendzi3d.tile.server.render.module.RenderModule;
-import kendzi.kendzi3d.tile.server.render.worker.impl.Kendzi3dTileRenderWorker;
+import kendzi.kendzi3d.tile.server.render.prefetch.DataPrefetcher;
+import kendzi.kendzi3d.tile.server.render.worker.TitleJobRenderFactory;
+import kendzi.kendzi3d.tile.server.render.worker.impl.Kendzi3dTileRenderWorkerFactory;
+import kendzi.kendzi3d.tile.server.stats.RenderStats;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-
 @Service
 public class RenderService {
 
+    /**
+     * Maximal time in milliseconds to wait for each worker at shutdown.
+     */
+    private static final long WORKER_STOP_TIMEOUT = 30000;
+
     @Autowired
     Environment environment;
 
@@ -40,6 +59,9 @@ public class RenderService {
     @Autowired
     RenderDataSourceConf renderDataSourceConf;
 
+    @Autowired
+    TileServerConf tileServerConf;
+
     @Autowired
     RenderStatusService renderStatusService;
 
@@ -48,58 +70,287 @@ public class RenderService {
     /** Log. */
     private static final Logger log = Logger.getLogger(RenderService.class);
 
-    private Injector injector;
-
     private WorkPoll workPoll;
 
-    private RenderWorkerThread renderThread;
+    private RenderWorkerPool renderWorkerPool;
 
+    /**
+     * Pool of database connections shared by workers, null for file data
+     * source.
+     */
+    private PooledPostgisDataSource dataSource;
 
+    /**
+     * Cache of data shared by workers, null when disabled or for file data
+     * source.
+     */
+    private DataSetCache dataSetCache;
 
-    @PostConstruct
-    public void init() {
-        try {
-            DataSetProvider dsp = DataSetProviderFactory.loadConf(renderDataSourceConf);
+    /**
+     * Margin of data loaded for tile, shared by workers.
+     */
+    private DataMargin dataMargin;
 
-            this.injector = Guice.createInjector(new RenderModule(this.renderEngineConf, dsp));
+    /**
+     * Prefetcher of data for jobs waiting in queue, null when disabled.
+     */
+    private DataPrefetcher dataPrefetcher;
 
-            this.workPoll = new WorkPoll();
+    /**
+     * Latency statistics of all render jobs.
+     */
+    private final RenderStats renderStats = new RenderStats();
 
-            Kendzi3dTileRenderWorker k3dTileRenderer = this.injector.getInstance(Kendzi3dTileRenderWorker.class);
 
-            this.renderThread = new RenderWorkerThread(this.workPoll, k3dTileRenderer);
 
-            log.info("starting render thread begin");
-            this.renderThread.start();
-            log.info("starting render thread end");
+    @PostConstruct
+    public void init() {
+        try {
+            this.workPoll = new WorkPoll();
+
+            int prefetchThreads = this.tileServerConf.getPrefetchThreads();
+
+            this.dataMargin = DataSetProviderFactory.createDataMargin(this.renderDataSourceConf,
+                    this.renderEngineConf);
+
+            if (InputSource.PGSQL.equals(this.renderDataSourceConf.getInputSource())) {
+                // every worker and prefetch thread keeps one connection
+                int poolSize = Math.max(this.renderDataSourceConf.getJdbcPoolSize(),
+                        this.tileServerConf.getRenderWorkers() + prefetchThreads);
+                this.dataSource = DataSetProviderFactory.createDataSource(this.renderDataSourceConf, poolSize);
+                this.dataSetCache = DataSetProviderFactory.createDataSetCache(this.renderDataSourceConf);
+            }
+
+            if (prefetchThreads > 0) {
+                this.dataPrefetcher = new DataPrefetcher(this.renderDataSourceConf, this.dataSource,
+                        this.dataSetCache, this.dataMargin, prefetchThreads, this.tileServerConf.getPrefetchSize());
+                this.dataPrefetcher.start();
+            }
+
+            TitleJobRenderFactory titleJobRenderFactory = new Kendzi3dTileRenderWorkerFactory(
+                    this.renderEngineConf, this.renderDataSourceConf, this.dataSource, this.dataSetCache,
+                    this.dataMargin, this.dataPrefetcher);
+
+            this.renderWorkerPool = new RenderWorkerPool(
+                    this.workPoll,
+                    titleJobRenderFactory,
+                    this.tileServerConf.getRenderWorkers(),
+                    this.tileServerConf.getWorkerMaxErrors(),
+                    this.tileServerConf.getWorkerCheckInterval(),
+                    this.dataPrefetcher);
+
+            log.info("starting render workers begin: " + this.renderWorkerPool.getSize());
+            this.renderWorkerPool.start();
+            log.info("starting render workers end");
 
         } catch (Exception e) {
             throw new RuntimeException("error initing renderer service", e);
         }
     }
 
+    @PreDestroy
+    public void destroy() {
+        log.info("stopping render workers begin");
+        this.renderWorkerPool.shutdown(WORKER_STOP_TIMEOUT);
+        log.info("stopping render workers end");
+
+        if (this.dataPrefetcher != null) {
+            this.dataPrefetcher.shutdown();
+        }
+
+        if (this.dataSource != null) {
+            this.dataSource.close();
+        }
+    }
+
     public byte[] render(Tile tile) {
-        Date date = new Date();
         long s1 = System.currentTimeMillis();
 
         log.info("adding job");
 
-        RenderResult jobResult =  this.workPoll.putJobAndWaitForResult(new TileJob(tile.getX(), tile.getY(), tile.getZ(), ""));
+        RenderJobStatus status = submit(new RenderJobStatus(new TileJob(tile.getX(), tile.getY(), tile.getZ(), "")));
+
+        RenderResult jobResult = null;
+        try {
+            jobResult = status.get();
+        } catch (ExecutionException e) {
+            log.error("error rendering tile: " + tile, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for tile: " + tile, e);
+        }
 
         log.info("job executed");
 
-        double time = (System.currentTimeMillis() - s1) / 1000d;
+        log.info("Tile process time: " + (System.currentTimeMillis() - s1) / 1000d);
 
-        log.info("Tile process time: " + time);
+        return jobResult != null ? jobResult.getImage() : null;
+    }
 
-        this.renderStatusService.save(
-                new RenderStatus(
-                        date,
-                        jobResult.getImage() != null,
-                        false,
-                        time,
-                        tile));
+    /**
+     * Adds render job to queue. Result of job is recorded in render status.
+     * When queue is full job is cancelled and rejected, seeding jobs are never
+     * rejected.
+     *
+     * @param status status of new job
+     * @return status of job
+     * @throws RenderOverloadedException when render queue is full
+     */
+    public RenderJobStatus submit(RenderJobStatus status) {
+
+        final Date date = new Date();
+        final long s1 = System.currentTimeMillis();
+
+        if (RenderPriority.SEEDING.equals(status.getPriority())) {
+            this.workPoll.putJob(status);
+
+        } else if (!this.workPoll.offerJob(status, this.tileServerConf.getRenderQueueMax())) {
+            // releases everybody who joined this job
+            status.cancel(false);
+            throw new RenderOverloadedException("render queue is full, rejected job: " + status.getRenderJob());
+        }
 
-        return jobResult != null ? jobResult.getImage() : null;
+        // when job is already done listener is called immediately
+        status.addListener(new RenderJobListener() {
+
+            @Override
+            public void jobDone(RenderJobStatus status) {
+                RenderJob renderJob = status.getRenderJob();
+                if (!(renderJob instanceof TileJob)) {
+                    return;
+                }
+
+                RenderResult jobResult = status.getJobResult();
+
+                if (!status.isCancelled()) {
+                    RenderService.this.renderStats.recordJob(
+                            jobResult,
+                            status.getQueueWaitTime(),
+                            System.nanoTime() - status.getQueuedTime());
+                }
+
+                double time = (System.currentTimeMillis() - s1) / 1000d;
+
+                RenderService.this.renderStatusService.save(
+                        new RenderStatus(
+                                date,
+                                isRendered(jobResult),
+                                false,
+                                time,
+                                (TileJob) renderJob));
+            }
+        });
+
+        return status;
+    }
+
+    /**
+     * Removes cached and prefetched data and known heights of objects, so data
+     * changed in database is loaded again.
+     */
+    public void clearDataSetCache() {
+        if (this.dataSetCache != null) {
+            this.dataSetCache.clear();
+        }
+        if (this.dataMargin != null && this.dataMargin.getHeightGrid() != null) {
+            this.dataMargin.getHeightGrid().clear();
+        }
+        if (this.dataPrefetcher != null) {
+            this.dataPrefetcher.clear();
+        }
+    }
+
+    /**
+     * Raises priority of queued job.
+     *
+     * @param status status of job
+     * @param priority new priority
+     */
+    public void raisePriority(RenderJobStatus status, RenderPriority priority) {
+        this.workPoll.raisePriority(status, priority);
+    }
+
+    /**
+     * @return number of jobs rejected because queue was full
+     */
+    public long getRejectedJobs() {
+        return this.workPoll.getRejected();
+    }
+
+    /**
+     * @return number of jobs waiting in queue
+     */
+    public int getQueueSize() {
+        return this.workPoll.size();
+    }
+
+    /**
+     * @return number of jobs dropped because of passed deadline
+     */
+    public long getExpiredJobs() {
+        return this.workPoll.getExpired();
+    }
+
+    /**
+     * @return number of data sets taken by workers from prefetcher
+     */
+    public long getPrefetchHits() {
+        return this.dataPrefetcher != null ? this.dataPrefetcher.getHits() : 0;
+    }
+
+    /**
+     * @return number of data sets which workers had to load itself when
+     *         prefetcher is enabled
+     */
+    public long getPrefetchMisses() {
+        return this.dataPrefetcher != null ? this.dataPrefetcher.getMisses() : 0;
+    }
+
+    /**
+     * @return pool of database connections, null for file data source
+     */
+    public DataSource getDataSource() {
+        return this.dataSource;
+    }
+
+    /**
+     * @return margin of data loaded for tile
+     */
+    public DataMargin getDataMargin() {
+        return this.dataMargin;
+    }
+
+    /**
+     * @return latency statistics of render jobs
+     */
+    public RenderStats getRenderStats() {
+        return this.renderStats;
+    }
+
+    /**
+     * @return number of workers which are rendering job now
+     */
+    public int getBusyWorkers() {
+        int busy = 0;
+        for (RenderWorkerStatus s : getWorkersStatus()) {
+            if (s.isBusy()) {
+                busy++;
+            }
+        }
+        return busy;
+    }
+
+    private static boolean isRendered(RenderResult jobResult) {
+        if (jobResult instanceof MetaTileRenderResult) {
+            return true;
+        }
+        return jobResult != null && jobResult.getImage() != null;
+    }
+
+    /**
+     * @return status of render workers
+     */
+    public List<RenderWorkerStatus> getWorkersStatus() {
+        return this.renderWorkerPool.getWorkersStatus();
     }
 }
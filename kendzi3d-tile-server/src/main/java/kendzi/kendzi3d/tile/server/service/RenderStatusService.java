@@ -2,26 +2,51 @@ package kendzi.kendzi3d.tile.server.service;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
 
 import kendzi.kendzi3d.tile.server.dto.RenderStatus;
 
 import org.springframework.stereotype.Service;
 
+/**
+ * Keeps statuses of recently rendered tiles in ring buffer of fixed size, the
+ * oldest status is overwritten by new one.
+ */
 @Service
 public class RenderStatusService {
 
-    Vector<RenderStatus> renderStatusList = new Vector<RenderStatus>();
+    /**
+     * Maximal number of remembered statuses, older are removed.
+     */
+    private static final int MAX_SIZE = 1000;
+
+    private final RenderStatus [] renderStatusBuffer = new RenderStatus[MAX_SIZE];
+
+    /**
+     * Number of all saved statuses.
+     */
+    private long saved;
 
     public synchronized void save(RenderStatus renderStatus) {
-        renderStatusList.add(renderStatus);
+        this.renderStatusBuffer[(int) (this.saved % MAX_SIZE)] = renderStatus;
+        this.saved++;
     }
 
+    /**
+     * @return remembered statuses, the newest first
+     */
     public synchronized List<RenderStatus> findAll() {
-        List<RenderStatus> ret = new ArrayList<RenderStatus>();
-        for (int i = renderStatusList.size() - 1; i >= 0; i--) {
-            ret.add(renderStatusList.get(i));
+        int size = (int) Math.min(this.saved, MAX_SIZE);
+        List<RenderStatus> ret = new ArrayList<RenderStatus>(size);
+        for (long i = this.saved - 1; i >= this.saved - size; i--) {
+            ret.add(this.renderStatusBuffer[(int) (i % MAX_SIZE)]);
         }
         return ret;
     }
+
+    /**
+     * @return number of all saved statuses
+     */
+    public synchronized long getSaved() {
+        return this.saved;
+    }
 }
@@ -0,0 +1,85 @@
+package kendzi.kendzi3d.tile.server.service;
+
+import java.io.File;
+
+import javax.annotation.PreDestroy;
+
+import kendzi.kendzi3d.tile.server.config.TileServerConf;
+import kendzi.kendzi3d.tile.server.dto.SeedStatus;
+import kendzi.kendzi3d.tile.server.seed.SeedArea;
+import kendzi.kendzi3d.tile.server.seed.SeedTask;
+import kendzi.kendzi3d.tile.server.store.TileStore;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs seeding of tile cache. Only one seeding can run at once.
+ */
+@Service
+public class SeedService {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(SeedService.class);
+
+    @Autowired
+    TileService tileService;
+
+    @Autowired
+    TileStore tileStore;
+
+    @Autowired
+    OverviewService overviewService;
+
+    @Autowired
+    TileServerConf tileServerConf;
+
+    private SeedTask seedTask;
+
+    private Thread seedThread;
+
+    /**
+     * Starts seeding of area. Seeding of the same area which was interrupted
+     * is resumed.
+     *
+     * @param area area to seed
+     */
+    public synchronized void start(SeedArea area) {
+        if (this.seedThread != null && this.seedThread.isAlive()) {
+            throw new RuntimeException("seeding is already running: " + this.seedTask.getStatus().getArea());
+        }
+
+        // two jobs per worker keep workers busy
+        int window = 2 * this.tileServerConf.getRenderWorkers();
+
+        this.seedTask = new SeedTask(area, this.tileService, this.overviewService, this.tileStore,
+                new File(this.tileServerConf.getSeedCheckpoint()), window);
+
+        this.seedThread = new Thread(this.seedTask, "seed");
+        this.seedThread.setDaemon(true);
+        this.seedThread.start();
+
+        log.info("started seeding of: " + area);
+    }
+
+    /**
+     * Stops seeding, progress is saved to checkpoint.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (this.seedTask != null) {
+            this.seedTask.stop();
+        }
+    }
+
+    /**
+     * @return status of last seeding or null
+     */
+    public synchronized SeedStatus getStatus() {
+        if (this.seedTask == null) {
+            return null;
+        }
+        return this.seedTask.getStatus();
+    }
+}
@@ -0,0 +1,25 @@
+package kendzi.kendzi3d.tile.server.service;
+
+import kendzi.kendzi3d.tile.server.store.StoredTile;
+
+/**
+ * Receives tile requested without waiting for it. Methods are called in thread
+ * which finished rendering, so they should be short.
+ */
+public interface TileCallback {
+
+    /**
+     * Called when tile is loaded from cache or rendered.
+     *
+     * @param storedTile tile image with metadata
+     */
+    void tileReady(StoredTile storedTile);
+
+    /**
+     * Called when tile can't be rendered.
+     *
+     * @param error cause, {@link kendzi.kendzi3d.tile.server.render.RenderOverloadedException}
+     *            when renderer is overloaded
+     */
+    void tileFailed(RuntimeException error);
+}
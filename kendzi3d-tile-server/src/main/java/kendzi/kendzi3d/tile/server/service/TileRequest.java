@@ -0,0 +1,51 @@
+package kendzi.kendzi3d.tile.server.service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import kendzi.kendzi3d.tile.server.render.RenderJobStatus;
+
+/**
+ * Tile requested without waiting for it. Requester is registered as waiter of
+ * render job until job is done or request is released. Request has to be
+ * released when requester is not interested in tile any more, e.g. after
+ * timeout or when client disconnected, so job which nobody waits for can be
+ * cancelled before it is started.
+ */
+public class TileRequest {
+
+    /**
+     * Request of tile which didn't need rendering.
+     */
+    static final TileRequest DONE = new TileRequest(null);
+
+    /**
+     * Render job, null if tile didn't need rendering.
+     */
+    private final RenderJobStatus status;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    TileRequest(RenderJobStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * Unregisters requester from render job. It can be called many times,
+     * waiter is released only once.
+     *
+     * @return true if render job was cancelled
+     */
+    public boolean release() {
+        if (this.status == null || !this.released.compareAndSet(false, true)) {
+            return false;
+        }
+        return this.status.releaseWaiter();
+    }
+
+    /**
+     * @return status of render job, null if tile didn't need rendering
+     */
+    public RenderJobStatus getStatus() {
+        return this.status;
+    }
+}
@@ -0,0 +1,472 @@
+package kendzi.kendzi3d.tile.server.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import kendzi.kendzi3d.render.MetaTileRenderResult;
+import kendzi.kendzi3d.render.RenderResult;
+import kendzi.kendzi3d.render.tile.Tile;
+import kendzi.kendzi3d.tile.server.config.TileServerConf;
+import kendzi.kendzi3d.tile.server.dto.TileCacheStatus;
+import kendzi.kendzi3d.tile.server.render.RenderJobListener;
+import kendzi.kendzi3d.tile.server.render.RenderJobStatus;
+import kendzi.kendzi3d.tile.server.render.RenderOverloadedException;
+import kendzi.kendzi3d.tile.server.render.job.MetaTileJob;
+import kendzi.kendzi3d.tile.server.render.job.RenderPriority;
+import kendzi.kendzi3d.tile.server.render.job.TileJob;
+import kendzi.kendzi3d.tile.server.store.MemoryCacheTileStore;
+import kendzi.kendzi3d.tile.server.store.StoredTile;
+import kendzi.kendzi3d.tile.server.store.TileKeyUtil;
+import kendzi.kendzi3d.tile.server.store.TileStore;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Serves tiles from cache or renders them. Concurrent requests for the same
+ * tile are coalesced into one render job. When metatile size is greater than
+ * one, whole block of tiles containing requested tile is rendered and saved
+ * to cache.
+ *
+ * Stale tile from cache is served as it is, and it is rendered again in
+ * background with low priority.
+ */
+@Service
+public class TileService {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(TileService.class);
+
+    /**
+     * Default render profile.
+     */
+    private static final String PROFILE = "";
+
+    @Autowired
+    RenderService renderService;
+
+    @Autowired
+    TileServerConf tileServerConf;
+
+    @Autowired
+    TileStore tileStore;
+
+    @Autowired
+    OverviewService overviewService;
+
+    /**
+     * Render jobs in progress, key is made from tile and render parameters.
+     */
+    private final ConcurrentMap<String, RenderJobStatus> inFlight = new ConcurrentHashMap<String, RenderJobStatus>();
+
+    /**
+     * Gets tile from cache or renders it.
+     *
+     * @param tile tile
+     * @param dirty if tile should be rendered even if it is in cache
+     * @return tile image with metadata
+     */
+    public StoredTile getTile(Tile tile, boolean dirty) {
+        return getTile(tile, dirty, RenderPriority.INTERACTIVE);
+    }
+
+    /**
+     * Gets tile from cache or renders it.
+     *
+     * @param tile tile
+     * @param dirty if tile should be rendered even if it is in cache
+     * @param priority priority of render job
+     * @return tile image with metadata
+     */
+    public StoredTile getTile(Tile tile, boolean dirty, RenderPriority priority) {
+
+        if (this.overviewService.isOverview(tile.getZ())) {
+            return this.overviewService.getTile(tile, dirty);
+        }
+
+        if (!dirty) {
+            StoredTile storedTile = getCachedTile(tile);
+            if (storedTile != null) {
+                refreshIfStale(tile, storedTile);
+                return storedTile;
+            }
+        }
+
+        return StoredTile.create(render(tile, priority));
+    }
+
+    /**
+     * Gets tile from cache or renders it without blocking caller. Callback is
+     * called immediately for cached tile, otherwise by render worker when job
+     * is done. Caller waits for render job until render timeout, after it job
+     * can be dropped.
+     *
+     * Caller has to release returned request when it gives up waiting before
+     * callback is called, e.g. on timeout or when client disconnected.
+     *
+     * @param tile tile
+     * @param dirty if tile should be rendered even if it is in cache
+     * @param priority priority of render job
+     * @param callback receives tile or error
+     * @return request of tile
+     */
+    public TileRequest getTile(final Tile tile, boolean dirty, RenderPriority priority, final TileCallback callback) {
+
+        if (this.overviewService.isOverview(tile.getZ())) {
+            // composed from stored tiles without render queue
+            StoredTile storedTile;
+            try {
+                storedTile = this.overviewService.getTile(tile, dirty);
+            } catch (RuntimeException e) {
+                callback.tileFailed(e);
+                return TileRequest.DONE;
+            }
+            callback.tileReady(storedTile);
+            return TileRequest.DONE;
+        }
+
+        if (!dirty) {
+            StoredTile storedTile = getCachedTile(tile);
+            if (storedTile != null) {
+                refreshIfStale(tile, storedTile);
+                callback.tileReady(storedTile);
+                return TileRequest.DONE;
+            }
+        }
+
+        long timeout = this.tileServerConf.getRenderTimeout();
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+
+        RenderJobStatus status;
+        try {
+            status = submit(tile, priority, deadline);
+        } catch (RuntimeException e) {
+            callback.tileFailed(e);
+            return TileRequest.DONE;
+        }
+
+        final TileRequest request = new TileRequest(status);
+
+        status.addListener(new RenderJobListener() {
+
+            @Override
+            public void jobDone(RenderJobStatus status) {
+                // no-op when caller already released request
+                request.release();
+
+                byte[] image;
+                try {
+                    // job is done, so it doesn't wait
+                    image = waitForTile(tile, status, 0);
+                } catch (RuntimeException e) {
+                    callback.tileFailed(e);
+                    return;
+                }
+                callback.tileReady(StoredTile.create(image));
+            }
+        });
+        return request;
+    }
+
+    /**
+     * Gets tile from cache without rendering it. It is not affected by load of
+     * render queue.
+     *
+     * @param tile tile
+     * @return tile image with metadata or null if tile is not in cache
+     */
+    public StoredTile getCachedTile(Tile tile) {
+        return this.tileStore.load(tile);
+    }
+
+    /**
+     * Adds render job for tile without waiting for it. Jobs other than seeding
+     * are rejected when render queue is full.
+     *
+     * @param tile tile
+     * @param priority priority of render job
+     * @return status of render job or null if job was rejected
+     */
+    public RenderJobStatus refresh(Tile tile, RenderPriority priority) {
+        RenderJobStatus status;
+        try {
+            status = submit(tile, priority, 0);
+        } catch (RenderOverloadedException e) {
+            log.debug("render queue is full, tile: " + tile + " is not refreshed");
+            return null;
+        }
+
+        status.addListener(new RenderJobListener() {
+
+            @Override
+            public void jobDone(RenderJobStatus status) {
+                status.releaseWaiter();
+            }
+        });
+        return status;
+    }
+
+    private void refreshIfStale(Tile tile, StoredTile storedTile) {
+        if (storedTile.isStale()) {
+            refresh(tile, RenderPriority.PREFETCH);
+        }
+    }
+
+    /**
+     * Renders tile and waits for it. When waiting takes longer than render
+     * timeout, caller gives up and job is cancelled if nobody else waits for
+     * it.
+     *
+     * @param tile tile
+     * @param priority priority of render job
+     * @return tile image
+     * @throws RenderOverloadedException when render queue is full or tile was
+     *             not rendered in time
+     */
+    public byte[] render(Tile tile, RenderPriority priority) {
+
+        long timeout = this.tileServerConf.getRenderTimeout();
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+
+        RenderJobStatus status = submit(tile, priority, deadline);
+        try {
+            return waitForTile(tile, status, timeout);
+        } finally {
+            status.releaseWaiter();
+        }
+    }
+
+    /**
+     * Adds render job for tile. If the same tile (or metatile) is already
+     * rendering, caller joins pending job instead of adding new one. Caller is
+     * registered as waiter of returned job and has to call
+     * {@link RenderJobStatus#releaseWaiter()} when it is not interested in
+     * result any more.
+     *
+     * @param tile tile
+     * @param priority priority of render job
+     * @param deadline time after which job can be dropped, zero means no
+     *            deadline
+     * @return status of render job
+     */
+    public RenderJobStatus submit(Tile tile, RenderPriority priority, long deadline) {
+
+        final TileJob job = createJob(tile);
+
+        final String key = key(job);
+
+        while (true) {
+            RenderJobStatus status = new RenderJobStatus(job, priority);
+            status.addWaiter(deadline);
+
+            RenderJobStatus pending = this.inFlight.putIfAbsent(key, status);
+            if (pending == null) {
+                status.addListener(new RenderJobListener() {
+
+                    @Override
+                    public void jobDone(RenderJobStatus status) {
+                        try {
+                            saveToCache(job, status);
+                        } finally {
+                            // after tile is in cache
+                            TileService.this.inFlight.remove(key, status);
+                        }
+                    }
+                });
+
+                this.renderService.submit(status);
+                return status;
+            }
+
+            if (pending.addWaiter(deadline)) {
+                log.info("tile: " + key + " is already rendering, waiting for it");
+                this.renderService.raisePriority(pending, priority);
+                return pending;
+            }
+
+            // pending job was just cancelled
+            this.inFlight.remove(key, pending);
+        }
+    }
+
+    /**
+     * Marks started render jobs of affected tiles after change of data. They
+     * could load data before change, so their tiles are saved as stale. Jobs
+     * which are not started load new data. It is called before affected tiles
+     * are expired in store, so tile saved in meantime is expired too.
+     *
+     * @param tiles affected tiles
+     * @return number of marked jobs
+     */
+    public int expireRendering(Collection<Tile> tiles) {
+        Set<Long> keys = new HashSet<Long>();
+        for (Tile tile : tiles) {
+            keys.add(TileKeyUtil.key(tile));
+        }
+
+        int marked = 0;
+        for (RenderJobStatus status : this.inFlight.values()) {
+            if (status.isStarted() && containsTile((TileJob) status.getRenderJob(), keys)) {
+                status.markDataChanged();
+                marked++;
+            }
+        }
+        return marked;
+    }
+
+    private static boolean containsTile(TileJob job, Set<Long> keys) {
+        int size = job instanceof MetaTileJob ? ((MetaTileJob) job).getSize() : 1;
+        for (int y = job.getY(); y < job.getY() + size; y++) {
+            for (int x = job.getX(); x < job.getX() + size; x++) {
+                if (keys.contains(TileKeyUtil.key(x, y, job.getZ()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extracts image of tile from result of job.
+     *
+     * @param tile tile
+     * @param result result of tile or metatile job
+     * @return tile image or null
+     */
+    public static byte[] getImage(Tile tile, RenderResult result) {
+        if (result instanceof MetaTileRenderResult) {
+            result = ((MetaTileRenderResult) result).getTile(tile.getX(), tile.getY());
+        }
+        return result != null ? result.getImage() : null;
+    }
+
+    private byte[] waitForTile(Tile tile, RenderJobStatus status, long timeout) {
+        RenderResult result;
+        try {
+            if (timeout > 0) {
+                result = status.get(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                result = status.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for tile: " + tile, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("error rendering tile: " + tile, e.getCause());
+        } catch (CancellationException e) {
+            // rejected or dropped after deadline
+            throw new RenderOverloadedException("rendering of tile was cancelled: " + tile, e);
+        } catch (TimeoutException e) {
+            throw new RenderOverloadedException("timeout waiting for tile: " + tile, e);
+        }
+
+        byte[] image = getImage(tile, result);
+        if (image == null) {
+            throw new RuntimeException("tileBytes cant be null!");
+        }
+        return image;
+    }
+
+    /**
+     * Creates render job for tile. If metatiles are enabled, job is created
+     * for whole block of tiles containing given tile.
+     *
+     * @param tile tile
+     * @return render job
+     */
+    private TileJob createJob(Tile tile) {
+        int size = getMetaTileSize(tile.getZ());
+        if (size <= 1) {
+            return new TileJob(tile.getX(), tile.getY(), tile.getZ(), PROFILE);
+        }
+
+        int x = tile.getX() - tile.getX() % size;
+        int y = tile.getY() - tile.getY() % size;
+
+        return new MetaTileJob(x, y, tile.getZ(), size, PROFILE);
+    }
+
+    /**
+     * @param zoom zoom level
+     * @return size of metatile, for low zoom levels it is limited to number of
+     *         tiles in row
+     */
+    public int getMetaTileSize(int zoom) {
+        int size = this.tileServerConf.getMetaTile();
+        if (zoom < 31) {
+            size = Math.min(size, 1 << zoom);
+        }
+        return size;
+    }
+
+    /**
+     * @return status of in memory tile cache or null if cache is disabled
+     */
+    public TileCacheStatus getCacheStatus() {
+        if (this.tileStore instanceof MemoryCacheTileStore) {
+            return ((MemoryCacheTileStore) this.tileStore).getStatus();
+        }
+        return null;
+    }
+
+    private static String key(TileJob job) {
+        String key = job.getZ() + "/" + job.getX() + "/" + job.getY() + "/" + job.getProfile();
+        if (job instanceof MetaTileJob) {
+            key += "/" + ((MetaTileJob) job).getSize();
+        }
+        return key;
+    }
+
+    /**
+     * Saves result of job to cache. For metatile all rendered tiles are saved.
+     * When data was changed during rendering, tiles are saved as stale.
+     *
+     * @param job render job
+     * @param status status of done job
+     */
+    private void saveToCache(TileJob job, RenderJobStatus status) {
+        RenderResult result = status.getJobResult();
+        List<Tile> saved = new ArrayList<Tile>();
+
+        long s1 = System.nanoTime();
+        if (result instanceof MetaTileRenderResult) {
+            MetaTileRenderResult metaTile = (MetaTileRenderResult) result;
+            int size = metaTile.getSize();
+
+            for (int y = metaTile.getY(); y < metaTile.getY() + size; y++) {
+                for (int x = metaTile.getX(); x < metaTile.getX() + size; x++) {
+                    RenderResult tileResult = metaTile.getTile(x, y);
+                    if (tileResult != null && tileResult.getImage() != null) {
+                        Tile tile = new Tile(x, y, job.getZ());
+                        this.tileStore.save(tile, tileResult.getImage());
+                        saved.add(tile);
+                    }
+                }
+            }
+        } else if (result != null && result.getImage() != null) {
+            this.tileStore.save(job, result.getImage());
+            saved.add(job);
+        } else {
+            return;
+        }
+        this.renderService.getRenderStats().recordCacheWrite(System.nanoTime() - s1);
+
+        // checked after save, when job is marked later tiles are expired by expiry
+        if (status.isDataChanged()) {
+            for (Tile tile : saved) {
+                this.tileStore.expire(tile);
+            }
+            log.info("data of job: " + key(job) + " was changed during rendering, saved tiles are stale");
+        }
+    }
+}
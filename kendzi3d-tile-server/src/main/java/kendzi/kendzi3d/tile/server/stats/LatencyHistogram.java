@@ -0,0 +1,136 @@
+package kendzi.kendzi3d.tile.server.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latency with fixed memory. Values are counted in buckets with
+ * logarithmic size, each power of two range is divided into 16 sub buckets so
+ * relative error of percentiles is lower than 1/16.
+ *
+ * Recording is lock free, it only increments counters.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits of value kept in bucket index.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * Values lower than this are counted exactly.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+
+    /**
+     * Maximal shift of value, values above 2^(MAX_SHIFT + SUB_BUCKET_BITS) are
+     * counted in last bucket.
+     */
+    private static final int MAX_SHIFT = 40;
+
+    private static final int BUCKETS = SUB_BUCKET_COUNT + MAX_SHIFT * SUB_BUCKET_HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records value.
+     *
+     * @param value value, negative values are recorded as zero
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.counts.incrementAndGet(index(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+
+        long m = this.max.get();
+        while (value > m && !this.max.compareAndSet(m, value)) {
+            m = this.max.get();
+        }
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        if (shift > MAX_SHIFT) {
+            return BUCKETS - 1;
+        }
+        // sub bucket is in range [SUB_BUCKET_HALF, SUB_BUCKET_COUNT)
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + subBucket - SUB_BUCKET_HALF;
+    }
+
+    /**
+     * @param index index of bucket
+     * @return the highest value counted in bucket
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Finds value below which given percent of recorded values fall. Result is
+     * the upper bound of bucket, but never above maximal recorded value.
+     *
+     * @param percentile percentile in range 0 - 100
+     * @return value of percentile or zero if histogram is empty
+     */
+    public long getPercentile(double percentile) {
+        long total = this.count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long limit = (long) Math.ceil(total * Math.min(100d, Math.max(0d, percentile)) / 100d);
+        if (limit < 1) {
+            limit = 1;
+        }
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= limit) {
+                return Math.min(highestValue(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * @return mean of recorded values
+     */
+    public double getMean() {
+        long c = this.count.get();
+        return c == 0 ? 0 : (double) this.sum.get() / c;
+    }
+
+    /**
+     * @return maximal recorded value
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+}
@@ -0,0 +1,157 @@
+package kendzi.kendzi3d.tile.server.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kendzi.kendzi3d.render.MetaTileRenderResult;
+import kendzi.kendzi3d.render.RenderResult;
+import kendzi.kendzi3d.render.RenderStage;
+import kendzi.kendzi3d.tile.server.dto.LatencyStatus;
+
+/**
+ * Latency statistics of render jobs. Time of each render stage, time of waiting
+ * in queue, total time of job and time of saving tiles to cache are recorded in
+ * separate histograms. Memory used by statistics doesn't grow with number of
+ * jobs.
+ *
+ * Values are recorded in microseconds.
+ */
+public class RenderStats {
+
+    /**
+     * Name of queue wait histogram.
+     */
+    public static final String QUEUE_WAIT = "QUEUE_WAIT";
+
+    /**
+     * Name of cache write histogram.
+     */
+    public static final String CACHE_WRITE = "CACHE_WRITE";
+
+    /**
+     * Name of total job time histogram.
+     */
+    public static final String TOTAL = "TOTAL";
+
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+
+    private final LatencyHistogram [] stages = new LatencyHistogram[RenderStage.values().length];
+
+    private final LatencyHistogram cacheWrite = new LatencyHistogram();
+
+    private final LatencyHistogram total = new LatencyHistogram();
+
+    private final AtomicLong jobs = new AtomicLong();
+
+    private final AtomicLong failedJobs = new AtomicLong();
+
+    private final long startTime = System.currentTimeMillis();
+
+    public RenderStats() {
+        for (int i = 0; i < this.stages.length; i++) {
+            this.stages[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records finished render job.
+     *
+     * @param result result of job, null if job failed
+     * @param queueNanos time of waiting in queue in nanoseconds
+     * @param totalNanos time from adding job to queue to its end in
+     *            nanoseconds
+     */
+    public void recordJob(RenderResult result, long queueNanos, long totalNanos) {
+        this.jobs.incrementAndGet();
+        this.queueWait.record(toMicros(queueNanos));
+        this.total.record(toMicros(totalNanos));
+
+        if (result == null || (result.getImage() == null && !(result instanceof MetaTileRenderResult))) {
+            this.failedJobs.incrementAndGet();
+            return;
+        }
+
+        for (RenderStage stage : RenderStage.values()) {
+            long time = result.getStageTime(stage);
+            if (time > 0) {
+                this.stages[stage.ordinal()].record(toMicros(time));
+            }
+        }
+    }
+
+    /**
+     * Records time of saving result of job to cache.
+     *
+     * @param nanos time in nanoseconds
+     */
+    public void recordCacheWrite(long nanos) {
+        this.cacheWrite.record(toMicros(nanos));
+    }
+
+    private static long toMicros(long nanos) {
+        return nanos / 1000;
+    }
+
+    /**
+     * @return latency of queue wait, all render stages, cache write and total
+     *         job time
+     */
+    public List<LatencyStatus> getLatencyStatus() {
+        List<LatencyStatus> ret = new ArrayList<LatencyStatus>();
+        ret.add(status(QUEUE_WAIT, this.queueWait));
+        for (RenderStage stage : RenderStage.values()) {
+            ret.add(status(stage.name(), this.stages[stage.ordinal()]));
+        }
+        ret.add(status(CACHE_WRITE, this.cacheWrite));
+        ret.add(status(TOTAL, this.total));
+        return ret;
+    }
+
+    private static LatencyStatus status(String name, LatencyHistogram histogram) {
+        LatencyStatus s = new LatencyStatus();
+        s.setName(name);
+        s.setCount(histogram.getCount());
+        s.setMean(histogram.getMean() / 1000d);
+        s.setP50(histogram.getPercentile(50) / 1000d);
+        s.setP90(histogram.getPercentile(90) / 1000d);
+        s.setP99(histogram.getPercentile(99) / 1000d);
+        s.setMax(histogram.getMax() / 1000d);
+        return s;
+    }
+
+    /**
+     * @return histogram of total job time
+     */
+    public LatencyHistogram getTotal() {
+        return this.total;
+    }
+
+    /**
+     * @return histogram of queue wait time
+     */
+    public LatencyHistogram getQueueWait() {
+        return this.queueWait;
+    }
+
+    /**
+     * @return number of recorded jobs
+     */
+    public long getJobs() {
+        return this.jobs.get();
+    }
+
+    /**
+     * @return number of recorded jobs which failed
+     */
+    public long getFailedJobs() {
+        return this.failedJobs.get();
+    }
+
+    /**
+     * @return time when statistics were created
+     */
+    public long getStartTime() {
+        return this.startTime;
+    }
+}
@@ -0,0 +1,126 @@
+package kendzi.kendzi3d.tile.server.store;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import kendzi.kendzi3d.render.tile.Tile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Stores tiles as files in directory layout: {dir}/{z}/{x}/{y}.png
+ *
+ * Modification time of tile is taken from file. Stale tile is marked by
+ * moving modification time of its file back to {@link #STALE_TIME}, like
+ * mod_tile does.
+ */
+public class FileTileStore implements TileStore {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(FileTileStore.class);
+
+    /**
+     * Modification time of stale tiles, 2000-01-01. Tiles rendered before it
+     * are treated as stale.
+     */
+    static final long STALE_TIME = 946684800000L;
+
+    private final File dir;
+
+    public FileTileStore(String dir) {
+        super();
+        this.dir = new File(dir);
+    }
+
+    @Override
+    public StoredTile load(Tile tile) {
+        File f = getFile(tile);
+
+        try {
+            long lastModified = f.lastModified();
+            DataInputStream in = new DataInputStream(new FileInputStream(f));
+            try {
+                // size of file is known so whole file is read in one go
+                byte[] image = new byte[(int) f.length()];
+                in.readFully(image);
+                // hash is not stored for files, it is cheap compared to reading file
+                return new StoredTile(image, lastModified, StoredTile.hash(image), lastModified <= STALE_TIME);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            if (f.exists()) {
+                log.error("Error loading file from cache: " + f, e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public StoredTile save(Tile tile, byte[] image) {
+
+        if (image == null) {
+            throw new RuntimeException("tileBytes cant be null!");
+        }
+
+        File f = getFile(tile);
+        // file is written under temporary name so readers never see partial tile
+        File tmp = new File(f.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+
+        try {
+            File parent = f.getParentFile();
+            parent.mkdirs();
+
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(image);
+            } finally {
+                out.close();
+            }
+
+            if (!tmp.renameTo(f)) {
+                // on windows rename fails when target exists
+                f.delete();
+                if (!tmp.renameTo(f)) {
+                    throw new IOException("can't rename file: " + tmp + " to: " + f);
+                }
+            }
+
+            return new StoredTile(image, f.lastModified(), StoredTile.hash(image));
+
+        } catch (IOException e) {
+            tmp.delete();
+            log.error("Error saving file to cache: " + f, e);
+        }
+        return StoredTile.create(image);
+    }
+
+    @Override
+    public boolean contains(Tile tile) {
+        return getFile(tile).exists();
+    }
+
+    @Override
+    public boolean expire(Tile tile) {
+        File f = getFile(tile);
+        if (!f.exists()) {
+            return false;
+        }
+        if (!f.setLastModified(STALE_TIME)) {
+            log.error("Error marking file in cache as stale: " + f);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        //
+    }
+
+    private File getFile(Tile t) {
+        return new File(this.dir, t.getZ() + File.separator + t.getX() + File.separator + t.getY() + ".png");
+    }
+}
@@ -0,0 +1,166 @@
+package kendzi.kendzi3d.tile.server.store;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import kendzi.kendzi3d.render.tile.Tile;
+import kendzi.kendzi3d.tile.server.dto.TileCacheStatus;
+
+/**
+ * Keeps recently used tiles in memory in front of other tile store. Size of
+ * cache is limited by number of bytes of stored images. When limit is
+ * exceeded least recently used tiles are removed.
+ */
+public class MemoryCacheTileStore implements TileStore {
+
+    /**
+     * Estimated memory used by cache entry apart from image bytes.
+     */
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final TileStore store;
+
+    private final long maxSize;
+
+    /**
+     * Cached images in access order. Guarded by this.
+     */
+    private final LinkedHashMap<Long, StoredTile> cache = new LinkedHashMap<Long, StoredTile>(1024, 0.75f, true);
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * Counter of saved and expired tiles. Tile loaded from store is not cached
+     * when any tile was changed during loading, it could be older than the
+     * change. Guarded by this.
+     */
+    private long modifications;
+
+    /**
+     * @param store tile store
+     * @param maxSize maximal size of cache in bytes
+     */
+    public MemoryCacheTileStore(TileStore store, long maxSize) {
+        super();
+        this.store = store;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public StoredTile load(Tile tile) {
+        Long key = TileKeyUtil.key(tile);
+        long modifications;
+
+        synchronized (this) {
+            StoredTile storedTile = this.cache.get(key);
+            if (storedTile != null) {
+                this.hits++;
+                return storedTile;
+            }
+            this.misses++;
+            modifications = this.modifications;
+        }
+
+        StoredTile storedTile = this.store.load(tile);
+        if (storedTile != null) {
+            synchronized (this) {
+                if (modifications == this.modifications && !this.cache.containsKey(key)) {
+                    put(key, storedTile);
+                }
+            }
+        }
+        return storedTile;
+    }
+
+    @Override
+    public StoredTile save(Tile tile, byte[] image) {
+        StoredTile storedTile = this.store.save(tile, image);
+
+        synchronized (this) {
+            this.modifications++;
+            put(TileKeyUtil.key(tile), storedTile);
+        }
+
+        return storedTile;
+    }
+
+    @Override
+    public boolean contains(Tile tile) {
+        synchronized (this) {
+            if (this.cache.containsKey(TileKeyUtil.key(tile))) {
+                return true;
+            }
+        }
+        return this.store.contains(tile);
+    }
+
+    @Override
+    public boolean expire(Tile tile) {
+        boolean expired = this.store.expire(tile);
+
+        // after store, tile loaded in meantime is not cached
+        synchronized (this) {
+            this.modifications++;
+            StoredTile old = this.cache.remove(TileKeyUtil.key(tile));
+            if (old != null) {
+                this.size -= entrySize(old);
+            }
+        }
+        return expired;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.cache.clear();
+            this.size = 0;
+        }
+        this.store.close();
+    }
+
+    private synchronized void put(Long key, StoredTile storedTile) {
+        long entrySize = entrySize(storedTile);
+        if (entrySize > this.maxSize) {
+            return;
+        }
+
+        StoredTile old = this.cache.put(key, storedTile);
+        if (old != null) {
+            this.size -= entrySize(old);
+        }
+        this.size += entrySize;
+
+        Iterator<Map.Entry<Long, StoredTile>> it = this.cache.entrySet().iterator();
+        while (this.size > this.maxSize && it.hasNext()) {
+            Map.Entry<Long, StoredTile> eldest = it.next();
+            it.remove();
+            this.size -= entrySize(eldest.getValue());
+            this.evictions++;
+        }
+    }
+
+    private static long entrySize(StoredTile storedTile) {
+        return storedTile.getImage().length + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * @return status of cache
+     */
+    public synchronized TileCacheStatus getStatus() {
+        TileCacheStatus status = new TileCacheStatus();
+        status.setEntries(this.cache.size());
+        status.setSize(this.size);
+        status.setMaxSize(this.maxSize);
+        status.setHits(this.hits);
+        status.setMisses(this.misses);
+        status.setEvictions(this.evictions);
+        return status;
+    }
+}
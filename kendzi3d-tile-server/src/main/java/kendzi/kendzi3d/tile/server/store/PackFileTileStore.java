@@ -0,0 +1,551 @@
+package kendzi.kendzi3d.tile.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import kendzi.kendzi3d.render.tile.Tile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Stores all tiles in one append only pack file. Position of each tile in file
+ * is kept in memory index, which is rebuild from file headers when store is
+ * opened. Saving tile again appends new record, index points to the newest one.
+ *
+ * Record format: magic (int), z (byte), x (int), y (int), length of image
+ * (int), time of saving (long), md5 of image (16 bytes), image bytes.
+ *
+ * Identical images (many tiles are empty) are stored once. When image with the
+ * same hash and the same bytes is already in file, reference record is written
+ * instead: the same header with reference magic followed by position of image
+ * in file (long).
+ *
+ * Expiring tile appends copy of its header with expire magic, tile is stale
+ * until next record of it.
+ *
+ * Replaced images and records stay in file as dead bytes, compaction copies
+ * records of current tiles to new file which replaces pack file.
+ */
+public class PackFileTileStore implements TileStore {
+
+    /** Log. */
+    private static final Logger log = Logger.getLogger(PackFileTileStore.class);
+
+    private static final int MAGIC = 0x4B335402;
+
+    private static final int REF_MAGIC = 0x4B335203;
+
+    private static final int REF_SIZE = 8;
+
+    private static final int EXPIRE_MAGIC = 0x4B334503;
+
+    private static final int HASH_SIZE = 16;
+
+    private static final int HEADER_SIZE = 4 + 1 + 4 + 4 + 4 + 8 + HASH_SIZE;
+
+    private final File file;
+
+    /**
+     * Pack file, replaced by compaction. Changed under write lock.
+     */
+    private RandomAccessFile raf;
+
+    private FileChannel channel;
+
+    /**
+     * Taken for reading by loading tiles, for writing when compacted file
+     * replaces pack file.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Index of records, key is made from tile coordinates. Replaced by
+     * compaction.
+     */
+    private volatile ConcurrentMap<Long, Entry> index = new ConcurrentHashMap<Long, Entry>();
+
+    /**
+     * Images stored in file, key is md5 hash of image. Guarded by this.
+     */
+    private Map<ByteBuffer, Entry> blobs = new HashMap<ByteBuffer, Entry>();
+
+    /**
+     * Number of saved tiles which referenced already stored image.
+     */
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    /**
+     * End of file, position of next record. Guarded by this.
+     */
+    private long end;
+
+    /**
+     * Position of tile image in pack file.
+     */
+    private static class Entry {
+        final long offset;
+        final int length;
+        final long lastModified;
+        final byte[] hash;
+        final boolean stale;
+
+        Entry(long offset, int length, long lastModified, byte[] hash) {
+            this(offset, length, lastModified, hash, false);
+        }
+
+        Entry(long offset, int length, long lastModified, byte[] hash, boolean stale) {
+            this.offset = offset;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.stale = stale;
+        }
+
+        Entry expired() {
+            return new Entry(this.offset, this.length, this.lastModified, this.hash, true);
+        }
+    }
+
+    public PackFileTileStore(String fileName) {
+        super();
+        this.file = new File(fileName);
+
+        try {
+            File parent = this.file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+
+            this.raf = new RandomAccessFile(this.file, "rw");
+            this.channel = this.raf.getChannel();
+
+            this.end = loadIndex();
+
+        } catch (IOException e) {
+            throw new RuntimeException("error opening pack file: " + this.file, e);
+        }
+
+        log.info("opened pack file: " + this.file + " tiles: " + this.index.size() + " size: " + this.end
+                + " dead: " + Math.round(100 * getDeadRatio()) + "%");
+    }
+
+    /**
+     * Reads headers of all records and builds index. Incomplete record at the
+     * end of file (after crash) is truncated.
+     *
+     * @return position after last complete record
+     * @throws IOException
+     */
+    private long loadIndex() throws IOException {
+        long size = this.channel.size();
+        long pos = 0;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        ByteBuffer ref = ByteBuffer.allocate(REF_SIZE);
+
+        while (pos + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, pos);
+            header.flip();
+
+            int magic = header.getInt();
+            int z = header.get();
+            int x = header.getInt();
+            int y = header.getInt();
+            int length = header.getInt();
+            long lastModified = header.getLong();
+            byte[] hash = new byte[HASH_SIZE];
+            header.get(hash);
+
+            if (magic != MAGIC && magic != REF_MAGIC && magic != EXPIRE_MAGIC && pos == 0) {
+                // don't truncate file which is not a pack file
+                throw new IOException("file: " + this.file + " is not a tile pack file or has unsupported version");
+            }
+
+            if (magic == EXPIRE_MAGIC) {
+                Long key = TileKeyUtil.key(x, y, z);
+                Entry entry = this.index.get(key);
+                if (entry != null) {
+                    this.index.put(key, entry.expired());
+                }
+
+                pos += HEADER_SIZE;
+                continue;
+            }
+
+            if (magic == REF_MAGIC) {
+                if (pos + HEADER_SIZE + REF_SIZE > size) {
+                    break;
+                }
+                ref.clear();
+                readFully(ref, pos + HEADER_SIZE);
+                ref.flip();
+                long offset = ref.getLong();
+
+                this.index.put(TileKeyUtil.key(x, y, z), new Entry(offset, length, lastModified, hash));
+
+                pos += HEADER_SIZE + REF_SIZE;
+                continue;
+            }
+
+            if (magic != MAGIC || length < 0 || pos + HEADER_SIZE + length > size) {
+                break;
+            }
+
+            Entry entry = new Entry(pos + HEADER_SIZE, length, lastModified, hash);
+            this.index.put(TileKeyUtil.key(x, y, z), entry);
+            this.blobs.put(blobKey(hash), entry);
+
+            pos += HEADER_SIZE + length;
+        }
+
+        if (pos < size) {
+            log.warn("pack file: " + this.file + " has incomplete record at: " + pos + ", truncating");
+            this.channel.truncate(pos);
+        }
+
+        return pos;
+    }
+
+    @Override
+    public StoredTile load(Tile tile) {
+        Entry entry;
+        byte[] image;
+
+        // index and file are not replaced during reading
+        this.lock.readLock().lock();
+        try {
+            entry = this.index.get(TileKeyUtil.key(tile));
+            if (entry == null) {
+                return null;
+            }
+
+            image = new byte[entry.length];
+            readFully(ByteBuffer.wrap(image), entry.offset);
+        } catch (IOException e) {
+            log.error("error reading tile: " + tile + " from pack file: " + this.file, e);
+            return null;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        if (!Arrays.equals(StoredTile.hash(image), entry.hash)) {
+            log.error("wrong hash of tile: " + tile + " in pack file: " + this.file);
+            return null;
+        }
+        return new StoredTile(image, entry.lastModified, entry.hash, entry.stale);
+    }
+
+    @Override
+    public StoredTile save(Tile tile, byte[] image) {
+
+        if (image == null) {
+            throw new RuntimeException("tileBytes cant be null!");
+        }
+
+        Long key = TileKeyUtil.key(tile);
+        long lastModified = System.currentTimeMillis();
+        byte[] hash = StoredTile.hash(image);
+        ByteBuffer hashKey = blobKey(hash);
+
+        synchronized (this) {
+            Entry blob = this.blobs.get(hashKey);
+            // bytes are compared, so colliding hash never points tile to other image
+            boolean reference = blob != null && blob.length == image.length && isStored(blob, image);
+
+            ByteBuffer record = header(reference ? REF_MAGIC : MAGIC, tile, image.length, lastModified, hash,
+                    reference ? REF_SIZE : image.length);
+            if (reference) {
+                record.putLong(blob.offset);
+            } else {
+                record.put(image);
+            }
+            record.flip();
+
+            long pos;
+            try {
+                pos = write(this.channel, record, this.end);
+            } catch (IOException e) {
+                log.error("error writing tile: " + tile + " to pack file: " + this.file, e);
+                return new StoredTile(image, lastModified, hash);
+            }
+
+            // index is updated after record is written, so readers never see partial image
+            if (reference) {
+                this.index.put(key, new Entry(blob.offset, image.length, lastModified, hash));
+                this.deduplicated.incrementAndGet();
+            } else {
+                Entry entry = new Entry(this.end + HEADER_SIZE, image.length, lastModified, hash);
+                this.index.put(key, entry);
+                this.blobs.put(hashKey, entry);
+            }
+            this.end = pos;
+        }
+        return new StoredTile(image, lastModified, hash);
+    }
+
+    /**
+     * Key of image in map of stored images. Images with equal key can still
+     * differ, bytes are compared before reference is written.
+     *
+     * @param hash md5 hash of image
+     * @return key of image
+     */
+    ByteBuffer blobKey(byte[] hash) {
+        return ByteBuffer.wrap(hash);
+    }
+
+    /**
+     * @param blob stored image
+     * @param image image to save
+     * @return if stored image has the same bytes
+     */
+    private boolean isStored(Entry blob, byte[] image) {
+        byte[] stored = new byte[blob.length];
+        try {
+            readFully(ByteBuffer.wrap(stored), blob.offset);
+        } catch (IOException e) {
+            log.error("error reading image at: " + blob.offset + " from pack file: " + this.file, e);
+            return false;
+        }
+        return Arrays.equals(stored, image);
+    }
+
+    @Override
+    public boolean contains(Tile tile) {
+        return this.index.containsKey(TileKeyUtil.key(tile));
+    }
+
+    @Override
+    public boolean expire(Tile tile) {
+        Long key = TileKeyUtil.key(tile);
+
+        synchronized (this) {
+            Entry entry = this.index.get(key);
+            if (entry == null) {
+                return false;
+            }
+            if (entry.stale) {
+                return true;
+            }
+
+            ByteBuffer record = header(EXPIRE_MAGIC, tile, entry.length, entry.lastModified, entry.hash, 0);
+            record.flip();
+
+            long pos;
+            try {
+                pos = write(this.channel, record, this.end);
+            } catch (IOException e) {
+                log.error("error writing expire of tile: " + tile + " to pack file: " + this.file, e);
+                return true;
+            }
+
+            this.index.put(key, entry.expired());
+            this.end = pos;
+        }
+        return true;
+    }
+
+    /**
+     * Copies records of current tiles to new file, which replaces pack file.
+     * Replaced images and records are left out, identical images are still
+     * stored once. Tiles can be loaded during compaction, saving and expiring
+     * waits for its end.
+     *
+     * @throws IOException when new file can't be written, pack file is not
+     *             changed then
+     */
+    public synchronized void compact() throws IOException {
+        long s1 = System.currentTimeMillis();
+        long oldEnd = this.end;
+
+        File compacted = new File(this.file.getPath() + ".compact");
+
+        ConcurrentMap<Long, Entry> newIndex = new ConcurrentHashMap<Long, Entry>();
+        Map<ByteBuffer, Entry> newBlobs = new HashMap<ByteBuffer, Entry>();
+        // new position of image by old one
+        Map<Long, Long> offsets = new HashMap<Long, Long>();
+
+        long pos = 0;
+        RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+        try {
+            out.setLength(0);
+            FileChannel outChannel = out.getChannel();
+
+            for (Map.Entry<Long, Entry> e : this.index.entrySet()) {
+                Tile tile = TileKeyUtil.tile(e.getKey());
+                Entry entry = e.getValue();
+
+                Long offset = offsets.get(entry.offset);
+                ByteBuffer record;
+                if (offset != null) {
+                    record = header(REF_MAGIC, tile, entry.length, entry.lastModified, entry.hash, REF_SIZE);
+                    record.putLong(offset);
+                } else {
+                    record = header(MAGIC, tile, entry.length, entry.lastModified, entry.hash, entry.length);
+                    int imagePos = record.position();
+                    readFully(record, entry.offset);
+
+                    byte[] image = new byte[entry.length];
+                    record.position(imagePos);
+                    record.get(image);
+                    if (!Arrays.equals(StoredTile.hash(image), entry.hash)) {
+                        log.error("wrong hash of tile: " + tile + " in pack file: " + this.file
+                                + ", it is left out of compacted file");
+                        continue;
+                    }
+                    offset = pos + HEADER_SIZE;
+                    offsets.put(entry.offset, offset);
+                }
+                record.flip();
+                pos = write(outChannel, record, pos);
+
+                Entry newEntry = new Entry(offset, entry.length, entry.lastModified, entry.hash);
+                if (!newBlobs.containsKey(blobKey(entry.hash))) {
+                    newBlobs.put(blobKey(entry.hash), newEntry);
+                }
+
+                if (entry.stale) {
+                    ByteBuffer expire = header(EXPIRE_MAGIC, tile, entry.length, entry.lastModified, entry.hash, 0);
+                    expire.flip();
+                    pos = write(outChannel, expire, pos);
+                    newEntry = newEntry.expired();
+                }
+                newIndex.put(e.getKey(), newEntry);
+            }
+            outChannel.force(false);
+        } catch (IOException e) {
+            out.close();
+            compacted.delete();
+            throw e;
+        }
+        out.close();
+
+        this.lock.writeLock().lock();
+        try {
+            this.raf.close();
+            boolean renamed = compacted.renameTo(this.file);
+
+            this.raf = new RandomAccessFile(this.file, "rw");
+            this.channel = this.raf.getChannel();
+            if (!renamed) {
+                compacted.delete();
+                throw new IOException("can't rename compacted file: " + compacted + " to: " + this.file);
+            }
+
+            this.index = newIndex;
+            this.blobs = newBlobs;
+            this.end = pos;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+
+        log.info("compacted pack file: " + this.file + " tiles: " + newIndex.size() + " size: " + oldEnd
+                + " -> " + pos + " time: " + (System.currentTimeMillis() - s1) + " ms");
+    }
+
+    /**
+     * @return part of pack file which is not used by current tiles, it is
+     *         removed by compaction
+     */
+    public synchronized double getDeadRatio() {
+        if (this.end == 0) {
+            return 0;
+        }
+
+        // size of records written by compaction
+        long live = 0;
+        Set<Long> images = new HashSet<Long>();
+        for (Entry entry : this.index.values()) {
+            if (images.add(entry.offset)) {
+                live += HEADER_SIZE + entry.length;
+            } else {
+                live += HEADER_SIZE + REF_SIZE;
+            }
+            if (entry.stale) {
+                live += HEADER_SIZE;
+            }
+        }
+        return (double) (this.end - live) / this.end;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            this.channel.force(false);
+            this.raf.close();
+        } catch (IOException e) {
+            log.error("error closing pack file: " + this.file, e);
+        }
+    }
+
+    /**
+     * @return number of tiles in store
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    /**
+     * @return number of different images in store
+     */
+    public synchronized int getBlobs() {
+        return this.blobs.size();
+    }
+
+    /**
+     * @return number of tiles saved as reference to already stored image,
+     *         since store was opened
+     */
+    public long getDeduplicated() {
+        return this.deduplicated.get();
+    }
+
+    /**
+     * Creates record with header, data of record is put after it.
+     */
+    private static ByteBuffer header(int magic, Tile tile, int length, long lastModified, byte[] hash, int dataSize) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + dataSize);
+        record.putInt(magic);
+        record.put((byte) tile.getZ());
+        record.putInt(tile.getX());
+        record.putInt(tile.getY());
+        record.putInt(length);
+        record.putLong(lastModified);
+        record.put(hash);
+        return record;
+    }
+
+    /**
+     * @return position after written record
+     */
+    private static long write(FileChannel channel, ByteBuffer record, long pos) throws IOException {
+        while (record.hasRemaining()) {
+            pos += channel.write(record, pos);
+        }
+        return pos;
+    }
+
+    private void readFully(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = this.channel.read(buf, pos);
+            if (read < 0) {
+                throw new IOException("unexpected end of pack file: " + this.file);
+            }
+            pos += read;
+        }
+    }
+}
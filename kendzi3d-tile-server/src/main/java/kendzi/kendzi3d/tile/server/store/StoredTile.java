@@ -0,0 +1,119 @@
+package kendzi.kendzi3d.tile.server.store;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import kendzi.kendzi3d.render.encoder.TileFormat;
+
+/**
+ * Tile image with its metadata.
+ */
+public class StoredTile {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final byte[] image;
+
+    private final long lastModified;
+
+    private final byte[] hash;
+
+    private final boolean stale;
+
+    /**
+     * @param image tile image
+     * @param lastModified time of rendering tile
+     * @param hash md5 hash of image
+     */
+    public StoredTile(byte[] image, long lastModified, byte[] hash) {
+        this(image, lastModified, hash, false);
+    }
+
+    /**
+     * @param image tile image
+     * @param lastModified time of rendering tile
+     * @param hash md5 hash of image
+     * @param stale if data of tile was changed after rendering
+     */
+    public StoredTile(byte[] image, long lastModified, byte[] hash, boolean stale) {
+        super();
+        this.image = image;
+        this.lastModified = lastModified;
+        this.hash = hash;
+        this.stale = stale;
+    }
+
+    /**
+     * Creates stored tile for just rendered image.
+     *
+     * @param image tile image
+     * @return stored tile
+     */
+    public static StoredTile create(byte[] image) {
+        return new StoredTile(image, System.currentTimeMillis(), hash(image));
+    }
+
+    /**
+     * @param image image
+     * @return md5 hash of image
+     */
+    public static byte[] hash(byte[] image) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(image);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("md5 is not supported", e);
+        }
+    }
+
+    /**
+     * @return strong entity tag made from hash of image
+     */
+    public String getEtag() {
+        StringBuilder sb = new StringBuilder(2 + 2 * this.hash.length);
+        sb.append('"');
+        for (byte b : this.hash) {
+            sb.append(HEX[(b >> 4) & 0xF]);
+            sb.append(HEX[b & 0xF]);
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+    /**
+     * Recognizes format of image by its first bytes, tiles can be rendered in
+     * different formats.
+     *
+     * @return content type of image
+     */
+    public String getContentType() {
+        return TileFormat.of(this.image).getContentType();
+    }
+
+    /**
+     * @return the image
+     */
+    public byte[] getImage() {
+        return this.image;
+    }
+
+    /**
+     * @return the lastModified
+     */
+    public long getLastModified() {
+        return this.lastModified;
+    }
+
+    /**
+     * @return the hash
+     */
+    public byte[] getHash() {
+        return this.hash;
+    }
+
+    /**
+     * @return if data of tile was changed after rendering
+     */
+    public boolean isStale() {
+        return this.stale;
+    }
+}
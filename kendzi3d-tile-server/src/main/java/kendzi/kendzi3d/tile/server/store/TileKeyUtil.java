@@ -0,0 +1,44 @@
+package kendzi.kendzi3d.tile.server.store;
+
+import kendzi.kendzi3d.render.tile.Tile;
+
+/**
+ * Packs tile coordinates into one long.
+ */
+public class TileKeyUtil {
+
+    /**
+     * Maximal zoom level which fits into key.
+     */
+    public static final int MAX_ZOOM = 29;
+
+    /**
+     * @param tile tile
+     * @return key of tile
+     */
+    public static long key(Tile tile) {
+        return key(tile.getX(), tile.getY(), tile.getZ());
+    }
+
+    /**
+     * @param x x of tile
+     * @param y y of tile
+     * @param z zoom level
+     * @return key of tile
+     */
+    public static long key(int x, int y, int z) {
+        if (z < 0 || z > MAX_ZOOM) {
+            throw new IllegalArgumentException("zoom level: " + z + " is not supported, max: " + MAX_ZOOM);
+        }
+        return ((long) z << 58) | ((long) x << 29) | y;
+    }
+
+    /**
+     * @param key key of tile
+     * @return tile
+     */
+    public static Tile tile(long key) {
+        int mask = (1 << 29) - 1;
+        return new Tile((int) (key >>> 29) & mask, (int) key & mask, (int) (key >>> 58));
+    }
+}
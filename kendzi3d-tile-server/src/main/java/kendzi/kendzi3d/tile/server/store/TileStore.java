@@ -0,0 +1,48 @@
+package kendzi.kendzi3d.tile.server.store;
+
+import kendzi.kendzi3d.render.tile.Tile;
+
+/**
+ * Storage of rendered tiles.
+ *
+ * Implementations have to be thread safe.
+ */
+public interface TileStore {
+
+    /**
+     * Loads tile from store.
+     *
+     * @param tile tile
+     * @return tile image with metadata or null if tile is not in store
+     */
+    StoredTile load(Tile tile);
+
+    /**
+     * Saves tile to store. Previous image of tile is replaced.
+     *
+     * @param tile tile
+     * @param image tile image
+     * @return saved tile with metadata
+     */
+    StoredTile save(Tile tile, byte[] image);
+
+    /**
+     * @param tile tile
+     * @return if tile is in store
+     */
+    boolean contains(Tile tile);
+
+    /**
+     * Marks tile as stale, after change of data under it. Stale tile is still
+     * loaded from store, until it is saved again.
+     *
+     * @param tile tile
+     * @return if tile was in store
+     */
+    boolean expire(Tile tile);
+
+    /**
+     * Releases resources of store.
+     */
+    void close();
+}
@@ -0,0 +1,46 @@
+package kendzi.kendzi3d.tile.server.store;
+
+import java.io.IOException;
+
+import kendzi.kendzi3d.tile.server.config.TileServerConf;
+
+public class TileStoreFactory {
+
+    /**
+     * Creates tile store for configuration.
+     *
+     * @param conf tile server configuration
+     * @return tile store
+     */
+    public static TileStore create(TileServerConf conf) {
+
+        TileStore store = createStore(conf);
+
+        if (conf.getMemoryCacheSize() > 0) {
+            return new MemoryCacheTileStore(store, conf.getMemoryCacheSize() * 1024L * 1024L);
+        }
+        return store;
+    }
+
+    private static TileStore createStore(TileServerConf conf) {
+
+        if (TileServerConf.StoreType.FILE.equals(conf.getStoreType())) {
+            return new FileTileStore(conf.getStoreDir());
+
+        } else if (TileServerConf.StoreType.PACK.equals(conf.getStoreType())) {
+            PackFileTileStore store = new PackFileTileStore(conf.getStorePackFile());
+
+            int compactDead = conf.getStorePackCompactDead();
+            if (compactDead > 0 && 100 * store.getDeadRatio() > compactDead) {
+                try {
+                    store.compact();
+                } catch (IOException e) {
+                    throw new RuntimeException("error compacting pack file: " + conf.getStorePackFile(), e);
+                }
+            }
+            return store;
+        }
+
+        throw new RuntimeException("not allowed tile store: " + conf.getStoreType());
+    }
+}
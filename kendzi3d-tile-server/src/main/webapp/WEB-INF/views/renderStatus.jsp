@@ -4,6 +4,7 @@
    "http://www.w3.org/TR/html4/loose.dtd">
 
 <%@taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c"%>    
+<%@taglib uri="http://java.sun.com/jsp/jstl/fmt" prefix="fmt"%>
 <html>
     <head>
         <meta http-equiv="Content-Type" content="text/html; charset=UTF-8">
@@ -11,6 +12,89 @@
     </head>
     <body>
         <h1>Render status</h1> 
+        <h2>Render workers</h2>
+        <p>Jobs in queue: ${renderQueueSize}, dropped after deadline: ${renderExpiredJobs}, rejected when queue was full: ${renderRejectedJobs}</p>
+       	<table>
+       	  <thead>
+       	   	<tr>
+       	   	 <th>Name</th>
+       	   	 <th>Alive</th>
+       	   	 <th>Initialized</th>
+       	   	 <th>Busy</th>
+       	   	 <th>Jobs</th>
+       	   	 <th>Errors</th>
+       	   	 <th>Consecutive errors</th>
+       	   	 <th>Restarts</th>
+       	   	 <th>Dead</th>
+       	   	 <th>Last job</th>
+       	   	 <th>Utilization</th>
+       	   	</tr>
+       	  </thead>
+	      <c:forEach var="ws" items="${renderWorkerStatusList}">
+	        <tr>
+	          <td>${ws.name}</td>
+	          <td>${ws.alive}</td>
+	          <td>${ws.initialized}</td>
+	          <td>${ws.busy}</td>
+	          <td>${ws.jobsCount}</td>
+	          <td>${ws.errorsCount}</td>
+	          <td>${ws.consecutiveErrors}</td>
+	          <td>${ws.restarts}</td>
+	          <td>${ws.dead}</td>
+	          <td>${ws.lastJobTime}</td>
+	          <td><fmt:formatNumber value="${ws.utilization}" type="percent"/></td>
+	        </tr>
+	      </c:forEach>
+    	</table>
+        <h2>Render latency [ms]</h2>
+       	<table>
+       	  <thead>
+       	   	<tr>
+       	   	 <th>Stage</th>
+       	   	 <th>Count</th>
+       	   	 <th>Mean</th>
+       	   	 <th>50%</th>
+       	   	 <th>90%</th>
+       	   	 <th>99%</th>
+       	   	 <th>Max</th>
+       	   	</tr>
+       	  </thead>
+	      <c:forEach var="ls" items="${renderLatencyList}">
+	        <tr>
+	          <td>${ls.name}</td>
+	          <td>${ls.count}</td>
+	          <td><fmt:formatNumber value="${ls.mean}" maxFractionDigits="1"/></td>
+	          <td><fmt:formatNumber value="${ls.p50}" maxFractionDigits="1"/></td>
+	          <td><fmt:formatNumber value="${ls.p90}" maxFractionDigits="1"/></td>
+	          <td><fmt:formatNumber value="${ls.p99}" maxFractionDigits="1"/></td>
+	          <td><fmt:formatNumber value="${ls.max}" maxFractionDigits="1"/></td>
+	        </tr>
+	      </c:forEach>
+    	</table>
+        <c:if test="${tileCacheStatus != null}">
+        <h2>Memory tile cache</h2>
+       	<table>
+       	  <thead>
+       	   	<tr>
+       	   	 <th>Tiles</th>
+       	   	 <th>Size</th>
+       	   	 <th>Max size</th>
+       	   	 <th>Hits</th>
+       	   	 <th>Misses</th>
+       	   	 <th>Evictions</th>
+       	   	</tr>
+       	  </thead>
+	        <tr>
+	          <td>${tileCacheStatus.entries}</td>
+	          <td>${tileCacheStatus.size}</td>
+	          <td>${tileCacheStatus.maxSize}</td>
+	          <td>${tileCacheStatus.hits}</td>
+	          <td>${tileCacheStatus.misses}</td>
+	          <td>${tileCacheStatus.evictions}</td>
+	        </tr>
+    	</table>
+        </c:if>
+        <h2>Rendered tiles</h2>
        	<table>
        	  <thead>
        	   	<tr>
@@ -0,0 +1,32 @@
+<%@page contentType="text/html" pageEncoding="UTF-8"%>
+<!DOCTYPE HTML PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN"
+   "http://www.w3.org/TR/html4/loose.dtd">
+
+<%@taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c"%>    
+<html>
+    <head>
+        <meta http-equiv="Content-Type" content="text/html; charset=UTF-8">
+        <title>Seed status</title>
+    </head>
+    <body>
+        <h1>Seed status</h1> 
+        <c:if test="${seedStatus == null}">
+        <p>No seeding was started. Start it with: seed/start?minLon=&amp;minLat=&amp;maxLon=&amp;maxLat=&amp;minZoom=&amp;maxZoom=</p>
+        </c:if>
+        <c:if test="${seedStatus != null}">
+       	<table>
+	        <tr><td>Area</td><td>${seedStatus.area}</td></tr>
+	        <tr><td>Started</td><td>${seedStatus.startDate}</td></tr>
+	        <tr><td>Running</td><td>${seedStatus.running}</td></tr>
+	        <tr><td>Finished</td><td>${seedStatus.finished}</td></tr>
+	        <tr><td>Zoom</td><td>${seedStatus.zoom}</td></tr>
+	        <tr><td>Tiles done</td><td>${seedStatus.done} / ${seedStatus.total}</td></tr>
+	        <tr><td>Rendered</td><td>${seedStatus.rendered}</td></tr>
+	        <tr><td>Already in cache</td><td>${seedStatus.skipped}</td></tr>
+	        <tr><td>Errors</td><td>${seedStatus.errors}</td></tr>
+	        <tr><td>Tiles/s</td><td>${seedStatus.tilesPerSecond}</td></tr>
+	        <tr><td>ETA [s]</td><td>${seedStatus.eta}</td></tr>
+    	</table>
+        </c:if>
+    </body>
+</html>
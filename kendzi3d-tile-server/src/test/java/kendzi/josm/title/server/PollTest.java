@@ -1,13 +1,33 @@
 package kendzi.josm.title.server;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kendzi.kendzi3d.render.MetaTileRenderResult;
+import kendzi.kendzi3d.render.RenderResult;
 import kendzi.kendzi3d.render.conf.RenderEngineConf;
 import kendzi.kendzi3d.render.module.RenderModule;
+import kendzi.kendzi3d.tile.server.dto.RenderWorkerStatus;
+import kendzi.kendzi3d.tile.server.render.RenderJobStatus;
+import kendzi.kendzi3d.tile.server.render.RenderWorkerPool;
 import kendzi.kendzi3d.tile.server.render.RenderWorkerThread;
 import kendzi.kendzi3d.tile.server.render.WorkPoll;
 import kendzi.kendzi3d.tile.server.render.job.ExitJob;
+import kendzi.kendzi3d.tile.server.render.job.MetaTileJob;
+import kendzi.kendzi3d.tile.server.render.job.RenderPriority;
 import kendzi.kendzi3d.tile.server.render.job.TileJob;
+import kendzi.kendzi3d.tile.server.render.worker.TitleJobRender;
+import kendzi.kendzi3d.tile.server.render.worker.TitleJobRenderFactory;
 
 import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -16,6 +36,21 @@ public class PollTest {
     /** Log. */
     private static final Logger log = Logger.getLogger(PollTest.class);
 
+    /**
+     * Number of threads concurrently waiting for tiles in benchmark.
+     */
+    private static final int CALLERS = 200;
+
+    /**
+     * Number of tiles requested by each caller in benchmark.
+     */
+    private static final int JOBS_PER_CALLER = 50;
+
+    /**
+     * Number of render workers in benchmark.
+     */
+    private static final int WORKERS = 4;
+
 
     public static void main(String[] args) {
         PollTest m = new PollTest();
@@ -58,4 +93,279 @@ public class PollTest {
         log.info("Tile process time: " + (System.currentTimeMillis() - s1) / 1000d);
 
     }
+
+    /**
+     * Every caller receives result of its own job.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void callersReceiveOwnResults() throws InterruptedException {
+        Assert.assertEquals(0, contention(8, 5, 2));
+    }
+
+    /**
+     * Contention benchmark. Many threads wait for results at the same time,
+     * it is too long for every build.
+     *
+     * @throws InterruptedException
+     */
+    @Ignore("benchmark, run manually")
+    @Test
+    public void contentionBenchmark() throws InterruptedException {
+        Assert.assertEquals(0, contention(CALLERS, JOBS_PER_CALLER, WORKERS));
+    }
+
+    /**
+     * Runs jobs of callers on render workers.
+     *
+     * @param callers number of threads waiting for tiles
+     * @param jobsPerCaller number of tiles requested by each caller
+     * @param workerCount number of render workers
+     * @return number of wrong results
+     * @throws InterruptedException
+     */
+    private int contention(final int callers, final int jobsPerCaller, int workerCount)
+            throws InterruptedException {
+
+        final WorkPoll workPoll = new WorkPoll();
+
+        List<RenderWorkerThread> workers = new ArrayList<RenderWorkerThread>();
+        for (int i = 0; i < workerCount; i++) {
+            RenderWorkerThread worker = new RenderWorkerThread(workPoll, new EchoJobRender());
+            worker.start();
+            workers.add(worker);
+        }
+
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        final boolean cpuTime = threadMXBean.isCurrentThreadCpuTimeSupported();
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch endLatch = new CountDownLatch(callers);
+        final AtomicInteger wrongResults = new AtomicInteger();
+        final AtomicLong callersCpuTime = new AtomicLong();
+
+        for (int i = 0; i < callers; i++) {
+            final int caller = i;
+            Thread t = new Thread("caller-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        for (int j = 0; j < jobsPerCaller; j++) {
+                            RenderResult result = workPoll.putJobAndWaitForResult(new TileJob(caller, j, 18, ""));
+                            if (result == null || result.getImage()[0] != (byte) caller
+                                    || result.getImage()[1] != (byte) j) {
+                                wrongResults.incrementAndGet();
+                            }
+                        }
+                        if (cpuTime) {
+                            callersCpuTime.addAndGet(threadMXBean.getCurrentThreadCpuTime());
+                        }
+                    } catch (InterruptedException e) {
+                        wrongResults.incrementAndGet();
+                    } finally {
+                        endLatch.countDown();
+                    }
+                }
+            };
+            t.start();
+        }
+
+        long s1 = System.nanoTime();
+        startLatch.countDown();
+        endLatch.await();
+        long time = System.nanoTime() - s1;
+
+        for (int i = 0; i < workerCount; i++) {
+            workPoll.putJob(new ExitJob());
+        }
+        for (RenderWorkerThread worker : workers) {
+            worker.join(10000);
+        }
+
+        int jobs = callers * jobsPerCaller;
+        log.info("contention, callers: " + callers + " workers: " + workerCount + " jobs: " + jobs
+                + " time: " + time / 1000000 + " ms, jobs/s: " + (long) (jobs / (time / 1000000000d))
+                + (cpuTime ? ", callers cpu time: " + callersCpuTime.get() / 1000000 + " ms" : ""));
+
+        return wrongResults.get();
+    }
+
+    @Test
+    public void priorityAndCancel() throws InterruptedException {
+        WorkPoll workPoll = new WorkPoll();
+
+        RenderJobStatus seeding = workPoll.putJob(new RenderJobStatus(new TileJob(1, 0, 14, ""), RenderPriority.SEEDING));
+        RenderJobStatus prefetch = workPoll.putJob(new RenderJobStatus(new TileJob(2, 0, 14, ""), RenderPriority.PREFETCH));
+        RenderJobStatus interactive1 = workPoll.putJob(new RenderJobStatus(new TileJob(3, 0, 14, "")));
+        RenderJobStatus interactive2 = workPoll.putJob(new RenderJobStatus(new TileJob(4, 0, 14, "")));
+
+        // nobody waits for it anymore
+        RenderJobStatus abandoned = new RenderJobStatus(new TileJob(5, 0, 14, ""));
+        abandoned.addWaiter(0);
+        workPoll.putJob(abandoned);
+        Assert.assertTrue(abandoned.releaseWaiter());
+
+        RenderJobStatus expired = new RenderJobStatus(new TileJob(6, 0, 14, ""));
+        expired.addWaiter(System.currentTimeMillis() - 1);
+        workPoll.putJob(expired);
+
+        // interactive waiter joins seeding job, it keeps its place in order of adding
+        workPoll.raisePriority(seeding, RenderPriority.INTERACTIVE);
+
+        Assert.assertSame(seeding, workPoll.takeOrWait());
+        Assert.assertSame(interactive1, workPoll.takeOrWait());
+        Assert.assertSame(interactive2, workPoll.takeOrWait());
+        Assert.assertSame(prefetch, workPoll.takeOrWait());
+        Assert.assertEquals(0, workPoll.size());
+
+        Assert.assertTrue(abandoned.isCancelled());
+        Assert.assertTrue(expired.isCancelled());
+        Assert.assertEquals(1, workPoll.getExpired());
+    }
+
+    @Test
+    public void rejectWhenFull() {
+        WorkPoll workPoll = new WorkPoll();
+
+        Assert.assertTrue(workPoll.offerJob(new RenderJobStatus(new TileJob(1, 0, 14, "")), 2));
+        Assert.assertTrue(workPoll.offerJob(new RenderJobStatus(new TileJob(2, 0, 14, "")), 2));
+        Assert.assertFalse(workPoll.offerJob(new RenderJobStatus(new TileJob(3, 0, 14, "")), 2));
+        // no limit
+        Assert.assertTrue(workPoll.offerJob(new RenderJobStatus(new TileJob(4, 0, 14, "")), 0));
+
+        Assert.assertEquals(3, workPoll.size());
+        Assert.assertEquals(1, workPoll.getRejected());
+    }
+
+    @Test
+    public void cancelledAndExpiredNotCounted() throws InterruptedException {
+        WorkPoll workPoll = new WorkPoll();
+
+        RenderJobStatus abandoned = new RenderJobStatus(new TileJob(1, 0, 14, ""));
+        abandoned.addWaiter(0);
+        Assert.assertTrue(workPoll.offerJob(abandoned, 2));
+
+        RenderJobStatus expired = new RenderJobStatus(new TileJob(2, 0, 14, ""));
+        expired.addWaiter(System.currentTimeMillis() - 1);
+        Assert.assertTrue(workPoll.offerJob(expired, 2));
+
+        // waiter gave up, job is removed from poll
+        Assert.assertTrue(abandoned.releaseWaiter());
+
+        // expired job is dropped instead of rejecting new one
+        RenderJobStatus live = new RenderJobStatus(new TileJob(3, 0, 14, ""));
+        Assert.assertTrue(workPoll.offerJob(live, 1));
+        Assert.assertTrue(expired.isCancelled());
+        Assert.assertEquals(1, workPoll.getExpired());
+        Assert.assertEquals(0, workPoll.getRejected());
+        Assert.assertEquals(1, workPoll.size());
+
+        // job cancelled before adding is not queued
+        RenderJobStatus cancelled = new RenderJobStatus(new TileJob(4, 0, 14, ""));
+        cancelled.cancel(false);
+        workPoll.putJob(cancelled);
+        Assert.assertEquals(1, workPoll.size());
+
+        Assert.assertSame(live, workPoll.takeOrWait());
+        Assert.assertEquals(0, workPoll.size());
+    }
+
+    @Test
+    public void peekInOrder() throws InterruptedException {
+        WorkPoll workPoll = new WorkPoll();
+
+        RenderJobStatus seeding = workPoll.putJob(new RenderJobStatus(new TileJob(1, 0, 14, ""), RenderPriority.SEEDING));
+        RenderJobStatus interactive1 = workPoll.putJob(new RenderJobStatus(new TileJob(2, 0, 14, "")));
+        RenderJobStatus cancelled = workPoll.putJob(new RenderJobStatus(new TileJob(3, 0, 14, "")));
+        RenderJobStatus interactive2 = workPoll.putJob(new RenderJobStatus(new TileJob(4, 0, 14, "")));
+        cancelled.cancel(false);
+
+        List<RenderJobStatus> first = workPoll.peek(2);
+        Assert.assertEquals(2, first.size());
+        Assert.assertSame(interactive1, first.get(0));
+        Assert.assertSame(interactive2, first.get(1));
+
+        List<RenderJobStatus> all = workPoll.peek(10);
+        Assert.assertEquals(3, all.size());
+        Assert.assertSame(seeding, all.get(2));
+
+        // jobs stay in poll, cancelled job is removed
+        Assert.assertEquals(3, workPoll.size());
+        Assert.assertSame(interactive1, workPoll.takeOrWait());
+    }
+
+    @Test
+    public void workerFailingInitIsGivenUp() throws InterruptedException {
+        final AtomicInteger created = new AtomicInteger();
+        TitleJobRenderFactory factory = new TitleJobRenderFactory() {
+
+            @Override
+            public TitleJobRender create() {
+                created.incrementAndGet();
+                return new EchoJobRender() {
+                    @Override
+                    public void init() {
+                        throw new IllegalStateException("no GL context");
+                    }
+                };
+            }
+        };
+
+        RenderWorkerPool pool = new RenderWorkerPool(new WorkPoll(), factory, 1, 0, 1, null);
+        pool.start();
+        try {
+            long end = System.currentTimeMillis() + 10000;
+            while (!pool.getWorkersStatus().get(0).isDead()) {
+                if (System.currentTimeMillis() > end) {
+                    Assert.fail("worker was not given up");
+                }
+                Thread.sleep(5);
+            }
+
+            RenderWorkerStatus status = pool.getWorkersStatus().get(0);
+            Assert.assertFalse(status.isAlive());
+            Assert.assertEquals(9, status.getRestarts());
+            Assert.assertEquals(10, created.get());
+
+            // dead worker is not restarted
+            Thread.sleep(50);
+            Assert.assertEquals(10, created.get());
+        } finally {
+            pool.shutdown(1000);
+        }
+    }
+
+    /**
+     * Render which returns tile coordinates instead of image.
+     */
+    private static class EchoJobRender implements TitleJobRender {
+
+        @Override
+        public void init() {
+            //
+        }
+
+        @Override
+        public RenderResult render(TileJob tj) {
+            return new RenderResult(new byte[] { (byte) tj.getX(), (byte) tj.getY() });
+        }
+
+        @Override
+        public MetaTileRenderResult render(MetaTileJob mtj) {
+            MetaTileRenderResult result = new MetaTileRenderResult(mtj.getX(), mtj.getY(), mtj.getSize());
+            for (int y = mtj.getY(); y < mtj.getY() + mtj.getSize(); y++) {
+                for (int x = mtj.getX(); x < mtj.getX() + mtj.getSize(); x++) {
+                    result.setTile(x, y, new RenderResult(new byte[] { (byte) x, (byte) y }));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void release() {
+            //
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package kendzi.kendzi3d.tile.server.expire;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamException;
+
+import kendzi.kendzi3d.render.tile.Tile;
+import kendzi.kendzi3d.render.tile.TitleToLatLon;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TileExpiryTest {
+
+    @Test
+    public void pointWithMargin() {
+        // point in the middle of tile 18/142550/86423
+        TitleToLatLon.BoundingBox bb = TitleToLatLon.tile2boundingBox(142550, 86423, 18);
+        double lon = (bb.west + bb.east) / 2;
+        double lat = (bb.north + bb.south) / 2;
+
+        TileExpiry noMargin = new TileExpiry(16, 18, 0, 0);
+        noMargin.addPoint(lon, lat);
+
+        List<Tile> tiles = noMargin.getTiles();
+        Assert.assertEquals(3, tiles.size());
+        assertTile(142550 >> 2, 86423 >> 2, 16, tiles.get(0));
+        assertTile(142550 >> 1, 86423 >> 1, 17, tiles.get(1));
+        assertTile(142550, 86423, 18, tiles.get(2));
+
+        TileExpiry expiry = new TileExpiry(18, 18, 50, 200);
+        expiry.addPoint(lon, lat);
+
+        // tile at zoom 18 has about 100 m, so margin covers neighbours in x
+        // and two tiles to north and south
+        Assert.assertEquals(3 * 5, expiry.size());
+        assertTile(142549, 86421, 18, expiry.getTiles().get(0));
+    }
+
+    @Test
+    public void osmChange() throws XMLStreamException, IOException {
+        String osc = "<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<osmChange version=\"0.6\">\n"
+                + "<modify><node id=\"1\" version=\"2\" lat=\"50.06\" lon=\"19.94\"/>"
+                + "<way id=\"2\" version=\"2\"><nd ref=\"1\"/><tag k=\"building\" v=\"yes\"/></way></modify>\n"
+                + "<delete><node id=\"3\" version=\"3\"/></delete>\n"
+                + "</osmChange>";
+
+        TileExpiry expiry = new TileExpiry(10, 10, 0, 0);
+        int count = ChangeFileReader.readOsmChange(new ByteArrayInputStream(osc.getBytes()), expiry, null);
+
+        Assert.assertEquals(3, count);
+        Assert.assertEquals(1, expiry.size());
+        assertTile(TitleToLatLon.lonToTile(19.94, 10), TitleToLatLon.latToTile(50.06, 10), 10,
+                expiry.getTiles().get(0));
+    }
+
+    @Test
+    public void osmChangeLocated() throws XMLStreamException, IOException {
+        // only tags of way and relation were changed
+        String osc = "<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<osmChange version=\"0.6\">\n"
+                + "<modify><way id=\"2\" version=\"2\"><nd ref=\"10\"/><tag k=\"building\" v=\"yes\"/></way>"
+                + "<relation id=\"5\" version=\"3\"><member type=\"relation\" ref=\"6\" role=\"part\"/></relation>"
+                + "</modify>\n"
+                + "</osmChange>";
+
+        ChangeLocator locator = new ChangeLocator() {
+
+            @Override
+            public void findWayNodes(Collection<Long> wayIds, Set<Long> nodeIds) {
+                if (wayIds.contains(2L)) {
+                    nodeIds.add(11L);
+                }
+                if (wayIds.contains(7L)) {
+                    nodeIds.add(12L);
+                }
+            }
+
+            @Override
+            public void findRelationMembers(Collection<Long> relationIds, Set<Long> nodeIds, Set<Long> wayIds,
+                    Set<Long> childRelationIds) {
+                if (relationIds.contains(6L)) {
+                    wayIds.add(7L);
+                    // cycle of relations
+                    childRelationIds.add(5L);
+                }
+            }
+
+            @Override
+            public int addNodes(Collection<Long> nodeIds, TileExpiry expiry) {
+                int count = 0;
+                for (Long id : nodeIds) {
+                    // node 10 is in new shape of way 2 only, node 11 in old
+                    // one, node 12 belongs to way of child relation
+                    expiry.addPoint(30 * (id - 10), 10);
+                    count++;
+                }
+                return count;
+            }
+        };
+
+        TileExpiry expiry = new TileExpiry(4, 4, 0, 0);
+        int count = ChangeFileReader.readOsmChange(new ByteArrayInputStream(osc.getBytes()), expiry, locator);
+
+        Assert.assertEquals(2, count);
+        // tile at zoom 4 has 22.5 degrees
+        List<Tile> tiles = expiry.getTiles();
+        Assert.assertEquals(3, tiles.size());
+        int y = TitleToLatLon.latToTile(10, 4);
+        assertTile(8, y, 4, tiles.get(0));
+        assertTile(9, y, 4, tiles.get(1));
+        assertTile(10, y, 4, tiles.get(2));
+    }
+
+    @Test
+    public void bboxList() throws IOException {
+        String list = "# changed areas\n19.90,50.04,19.97,50.08\n\n 19.97 50.08 19.90 50.04 \n";
+
+        TileExpiry expiry = new TileExpiry(14, 14, 0, 0);
+        int count = ChangeFileReader.readBboxList(new ByteArrayInputStream(list.getBytes()), expiry);
+
+        Assert.assertEquals(2, count);
+        int w = TitleToLatLon.lonToTile(19.97, 14) - TitleToLatLon.lonToTile(19.90, 14) + 1;
+        int h = TitleToLatLon.latToTile(50.04, 14) - TitleToLatLon.latToTile(50.08, 14) + 1;
+        Assert.assertEquals(w * h, expiry.size());
+    }
+
+    private static void assertTile(int x, int y, int z, Tile tile) {
+        Assert.assertEquals(x, tile.getX());
+        Assert.assertEquals(y, tile.getY());
+        Assert.assertEquals(z, tile.getZ());
+    }
+}
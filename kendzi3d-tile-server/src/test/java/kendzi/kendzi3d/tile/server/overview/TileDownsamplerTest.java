@@ -0,0 +1,43 @@
+package kendzi.kendzi3d.tile.server.overview;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TileDownsamplerTest {
+
+    @Test
+    public void averageWeightedByAlpha() {
+        int red = 0xffff0000;
+        int transparent = 0x000000ff;
+
+        // transparent pixels don't change color
+        Assert.assertEquals(0x80ff0000, TileDownsampler.average(red, red, transparent, transparent));
+        Assert.assertEquals(0, TileDownsampler.average(transparent, transparent, transparent, transparent));
+        Assert.assertEquals(0xff800000, TileDownsampler.average(red, red, 0xff000000, 0xff000000));
+    }
+
+    @Test
+    public void childrenInQuadrants() {
+        int size = 8;
+        int[] colors = { 0xffff0000, 0xff00ff00, 0xff0000ff };
+        BufferedImage[] children = new BufferedImage[4];
+        for (int i = 0; i < colors.length; i++) {
+            children[i] = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    children[i].setRGB(x, y, colors[i]);
+                }
+            }
+        }
+
+        BufferedImage tile = TileDownsampler.downsample(children, size);
+
+        Assert.assertEquals(colors[0], tile.getRGB(0, 0));
+        Assert.assertEquals(colors[1], tile.getRGB(size - 1, 0));
+        Assert.assertEquals(colors[2], tile.getRGB(0, size - 1));
+        // missing child
+        Assert.assertEquals(0, tile.getRGB(size - 1, size - 1));
+    }
+}
@@ -0,0 +1,36 @@
+package kendzi.kendzi3d.tile.server.seed;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HilbertCurveTest {
+
+    @Test
+    public void visitsEachCellOnceWithUnitSteps() {
+        int n = 16;
+        boolean [][] visited = new boolean[n][n];
+
+        int [] xy = new int[2];
+        int px = -1;
+        int py = -1;
+        for (long d = 0; d < n * n; d++) {
+            HilbertCurve.d2xy(n, d, xy);
+
+            Assert.assertFalse(visited[xy[0]][xy[1]]);
+            visited[xy[0]][xy[1]] = true;
+
+            if (d > 0) {
+                Assert.assertEquals(1, Math.abs(xy[0] - px) + Math.abs(xy[1] - py));
+            }
+            px = xy[0];
+            py = xy[1];
+        }
+    }
+
+    @Test
+    public void squareSize() {
+        Assert.assertEquals(1, HilbertCurve.squareSize(1));
+        Assert.assertEquals(8, HilbertCurve.squareSize(5));
+        Assert.assertEquals(8, HilbertCurve.squareSize(8));
+    }
+}
@@ -0,0 +1,170 @@
+package kendzi.kendzi3d.tile.server.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import kendzi.kendzi3d.render.tile.Tile;
+import kendzi.kendzi3d.tile.server.config.TileServerConf;
+import kendzi.kendzi3d.tile.server.render.RenderJobStatus;
+import kendzi.kendzi3d.tile.server.render.RenderOverloadedException;
+import kendzi.kendzi3d.tile.server.render.WorkPoll;
+import kendzi.kendzi3d.tile.server.render.job.RenderPriority;
+import kendzi.kendzi3d.tile.server.store.StoredTile;
+import kendzi.kendzi3d.tile.server.store.TileStore;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TileServiceTest {
+
+    private final WorkPoll workPoll = new WorkPoll();
+
+    /**
+     * Jobs added to work poll in order of submitting.
+     */
+    private final List<RenderJobStatus> submitted = new ArrayList<RenderJobStatus>();
+
+    @Test
+    public void syncWaiterTimeoutCancelsJob() throws InterruptedException {
+        TileService tileService = createTileService(20);
+
+        try {
+            tileService.render(new Tile(1, 0, 18), RenderPriority.INTERACTIVE);
+            Assert.fail("tile was not rendered");
+        } catch (RenderOverloadedException e) {
+            // timeout
+        }
+        RenderJobStatus timedOut = this.submitted.get(0);
+        Assert.assertTrue(timedOut.isCancelled());
+
+        RenderJobStatus live = tileService.refresh(new Tile(2, 0, 18), RenderPriority.PREFETCH);
+
+        // job of timed out waiter is skipped
+        Assert.assertSame(live, this.workPoll.takeOrWait());
+        Assert.assertEquals(0, this.workPoll.size());
+    }
+
+    @Test
+    public void asyncWaiterTimeoutCancelsJob() throws InterruptedException {
+        TileService tileService = createTileService(20);
+
+        RecordingCallback callback = new RecordingCallback();
+        TileRequest request = tileService.getTile(new Tile(1, 0, 18), false, RenderPriority.INTERACTIVE, callback);
+        Assert.assertEquals(1, this.workPoll.size());
+
+        // caller gave up waiting
+        Assert.assertTrue(request.release());
+        Assert.assertFalse(request.release());
+
+        Assert.assertTrue(request.getStatus().isCancelled());
+        Assert.assertTrue(callback.error instanceof RenderOverloadedException);
+        Assert.assertNull(callback.storedTile);
+
+        RenderJobStatus live = tileService.refresh(new Tile(2, 0, 18), RenderPriority.PREFETCH);
+
+        Assert.assertSame(live, this.workPoll.takeOrWait());
+        Assert.assertEquals(0, this.workPoll.size());
+    }
+
+    @Test
+    public void jobWithWaiterLeftIsNotCancelled() throws InterruptedException {
+        TileService tileService = createTileService(0);
+
+        TileRequest first = tileService.getTile(new Tile(1, 0, 18), false, RenderPriority.INTERACTIVE,
+                new RecordingCallback());
+        RecordingCallback callback = new RecordingCallback();
+        TileRequest second = tileService.getTile(new Tile(1, 0, 18), false, RenderPriority.INTERACTIVE, callback);
+
+        // joined the same job
+        Assert.assertSame(first.getStatus(), second.getStatus());
+
+        Assert.assertFalse(first.release());
+        Assert.assertFalse(second.getStatus().isCancelled());
+
+        RenderJobStatus status = this.workPoll.takeOrWait();
+        Assert.assertSame(second.getStatus(), status);
+        Assert.assertTrue(status.markStarted());
+
+        // started job is not cancelled by last waiter
+        Assert.assertFalse(second.release());
+        Assert.assertFalse(status.isCancelled());
+        Assert.assertNull(callback.error);
+    }
+
+    private TileService createTileService(long renderTimeout) {
+        TileServerConf tileServerConf = new TileServerConf();
+        tileServerConf.setRenderTimeout(renderTimeout);
+        tileServerConf.setMetaTile(1);
+
+        TileService tileService = new TileService();
+        tileService.tileServerConf = tileServerConf;
+        tileService.tileStore = new EmptyTileStore();
+        tileService.overviewService = new OverviewService();
+        tileService.renderService = new RenderService() {
+
+            @Override
+            public RenderJobStatus submit(RenderJobStatus status) {
+                TileServiceTest.this.submitted.add(status);
+                TileServiceTest.this.workPoll.putJob(status);
+                return status;
+            }
+
+            @Override
+            public void raisePriority(RenderJobStatus status, RenderPriority priority) {
+                TileServiceTest.this.workPoll.raisePriority(status, priority);
+            }
+        };
+        return tileService;
+    }
+
+    /**
+     * Store without tiles, every tile has to be rendered.
+     */
+    private static class EmptyTileStore implements TileStore {
+
+        @Override
+        public StoredTile load(Tile tile) {
+            return null;
+        }
+
+        @Override
+        public StoredTile save(Tile tile, byte[] image) {
+            return StoredTile.create(image);
+        }
+
+        @Override
+        public boolean contains(Tile tile) {
+            return false;
+        }
+
+        @Override
+        public boolean expire(Tile tile) {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            //
+        }
+    }
+
+    /**
+     * Records result of tile request.
+     */
+    private static class RecordingCallback implements TileCallback {
+
+        StoredTile storedTile;
+
+        RuntimeException error;
+
+        @Override
+        public void tileReady(StoredTile storedTile) {
+            this.storedTile = storedTile;
+        }
+
+        @Override
+        public void tileFailed(RuntimeException error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package kendzi.kendzi3d.tile.server.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsContainTheirValues() {
+        int last = -1;
+        for (long v = 0; v < 1000000; v++) {
+            int index = LatencyHistogram.index(v);
+            Assert.assertTrue(index == last || index == last + 1);
+            Assert.assertTrue(v <= LatencyHistogram.highestValue(index));
+            last = index;
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 10000; v++) {
+            h.record(v);
+        }
+
+        Assert.assertEquals(10000, h.getCount());
+        Assert.assertEquals(10000, h.getMax());
+        Assert.assertEquals(5000.5, h.getMean(), 0.001);
+
+        assertNear(5000, h.getPercentile(50));
+        assertNear(9900, h.getPercentile(99));
+        Assert.assertEquals(10000, h.getPercentile(100));
+    }
+
+    @Test
+    public void empty() {
+        LatencyHistogram h = new LatencyHistogram();
+        Assert.assertEquals(0, h.getPercentile(99));
+        Assert.assertEquals(0, h.getMean(), 0);
+    }
+
+    private static void assertNear(long expected, long value) {
+        Assert.assertTrue("value: " + value, value >= expected && value <= expected + expected / 16);
+    }
+}
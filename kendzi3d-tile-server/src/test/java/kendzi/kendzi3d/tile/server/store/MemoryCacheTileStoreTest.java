@@ -0,0 +1,136 @@
+package kendzi.kendzi3d.tile.server.store;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import kendzi.kendzi3d.render.tile.Tile;
+import kendzi.kendzi3d.tile.server.dto.TileCacheStatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MemoryCacheTileStoreTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        CountingTileStore disk = new CountingTileStore();
+
+        // room for two tiles of 100 bytes
+        MemoryCacheTileStore store = new MemoryCacheTileStore(disk, 2 * (100 + 160));
+
+        store.save(new Tile(1, 1, 1), new byte[100]);
+        store.save(new Tile(2, 1, 1), new byte[100]);
+
+        // tile 1 becomes most recently used
+        Assert.assertNotNull(store.load(new Tile(1, 1, 1)));
+
+        store.save(new Tile(3, 1, 1), new byte[100]);
+
+        Assert.assertNotNull(store.load(new Tile(1, 1, 1)));
+        Assert.assertEquals(0, disk.loads);
+
+        // evicted, read from disk and cached again
+        Assert.assertNotNull(store.load(new Tile(2, 1, 1)));
+        Assert.assertEquals(1, disk.loads);
+
+        TileCacheStatus status = store.getStatus();
+        Assert.assertEquals(2, status.getEntries());
+        Assert.assertEquals(2, status.getHits());
+        Assert.assertEquals(1, status.getMisses());
+        Assert.assertEquals(2, status.getEvictions());
+        Assert.assertTrue(status.getSize() <= status.getMaxSize());
+    }
+
+    @Test
+    public void loadDoesNotReplaceSavedTile() {
+        final CountingTileStore disk = new CountingTileStore();
+        final MemoryCacheTileStore store = new MemoryCacheTileStore(disk, 10000);
+        final Tile tile = new Tile(1, 1, 1);
+
+        disk.save(tile, new byte[] { 1 });
+
+        // tile is saved after old version was read from disk
+        disk.duringLoad = new Runnable() {
+            @Override
+            public void run() {
+                disk.duringLoad = null;
+                store.save(tile, new byte[] { 2 });
+            }
+        };
+        Assert.assertEquals(1, store.load(tile).getImage()[0]);
+
+        Assert.assertEquals(2, store.load(tile).getImage()[0]);
+        Assert.assertEquals(1, disk.loads);
+    }
+
+    @Test
+    public void loadDoesNotCacheExpiredTile() {
+        final CountingTileStore disk = new CountingTileStore();
+        final MemoryCacheTileStore store = new MemoryCacheTileStore(disk, 10000);
+        final Tile tile = new Tile(1, 1, 1);
+
+        disk.save(tile, new byte[] { 1 });
+
+        disk.duringLoad = new Runnable() {
+            @Override
+            public void run() {
+                disk.duringLoad = null;
+                store.expire(tile);
+            }
+        };
+        Assert.assertFalse(store.load(tile).isStale());
+
+        Assert.assertTrue(store.load(tile).isStale());
+        Assert.assertEquals(2, disk.loads);
+    }
+
+    private static class CountingTileStore implements TileStore {
+
+        Map<Long, StoredTile> tiles = new HashMap<Long, StoredTile>();
+
+        int loads;
+
+        /**
+         * Run after tile is read, as change from other thread.
+         */
+        Runnable duringLoad;
+
+        @Override
+        public StoredTile load(Tile tile) {
+            this.loads++;
+            StoredTile storedTile = this.tiles.get(TileKeyUtil.key(tile));
+            if (this.duringLoad != null) {
+                this.duringLoad.run();
+            }
+            return storedTile;
+        }
+
+        @Override
+        public StoredTile save(Tile tile, byte[] image) {
+            StoredTile storedTile = StoredTile.create(image);
+            this.tiles.put(TileKeyUtil.key(tile), storedTile);
+            return storedTile;
+        }
+
+        @Override
+        public boolean contains(Tile tile) {
+            return this.tiles.containsKey(TileKeyUtil.key(tile));
+        }
+
+        @Override
+        public boolean expire(Tile tile) {
+            StoredTile storedTile = this.tiles.get(TileKeyUtil.key(tile));
+            if (storedTile == null) {
+                return false;
+            }
+            this.tiles.put(TileKeyUtil.key(tile), new StoredTile(storedTile.getImage(),
+                    storedTile.getLastModified(), storedTile.getHash(), true));
+            return true;
+        }
+
+        @Override
+        public void close() {
+            //
+        }
+    }
+}
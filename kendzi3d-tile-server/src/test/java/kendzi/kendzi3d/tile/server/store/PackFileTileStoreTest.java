@@ -0,0 +1,254 @@
+package kendzi.kendzi3d.tile.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import kendzi.kendzi3d.render.tile.Tile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackFileTileStoreTest {
+
+    @Test
+    public void saveAndReopen() throws IOException {
+        File file = File.createTempFile("tiles", ".pack");
+        try {
+            PackFileTileStore store = new PackFileTileStore(file.getPath());
+
+            store.save(new Tile(1, 2, 3), new byte[] { 1, 2, 3 });
+            store.save(new Tile(142550, 86423, 18), new byte[] { 4, 5 });
+            // replaced tile
+            store.save(new Tile(1, 2, 3), new byte[] { 6 });
+
+            Assert.assertArrayEquals(new byte[] { 6 }, store.load(new Tile(1, 2, 3)).getImage());
+            Assert.assertNull(store.load(new Tile(2, 1, 3)));
+            store.close();
+
+            store = new PackFileTileStore(file.getPath());
+            Assert.assertEquals(2, store.size());
+            Assert.assertArrayEquals(new byte[] { 6 }, store.load(new Tile(1, 2, 3)).getImage());
+            Assert.assertArrayEquals(new byte[] { 4, 5 }, store.load(new Tile(142550, 86423, 18)).getImage());
+            Assert.assertTrue(store.contains(new Tile(142550, 86423, 18)));
+
+            StoredTile storedTile = store.load(new Tile(1, 2, 3));
+            Assert.assertArrayEquals(StoredTile.hash(new byte[] { 6 }), storedTile.getHash());
+            Assert.assertTrue(storedTile.getLastModified() > 0);
+            store.close();
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void identicalImages() throws IOException {
+        File file = File.createTempFile("tiles", ".pack");
+        try {
+            byte[] empty = new byte[1000];
+
+            PackFileTileStore store = new PackFileTileStore(file.getPath());
+            store.save(new Tile(0, 0, 18), empty);
+            store.save(new Tile(1, 0, 18), empty);
+            store.save(new Tile(2, 0, 18), empty);
+            store.save(new Tile(3, 0, 18), new byte[] { 1 });
+
+            Assert.assertEquals(2, store.getBlobs());
+            Assert.assertEquals(2, store.getDeduplicated());
+            store.close();
+
+            // image is written only once
+            Assert.assertTrue(file.length() < 2 * empty.length);
+
+            store = new PackFileTileStore(file.getPath());
+            Assert.assertEquals(4, store.size());
+            Assert.assertEquals(2, store.getBlobs());
+            Assert.assertArrayEquals(empty, store.load(new Tile(2, 0, 18)).getImage());
+            Assert.assertArrayEquals(new byte[] { 1 }, store.load(new Tile(3, 0, 18)).getImage());
+
+            // reference after reopen
+            store.save(new Tile(4, 0, 18), empty);
+            store.close();
+
+            store = new PackFileTileStore(file.getPath());
+            Assert.assertArrayEquals(empty, store.load(new Tile(4, 0, 18)).getImage());
+            Assert.assertTrue(file.length() < 2 * empty.length);
+            store.close();
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void collidingHashKeys() throws IOException {
+        File file = File.createTempFile("tiles", ".pack");
+        try {
+            PackFileTileStore store = new CollidingPackFileTileStore(file.getPath());
+            // different images of the same length share key
+            store.save(new Tile(0, 0, 18), new byte[] { 1, 2, 3 });
+            store.save(new Tile(1, 0, 18), new byte[] { 4, 5, 6 });
+            store.save(new Tile(2, 0, 18), new byte[] { 4, 5, 6 });
+
+            Assert.assertEquals(1, store.getDeduplicated());
+            assertImages(store);
+
+            store.compact();
+            assertImages(store);
+            store.close();
+
+            store = new CollidingPackFileTileStore(file.getPath());
+            assertImages(store);
+            store.close();
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertImages(PackFileTileStore store) {
+        Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, store.load(new Tile(0, 0, 18)).getImage());
+        Assert.assertArrayEquals(new byte[] { 4, 5, 6 }, store.load(new Tile(1, 0, 18)).getImage());
+        Assert.assertArrayEquals(new byte[] { 4, 5, 6 }, store.load(new Tile(2, 0, 18)).getImage());
+    }
+
+    /**
+     * Store in which all images have the same hash key.
+     */
+    private static class CollidingPackFileTileStore extends PackFileTileStore {
+
+        CollidingPackFileTileStore(String fileName) {
+            super(fileName);
+        }
+
+        @Override
+        ByteBuffer blobKey(byte[] hash) {
+            return ByteBuffer.allocate(0);
+        }
+    }
+
+    @Test
+    public void expire() throws IOException {
+        File file = File.createTempFile("tiles", ".pack");
+        try {
+            PackFileTileStore store = new PackFileTileStore(file.getPath());
+            store.save(new Tile(0, 0, 18), new byte[] { 1 });
+            store.save(new Tile(1, 0, 18), new byte[] { 2 });
+
+            Assert.assertTrue(store.expire(new Tile(0, 0, 18)));
+            Assert.assertFalse(store.expire(new Tile(2, 0, 18)));
+
+            StoredTile stale = store.load(new Tile(0, 0, 18));
+            Assert.assertTrue(stale.isStale());
+            Assert.assertArrayEquals(new byte[] { 1 }, stale.getImage());
+            Assert.assertFalse(store.load(new Tile(1, 0, 18)).isStale());
+            store.close();
+
+            store = new PackFileTileStore(file.getPath());
+            Assert.assertTrue(store.load(new Tile(0, 0, 18)).isStale());
+
+            // rendered again
+            store.save(new Tile(0, 0, 18), new byte[] { 3 });
+            Assert.assertFalse(store.load(new Tile(0, 0, 18)).isStale());
+            store.close();
+
+            store = new PackFileTileStore(file.getPath());
+            Assert.assertFalse(store.load(new Tile(0, 0, 18)).isStale());
+            Assert.assertArrayEquals(new byte[] { 3 }, store.load(new Tile(0, 0, 18)).getImage());
+            store.close();
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void compact() throws IOException {
+        File file = File.createTempFile("tiles", ".pack");
+        try {
+            byte[] empty = new byte[1000];
+
+            PackFileTileStore store = new PackFileTileStore(file.getPath());
+            Assert.assertEquals(0, store.getDeadRatio(), 0);
+
+            store.save(new Tile(0, 0, 18), new byte[2000]);
+            store.save(new Tile(1, 0, 18), empty);
+            store.save(new Tile(2, 0, 18), empty);
+            store.save(new Tile(3, 0, 18), new byte[] { 1 });
+            store.expire(new Tile(3, 0, 18));
+            store.expire(new Tile(2, 0, 18));
+            Assert.assertEquals(0, store.getDeadRatio(), 0);
+
+            // old image and expire record are dead
+            store.save(new Tile(0, 0, 18), new byte[] { 2 });
+            store.save(new Tile(2, 0, 18), empty);
+            Assert.assertTrue(store.getDeadRatio() > 0.5);
+
+            long size = file.length();
+            store.compact();
+            Assert.assertEquals(0, store.getDeadRatio(), 0);
+            Assert.assertTrue(file.length() < size - 2000);
+
+            assertCompacted(store, empty);
+
+            // saved after compaction references compacted image
+            long deduplicated = store.getDeduplicated();
+            store.save(new Tile(4, 0, 18), empty);
+            Assert.assertEquals(deduplicated + 1, store.getDeduplicated());
+            store.close();
+
+            store = new PackFileTileStore(file.getPath());
+            assertCompacted(store, empty);
+            Assert.assertArrayEquals(empty, store.load(new Tile(4, 0, 18)).getImage());
+            Assert.assertEquals(0, store.getDeadRatio(), 0);
+            store.close();
+
+            Assert.assertFalse(new File(file.getPath() + ".compact").exists());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertCompacted(PackFileTileStore store, byte[] empty) {
+        Assert.assertEquals(3, store.getBlobs());
+        Assert.assertArrayEquals(new byte[] { 2 }, store.load(new Tile(0, 0, 18)).getImage());
+        Assert.assertArrayEquals(empty, store.load(new Tile(1, 0, 18)).getImage());
+        Assert.assertArrayEquals(empty, store.load(new Tile(2, 0, 18)).getImage());
+        Assert.assertArrayEquals(new byte[] { 1 }, store.load(new Tile(3, 0, 18)).getImage());
+
+        Assert.assertFalse(store.load(new Tile(2, 0, 18)).isStale());
+        Assert.assertTrue(store.load(new Tile(3, 0, 18)).isStale());
+    }
+
+    @Test
+    public void truncatedRecord() throws IOException {
+        File file = File.createTempFile("tiles", ".pack");
+        try {
+            PackFileTileStore store = new PackFileTileStore(file.getPath());
+            store.save(new Tile(1, 1, 1), new byte[] { 1, 2, 3 });
+            store.save(new Tile(0, 1, 1), new byte[] { 4, 5, 6 });
+            store.close();
+
+            // simulates crash in the middle of writing last record
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(raf.length() - 1);
+            raf.close();
+
+            store = new PackFileTileStore(file.getPath());
+            Assert.assertEquals(1, store.size());
+            Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, store.load(new Tile(1, 1, 1)).getImage());
+
+            store.save(new Tile(0, 1, 1), new byte[] { 7 });
+            store.close();
+
+            store = new PackFileTileStore(file.getPath());
+            Assert.assertArrayEquals(new byte[] { 7 }, store.load(new Tile(0, 1, 1)).getImage());
+            store.close();
+
+        } finally {
+            file.delete();
+        }
+    }
+}